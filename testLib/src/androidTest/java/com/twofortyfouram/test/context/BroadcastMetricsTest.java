@@ -0,0 +1,216 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+@RunWith(AndroidJUnit4.class)
+public final class BroadcastMetricsTest {
+
+    @SmallTest
+    @Test
+    public void getCount() {
+        final BroadcastMetrics metrics = new BroadcastMetrics();
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent(), System.nanoTime());
+
+        assertThat(metrics.getCount("foo"), is(2)); //$NON-NLS
+        assertThat(metrics.getCount(null), is(1));
+        assertThat(metrics.getCount("bar"), is(0)); //$NON-NLS
+
+        final Map<String, Integer> counts = metrics.getCounts();
+        assertThat(counts.size(), is(2));
+        assertThat(counts.get("foo"), is(2)); //$NON-NLS
+        assertThat(counts.get(null), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void getCount_window() {
+        final BroadcastMetrics metrics = new BroadcastMetrics();
+        final long nowNanos = System.nanoTime();
+        metrics.record(new Intent("foo"), nowNanos - TimeUnit.MINUTES.toNanos(1)); //$NON-NLS
+        metrics.record(new Intent("foo"), nowNanos); //$NON-NLS
+        metrics.record(new Intent("foo"), nowNanos); //$NON-NLS
+
+        assertThat(metrics.getCount("foo", 10, TimeUnit.SECONDS), is(2)); //$NON-NLS
+        assertThat(metrics.getCount("foo", 2, TimeUnit.MINUTES), is(3)); //$NON-NLS
+        assertThat(metrics.getRate("foo", 10, TimeUnit.SECONDS), is(0.2)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getCount_window_clipped() {
+        final BroadcastMetrics metrics = new BroadcastMetrics(2, TimeUnit.SECONDS.toNanos(1),
+                BroadcastMetrics.DEFAULT_MAX_TRACKED_INTENTS);
+        final long nowNanos = System.nanoTime();
+        metrics.record(new Intent("foo"), nowNanos - TimeUnit.SECONDS.toNanos(10)); //$NON-NLS
+        metrics.record(new Intent("foo"), nowNanos); //$NON-NLS
+        metrics.record(new Intent("foo"), nowNanos); //$NON-NLS
+
+        // Two one-second buckets only cover the latest couple of seconds
+        assertThat(metrics.getCount("foo"), is(3)); //$NON-NLS
+        assertThat(metrics.getCount("foo", 1, TimeUnit.MINUTES), is(2)); //$NON-NLS
+        assertThat(metrics.getRate("foo", 1, TimeUnit.MINUTES), is(1.0)); //$NON-NLS
+    }
+
+    @MediumTest
+    @Test
+    public void record_concurrent() throws InterruptedException {
+        final BroadcastMetrics metrics = new BroadcastMetrics();
+        final int threadCount = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int x = 0; x < threadCount; x++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+
+                        for (int y = 0; y < perThread; y++) {
+                            metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(metrics.getCount("foo"), is(threadCount * perThread)); //$NON-NLS
+        assertThat(metrics.getCount("foo", 1, TimeUnit.MINUTES), //$NON-NLS
+                is(threadCount * perThread));
+        assertThat(metrics.getDuplicateCount(), is(threadCount * perThread - 1));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void getCount_window_bad() {
+        new BroadcastMetrics().getCount("foo", 0, TimeUnit.SECONDS); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getDuplicates() {
+        final BroadcastMetrics metrics = new BroadcastMetrics();
+        for (int x = 0; x < 3; x++) {
+            metrics.record(new Intent("foo").putExtra("key", "value"), //$NON-NLS
+                    System.nanoTime());
+        }
+        metrics.record(new Intent("foo").putExtra("key", "other"), //$NON-NLS
+                System.nanoTime());
+        metrics.record(new Intent("bar"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("bar"), System.nanoTime()); //$NON-NLS
+
+        assertThat(metrics.getDuplicateCount(), is(3));
+
+        final List<BroadcastMetrics.Duplicate> duplicates = metrics.getDuplicates();
+        assertThat(duplicates.size(), is(2));
+        assertThat(duplicates.get(0).getIntent().getAction(), is("foo")); //$NON-NLS
+        assertThat(duplicates.get(0).getIntent().getStringExtra("key"), is("value")); //$NON-NLS
+        assertThat(duplicates.get(0).getCount(), is(3));
+        assertThat(duplicates.get(1).getIntent().getAction(), is("bar")); //$NON-NLS
+        assertThat(duplicates.get(1).getCount(), is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void getDuplicates_max_tracked_intents() {
+        final BroadcastMetrics metrics = new BroadcastMetrics(
+                BroadcastMetrics.DEFAULT_BUCKET_COUNT,
+                TimeUnit.MILLISECONDS.toNanos(BroadcastMetrics.DEFAULT_BUCKET_MILLIS), 1);
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("bar"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("bar"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+
+        // Only the first distinct Intent is tracked, but every Intent is counted
+        assertThat(metrics.getCount("bar"), is(2)); //$NON-NLS
+        assertThat(metrics.getDuplicateCount(), is(1));
+        assertThat(metrics.getDuplicates().size(), is(1));
+        assertThat(metrics.getDuplicates().get(0).getIntent().getAction(), is("foo")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void hashExtras() {
+        final Bundle bundle = new Bundle();
+        bundle.putString("string", "value"); //$NON-NLS
+        bundle.putIntArray("ints", new int[]{1, 2}); //$NON-NLS
+        final Bundle nested = new Bundle();
+        nested.putLong("long", 1L); //$NON-NLS
+        bundle.putBundle("bundle", nested); //$NON-NLS
+
+        final Bundle equal = new Bundle();
+        final Bundle equalNested = new Bundle();
+        equalNested.putLong("long", 1L); //$NON-NLS
+        equal.putBundle("bundle", equalNested); //$NON-NLS
+        equal.putIntArray("ints", new int[]{1, 2}); //$NON-NLS
+        equal.putString("string", "value"); //$NON-NLS
+
+        assertThat(BroadcastMetrics.hashExtras(bundle), is(BroadcastMetrics.hashExtras(equal)));
+
+        equalNested.putLong("long", 2L); //$NON-NLS
+        assertThat(BroadcastMetrics.hashExtras(bundle),
+                not(BroadcastMetrics.hashExtras(equal)));
+    }
+
+    @SmallTest
+    @Test
+    public void reset() {
+        final BroadcastMetrics metrics = new BroadcastMetrics();
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+        metrics.record(new Intent("foo"), System.nanoTime()); //$NON-NLS
+
+        metrics.reset();
+
+        assertThat(metrics.getCount("foo"), is(0)); //$NON-NLS
+        assertThat(metrics.getCounts().isEmpty(), is(true));
+        assertThat(metrics.getDuplicateCount(), is(0));
+        assertThat(metrics.getDuplicates().isEmpty(), is(true));
+    }
+}
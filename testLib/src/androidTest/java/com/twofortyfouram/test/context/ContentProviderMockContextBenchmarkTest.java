@@ -0,0 +1,97 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.twofortyfouram.test.provider.MockableContentProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Compares creating a new {@link ContentProviderMockContext} and provider for every test to
+ * reusing one via {@link ContentProviderMockContext#reset()}.  Timings are logged rather than
+ * asserted, as they vary by device.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ContentProviderMockContextBenchmarkTest {
+
+    @NonNull
+    private static final String LOG_TAG = "ContentProviderMockContextBenchmark"; //$NON-NLS
+
+    @NonNull
+    private static final String AUTHORITY = "authority"; //$NON-NLS
+
+    @NonNull
+    private static final Uri URI = new Uri.Builder().authority(AUTHORITY).build();
+
+    private static final int ITERATION_COUNT = 1000;
+
+    @LargeTest
+    @Test
+    public void benchmark() {
+        final long newStart = System.nanoTime();
+        for (int x = 0; x < ITERATION_COUNT; x++) {
+            final MockableContentProvider provider = MockableContentProvider
+                    .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+            runTest(provider);
+        }
+        final long newNanos = System.nanoTime() - newStart;
+
+        final MockableContentProvider pooledProvider = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        final ContentProviderMockContext pooledContext
+                = (ContentProviderMockContext) pooledProvider.getContext();
+
+        final long resetStart = System.nanoTime();
+        for (int x = 0; x < ITERATION_COUNT; x++) {
+            pooledContext.reset();
+            runTest(pooledProvider);
+        }
+        final long resetNanos = System.nanoTime() - resetStart;
+
+        Log.i(LOG_TAG, String.format(
+                "New context per test: %d us per test", //$NON-NLS
+                newNanos / ITERATION_COUNT / 1000));
+        Log.i(LOG_TAG, String.format(
+                "Reset context per test: %d us per test", //$NON-NLS
+                resetNanos / ITERATION_COUNT / 1000));
+    }
+
+    /**
+     * Stands in for a typical test: configures the provider, calls it through the resolver, and
+     * verifies the recorded call.
+     */
+    private static void runTest(@NonNull final MockableContentProvider provider) {
+        provider.addDeleteRule("content://" + AUTHORITY, 1); //$NON-NLS
+
+        final int count = provider.getContext().getContentResolver().delete(URI, null, null);
+
+        assertThat(count, is(1));
+        assertThat(provider.getDeleteCount(), is(1));
+    }
+}
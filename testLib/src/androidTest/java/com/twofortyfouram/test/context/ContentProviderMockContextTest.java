@@ -20,25 +20,39 @@ package com.twofortyfouram.test.context;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.twofortyfouram.test.provider.MockableContentProvider;
+import com.twofortyfouram.test.util.AwaitableCounter;
+
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 
 @RunWith(AndroidJUnit4.class)
 public final class ContentProviderMockContextTest {
 
+    @NonNull
+    private static final Uri ITEMS_URI = Uri.parse("content://authority/items"); //$NON-NLS
+
+    @NonNull
+    private static final Uri ITEM_URI = Uri.parse("content://authority/items/1"); //$NON-NLS
+
     @SmallTest
     @Test
     public void getApplicationContext_does_not_break_out() {
@@ -65,6 +79,191 @@ public final class ContentProviderMockContextTest {
         assertThat(result, nullValue());
     }
 
+    @SmallTest
+    @Test
+    public void reset() {
+        final MockableContentProvider provider = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), "authority");
+        final ContentProviderMockContext fContext = (ContentProviderMockContext) provider
+                .getContext();
+
+        fContext.getContentResolver()
+                .query(new Uri.Builder().authority("authority").build(), null, null, null, null);
+        assertThat(provider.getQueryCount(), is(1));
+
+        fContext.reset();
+
+        assertThat(provider.getQueryCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void reset_not_resettable() {
+        final ContentProviderMockContext fContext = new ContentProviderMockContext(
+                InstrumentationRegistry.getContext(),
+                Collections.<String, ContentProvider>singletonMap("authority",
+                        new ContentProviderImpl()));
+
+        fContext.reset();
+    }
+
+    @SmallTest
+    @Test
+    public void notifyChange_exact() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, false, observer);
+
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+
+        assertThat(observer.mCount.get(), is(1));
+        assertThat(observer.mLastUri, is(ITEMS_URI));
+    }
+
+    @SmallTest
+    @Test
+    public void notifyChange_descendant() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver withDescendants = new CountingObserver();
+        final CountingObserver withoutDescendants = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, true, withDescendants);
+        fContext.registerContentObserver(ITEMS_URI, false, withoutDescendants);
+
+        fContext.getContentResolver().notifyChange(ITEM_URI, null);
+
+        assertThat(withDescendants.mCount.get(), is(1));
+        assertThat(withoutDescendants.mCount.get(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void notifyChange_ancestor() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEM_URI, false, observer);
+
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+
+        assertThat(observer.mCount.get(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void notifyChange_unrelated() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, true, observer);
+
+        fContext.getContentResolver().notifyChange(
+                Uri.parse("content://authority/other"), null); //$NON-NLS
+        fContext.getContentResolver().notifyChange(
+                Uri.parse("content://other/items"), null); //$NON-NLS
+
+        assertThat(observer.mCount.get(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void notifyChange_self() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, false, observer);
+
+        fContext.getContentResolver().notifyChange(ITEMS_URI, observer);
+
+        assertThat(observer.mCount.get(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void unregisterContentObserver() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, false, observer);
+        fContext.unregisterContentObserver(observer);
+
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+
+        assertThat(observer.mCount.get(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void getNotifyChangeCount() {
+        final ContentProviderMockContext fContext = newContext();
+
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null, false);
+        fContext.getContentResolver().notifyChange(ITEM_URI, null);
+
+        assertThat(fContext.getNotifyChangeCount(ITEMS_URI), is(2));
+        assertThat(fContext.getNotifyChangeCount(ITEM_URI), is(1));
+        assertThat(fContext.getNotifyChangeCount(), is(3));
+    }
+
+    @MediumTest
+    @Test
+    public void setNotificationCoalescingWindow() throws InterruptedException {
+        final ContentProviderMockContext fContext = newContext();
+        fContext.setNotificationCoalescingWindow(100, TimeUnit.MILLISECONDS);
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, false, observer);
+
+        for (int x = 0; x < 10; x++) {
+            fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+        }
+
+        assertThat(observer.mCount.await(1, 1, TimeUnit.SECONDS), is(true));
+        assertThat(observer.mCount.await(2, 200, TimeUnit.MILLISECONDS), is(false));
+        assertThat(fContext.getNotifyChangeCount(ITEMS_URI), is(10));
+    }
+
+    @SmallTest
+    @Test
+    public void reset_notifications() {
+        final ContentProviderMockContext fContext = newContext();
+        final CountingObserver observer = new CountingObserver();
+        fContext.registerContentObserver(ITEMS_URI, false, observer);
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+
+        fContext.reset();
+        fContext.getContentResolver().notifyChange(ITEMS_URI, null);
+
+        assertThat(observer.mCount.get(), is(1));
+        assertThat(fContext.getNotifyChangeCount(), is(1));
+    }
+
+    @NonNull
+    private static ContentProviderMockContext newContext() {
+        return new ContentProviderMockContext(InstrumentationRegistry.getContext(),
+                Collections.<String, ContentProvider>singletonMap("authority",
+                        new ContentProviderImpl()));
+    }
+
+    private static final class CountingObserver extends ContentObserver {
+
+        @NonNull
+        private final AwaitableCounter mCount = new AwaitableCounter();
+
+        @Nullable
+        private volatile Uri mLastUri = null;
+
+        public CountingObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(final boolean selfChange) {
+            mCount.increment();
+        }
+
+        @Override
+        public void onChange(final boolean selfChange, final Uri uri) {
+            mLastUri = uri;
+            onChange(selfChange);
+        }
+    }
+
     private static final class ContentProviderImpl extends ContentProvider {
 
         @Override
@@ -0,0 +1,126 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Measures the cost of broadcasting through {@link ReceiverContextWrapper} to many registered
+ * receivers, both when a broadcast fans out to all of them and when each broadcast reaches only
+ * the few receivers for its action.  Timings are logged rather than asserted, as they vary by
+ * device.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ReceiverContextWrapperBenchmarkTest {
+
+    @NonNull
+    private static final String LOG_TAG = "ReceiverContextWrapperBenchmark"; //$NON-NLS
+
+    private static final int RECEIVER_COUNT = 1000;
+
+    private static final int ACTION_COUNT = 100;
+
+    private static final int BROADCAST_COUNT = 1000;
+
+    @LargeTest
+    @Test
+    public void benchmark() throws InterruptedException {
+        final HandlerThread handlerThread = new HandlerThread(LOG_TAG);
+        handlerThread.start();
+        try {
+            final Handler handler = new Handler(handlerThread.getLooper());
+
+            final ReceiverContextWrapper fanOutContext = newContext(handler, 1);
+            final long fanOutNanos = runBroadcasts(fanOutContext, 1, RECEIVER_COUNT);
+
+            final ReceiverContextWrapper indexedContext = newContext(handler, ACTION_COUNT);
+            final long indexedNanos = runBroadcasts(indexedContext, ACTION_COUNT,
+                    RECEIVER_COUNT / ACTION_COUNT);
+
+            Log.i(LOG_TAG, String.format(
+                    "Fan out to %d receivers: %d us per broadcast", //$NON-NLS
+                    RECEIVER_COUNT, fanOutNanos / BROADCAST_COUNT / 1000));
+            Log.i(LOG_TAG, String.format(
+                    "%d receivers over %d actions: %d us per broadcast", //$NON-NLS
+                    RECEIVER_COUNT, ACTION_COUNT, indexedNanos / BROADCAST_COUNT / 1000));
+        } finally {
+            handlerThread.getLooper().quit();
+        }
+    }
+
+    /**
+     * @return A context with {@link #RECEIVER_COUNT} receivers spread evenly over
+     * {@code actionCount} actions.
+     */
+    @NonNull
+    private static ReceiverContextWrapper newContext(@NonNull final Handler handler,
+            final int actionCount) {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        for (int x = 0; x < RECEIVER_COUNT; x++) {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(final Context receiverContext, final Intent intent) {
+                    // Only delivery is measured
+                }
+            }, new IntentFilter(getAction(x % actionCount)), null, handler);
+        }
+
+        return context;
+    }
+
+    /**
+     * @return Nanoseconds from the first broadcast until every receiver has returned.
+     */
+    private static long runBroadcasts(@NonNull final ReceiverContextWrapper context,
+            final int actionCount, final int receiversPerAction) throws InterruptedException {
+        final long start = System.nanoTime();
+        for (int x = 0; x < BROADCAST_COUNT; x++) {
+            context.sendBroadcast(new Intent(getAction(x % actionCount)));
+        }
+
+        assertThat(context.awaitDeliveries(BROADCAST_COUNT * receiversPerAction,
+                60 * DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS), is(true));
+
+        return System.nanoTime() - start;
+    }
+
+    @NonNull
+    private static String getAction(final int index) {
+        return "com.twofortyfouram.test.intent.action.BENCHMARK_" + index; //$NON-NLS
+    }
+}
@@ -19,13 +19,20 @@ package com.twofortyfouram.test.context;
 
 import android.annotation.TargetApi;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.filters.MediumTest;
 import android.support.test.filters.SdkSuppress;
@@ -33,23 +40,39 @@ import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 import android.text.format.DateUtils;
 
+import com.twofortyfouram.test.trace.ChromeTraceWriter;
+
 import org.hamcrest.Matchers;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 @RunWith(AndroidJUnit4.class)
 public final class ReceiverContextWrapperTest {
@@ -329,51 +352,258 @@ public final class ReceiverContextWrapperTest {
     }
 
     @SmallTest
-    @Test(expected = UnsupportedOperationException.class)
+    @SdkSuppress(minSdkVersion = Build.VERSION_CODES.JELLY_BEAN_MR1)
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
+    @Test
     public void sendBroadcastAsUser_without_permission() {
         final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
                 InstrumentationRegistry.getContext());
-        fContext.sendBroadcastAsUser(new Intent(), null);
+        final UserHandle user = android.os.Process.myUserHandle();
+        fContext.sendBroadcastAsUser(new Intent("foo"), user); //$NON-NLS
+
+        final ReceiverContextWrapper.SentIntent sentIntent = fContext.pollIntent();
+        assertThat(sentIntent, notNullValue());
+        assertThat(sentIntent.getIntent().getAction(), is("foo")); //$NON-NLS
+        assertThat(sentIntent.getUser(), is(user));
+        assertThat(sentIntent.getPermission(), nullValue());
+        assertThat(sentIntent.getIsSticky(), is(false));
+        assertThat(sentIntent.getIsOrdered(), is(false));
     }
 
     @SmallTest
-    @Test(expected = UnsupportedOperationException.class)
+    @Test
     public void sendBroadcastAsUser_with_permission() {
         final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
                 InstrumentationRegistry.getContext());
-        fContext.sendBroadcastAsUser(new Intent(), null, null);
+        fContext.sendBroadcastAsUser(new Intent("foo"), null, "bar"); //$NON-NLS
+
+        final ReceiverContextWrapper.SentIntent sentIntent = fContext.pollIntent();
+        assertThat(sentIntent, notNullValue());
+        assertThat(sentIntent.getUser(), nullValue());
+        assertThat(sentIntent.getPermission(), is("bar")); //$NON-NLS
     }
 
+    @MediumTest
+    @Test
+    public void sendBroadcastAsUser_delivers() throws InterruptedException {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final CountingReceiver receiver = new CountingReceiver();
+        fContext.registerReceiver(receiver, new IntentFilter("foo")); //$NON-NLS
+
+        fContext.sendBroadcastAsUser(new Intent("foo"), null); //$NON-NLS
+
+        assertThat(fContext.awaitDeliveries(1, DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+        assertThat(receiver.mCount.get(), is(1));
+    }
 
     @SmallTest
-    @Test(expected = UnsupportedOperationException.class)
-    public void sendStickyBroadcastAsUser_throw() {
+    @Test
+    @SuppressWarnings("deprecation")
+    public void sendStickyBroadcastAsUser() {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        fContext.sendStickyBroadcastAsUser(new Intent("foo"), null); //$NON-NLS
+
+        final ReceiverContextWrapper.SentIntent sentIntent = fContext.pollIntent();
+        assertThat(sentIntent, notNullValue());
+        assertThat(sentIntent.getIsSticky(), is(true));
+        assertThat(sentIntent.getIsOrdered(), is(false));
+
+        final Intent stickyIntent = fContext.registerReceiver(null,
+                new IntentFilter("foo")); //$NON-NLS
+        assertThat(stickyIntent, notNullValue());
+        assertThat(stickyIntent.getAction(), is("foo")); //$NON-NLS
+    }
+
+    @MediumTest
+    @SuppressWarnings("deprecation")
+    @Test
+    public void sendStickyOrderedBroadcastAsUser() throws InterruptedException {
         final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
                 InstrumentationRegistry.getContext());
-        fContext.sendStickyBroadcastAsUser(new Intent(), null);
+        final ResultReceiver resultReceiver = new ResultReceiver();
+
+        fContext.sendStickyOrderedBroadcastAsUser(new Intent("foo"), null, //$NON-NLS
+                resultReceiver, null, 0, null, null);
+
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+
+        final ReceiverContextWrapper.SentIntent sentIntent = fContext.pollIntent();
+        assertThat(sentIntent, notNullValue());
+        assertThat(sentIntent.getIsSticky(), is(true));
+        assertThat(sentIntent.getIsOrdered(), is(true));
+        assertThat(fContext.registerReceiver(null, new IntentFilter("foo")), //$NON-NLS
+                notNullValue());
+    }
+
+    @MediumTest
+    @Test
+    public void sendOrderedBroadcastAsUser() throws InterruptedException {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final ResultReceiver resultReceiver = new ResultReceiver();
+
+        fContext.sendOrderedBroadcastAsUser(new Intent("foo"), null, null, //$NON-NLS
+                resultReceiver, null, 0, null, null);
+
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+
+        final ReceiverContextWrapper.SentIntent sentIntent = fContext.pollIntent();
+        assertThat(sentIntent, notNullValue());
+        assertThat(sentIntent.getIsSticky(), is(false));
+        assertThat(sentIntent.getIsOrdered(), is(true));
+        assertThat(fContext.registerReceiver(null, new IntentFilter("foo")), //$NON-NLS
+                nullValue());
     }
 
     @SmallTest
-    @SdkSuppress(minSdkVersion = Build.VERSION_CODES.JELLY_BEAN_MR1)
+    @Test
     @SuppressWarnings("deprecation")
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
-    @Test(expected = UnsupportedOperationException.class)
-    public void sendStickyOrderedBroadcastAsUser_throw() {
+    public void sendStickyBroadcast_latest() {
         final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
                 InstrumentationRegistry.getContext());
 
-        fContext.sendStickyOrderedBroadcastAsUser(new Intent(), null, null, null, 0, null,
-                null);
+        fContext.sendStickyBroadcast(new Intent("foo").putExtra("key", "first")); //$NON-NLS
+        fContext.sendStickyBroadcast(new Intent("bar")); //$NON-NLS
+        // Replaces the first, as it is filter equal
+        fContext.sendStickyBroadcast(new Intent("foo").putExtra("key", "second")); //$NON-NLS
+
+        final IntentFilter filter = new IntentFilter("foo"); //$NON-NLS
+        filter.addAction("bar"); //$NON-NLS
+        final Intent stickyIntent = fContext.registerReceiver(null, filter);
+        assertThat(stickyIntent, notNullValue());
+        assertThat(stickyIntent.getStringExtra("key"), is("second")); //$NON-NLS
+
+        assertThat(fContext.registerReceiver(null, new IntentFilter("baz")), //$NON-NLS
+                nullValue());
     }
 
     @SmallTest
-    @Test(expected = UnsupportedOperationException.class)
+    @Test
     @SuppressWarnings("deprecation")
-    public void sendOrderedBroadcastAsUser_throw() {
+    public void sendStickyBroadcast_latest_not_matching() {
         final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
                 InstrumentationRegistry.getContext());
-        fContext.sendOrderedBroadcastAsUser(new Intent(), null, null, null, null, 0, null,
-                null);
+        fContext.sendStickyBroadcast(new Intent("foo").addCategory("first")); //$NON-NLS
+        fContext.sendStickyBroadcast(new Intent("foo").addCategory("second")); //$NON-NLS
+
+        // The latest sticky Intent doesn't match, so the older one is found
+        final IntentFilter filter = new IntentFilter("foo"); //$NON-NLS
+        filter.addCategory("first"); //$NON-NLS
+        final Intent stickyIntent = fContext.registerReceiver(null, filter);
+        assertThat(stickyIntent, notNullValue());
+        assertThat(stickyIntent.hasCategory("first"), is(true)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    @SuppressWarnings("deprecation")
+    public void removeStickyBroadcast_latest() {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        fContext.sendStickyBroadcast(new Intent("foo").addCategory("first")); //$NON-NLS
+        fContext.sendStickyBroadcast(new Intent("foo").addCategory("second")); //$NON-NLS
+
+        fContext.removeStickyBroadcast(new Intent("foo").addCategory("second")); //$NON-NLS
+
+        final IntentFilter filter = new IntentFilter("foo"); //$NON-NLS
+        filter.addCategory("first"); //$NON-NLS
+        filter.addCategory("second"); //$NON-NLS
+        final Intent stickyIntent = fContext.registerReceiver(null, filter);
+        assertThat(stickyIntent, notNullValue());
+        assertThat(stickyIntent.hasCategory("first"), is(true)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    @SuppressWarnings("deprecation")
+    public void removeStickyBroadcast() {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        fContext.sendStickyBroadcast(new Intent("foo")); //$NON-NLS
+
+        fContext.removeStickyBroadcast(new Intent("foo")); //$NON-NLS
+
+        assertThat(fContext.registerReceiver(null, new IntentFilter("foo")), //$NON-NLS
+                nullValue());
+    }
+
+    @MediumTest
+    @Test
+    @SuppressWarnings("deprecation")
+    public void registerReceiver_delivers_sticky() throws InterruptedException {
+        assumeTrue(PendingResults.isSupported());
+
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        fContext.sendStickyBroadcast(new Intent("foo")); //$NON-NLS
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicInteger initialStickyCount = new AtomicInteger(0);
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(final Context context, final Intent intent) {
+                if (isInitialStickyBroadcast()) {
+                    initialStickyCount.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        };
+        fContext.registerReceiver(receiver, new IntentFilter("foo")); //$NON-NLS
+
+        // Later sticky broadcasts are delivered as usual
+        fContext.sendStickyBroadcast(new Intent("foo")); //$NON-NLS
+
+        assertThat(latch.await(DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS), is(true));
+        assertThat(initialStickyCount.get(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void getBroadcastMetrics() {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        fContext.sendBroadcast(new Intent("foo")); //$NON-NLS
+        fContext.sendBroadcast(new Intent("foo")); //$NON-NLS
+        fContext.sendBroadcast(new Intent("bar")); //$NON-NLS
+
+        // Polling doesn't affect the metrics
+        fContext.getAndClearSentIntents();
+
+        final BroadcastMetrics metrics = fContext.getBroadcastMetrics();
+        assertThat(metrics.getCount("foo"), is(2)); //$NON-NLS
+        assertThat(metrics.getCount("bar"), is(1)); //$NON-NLS
+        assertThat(metrics.getCount("foo", 1, TimeUnit.MINUTES), is(2)); //$NON-NLS
+        assertThat(metrics.getDuplicateCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void addOnBroadcastListener() {
+        final ReceiverContextWrapper fContext = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final List<String> actions = new ArrayList<>();
+        final ReceiverContextWrapper.OnBroadcastListener listener
+                = new ReceiverContextWrapper.OnBroadcastListener() {
+            @Override
+            public void onBroadcast(@NonNull final ReceiverContextWrapper.SentIntent sentIntent) {
+                actions.add(sentIntent.getAction());
+            }
+        };
+        fContext.addOnBroadcastListener(listener);
+
+        fContext.sendBroadcast(new Intent("foo")); //$NON-NLS
+        fContext.sendOrderedBroadcast(new Intent("bar"), null); //$NON-NLS
+
+        fContext.removeOnBroadcastListener(listener);
+        fContext.sendBroadcast(new Intent("baz")); //$NON-NLS
+
+        assertThat(actions, contains("foo", "bar")); //$NON-NLS
     }
 
     @SmallTest
@@ -392,4 +622,553 @@ public final class ReceiverContextWrapperTest {
         assertThat(context.pollIntent(), nullValue());
     }
 
+    @SmallTest
+    @Test
+    public void startService_not_a_broadcast() {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final List<ReceiverContextWrapper.SentIntent> broadcasts = new ArrayList<>();
+        context.addOnBroadcastListener(new ReceiverContextWrapper.OnBroadcastListener() {
+            @Override
+            public void onBroadcast(@NonNull final ReceiverContextWrapper.SentIntent sentIntent) {
+                broadcasts.add(sentIntent);
+            }
+        });
+
+        context.startService(new Intent("foo")); //$NON-NLS
+
+        assertThat(context.getSentIntentCount(), is(1));
+        assertThat(context.getBroadcastMetrics().getCount("foo"), is(0)); //$NON-NLS
+        assertThat(broadcasts, empty());
+    }
+
+    @SmallTest
+    @Test
+    public void sentIntent_sent_nanos() {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+
+        final long beforeNanos = System.nanoTime();
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+        final long afterNanos = System.nanoTime();
+
+        final ReceiverContextWrapper.SentIntent polledIntent = context.pollIntent();
+        assertThat(polledIntent, notNullValue());
+        assertThat(polledIntent.getSentNanos() - beforeNanos >= 0, is(true));
+        assertThat(afterNanos - polledIntent.getSentNanos() >= 0, is(true));
+    }
+
+    @SmallTest
+    @Test
+    public void setTraceWriter() throws IOException, JSONException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter traceWriter = new ChromeTraceWriter(out);
+
+        context.setTraceWriter(traceWriter);
+        context.sendBroadcast(new Intent("foo"), "bar"); //$NON-NLS
+        context.startService(new Intent("baz")); //$NON-NLS
+        context.setTraceWriter(null);
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+        traceWriter.close();
+
+        // Service starts aren't broadcasts, so they aren't traced
+        assertThat(traceWriter.getEventCount(), is(1));
+
+        final JSONArray events = new JSONObject(out.toString())
+                .getJSONArray("traceEvents"); //$NON-NLS
+        final JSONObject broadcast = events.getJSONObject(1);
+        assertThat(broadcast.getString("name"), is("sendBroadcast")); //$NON-NLS
+        assertThat(broadcast.getString("cat"), is("broadcast")); //$NON-NLS
+        assertThat(broadcast.getString("ph"), is("i")); //$NON-NLS
+        assertThat(broadcast.getJSONObject("args").getString("permission"), //$NON-NLS
+                is("bar")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getSentIntentCount() {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+        context.startService(new Intent("bar")); //$NON-NLS
+        context.pollIntent();
+
+        assertThat(context.getSentIntentCount(), is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void awaitIntents_timeout() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+        assertThat(context.awaitIntents(1, 0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(context.awaitIntents(2, 10, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @MediumTest
+    @Test
+    public void awaitIntents_concurrent() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final int threadCount = 4;
+        final int perThread = 500;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int x = 0; x < threadCount; x++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int y = 0; y < perThread; y++) {
+                            if (0 == y % 2) {
+                                context.sendBroadcast(new Intent("foo")); //$NON-NLS
+                            } else {
+                                context.startService(new Intent("bar")); //$NON-NLS
+                            }
+                        }
+                    }
+                });
+            }
+
+            // Polls while the senders are still running
+            int polledCount = 0;
+            while (polledCount < threadCount * perThread / 2) {
+                if (null != context.pollIntent()) {
+                    polledCount++;
+                }
+            }
+
+            assertThat(context.awaitIntents(threadCount * perThread,
+                    10 * DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS), is(true));
+
+            polledCount += context.getAndClearSentIntents().size();
+            assertThat(polledCount, is(threadCount * perThread));
+            assertThat(context.getSentIntentCount(), is(threadCount * perThread));
+            assertThat(context.pollIntent(), nullValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @MediumTest
+    @Test
+    public void registerReceiver_delivers_broadcast() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final HandlerThread handlerThread = new HandlerThread("registerReceiver"); //$NON-NLS
+        handlerThread.start();
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+                @Override
+                public void onReceive(final Context receiverContext, final Intent intent) {
+                    assertThat(Looper.myLooper(), sameInstance(handlerThread.getLooper()));
+                    assertThat(receiverContext, Matchers.<Context>sameInstance(context));
+                    assertThat(intent.getAction(), is("foo")); //$NON-NLS
+                    latch.countDown();
+                }
+            };
+
+            context.registerReceiver(receiver, new IntentFilter("foo"), null, //$NON-NLS
+                    new Handler(handlerThread.getLooper()));
+            assertThat(context.getRegisteredReceiverCount(), is(1));
+
+            context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+            assertThat(latch.await(DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS), is(true));
+            assertThat(context.awaitDeliveries(1, DateUtils.SECOND_IN_MILLIS,
+                    TimeUnit.MILLISECONDS), is(true));
+            assertThat(context.pollIntent(), notNullValue());
+        } finally {
+            handlerThread.getLooper().quit();
+        }
+    }
+
+    @MediumTest
+    @Test
+    public void registerReceiver_main_thread() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                assertThat(Looper.myLooper(), sameInstance(Looper.getMainLooper()));
+                latch.countDown();
+            }
+        };
+
+        context.registerReceiver(receiver, new IntentFilter("foo")); //$NON-NLS
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+        assertThat(latch.await(DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @MediumTest
+    @Test
+    public void registerReceiver_matches_filter() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final HandlerThread handlerThread = new HandlerThread("registerReceiver"); //$NON-NLS
+        handlerThread.start();
+        try {
+            final Handler handler = new Handler(handlerThread.getLooper());
+            final CountingReceiver fooReceiver = new CountingReceiver();
+            final CountingReceiver barReceiver = new CountingReceiver();
+            final CountingReceiver categoryReceiver = new CountingReceiver();
+
+            final IntentFilter fooBarFilter = new IntentFilter("foo"); //$NON-NLS
+            fooBarFilter.addAction("bar"); //$NON-NLS
+            context.registerReceiver(fooReceiver, fooBarFilter, null, handler);
+            context.registerReceiver(barReceiver, new IntentFilter("bar"), null, //$NON-NLS
+                    handler);
+            final IntentFilter categoryFilter = new IntentFilter("bar"); //$NON-NLS
+            categoryFilter.addCategory("baz"); //$NON-NLS
+            context.registerReceiver(categoryReceiver, categoryFilter, null, handler);
+
+            context.sendBroadcast(new Intent("foo")); //$NON-NLS
+            context.sendBroadcast(new Intent("bar")); //$NON-NLS
+            context.sendBroadcast(new Intent("qux")); //$NON-NLS
+            context.sendBroadcast(new Intent("bar").addCategory("baz")); //$NON-NLS
+
+            // A filter matches only if it declares every category of the Intent
+            assertThat(context.awaitDeliveries(5, DateUtils.SECOND_IN_MILLIS,
+                    TimeUnit.MILLISECONDS), is(true));
+            assertThat(fooReceiver.mCount.get(), is(2));
+            assertThat(barReceiver.mCount.get(), is(1));
+            assertThat(categoryReceiver.mCount.get(), is(2));
+        } finally {
+            handlerThread.getLooper().quit();
+        }
+    }
+
+    @MediumTest
+    @Test
+    public void registerReceiver_null_action() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final HandlerThread handlerThread = new HandlerThread("registerReceiver"); //$NON-NLS
+        handlerThread.start();
+        try {
+            final Handler handler = new Handler(handlerThread.getLooper());
+            final CountingReceiver actionReceiver = new CountingReceiver();
+            final CountingReceiver noActionReceiver = new CountingReceiver();
+            final IntentFilter actionFilter = new IntentFilter("foo"); //$NON-NLS
+            final IntentFilter noActionFilter = new IntentFilter();
+            context.registerReceiver(actionReceiver, actionFilter, null, handler);
+            context.registerReceiver(noActionReceiver, noActionFilter, null, handler);
+
+            final Intent intent = new Intent();
+            context.sendBroadcast(intent);
+
+            // Whatever IntentFilter.match() accepts is delivered, even to filters with actions
+            final ContentResolver resolver = context.getContentResolver();
+            final int actionCount = 0 <= actionFilter.match(resolver, intent, false, null)
+                    ? 1 : 0;
+            final int noActionCount = 0 <= noActionFilter.match(resolver, intent, false, null)
+                    ? 1 : 0;
+            final int expectedCount = actionCount + noActionCount;
+            assertThat(context.awaitDeliveries(expectedCount, DateUtils.SECOND_IN_MILLIS,
+                    TimeUnit.MILLISECONDS), is(true));
+            assertThat(context.awaitDeliveries(expectedCount + 1, 100, TimeUnit.MILLISECONDS),
+                    is(false));
+            assertThat(actionReceiver.mCount.get(), is(actionCount));
+            assertThat(noActionReceiver.mCount.get(), is(noActionCount));
+        } finally {
+            handlerThread.getLooper().quit();
+        }
+    }
+
+    @MediumTest
+    @Test
+    public void registerReceiver_explicit_not_delivered() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final CountingReceiver receiver = new CountingReceiver();
+        context.registerReceiver(receiver, new IntentFilter("foo")); //$NON-NLS
+
+        context.sendBroadcast(new Intent("foo").setComponent( //$NON-NLS
+                new ComponentName(InstrumentationRegistry.getContext(), CountingReceiver.class)));
+
+        assertThat(context.awaitDeliveries(1, 100, TimeUnit.MILLISECONDS), is(false));
+        assertThat(receiver.mCount.get(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void registerReceiver_null_receiver() {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+
+        assertThat(context.registerReceiver(null, new IntentFilter("foo")), //$NON-NLS
+                nullValue());
+        assertThat(context.getRegisteredReceiverCount(), is(0));
+    }
+
+    @MediumTest
+    @Test
+    public void unregisterReceiver() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final HandlerThread handlerThread = new HandlerThread("unregisterReceiver"); //$NON-NLS
+        handlerThread.start();
+        try {
+            final Handler handler = new Handler(handlerThread.getLooper());
+            final CountingReceiver removedReceiver = new CountingReceiver();
+            final CountingReceiver keptReceiver = new CountingReceiver();
+            context.registerReceiver(removedReceiver, new IntentFilter("foo"), null, //$NON-NLS
+                    handler);
+            context.registerReceiver(removedReceiver, new IntentFilter("bar"), null, //$NON-NLS
+                    handler);
+            context.registerReceiver(keptReceiver, new IntentFilter("foo"), null, //$NON-NLS
+                    handler);
+
+            context.unregisterReceiver(removedReceiver);
+            assertThat(context.getRegisteredReceiverCount(), is(1));
+
+            context.sendBroadcast(new Intent("bar")); //$NON-NLS
+            context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+            assertThat(context.awaitDeliveries(1, DateUtils.SECOND_IN_MILLIS,
+                    TimeUnit.MILLISECONDS), is(true));
+            assertThat(keptReceiver.mCount.get(), is(1));
+            assertThat(removedReceiver.mCount.get(), is(0));
+        } finally {
+            handlerThread.getLooper().quit();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void unregisterReceiver_not_registered() {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+
+        context.unregisterReceiver(new CountingReceiver());
+    }
+
+    @MediumTest
+    @Test
+    public void sendOrderedBroadcast_priority_and_results() throws InterruptedException {
+        assumeTrue(PendingResults.isSupported());
+
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        context.registerReceiver(new ChainReceiver("low", calls, false), //$NON-NLS
+                newFilter("foo", -10)); //$NON-NLS
+        context.registerReceiver(new ChainReceiver("high", calls, false), //$NON-NLS
+                newFilter("foo", 10)); //$NON-NLS
+        context.registerReceiver(new ChainReceiver("first", calls, false), //$NON-NLS
+                newFilter("foo", 0)); //$NON-NLS
+        context.registerReceiver(new ChainReceiver("second", calls, false), //$NON-NLS
+                newFilter("foo", 0)); //$NON-NLS
+
+        final ResultReceiver resultReceiver = new ResultReceiver();
+        context.sendOrderedBroadcast(new Intent("foo"), null, resultReceiver, null, 1, //$NON-NLS
+                "initial", null); //$NON-NLS
+
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+        assertThat(calls, contains("high:1:initial", "first:2:high", //$NON-NLS
+                "second:3:first", "low:4:second")); //$NON-NLS
+        assertThat(resultReceiver.mResultCode, is(5));
+        assertThat(resultReceiver.mResultData, is("low")); //$NON-NLS
+        assertThat(resultReceiver.mIsOrdered, is(false));
+    }
+
+    @MediumTest
+    @Test
+    public void sendOrderedBroadcast_abort() throws InterruptedException {
+        assumeTrue(PendingResults.isSupported());
+
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        context.registerReceiver(new ChainReceiver("high", calls, true), //$NON-NLS
+                newFilter("foo", 10)); //$NON-NLS
+        context.registerReceiver(new ChainReceiver("low", calls, false), //$NON-NLS
+                newFilter("foo", 0)); //$NON-NLS
+
+        final ResultReceiver resultReceiver = new ResultReceiver();
+        context.sendOrderedBroadcast(new Intent("foo"), null, resultReceiver, //$NON-NLS
+                null, 0, null, null);
+
+        // The result receiver is still called after an abort
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+        assertThat(calls, contains("high:0:null")); //$NON-NLS
+        assertThat(resultReceiver.mResultCode, is(1));
+        assertThat(context.getDeliveredCount(), is(1));
+    }
+
+    @MediumTest
+    @Test
+    public void sendOrderedBroadcast_initial_result() throws InterruptedException {
+        assumeTrue(PendingResults.isSupported());
+
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final Bundle extras = new Bundle();
+        extras.putString("key", "value"); //$NON-NLS
+
+        final ResultReceiver resultReceiver = new ResultReceiver();
+        context.sendOrderedBroadcast(new Intent("foo"), null, resultReceiver, null, 3, //$NON-NLS
+                "data", extras); //$NON-NLS
+
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+        assertThat(resultReceiver.mResultCode, is(3));
+        assertThat(resultReceiver.mResultData, is("data")); //$NON-NLS
+        assertThat(resultReceiver.mResultExtras.getString("key"), is("value")); //$NON-NLS
+    }
+
+    @MediumTest
+    @Test
+    public void sendBroadcast_not_ordered() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final ResultReceiver receiver = new ResultReceiver();
+        context.registerReceiver(receiver, new IntentFilter("foo")); //$NON-NLS
+
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+        assertThat(receiver.mLatch.await(DateUtils.SECOND_IN_MILLIS, TimeUnit.MILLISECONDS),
+                is(true));
+        assertThat(receiver.mIsOrdered, is(false));
+    }
+
+    @MediumTest
+    @Test
+    public void getAndClearReceiverTimings() throws InterruptedException {
+        final ReceiverContextWrapper context = new ReceiverContextWrapper(
+                InstrumentationRegistry.getContext());
+        final BroadcastReceiver slowReceiver = new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                SystemClock.sleep(50);
+            }
+        };
+        final CountingReceiver fastReceiver = new CountingReceiver();
+        context.registerReceiver(slowReceiver, newFilter("foo", 10)); //$NON-NLS
+        context.registerReceiver(fastReceiver, newFilter("foo", 0)); //$NON-NLS
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+        final ResultReceiver resultReceiver = new ResultReceiver();
+        context.sendOrderedBroadcast(new Intent("foo"), null, resultReceiver, //$NON-NLS
+                null, 0, null, null);
+        assertThat(resultReceiver.mLatch.await(DateUtils.SECOND_IN_MILLIS,
+                TimeUnit.MILLISECONDS), is(true));
+
+        // Only the ordered broadcast is timed
+        final List<ReceiverContextWrapper.ReceiverTiming> timings = new ArrayList<>(
+                context.getAndClearReceiverTimings());
+        assertThat(timings.size(), is(3));
+        assertThat(timings.get(0).getReceiver(), sameInstance(slowReceiver));
+        assertThat(timings.get(0).getDurationNanos(),
+                greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+        assertThat(timings.get(0).getIntent().getAction(), is("foo")); //$NON-NLS
+        assertThat(timings.get(1).getReceiver(),
+                Matchers.<BroadcastReceiver>sameInstance(fastReceiver));
+        assertThat(timings.get(2).getReceiver(),
+                Matchers.<BroadcastReceiver>sameInstance(resultReceiver));
+        assertThat(timings.get(1).getStartNanos() - timings.get(0).getStartNanos(),
+                greaterThanOrEqualTo(timings.get(0).getDurationNanos()));
+
+        assertThat(context.getAndClearReceiverTimings(), empty());
+    }
+
+    @NonNull
+    private static IntentFilter newFilter(@NonNull final String action, final int priority) {
+        final IntentFilter filter = new IntentFilter(action);
+        filter.setPriority(priority);
+
+        return filter;
+    }
+
+    /**
+     * Logs its name and the result it received, then increments the result code and sets the
+     * result data to its name.
+     */
+    private static final class ChainReceiver extends BroadcastReceiver {
+
+        @NonNull
+        private final String mName;
+
+        @NonNull
+        private final List<String> mCalls;
+
+        private final boolean mIsAborting;
+
+        private ChainReceiver(@NonNull final String name, @NonNull final List<String> calls,
+                final boolean isAborting) {
+            mName = name;
+            mCalls = calls;
+            mIsAborting = isAborting;
+        }
+
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            assertThat(isOrderedBroadcast(), is(true));
+            mCalls.add(mName + ":" + getResultCode() + ":" + getResultData()); //$NON-NLS
+
+            setResultCode(getResultCode() + 1);
+            setResultData(mName);
+            if (mIsAborting) {
+                abortBroadcast();
+            }
+        }
+    }
+
+    /**
+     * Captures the result it receives.
+     */
+    private static final class ResultReceiver extends BroadcastReceiver {
+
+        @NonNull
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+
+        private volatile int mResultCode;
+
+        @Nullable
+        private volatile String mResultData;
+
+        @Nullable
+        private volatile Bundle mResultExtras;
+
+        private volatile boolean mIsOrdered;
+
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            if (PendingResults.isSupported()) {
+                mResultCode = getResultCode();
+                mResultData = getResultData();
+                mResultExtras = getResultExtras(false);
+            }
+            mIsOrdered = isOrderedBroadcast();
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * Counts the broadcasts it receives.
+     */
+    public static final class CountingReceiver extends BroadcastReceiver {
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public void onReceive(final Context context, final Intent intent) {
+            mCount.incrementAndGet();
+        }
+    }
 }
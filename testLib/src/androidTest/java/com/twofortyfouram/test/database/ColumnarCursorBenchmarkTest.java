@@ -0,0 +1,129 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.database;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.annotation.NonNull;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Compares {@link ColumnarCursor} to {@link MatrixCursor} for a large result.  Timings and heap
+ * usage are logged rather than asserted, as they vary by device.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class ColumnarCursorBenchmarkTest {
+
+    @NonNull
+    private static final String LOG_TAG = "ColumnarCursorBenchmark"; //$NON-NLS
+
+    private static final int ROW_COUNT = 100000;
+
+    @NonNull
+    private static final String[] COLUMNS = new String[]{"_id", "value", "name"}; //$NON-NLS
+
+    @LargeTest
+    @Test
+    public void benchmark() {
+        final long matrixHeapBefore = getUsedHeap();
+        final long matrixBuildStart = System.nanoTime();
+        final Cursor matrixCursor = newMatrixCursor();
+        final long matrixBuildNanos = System.nanoTime() - matrixBuildStart;
+        final long matrixHeap = getUsedHeap() - matrixHeapBefore;
+
+        final long columnarHeapBefore = getUsedHeap();
+        final long columnarBuildStart = System.nanoTime();
+        final Cursor columnarCursor = newColumnarCursor();
+        final long columnarBuildNanos = System.nanoTime() - columnarBuildStart;
+        final long columnarHeap = getUsedHeap() - columnarHeapBefore;
+
+        try {
+            final long matrixReadStart = System.nanoTime();
+            final long matrixSum = sum(matrixCursor);
+            final long matrixReadNanos = System.nanoTime() - matrixReadStart;
+
+            final long columnarReadStart = System.nanoTime();
+            final long columnarSum = sum(columnarCursor);
+            final long columnarReadNanos = System.nanoTime() - columnarReadStart;
+
+            assertThat(columnarSum, is(matrixSum));
+
+            Log.i(LOG_TAG, String.format(
+                    "MatrixCursor: build %d ms, read %d ms, heap %d KiB", //$NON-NLS
+                    matrixBuildNanos / 1000000, matrixReadNanos / 1000000, matrixHeap / 1024));
+            Log.i(LOG_TAG, String.format(
+                    "ColumnarCursor: build %d ms, read %d ms, heap %d KiB", //$NON-NLS
+                    columnarBuildNanos / 1000000, columnarReadNanos / 1000000,
+                    columnarHeap / 1024));
+        } finally {
+            matrixCursor.close();
+            columnarCursor.close();
+        }
+    }
+
+    @NonNull
+    private static Cursor newMatrixCursor() {
+        final MatrixCursor cursor = new MatrixCursor(COLUMNS, ROW_COUNT);
+        for (int x = 0; x < ROW_COUNT; x++) {
+            cursor.newRow().add((long) x).add(x * 0.5).add("name"); //$NON-NLS
+        }
+
+        return cursor;
+    }
+
+    @NonNull
+    private static Cursor newColumnarCursor() {
+        final ColumnarCursor.Builder builder = new ColumnarCursor.Builder(ROW_COUNT)
+                .addLongColumn(COLUMNS[0])
+                .addDoubleColumn(COLUMNS[1])
+                .addStringColumn(COLUMNS[2]);
+        for (int x = 0; x < ROW_COUNT; x++) {
+            builder.newRow()
+                    .setLong(0, x)
+                    .setDouble(1, x * 0.5)
+                    .setString(2, "name"); //$NON-NLS
+        }
+
+        return builder.build();
+    }
+
+    private static long sum(@NonNull final Cursor cursor) {
+        long sum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            sum += cursor.getLong(0);
+            sum += (long) cursor.getDouble(1);
+        }
+
+        return sum;
+    }
+
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.database;
+
+import android.database.Cursor;
+import android.database.CursorIndexOutOfBoundsException;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public final class ColumnarCursorTest {
+
+    @SmallTest
+    @Test
+    public void empty() {
+        final Cursor cursor = new ColumnarCursor.Builder()
+                .addLongColumn("_id") //$NON-NLS
+                .build();
+        try {
+            assertThat(cursor.getCount(), is(0));
+            assertThat(cursor.getColumnNames(), is(new String[]{"_id"})); //$NON-NLS
+            assertThat(cursor.moveToFirst(), is(false));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void values() {
+        final byte[] blob = new byte[]{1, 2, 3};
+        final Cursor cursor = new ColumnarCursor.Builder(1)
+                .addLongColumn("long") //$NON-NLS
+                .addDoubleColumn("double") //$NON-NLS
+                .addStringColumn("string") //$NON-NLS
+                .addBlobColumn("blob") //$NON-NLS
+                .newRow()
+                .setLong(0, 42)
+                .setDouble(1, 1.5)
+                .setString(2, "foo") //$NON-NLS
+                .setBlob(3, blob)
+                .build();
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+
+            assertThat(cursor.getLong(0), is(42L));
+            assertThat(cursor.getInt(0), is(42));
+            assertThat(cursor.getString(0), is("42")); //$NON-NLS
+            assertThat(cursor.getType(0), is(Cursor.FIELD_TYPE_INTEGER));
+
+            assertThat(cursor.getDouble(1), is(1.5));
+            assertThat(cursor.getFloat(1), is(1.5f));
+            assertThat(cursor.getType(1), is(Cursor.FIELD_TYPE_FLOAT));
+
+            assertThat(cursor.getString(2), is("foo")); //$NON-NLS
+            assertThat(cursor.getType(2), is(Cursor.FIELD_TYPE_STRING));
+
+            assertThat(cursor.getBlob(3), is(blob));
+            assertThat(cursor.getType(3), is(Cursor.FIELD_TYPE_BLOB));
+
+            assertThat(cursor.getColumnIndexOrThrow("string"), is(2)); //$NON-NLS
+            assertThat(cursor.moveToNext(), is(false));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void nulls() {
+        final Cursor cursor = new ColumnarCursor.Builder()
+                .addLongColumn("long") //$NON-NLS
+                .addDoubleColumn("double") //$NON-NLS
+                .addStringColumn("string") //$NON-NLS
+                .addBlobColumn("blob") //$NON-NLS
+                .newRow()
+                .setNull(0)
+                .setNull(1)
+                .newRow()
+                .setLong(0, 1)
+                .setDouble(1, 1)
+                .build();
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+            for (int x = 0; x < cursor.getColumnCount(); x++) {
+                assertThat(cursor.isNull(x), is(true));
+                assertThat(cursor.getType(x), is(Cursor.FIELD_TYPE_NULL));
+            }
+            assertThat(cursor.getString(0), nullValue());
+            assertThat(cursor.getLong(0), is(0L));
+
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.isNull(0), is(false));
+            assertThat(cursor.isNull(1), is(false));
+            assertThat(cursor.isNull(2), is(true));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void nulls_after_value() {
+        final Cursor cursor = new ColumnarCursor.Builder()
+                .addLongColumn("long") //$NON-NLS
+                .addDoubleColumn("double") //$NON-NLS
+                .newRow()
+                .setLong(0, 5)
+                .setDouble(1, 5)
+                .setNull(0)
+                .setNull(1)
+                .build();
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getLong(0), is(0L));
+            assertThat(cursor.getInt(0), is(0));
+            assertThat(cursor.getDouble(0), is(0.0));
+            assertThat(cursor.getLong(1), is(0L));
+            assertThat(cursor.getDouble(1), is(0.0));
+            assertThat(cursor.getFloat(1), is(0.0f));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void grow() {
+        final int count = 1000;
+        final ColumnarCursor.Builder builder = new ColumnarCursor.Builder(0)
+                .addLongColumn("_id"); //$NON-NLS
+        for (int x = 0; x < count; x++) {
+            builder.newRow().setLong(0, x);
+        }
+
+        final Cursor cursor = builder.build();
+        try {
+            assertThat(cursor.getCount(), is(count));
+
+            long expected = 0;
+            while (cursor.moveToNext()) {
+                assertThat(cursor.getLong(0), is(expected));
+                expected++;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = CursorIndexOutOfBoundsException.class)
+    public void getLong_before_first() {
+        final Cursor cursor = new ColumnarCursor.Builder()
+                .addLongColumn("_id") //$NON-NLS
+                .newRow()
+                .build();
+        try {
+            cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void setLong_wrong_type() {
+        new ColumnarCursor.Builder()
+                .addStringColumn("string") //$NON-NLS
+                .newRow()
+                .setLong(0, 1);
+    }
+
+    @SmallTest
+    @Test(expected = IllegalStateException.class)
+    public void setLong_without_row() {
+        new ColumnarCursor.Builder()
+                .addLongColumn("_id") //$NON-NLS
+                .setLong(0, 1);
+    }
+
+    @SmallTest
+    @Test(expected = IllegalStateException.class)
+    public void addColumn_after_row() {
+        new ColumnarCursor.Builder()
+                .addLongColumn("_id") //$NON-NLS
+                .newRow()
+                .addLongColumn("other"); //$NON-NLS
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatatypeMismatchException;
+import android.database.sqlite.SQLiteException;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public final class InMemoryTableTest {
+
+    @SmallTest
+    @Test
+    public void columnNames() {
+        assertThat(newTable().getColumnNames(),
+                is(new String[]{BaseColumns._ID, "name", "age", "score"})); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void insert_assigns_ids() {
+        final InMemoryTable table = newTable();
+
+        assertThat(table.insert(newRow("a", 1)), is(1L)); //$NON-NLS
+        assertThat(table.insert(newRow("b", 2)), is(2L)); //$NON-NLS
+        assertThat(table.getCount(), is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void insert_explicit_id() {
+        final InMemoryTable table = newTable();
+
+        final ContentValues values = newRow("a", 1); //$NON-NLS
+        values.put(BaseColumns._ID, 10L);
+
+        assertThat(table.insert(values), is(10L));
+        assertThat(table.insert(newRow("b", 2)), is(11L)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteConstraintException.class)
+    public void insert_duplicate_id() {
+        final InMemoryTable table = newTable();
+
+        final ContentValues values = newRow("a", 1); //$NON-NLS
+        values.put(BaseColumns._ID, 1L);
+
+        table.insert(values);
+        table.insert(values);
+    }
+
+    @SmallTest
+    @Test
+    public void insert_type_mismatch() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+
+        final ContentValues values = new ContentValues();
+        values.put("age", "not a number"); //$NON-NLS
+        table.insert(values);
+
+        // As in SQLite, the text is stored as is, and sorts after every number
+        final Cursor cursor = table.query(new String[]{"age"}, "age > ?", //$NON-NLS
+                new String[]{"1"}, null); //$NON-NLS
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getType(0), is(Cursor.FIELD_TYPE_STRING));
+            assertThat(cursor.getString(0), is("not a number")); //$NON-NLS
+            assertThat(cursor.moveToNext(), is(false));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteDatatypeMismatchException.class)
+    public void insert_id_type_mismatch() {
+        final ContentValues values = new ContentValues();
+        values.put(BaseColumns._ID, "not a number"); //$NON-NLS
+
+        newTable().insert(values);
+    }
+
+    @SmallTest
+    @Test
+    public void insert_blob_copied() {
+        final InMemoryTable table = new InMemoryTable.Builder()
+                .addBlobColumn("data") //$NON-NLS
+                .build();
+
+        final byte[] data = {1, 2, 3};
+        final ContentValues values = new ContentValues();
+        values.put("data", data); //$NON-NLS
+        table.insert(values);
+        data[0] = 0;
+
+        final Cursor cursor = table.query(null, null, null, null);
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getBlob(1), is(new byte[]{1, 2, 3}));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteException.class)
+    public void insert_unknown_column() {
+        final ContentValues values = new ContentValues();
+        values.put("foo", "bar"); //$NON-NLS
+
+        newTable().insert(values);
+    }
+
+    @SmallTest
+    @Test
+    public void query_all() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+        table.insert(newRow("b", 2)); //$NON-NLS
+
+        final Cursor cursor = table.query(null, null, null, null);
+        try {
+            assertThat(cursor.getCount(), is(2));
+            assertThat(cursor.getColumnNames(), is(table.getColumnNames()));
+
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getLong(0), is(1L));
+            assertThat(cursor.getString(1), is("a")); //$NON-NLS
+            assertThat(cursor.getLong(2), is(1L));
+            assertThat(cursor.isNull(3), is(true));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void query_projection() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+
+        final Cursor cursor = table.query(new String[]{"age", "name"}, null, null, //$NON-NLS
+                null);
+        try {
+            assertThat(cursor.getColumnNames(), is(new String[]{"age", "name"})); //$NON-NLS
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getLong(0), is(1L));
+            assertThat(cursor.getString(1), is("a")); //$NON-NLS
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void query_selection() {
+        final InMemoryTable table = newTable();
+        for (int x = 0; x < 100; x++) {
+            table.insert(newRow("name" + (x % 10), x)); //$NON-NLS
+        }
+
+        assertCount(table, "name = ?", new String[]{"name3"}, 10); //$NON-NLS
+        assertCount(table, "name = ? AND age >= ?", new String[]{"name3", "50"}, 5); //$NON-NLS
+        assertCount(table, "age < 10 OR age >= 95", null, 15); //$NON-NLS
+        assertCount(table, "NOT (age < 90)", null, 10); //$NON-NLS
+        assertCount(table, "age IN (1, 2, 2, 1000)", null, 2); //$NON-NLS
+        assertCount(table, "age NOT IN (1, 2)", null, 98); //$NON-NLS
+        assertCount(table, "name LIKE 'NAME1%'", null, 10); //$NON-NLS
+        assertCount(table, "score IS NULL", null, 100); //$NON-NLS
+        assertCount(table, "score IS NOT NULL", null, 0); //$NON-NLS
+        assertCount(table, "_id = 1", null, 1); //$NON-NLS
+        assertCount(table, "_id > ?", new String[]{"90"}, 10); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void query_null_three_valued() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+        final ContentValues nullAge = new ContentValues();
+        nullAge.put("name", "b"); //$NON-NLS
+        table.insert(nullAge);
+
+        // Comparisons with NULL are unknown, and so is their negation
+        assertCount(table, "NOT age = ?", new String[]{"1"}, 0); //$NON-NLS
+        assertCount(table, "NOT (age < 5)", null, 0); //$NON-NLS
+        assertCount(table, "age NOT IN (2, 3)", null, 1); //$NON-NLS
+        assertCount(table, "age NOT IN (2, NULL)", null, 0); //$NON-NLS
+        assertCount(table, "age IN (1, NULL)", null, 1); //$NON-NLS
+        assertCount(table, "NOT (age IN (2, NULL))", null, 0); //$NON-NLS
+        assertCount(table, "NOT (age = 1 AND name = 'b')", null, 1); //$NON-NLS
+        assertCount(table, "NOT (age = 1 OR name = 'c')", null, 0); //$NON-NLS
+        assertCount(table, "NOT age IS NULL", null, 1); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void query_affinity() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 7)); //$NON-NLS
+
+        assertCount(table, "age = '7'", null, 1); //$NON-NLS
+        assertCount(table, "age = ?", new String[]{"7"}, 1); //$NON-NLS
+        assertCount(table, "age = 7.0", null, 1); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void query_sort_order() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("b", 1)); //$NON-NLS
+        table.insert(newRow("a", 2)); //$NON-NLS
+        table.insert(newRow("c", 2)); //$NON-NLS
+
+        final Cursor cursor = table.query(new String[]{BaseColumns._ID}, null, null,
+                "age DESC, name ASC"); //$NON-NLS
+        try {
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getLong(0), is(2L));
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getLong(0), is(3L));
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getLong(0), is(1L));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void query_limit_offset() {
+        final InMemoryTable table = newTable();
+        for (int x = 0; x < 10; x++) {
+            table.insert(newRow("a", x)); //$NON-NLS
+        }
+
+        final Cursor cursor = table.query(new String[]{BaseColumns._ID}, null, null,
+                "LIMIT 2 OFFSET 3"); //$NON-NLS
+        try {
+            assertThat(cursor.getCount(), is(2));
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getLong(0), is(4L));
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getLong(0), is(5L));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void query_is_snapshot() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+
+        final Cursor cursor = table.query(null, null, null, null);
+        try {
+            table.insert(newRow("b", 2)); //$NON-NLS
+
+            assertThat(cursor.getCount(), is(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteException.class)
+    public void query_unknown_column() {
+        newTable().query(null, "foo = 1", null, null); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteException.class)
+    public void query_syntax_error() {
+        newTable().query(null, "age = 1 junk", null, null); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void query_missing_selection_args() {
+        newTable().query(null, "age = ?", null, null); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void update() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+        table.insert(newRow("b", 1)); //$NON-NLS
+        table.insert(newRow("c", 2)); //$NON-NLS
+
+        final ContentValues values = new ContentValues();
+        values.put("age", 5); //$NON-NLS
+
+        assertThat(table.update(values, "age = ?", new String[]{"1"}), is(2)); //$NON-NLS
+        assertCount(table, "age = 5", null, 2); //$NON-NLS
+        assertCount(table, "age = 1", null, 0); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = SQLiteException.class)
+    public void update_id() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+
+        final ContentValues values = new ContentValues();
+        values.put(BaseColumns._ID, 5L);
+
+        table.update(values, null, null);
+    }
+
+    @SmallTest
+    @Test
+    public void delete() {
+        final InMemoryTable table = newTable();
+        table.insert(newRow("a", 1)); //$NON-NLS
+        table.insert(newRow("b", 1)); //$NON-NLS
+        table.insert(newRow("c", 2)); //$NON-NLS
+
+        assertThat(table.delete("age = ?", new String[]{"1"}), is(2)); //$NON-NLS
+        assertThat(table.getCount(), is(1));
+        assertCount(table, "name = 'a'", null, 0); //$NON-NLS
+
+        assertThat(table.delete(null, null), is(1));
+        assertThat(table.getCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void builder_build_twice_independent_indexes() {
+        final InMemoryTable.Builder builder = new InMemoryTable.Builder()
+                .addStringColumn("name") //$NON-NLS
+                .addLongColumn("age") //$NON-NLS
+                .addHashIndex("name") //$NON-NLS
+                .addSortedIndex("age"); //$NON-NLS
+        final InMemoryTable first = builder.build();
+        final InMemoryTable second = builder.build();
+
+        first.insert(newRow("a", 1)); //$NON-NLS
+
+        assertCount(first, "name = 'a'", null, 1); //$NON-NLS
+        assertCount(first, "age > 0", null, 1); //$NON-NLS
+        assertCount(second, "name = 'a'", null, 0); //$NON-NLS
+        assertCount(second, "age > 0", null, 0); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_duplicate_column() {
+        new InMemoryTable.Builder()
+                .addStringColumn("name") //$NON-NLS
+                .addLongColumn("name") //$NON-NLS
+                .build();
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_index_unknown_column() {
+        new InMemoryTable.Builder()
+                .addHashIndex("name") //$NON-NLS
+                .build();
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void builder_hash_index_blob() {
+        new InMemoryTable.Builder()
+                .addBlobColumn("data") //$NON-NLS
+                .addHashIndex("data") //$NON-NLS
+                .build();
+    }
+
+    private static void assertCount(@NonNull final InMemoryTable table,
+            @NonNull final String selection, final String[] selectionArgs, final int expected) {
+        final Cursor cursor = table.query(null, selection, selectionArgs, null);
+        try {
+            assertThat(selection, cursor.getCount(), is(expected));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    private static ContentValues newRow(@NonNull final String name, final int age) {
+        final ContentValues values = new ContentValues();
+        values.put("name", name); //$NON-NLS
+        values.put("age", age); //$NON-NLS
+        return values;
+    }
+
+    @NonNull
+    private static InMemoryTable newTable() {
+        return new InMemoryTable.Builder()
+                .addStringColumn("name") //$NON-NLS
+                .addLongColumn("age") //$NON-NLS
+                .addDoubleColumn("score") //$NON-NLS
+                .addHashIndex("name") //$NON-NLS
+                .addSortedIndex("age") //$NON-NLS
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(AndroidJUnit4.class)
+public final class SchemaSnapshotTest {
+
+    @SmallTest
+    @Test
+    public void newDatabase_restores_schema_and_rows() {
+        final SchemaSnapshot snapshot = SchemaSnapshot.compile(new TestInitializer());
+
+        final SQLiteDatabase database = snapshot.newDatabase();
+        try {
+            assertThat(database.getVersion(), is(3));
+            assertThat(snapshot.getVersion(), is(3));
+
+            final Cursor cursor = database.rawQuery(
+                    "SELECT name, data FROM items ORDER BY _id", null); //$NON-NLS
+            try {
+                assertThat(cursor.getCount(), is(2));
+                assertThat(cursor.moveToNext(), is(true));
+                assertThat(cursor.getString(0), is("foo")); //$NON-NLS
+                assertThat(cursor.getBlob(1), is(new byte[]{1, 2, 3}));
+                assertThat(cursor.moveToNext(), is(true));
+                assertThat(cursor.getString(0), is("bar")); //$NON-NLS
+                assertThat(cursor.isNull(1), is(true));
+            } finally {
+                cursor.close();
+            }
+
+            assertThat(count(database,
+                    "SELECT 1 FROM sqlite_master WHERE name = 'items_name'"), is(1)); //$NON-NLS
+        } finally {
+            database.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void newDatabase_resumes_autoincrement() {
+        final SchemaSnapshot snapshot = SchemaSnapshot.compile(new TestInitializer());
+
+        final SQLiteDatabase database = snapshot.newDatabase();
+        try {
+            final ContentValues values = new ContentValues();
+            values.put("name", "baz"); //$NON-NLS
+
+            // The initializer deleted the row with _id 3, so AUTOINCREMENT must not reuse it
+            assertThat(database.insertOrThrow("items", null, values), is(4L)); //$NON-NLS
+        } finally {
+            database.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void newDatabase_does_not_fire_triggers() {
+        final SchemaSnapshot snapshot = SchemaSnapshot.compile(new TestInitializer());
+
+        final SQLiteDatabase database = snapshot.newDatabase();
+        try {
+            // The trigger fired for the three inserts during initialization, but not on restore
+            assertThat(count(database, "SELECT 1 FROM log"), is(3)); //$NON-NLS
+        } finally {
+            database.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void newDatabase_is_isolated() {
+        final SchemaSnapshot snapshot = SchemaSnapshot.compile(new TestInitializer());
+
+        final SQLiteDatabase first = snapshot.newDatabase();
+        final SQLiteDatabase second = snapshot.newDatabase();
+        try {
+            first.delete("items", null, null); //$NON-NLS
+
+            assertThat(count(first, "SELECT 1 FROM items"), is(0)); //$NON-NLS
+            assertThat(count(second, "SELECT 1 FROM items"), is(2)); //$NON-NLS
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void getCached() {
+        final TestInitializer initializer = new TestInitializer();
+
+        final SchemaSnapshot first = SchemaSnapshot
+                .getCached(SchemaSnapshotTest.class.getName(), initializer);
+        final SchemaSnapshot second = SchemaSnapshot
+                .getCached(SchemaSnapshotTest.class.getName(), initializer);
+
+        assertThat(second, sameInstance(first));
+        assertThat(initializer.mCount.get(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void getCached_different_keys() {
+        final SchemaSnapshot first = SchemaSnapshot
+                .getCached(SchemaSnapshotTest.class.getName() + ".a", //$NON-NLS
+                        new TestInitializer());
+        final SchemaSnapshot second = SchemaSnapshot
+                .getCached(SchemaSnapshotTest.class.getName() + ".b", //$NON-NLS
+                        new TestInitializer());
+
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    private static int count(@NonNull final SQLiteDatabase database, @NonNull final String sql) {
+        final Cursor cursor = database.rawQuery(sql, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static final class TestInitializer implements SchemaSnapshot.Initializer {
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public void onCreate(@NonNull final SQLiteDatabase database) {
+            mCount.incrementAndGet();
+
+            database.execSQL("CREATE TABLE items (" //$NON-NLS
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, " //$NON-NLS
+                    + "name TEXT NOT NULL, data BLOB)"); //$NON-NLS
+            database.execSQL("CREATE TABLE log (item_id INTEGER)"); //$NON-NLS
+            database.execSQL("CREATE INDEX items_name ON items (name)"); //$NON-NLS
+            database.execSQL("CREATE TRIGGER items_log AFTER INSERT ON items " //$NON-NLS
+                    + "BEGIN INSERT INTO log VALUES (new._id); END"); //$NON-NLS
+
+            database.execSQL("INSERT INTO items (name, data) VALUES ('foo', X'010203')"); //$NON-NLS
+            database.execSQL("INSERT INTO items (name) VALUES ('bar')"); //$NON-NLS
+            database.execSQL("INSERT INTO items (name) VALUES ('baz')"); //$NON-NLS
+            database.execSQL("DELETE FROM items WHERE name = 'baz'"); //$NON-NLS
+
+            database.setVersion(3);
+        }
+    }
+}
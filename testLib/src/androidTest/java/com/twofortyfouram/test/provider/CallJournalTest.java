@@ -0,0 +1,319 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public final class CallJournalTest {
+
+    @NonNull
+    private static final Uri ITEMS_URI = Uri.parse("content://authority/items"); //$NON-NLS
+
+    @NonNull
+    private static final Uri OTHER_URI = Uri.parse("content://authority/other"); //$NON-NLS
+
+    @SmallTest
+    @Test
+    public void empty() {
+        final CallJournal journal = new CallJournal();
+
+        assertThat(journal.getSize(), is(0L));
+        assertThat(journal.newReader().moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void sequence_and_fields() {
+        final CallJournal journal = new CallJournal();
+
+        final long first = journal.begin(ProviderOperation.INSERT, ITEMS_URI, 100);
+        journal.setParams(first, "params"); //$NON-NLS
+        journal.end(first);
+        final long second = journal.begin(ProviderOperation.CALL, null, 200);
+
+        assertThat(first, is(0L));
+        assertThat(second, is(1L));
+        assertThat(journal.getSize(), is(2L));
+
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(0L));
+        assertThat(reader.getOperation(), is(ProviderOperation.INSERT));
+        assertThat(reader.getUri(), is(ITEMS_URI));
+        assertThat(reader.getParams(), is((Object) "params")); //$NON-NLS
+        assertThat(reader.getStartNanos(), is(100L));
+        assertThat(reader.getDurationNanos(), greaterThanOrEqualTo(0L));
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(1L));
+        assertThat(reader.getOperation(), is(ProviderOperation.CALL));
+        assertThat(reader.getUri(), nullValue());
+        assertThat(reader.getParams(), nullValue());
+        assertThat(reader.getDurationNanos(), is(CallJournal.IN_PROGRESS));
+
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalStateException.class)
+    public void reader_not_positioned() {
+        new CallJournal().newReader().getSequence();
+    }
+
+    @SmallTest
+    @Test
+    public void reader_follows_growth() {
+        final CallJournal journal = new CallJournal();
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(false));
+
+        journal.begin(ProviderOperation.QUERY, ITEMS_URI, 0);
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(0L));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void many_segments() {
+        final CallJournal journal = new CallJournal();
+        final int count = 5000;
+        for (int x = 0; x < count; x++) {
+            journal.end(journal.begin(ProviderOperation.QUERY, ITEMS_URI, x));
+        }
+
+        final CallJournal.Reader reader = journal.newReader();
+        for (int x = 0; x < count; x++) {
+            assertThat(reader.moveToNext(), is(true));
+            assertThat(reader.getSequence(), is((long) x));
+            assertThat(reader.getStartNanos(), is((long) x));
+        }
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void filter_operations() {
+        final CallJournal journal = newJournal();
+        final CallJournal.Reader reader = journal.newReader(CallJournal.Filter.all()
+                .withOperations(ProviderOperation.INSERT, ProviderOperation.DELETE));
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.INSERT));
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.DELETE));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void filter_uri_pattern() {
+        final CallJournal journal = newJournal();
+        final CallJournal.Reader reader = journal.newReader(CallJournal.Filter.all()
+                .withUriPattern("content://authority/other")); //$NON-NLS
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(2L));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void filter_min_sequence() {
+        final CallJournal journal = newJournal();
+        final CallJournal.Reader reader = journal
+                .newReader(CallJournal.Filter.all().withMinSequence(3));
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(3L));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void filter_min_sequence_negative() {
+        CallJournal.Filter.all().withMinSequence(-1);
+    }
+
+    @SmallTest
+    @Test
+    public void clear() {
+        final CallJournal journal = newJournal();
+
+        journal.clear();
+
+        assertThat(journal.getSize(), is(0L));
+        assertThat(journal.newReader().moveToNext(), is(false));
+
+        journal.end(journal.begin(ProviderOperation.QUERY, ITEMS_URI, 0));
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(0L));
+    }
+
+    @SmallTest
+    @Test
+    public void clear_during_call() {
+        final CallJournal journal = new CallJournal();
+        final long handle = journal.begin(ProviderOperation.QUERY, ITEMS_URI, 0);
+
+        journal.clear();
+        journal.end(journal.begin(ProviderOperation.INSERT, ITEMS_URI, 1));
+        journal.setParams(handle, "params"); //$NON-NLS
+        journal.end(handle);
+
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.INSERT));
+        assertThat(reader.getParams(), nullValue());
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void keep_none() {
+        final CallJournal journal = new CallJournal(HistoryPolicy.keepNone());
+        final CallJournal.Reader reader = journal.newReader();
+
+        final long handle = journal.begin(ProviderOperation.INSERT, ITEMS_URI, 100);
+        journal.setParams(handle, "params"); //$NON-NLS
+        journal.end(handle);
+        journal.end(journal.begin(ProviderOperation.QUERY, ITEMS_URI, 200));
+
+        assertThat(journal.getSize(), is(2L));
+        assertThat(reader.moveToNext(), is(false));
+        assertThat(journal.newReader().moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void keep_last() {
+        final CallJournal journal = new CallJournal(HistoryPolicy.keepLast(2));
+        final CallJournal.Reader reader = journal.newReader();
+        for (int x = 0; x < 5; x++) {
+            final long handle = journal.begin(ProviderOperation.QUERY, ITEMS_URI, x);
+            journal.setParams(handle, x);
+            journal.end(handle);
+        }
+
+        assertThat(journal.getSize(), is(5L));
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(3L));
+        assertThat(reader.getUri(), is(ITEMS_URI));
+        assertThat(reader.getParams(), is((Object) 3));
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(4L));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void keep_last_overwritten_during_call() {
+        final CallJournal journal = new CallJournal(HistoryPolicy.keepLast(1));
+        final long first = journal.begin(ProviderOperation.QUERY, ITEMS_URI, 0);
+        final long second = journal.begin(ProviderOperation.INSERT, ITEMS_URI, 1);
+
+        journal.setParams(first, "first"); //$NON-NLS
+        journal.end(first);
+
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(second));
+        assertThat(reader.getParams(), nullValue());
+        assertThat(reader.getDurationNanos(), is(CallJournal.IN_PROGRESS));
+    }
+
+    @MediumTest
+    @Test
+    public void concurrent_appends_have_no_gaps() throws InterruptedException {
+        final CallJournal journal = new CallJournal();
+        final int threadCount = 4;
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            for (int x = 0; x < threadCount; x++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+
+                        for (int y = 0; y < perThread; y++) {
+                            journal.end(journal.begin(ProviderOperation.QUERY, ITEMS_URI,
+                                    System.nanoTime()));
+                        }
+                    }
+                });
+            }
+            start.countDown();
+
+            // Read while the writers are still appending
+            final CallJournal.Reader reader = journal.newReader();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            long expected = 0;
+            while (expected < threadCount * perThread && System.nanoTime() < deadline) {
+                while (reader.moveToNext()) {
+                    assertThat(reader.getSequence(), is(expected));
+                    expected++;
+                }
+            }
+
+            assertThat(expected, is((long) threadCount * perThread));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return A journal of query, insert, query other, delete.
+     */
+    @NonNull
+    private static CallJournal newJournal() {
+        final CallJournal journal = new CallJournal();
+        journal.end(journal.begin(ProviderOperation.QUERY, ITEMS_URI, 0));
+        journal.end(journal.begin(ProviderOperation.INSERT, ITEMS_URI, 1));
+        journal.end(journal.begin(ProviderOperation.QUERY, OTHER_URI, 2));
+        journal.end(journal.begin(ProviderOperation.DELETE, ITEMS_URI, 3));
+
+        return journal;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(AndroidJUnit4.class)
+public final class ConcurrentHistogramTest {
+
+    @SmallTest
+    @Test
+    public void bucketIndex_linear() {
+        for (int x = 0; x < 32; x++) {
+            assertThat(ConcurrentHistogram.bucketIndex(x), is(x));
+            assertThat(ConcurrentHistogram.highestValueInBucket(x), is((long) x));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void bucketIndex_max() {
+        assertThat(ConcurrentHistogram.bucketIndex(Long.MAX_VALUE),
+                is(ConcurrentHistogram.BUCKET_COUNT - 1));
+        assertThat(ConcurrentHistogram.highestValueInBucket(ConcurrentHistogram.BUCKET_COUNT - 1),
+                is(Long.MAX_VALUE));
+    }
+
+    @SmallTest
+    @Test
+    public void bucketIndex_contains_value() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            final int index = ConcurrentHistogram.bucketIndex(value);
+
+            assertThat(ConcurrentHistogram.highestValueInBucket(index),
+                    greaterThanOrEqualTo(value));
+            if (0 < index) {
+                assertThat(ConcurrentHistogram.highestValueInBucket(index - 1),
+                        allOf(greaterThanOrEqualTo(0L), lessThanOrEqualTo(value - 1)));
+            }
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void snapshot_empty() {
+        assertThat(new ConcurrentHistogram().snapshot(), sameInstance(HistogramSnapshot.EMPTY));
+        assertThat(HistogramSnapshot.EMPTY.getCount(), is(0L));
+        assertThat(HistogramSnapshot.EMPTY.getValueAtPercentile(50), is(0L));
+    }
+
+    @SmallTest
+    @Test
+    public void snapshot() {
+        final ConcurrentHistogram histogram = new ConcurrentHistogram();
+        for (int x = 1; x <= 1000; x++) {
+            histogram.record(x * 1000L);
+        }
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount(), is(1000L));
+        assertThat(snapshot.getMin(), is(1000L));
+        assertThat(snapshot.getMax(), is(1000000L));
+        assertThat(snapshot.getMean(), closeTo(500500, 0.001));
+        assertThat((double) snapshot.getValueAtPercentile(50), closeTo(500000, 500000 * 0.07));
+        assertThat((double) snapshot.getValueAtPercentile(99), closeTo(990000, 990000 * 0.07));
+        assertThat(snapshot.getValueAtPercentile(100), is(1000000L));
+        assertThat(snapshot.getValueAtPercentile(0), is(1000L));
+    }
+
+    @SmallTest
+    @Test
+    public void record_negative() {
+        final ConcurrentHistogram histogram = new ConcurrentHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.snapshot().getMax(), is(0L));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void getValueAtPercentile_bad() {
+        HistogramSnapshot.EMPTY.getValueAtPercentile(101);
+    }
+}
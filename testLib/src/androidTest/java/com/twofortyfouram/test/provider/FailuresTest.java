@@ -0,0 +1,68 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.database.sqlite.SQLiteException;
+import android.os.DeadObjectException;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.twofortyfouram.test.matcher.ClassNotInstantiableMatcher.notInstantiable;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+
+@RunWith(AndroidJUnit4.class)
+public final class FailuresTest {
+
+    @SmallTest
+    @Test
+    public void nonInstantiable() {
+        assertThat(Failures.class, notInstantiable());
+    }
+
+    @SmallTest
+    @Test
+    public void sqliteException() {
+        assertThat(Failures.sqliteException().newFailure(ProviderOperation.QUERY),
+                instanceOf(SQLiteException.class));
+    }
+
+    @SmallTest
+    @Test
+    public void securityException() {
+        assertThat(Failures.securityException().newFailure(ProviderOperation.QUERY),
+                instanceOf(SecurityException.class));
+    }
+
+    @SmallTest
+    @Test
+    public void illegalStateException() {
+        assertThat(Failures.illegalStateException().newFailure(ProviderOperation.QUERY),
+                instanceOf(IllegalStateException.class));
+    }
+
+    @SmallTest
+    @Test
+    public void deadObject() {
+        assertThat(Failures.deadObject().newFailure(ProviderOperation.QUERY).getCause(),
+                instanceOf(DeadObjectException.class));
+    }
+}
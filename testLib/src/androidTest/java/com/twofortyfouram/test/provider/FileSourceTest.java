@@ -0,0 +1,234 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public final class FileSourceTest {
+
+    @SmallTest
+    @Test
+    public void fromBytes() throws IOException {
+        final FileSource source = FileSource.fromBytes(new byte[]{1, 2, 3});
+
+        assertThat(readFully(source.open("r")), is(new byte[]{1, 2, 3})); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void fromBytes_copies() throws IOException {
+        final byte[] bytes = new byte[]{1, 2, 3};
+        final FileSource source = FileSource.fromBytes(bytes);
+        bytes[0] = 9;
+
+        assertThat(readFully(source.open("r")), is(new byte[]{1, 2, 3})); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void fromBytes_empty() throws IOException {
+        assertThat(readFully(FileSource.fromBytes(new byte[0]).open("r")), //$NON-NLS
+                is(new byte[0]));
+    }
+
+    @SmallTest
+    @Test
+    public void fromBytes_reopen() throws IOException {
+        final FileSource source = FileSource.fromBytes(new byte[]{1, 2, 3});
+
+        assertThat(readFully(source.open("r")), is(new byte[]{1, 2, 3})); //$NON-NLS
+        assertThat(readFully(source.open("r")), is(new byte[]{1, 2, 3})); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = FileNotFoundException.class)
+    public void fromBytes_write_mode() throws FileNotFoundException {
+        FileSource.fromBytes(new byte[]{1}).open("rw"); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void fromFile() throws IOException {
+        final File file = newTempFile(new byte[]{4, 5, 6});
+        try {
+            assertThat(readFully(FileSource.fromFile(file).open("r")), //$NON-NLS
+                    is(new byte[]{4, 5, 6}));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void fromFile_write_mode() throws IOException {
+        final File file = newTempFile(new byte[]{4, 5, 6});
+        try {
+            final OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(
+                    FileSource.fromFile(file).open("wt")); //$NON-NLS
+            try {
+                out.write(7);
+            } finally {
+                out.close();
+            }
+
+            assertThat(readFully(FileSource.fromFile(file).open("r")), //$NON-NLS
+                    is(new byte[]{7}));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = FileNotFoundException.class)
+    public void fromFile_missing() throws FileNotFoundException {
+        FileSource.fromFile(new File("/does/not/exist")).open("r"); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void fromFile_throttled() throws IOException {
+        final File file = newTempFile(new byte[]{4, 5, 6});
+        try {
+            assertThat(readFully(FileSource.fromFile(file).withThroughput(1024 * 1024)
+                    .open("r")), is(new byte[]{4, 5, 6})); //$NON-NLS
+        } finally {
+            file.delete();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void fromGenerator() throws IOException {
+        final AtomicInteger invocations = new AtomicInteger(0);
+        final FileSource source = FileSource.fromGenerator(new FileSource.Generator() {
+            @Override
+            public void writeTo(@NonNull final OutputStream out) throws IOException {
+                out.write(invocations.incrementAndGet());
+            }
+        });
+
+        assertThat(readFully(source.open("r")), is(new byte[]{1})); //$NON-NLS
+        assertThat(readFully(source.open("r")), is(new byte[]{2})); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void fromGenerator_reader_closes_early() throws IOException, InterruptedException {
+        final FileSource source = FileSource.fromGenerator(new FileSource.Generator() {
+            @Override
+            public void writeTo(@NonNull final OutputStream out) throws IOException {
+                // Far more than a pipe buffers, so the writer is blocked when the reader closes
+                for (int x = 0; x < 1024; x++) {
+                    out.write(new byte[1024]);
+                }
+            }
+        });
+
+        final InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(
+                source.open("r")); //$NON-NLS
+        assertThat(in.read(), is(0));
+        in.close();
+
+        // The writer gives up quietly, and the source can still be opened again
+        assertThat(readFully(source.open("r")).length, is(1024 * 1024)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void withThroughput() {
+        final FileSource source = FileSource.fromBytes(new byte[0]);
+
+        assertThat(source.getThroughput(), is(0L));
+        assertThat(source.withThroughput(100).getThroughput(), is(100L));
+        assertThat(source.getThroughput(), is(0L));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void withThroughput_negative() {
+        FileSource.fromBytes(new byte[0]).withThroughput(-1);
+    }
+
+    @MediumTest
+    @Test
+    public void withThroughput_limits_rate() throws IOException {
+        final int size = 32 * 1024;
+        final FileSource source = FileSource.fromBytes(new byte[size])
+                .withThroughput(64 * 1024);
+
+        final long startNanos = System.nanoTime();
+        assertThat(readFully(source.open("r")).length, is(size)); //$NON-NLS
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        // 32 KiB at 64 KiB per second takes half a second
+        assertThat(elapsedMillis, greaterThanOrEqualTo(450L));
+    }
+
+    @NonNull
+    private static File newTempFile(@NonNull final byte[] contents) throws IOException {
+        final File file = File.createTempFile("FileSourceTest", null); //$NON-NLS
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    @NonNull
+    private static byte[] readFully(@NonNull final ParcelFileDescriptor descriptor)
+            throws IOException {
+        final InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while (-1 != (count = in.read(buffer))) {
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
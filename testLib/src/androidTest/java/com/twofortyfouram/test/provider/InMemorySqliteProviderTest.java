@@ -0,0 +1,280 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.twofortyfouram.test.database.SchemaSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static com.twofortyfouram.test.provider.ProviderTestUtil.newValues;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public final class InMemorySqliteProviderTest {
+
+    @NonNull
+    private static final String TEST_AUTHORITY = "authoritah"; //$NON-NLS
+
+    @NonNull
+    private static final Uri ITEMS_URI = new Uri.Builder()
+            .scheme(ContentResolver.SCHEME_CONTENT)
+            .authority(TEST_AUTHORITY)
+            .appendPath("items") //$NON-NLS
+            .build();
+
+    @SmallTest
+    @Test
+    public void query_seed_rows() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            assertThat(count(provider, ITEMS_URI), is(1));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void insert_query() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            final ContentResolver resolver = provider.getContext().getContentResolver();
+
+            final Uri uri = resolver.insert(ITEMS_URI, newValues("bar")); //$NON-NLS
+            assertThat(uri, is(ContentUris.withAppendedId(ITEMS_URI, 2)));
+
+            final Cursor cursor = resolver.query(uri, new String[]{"name"}, null, //$NON-NLS
+                    null, null);
+            try {
+                assertThat(cursor.moveToFirst(), is(true));
+                assertThat(cursor.getString(0), is("bar")); //$NON-NLS
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void update_delete_item() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            final Uri itemUri = ContentUris.withAppendedId(ITEMS_URI, 1);
+
+            assertThat(provider.update(itemUri, newValues("baz"), null, null), //$NON-NLS
+                    is(1));
+            assertThat(provider.update(itemUri, newValues("qux"), "name = ?", //$NON-NLS
+                    new String[]{"foo"}), is(0)); //$NON-NLS
+            assertThat(provider.delete(ContentUris.withAppendedId(ITEMS_URI, 99), null,
+                    null), is(0));
+            assertThat(provider.delete(itemUri, null, null), is(1));
+            assertThat(count(provider, ITEMS_URI), is(0));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void bulkInsert() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            assertThat(provider.bulkInsert(ITEMS_URI, new ContentValues[]{
+                    newValues("bar"), newValues("baz")}), is(2)); //$NON-NLS
+
+            assertThat(count(provider, ITEMS_URI), is(3));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void applyBatch_rolls_back() throws RemoteException {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            operations.add(ContentProviderOperation.newInsert(ITEMS_URI)
+                    .withValues(newValues("bar")).build()); //$NON-NLS
+            operations.add(ContentProviderOperation.newInsert(ITEMS_URI)
+                    .withValue("name", null).build()); //$NON-NLS
+
+            try {
+                provider.getContext().getContentResolver()
+                        .applyBatch(TEST_AUTHORITY, operations);
+                fail();
+            } catch (final SQLiteException | OperationApplicationException e) {
+                // Expected exception
+            }
+
+            assertThat(count(provider, ITEMS_URI), is(1));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void getType() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            assertThat(provider.getType(ITEMS_URI),
+                    is("vnd.android.cursor.dir/vnd.authoritah.items")); //$NON-NLS
+            assertThat(provider.getType(ContentUris.withAppendedId(ITEMS_URI, 1)),
+                    is("vnd.android.cursor.item/vnd.authoritah.items")); //$NON-NLS
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void getDatabase() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            final SQLiteDatabase database = provider.getDatabase();
+            database.insertOrThrow("items", null, newValues("bar")); //$NON-NLS
+
+            assertThat(count(provider, ITEMS_URI), is(2));
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void providers_are_isolated() {
+        final InMemorySqliteProvider first = newProvider();
+        final InMemorySqliteProvider second = newProvider();
+        try {
+            first.delete(ITEMS_URI, null, null);
+
+            assertThat(count(first, ITEMS_URI), is(0));
+            assertThat(count(second, ITEMS_URI), is(1));
+        } finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+    @SmallTest
+    @Test
+    public void reset() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            provider.insert(ITEMS_URI, newValues("bar")); //$NON-NLS
+            provider.delete(ContentUris.withAppendedId(ITEMS_URI, 1), null, null);
+
+            provider.reset();
+
+            final Cursor cursor = provider.query(ITEMS_URI, new String[]{"name"}, null, //$NON-NLS
+                    null, null);
+            try {
+                assertThat(cursor.getCount(), is(1));
+                assertThat(cursor.moveToFirst(), is(true));
+                assertThat(cursor.getString(0), is("foo")); //$NON-NLS
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void insert_item_uri() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            provider.insert(ContentUris.withAppendedId(ITEMS_URI, 1),
+                    newValues("bar")); //$NON-NLS
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void query_bad_uri() {
+        final InMemorySqliteProvider provider = newProvider();
+        try {
+            provider.query(ITEMS_URI.buildUpon().appendPath("a").appendPath("b").build(),
+                    null, null, null, null); //$NON-NLS
+        } finally {
+            provider.shutdown();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IllegalStateException.class)
+    public void getDatabase_not_attached() {
+        new InMemorySqliteProvider(newSchema()).getDatabase();
+    }
+
+    private static int count(@NonNull final InMemorySqliteProvider provider,
+            @NonNull final Uri uri) {
+        final Cursor cursor = provider.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    private static InMemorySqliteProvider newProvider() {
+        return InMemorySqliteProvider.newSqliteProvider(InstrumentationRegistry.getContext(),
+                TEST_AUTHORITY, newSchema());
+    }
+
+    @NonNull
+    private static SchemaSnapshot newSchema() {
+        return SchemaSnapshot.getCached(InMemorySqliteProviderTest.class.getName(),
+                new SchemaSnapshot.Initializer() {
+                    @Override
+                    public void onCreate(@NonNull final SQLiteDatabase database) {
+                        database.execSQL("CREATE TABLE items (" //$NON-NLS
+                                + "_id INTEGER PRIMARY KEY, name TEXT NOT NULL)"); //$NON-NLS
+                        database.execSQL(
+                                "INSERT INTO items (name) VALUES ('foo')"); //$NON-NLS
+                    }
+                });
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+@RunWith(AndroidJUnit4.class)
+public final class LatencyTest {
+
+    @SmallTest
+    @Test
+    public void none() {
+        assertThat(Latency.none().sampleNanos(new Random(0)), is(0L));
+    }
+
+    @SmallTest
+    @Test
+    public void fixed() {
+        final Latency latency = Latency.fixed(5, TimeUnit.MILLISECONDS);
+
+        assertThat(latency.sampleNanos(new Random(0)), is(TimeUnit.MILLISECONDS.toNanos(5)));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void fixed_negative() {
+        Latency.fixed(-1, TimeUnit.MILLISECONDS);
+    }
+
+    @SmallTest
+    @Test
+    public void uniform() {
+        final Latency latency = Latency.uniform(10, 20, TimeUnit.NANOSECONDS);
+        final Random random = new Random(0);
+
+        for (int x = 0; x < 1000; x++) {
+            assertThat(latency.sampleNanos(random), allOf(greaterThanOrEqualTo(10L),
+                    lessThan(20L)));
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void uniform_max_less_than_min() {
+        Latency.uniform(20, 10, TimeUnit.NANOSECONDS);
+    }
+
+    @SmallTest
+    @Test
+    public void percentiles() {
+        final Latency latency = Latency.percentiles(100, 200, 300, 400, TimeUnit.NANOSECONDS);
+        final Random random = new Random(0);
+
+        final int sampleCount = 10000;
+        int atOrBelowMedian = 0;
+        for (int x = 0; x < sampleCount; x++) {
+            final long sample = latency.sampleNanos(random);
+            assertThat(sample, allOf(greaterThanOrEqualTo(0L), lessThanOrEqualTo(400L)));
+
+            if (100 >= sample) {
+                atOrBelowMedian++;
+            }
+        }
+
+        // Roughly half of the samples should be at or below the median
+        assertThat(atOrBelowMedian, allOf(greaterThanOrEqualTo(4500), lessThan(5500)));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void percentiles_decreasing() {
+        Latency.percentiles(200, 100, 300, 400, TimeUnit.NANOSECONDS);
+    }
+
+    @SmallTest
+    @Test
+    public void same_seed_same_samples() {
+        final Latency latency = Latency.uniform(0, 1000, TimeUnit.NANOSECONDS);
+        final Random random1 = new Random(42);
+        final Random random2 = new Random(42);
+
+        for (int x = 0; x < 100; x++) {
+            assertThat(latency.sampleNanos(random1), is(latency.sampleNanos(random2)));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public final class MockableContentProviderConcurrencyTest {
+
+    @NonNull
+    private static final String TEST_AUTHORITY = "authoritah"; //$NON-NLS
+
+    @NonNull
+    private static final Uri TEST_URI = new Uri.Builder().authority(TEST_AUTHORITY).build();
+
+    private static final int THREAD_COUNT = 32;
+
+    private static final int CALLS_PER_THREAD = 1000;
+
+    @LargeTest
+    @Test
+    public void stress_no_lost_records() throws InterruptedException {
+        final MockableContentProvider provider = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(THREAD_COUNT);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            for (int x = 0; x < THREAD_COUNT; x++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startLatch.await();
+
+                            for (int y = 0; y < CALLS_PER_THREAD; y++) {
+                                provider.query(TEST_URI, null, null, null, null);
+                                provider.insert(TEST_URI, new ContentValues());
+                                provider.update(TEST_URI, new ContentValues(), null, null);
+                                provider.delete(TEST_URI, null, null);
+                                provider.call("method", null, null); //$NON-NLS
+                            }
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            doneLatch.countDown();
+                        }
+                    }
+                });
+            }
+
+            startLatch.countDown();
+            assertThat(doneLatch.await(1, TimeUnit.MINUTES), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final int expected = THREAD_COUNT * CALLS_PER_THREAD;
+
+        assertThat(provider.getQueryCount(), is(expected));
+        assertThat(provider.getInsertCount(), is(expected));
+        assertThat(provider.getUpdateCount(), is(expected));
+        assertThat(provider.getDeleteCount(), is(expected));
+        assertThat(provider.getCallCount(), is(expected));
+
+        int queryParamsCount = 0;
+        while (null != provider.getQueryParams()) {
+            queryParamsCount++;
+        }
+        assertThat(queryParamsCount, is(expected));
+
+        int insertParamsCount = 0;
+        while (null != provider.getInsertParams()) {
+            insertParamsCount++;
+        }
+        assertThat(insertParamsCount, is(expected));
+
+        int updateParamsCount = 0;
+        while (null != provider.getUpdateParams()) {
+            updateParamsCount++;
+        }
+        assertThat(updateParamsCount, is(expected));
+
+        int deleteParamsCount = 0;
+        while (null != provider.getDeleteParams()) {
+            deleteParamsCount++;
+        }
+        assertThat(deleteParamsCount, is(expected));
+
+        int callParamsCount = 0;
+        while (null != provider.getCallParams()) {
+            callParamsCount++;
+        }
+        assertThat(callParamsCount, is(expected));
+    }
+
+    @LargeTest
+    @Test
+    public void stress_no_lost_results() throws InterruptedException {
+        final MockableContentProvider provider = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+
+        final int expected = THREAD_COUNT * CALLS_PER_THREAD;
+        for (int x = 0; x < expected; x++) {
+            provider.addUpdateResult(1);
+        }
+
+        final int[] sums = new int[THREAD_COUNT];
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(THREAD_COUNT);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            for (int x = 0; x < THREAD_COUNT; x++) {
+                final int threadIndex = x;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startLatch.await();
+
+                            int sum = 0;
+                            for (int y = 0; y < CALLS_PER_THREAD; y++) {
+                                sum += provider.update(TEST_URI, new ContentValues(), null, null);
+                            }
+                            sums[threadIndex] = sum;
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            doneLatch.countDown();
+                        }
+                    }
+                });
+            }
+
+            startLatch.countDown();
+            assertThat(doneLatch.await(1, TimeUnit.MINUTES), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int total = 0;
+        for (final int sum : sums) {
+            total += sum;
+        }
+
+        // Each queued result is consumed exactly once
+        assertThat(total, is(expected));
+        assertThat(provider.update(TEST_URI, new ContentValues(), null, null), is(0));
+    }
+}
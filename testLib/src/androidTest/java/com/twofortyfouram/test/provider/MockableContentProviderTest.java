@@ -16,23 +16,54 @@
 
 package com.twofortyfouram.test.provider;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.MediumTest;
 import android.support.test.filters.SmallTest;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.twofortyfouram.test.database.InMemoryTable;
+import com.twofortyfouram.test.trace.ChromeTraceWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.twofortyfouram.test.provider.ProviderTestUtil.newValues;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public final class MockableContentProviderTest {
@@ -391,6 +422,1032 @@ public final class MockableContentProviderTest {
         assertThat(provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE), nullValue());
     }
 
+    @Test
+    @SmallTest
+    public void query_rule_answers_repeatedly() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addQueryRule("content://" + TEST_AUTHORITY + "/items/#", //$NON-NLS
+                new MockableContentProvider.Answer<MockableContentProvider.QueryParams, Cursor>() {
+                    @Override
+                    public Cursor answer(
+                            @NonNull final MockableContentProvider.QueryParams params) {
+                        return new MatrixCursor(new String[]{"foo"}); //$NON-NLS
+                    }
+                });
+
+        final Uri uri = TEST_URI.buildUpon().appendPath("items").appendPath("1").build();
+        for (int x = 0; x < 3; x++) {
+            assertThat(provider.query(uri, null, null, null, null), notNullValue());
+        }
+
+        assertThat(provider.query(TEST_URI, null, null, null, null), nullValue());
+        assertThat(provider.getQueryCount(), is(4));
+    }
+
+    @Test
+    @SmallTest
+    public void query_rule_fifo_takes_precedence() {
+        final MockableContentProvider provider = newProvider();
+
+        final Cursor fifoCursor = new MatrixCursor(new String[]{"foo"}); //$NON-NLS
+        final Cursor ruleCursor = new MatrixCursor(new String[]{"foo"}); //$NON-NLS
+        provider.addQueryResult(fifoCursor);
+        provider.addQueryRule("content://" + TEST_AUTHORITY + "/**", //$NON-NLS
+                new MockableContentProvider.Answer<MockableContentProvider.QueryParams, Cursor>() {
+                    @Override
+                    public Cursor answer(
+                            @NonNull final MockableContentProvider.QueryParams params) {
+                        return ruleCursor;
+                    }
+                });
+
+        assertThat(provider.query(TEST_URI, null, null, null, null), sameInstance(fifoCursor));
+        assertThat(provider.query(TEST_URI, null, null, null, null), sameInstance(ruleCursor));
+    }
+
+    @Test
+    @SmallTest
+    public void query_rule_matcher() {
+        final MockableContentProvider provider = newProvider();
+
+        final Cursor cursor = new MatrixCursor(new String[]{"foo"}); //$NON-NLS
+        provider.addQueryRule("content://" + TEST_AUTHORITY, //$NON-NLS
+                ParamsMatchers.queryWithSelection(TEST_SELECTION),
+                new MockableContentProvider.Answer<MockableContentProvider.QueryParams, Cursor>() {
+                    @Override
+                    public Cursor answer(
+                            @NonNull final MockableContentProvider.QueryParams params) {
+                        return cursor;
+                    }
+                });
+
+        assertThat(provider.query(TEST_URI, TEST_PROJECTION, TEST_SELECTION, TEST_SELECTION_ARGS,
+                TEST_ORDER_BY), sameInstance(cursor));
+        assertThat(provider.query(TEST_URI, TEST_PROJECTION, null, null, TEST_ORDER_BY),
+                nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void insert_rule() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addInsertRule("content://" + TEST_AUTHORITY + "/*", TEST_URI); //$NON-NLS
+
+        final Uri uri = TEST_URI.buildUpon().appendPath("items").build();
+        assertThat(provider.insert(uri, TEST_CONTENT_VALUES), is(TEST_URI));
+        assertThat(provider.insert(uri, TEST_CONTENT_VALUES), is(TEST_URI));
+        assertThat(provider.insert(TEST_URI, TEST_CONTENT_VALUES), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void update_rule() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addUpdateRule("content://" + TEST_AUTHORITY, 2); //$NON-NLS
+
+        assertThat(provider.update(TEST_URI, TEST_CONTENT_VALUES, TEST_SELECTION,
+                TEST_SELECTION_ARGS), is(2));
+        assertThat(provider.update(TEST_URI, TEST_CONTENT_VALUES, TEST_SELECTION,
+                TEST_SELECTION_ARGS), is(2));
+    }
+
+    @Test
+    @SmallTest
+    public void delete_rule() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addDeleteRule("content://" + TEST_AUTHORITY, 3); //$NON-NLS
+
+        assertThat(provider.delete(TEST_URI, TEST_SELECTION, TEST_SELECTION_ARGS), is(3));
+        assertThat(provider.delete(TEST_URI, TEST_SELECTION, TEST_SELECTION_ARGS), is(3));
+    }
+
+    @Test
+    @SmallTest
+    public void call_rule() {
+        final MockableContentProvider provider = newProvider();
+
+        final Bundle bundle = new Bundle();
+        bundle.putString("key", "value"); //$NON-NLS
+        provider.addCallRule(TEST_METHOD, bundle);
+
+        final Bundle result = provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE);
+        assertThat(result, notNullValue());
+        assertThat(result.getString("key"), is("value")); //$NON-NLS
+
+        // Modifying the result does not affect later calls
+        result.clear();
+        assertThat(provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE).getString("key"),
+                is("value")); //$NON-NLS
+
+        assertThat(provider.call("other_method", TEST_ARG, TEST_BUNDLE), nullValue()); //$NON-NLS
+    }
+
+    @Test
+    @SmallTest
+    public void call_rule_matcher() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addCallRule(TEST_METHOD, ParamsMatchers.callWithArg(TEST_ARG),
+                new MockableContentProvider.Answer<MockableContentProvider.CallParams, Bundle>() {
+                    @Override
+                    public Bundle answer(
+                            @NonNull final MockableContentProvider.CallParams params) {
+                        return Bundle.EMPTY;
+                    }
+                });
+
+        assertThat(provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE), notNullValue());
+        assertThat(provider.call(TEST_METHOD, null, TEST_BUNDLE), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void history_policy_default() {
+        final MockableContentProvider provider = newProvider();
+
+        assertThat(provider.getHistoryPolicy(), is(HistoryPolicy.keepAll()));
+    }
+
+    @Test
+    @SmallTest
+    public void history_keep_none() {
+        final MockableContentProvider provider = newProvider();
+        provider.setHistoryPolicy(HistoryPolicy.keepNone());
+
+        provider.query(TEST_URI, TEST_PROJECTION, TEST_SELECTION, TEST_SELECTION_ARGS,
+                TEST_ORDER_BY);
+        provider.insert(TEST_URI, TEST_CONTENT_VALUES);
+
+        assertThat(provider.getQueryCount(), is(1));
+        assertThat(provider.getInsertCount(), is(1));
+        assertThat(provider.getQueryParams(), nullValue());
+        assertThat(provider.getInsertParams(), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void history_keep_last() {
+        final MockableContentProvider provider = newProvider();
+        provider.setHistoryPolicy(HistoryPolicy.keepLast(2));
+
+        for (int x = 0; x < 5; x++) {
+            provider.call(TEST_METHOD, Integer.toString(x), null);
+        }
+
+        assertThat(provider.getCallCount(), is(5));
+        assertThat(provider.getCallParams().getArg(), is("3")); //$NON-NLS
+        assertThat(provider.getCallParams().getArg(), is("4")); //$NON-NLS
+        assertThat(provider.getCallParams(), nullValue());
+
+        // Ring continues to work after being drained
+        provider.call(TEST_METHOD, "5", null); //$NON-NLS
+        assertThat(provider.getCallParams().getArg(), is("5")); //$NON-NLS
+    }
+
+    @Test
+    @SmallTest
+    public void history_set_policy_discards() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.insert(TEST_URI, TEST_CONTENT_VALUES);
+        provider.setHistoryPolicy(HistoryPolicy.keepLast(1));
+
+        assertThat(provider.getInsertParams(), nullValue());
+        assertThat(provider.getInsertCount(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SmallTest
+    public void history_keep_last_zero() {
+        HistoryPolicy.keepLast(0);
+    }
+
+    @Test
+    @SmallTest
+    public void bulkInsert_default_result() {
+        final MockableContentProvider provider = newProvider();
+
+        final ContentValues[] values = newBulkValues(3);
+        assertThat(provider.bulkInsert(TEST_URI, values), is(3));
+
+        assertThat(provider.getBulkInsertCount(), is(1));
+        assertThat(provider.getInsertCount(), is(0));
+        assertThat(provider.getInsertParams(), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void bulkInsert_params() {
+        final MockableContentProvider provider = newProvider();
+
+        final ContentValues[] values = newBulkValues(3);
+        provider.bulkInsert(TEST_URI, values);
+
+        // Modifying the caller's values does not affect the recorded params
+        values[0].put("foo", "bar"); //$NON-NLS
+
+        final MockableContentProvider.BulkInsertParams params = provider.getBulkInsertParams();
+        assertThat(params, notNullValue());
+        assertThat(params.getUri(), is(TEST_URI));
+        assertThat(params.getCount(), is(3));
+        assertThat(params.getContentValues(0), is(newBulkValues(1)[0]));
+
+        assertThat(provider.getBulkInsertParams(), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void bulkInsert_result() {
+        final MockableContentProvider provider = newProvider();
+
+        provider.addBulkInsertResult(1);
+
+        assertThat(provider.bulkInsert(TEST_URI, newBulkValues(3)), is(1));
+        assertThat(provider.bulkInsert(TEST_URI, newBulkValues(3)), is(3));
+    }
+
+    @Test
+    @SmallTest
+    public void applyBatch_default_result() {
+        final MockableContentProvider provider = newProvider();
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(TEST_URI)
+                .withValues(TEST_CONTENT_VALUES).build());
+        operations.add(ContentProviderOperation.newDelete(TEST_URI).build());
+
+        final ContentProviderResult[] results = provider.applyBatch(operations);
+        assertThat(results.length, is(2));
+        assertThat(results[0].count, is(0));
+        assertThat(results[1].count, is(0));
+
+        assertThat(provider.getApplyBatchCount(), is(1));
+        assertThat(provider.getUpdateCount(), is(0));
+        assertThat(provider.getDeleteCount(), is(0));
+    }
+
+    @Test
+    @SmallTest
+    public void applyBatch_back_references() {
+        final MockableContentProvider provider = newProvider();
+
+        final Uri insertedUri = ContentUris.withAppendedId(TEST_URI, 42);
+        provider.addApplyBatchResult(new ContentProviderResult[]{
+                new ContentProviderResult(insertedUri), new ContentProviderResult(1)});
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(TEST_URI)
+                .withValues(TEST_CONTENT_VALUES).build());
+        operations.add(ContentProviderOperation.newInsert(TEST_URI)
+                .withValueBackReference("parent_id", 0).build()); //$NON-NLS
+
+        final ContentProviderResult[] results = provider.applyBatch(operations);
+        assertThat(results[0].uri, is(insertedUri));
+
+        final MockableContentProvider.ApplyBatchParams params = provider.getApplyBatchParams();
+        assertThat(params, notNullValue());
+        assertThat(params.getOperations().size(), is(2));
+        assertThat(params.getResult(0).uri, is(insertedUri));
+        assertThat(params.getResolvedValues(1).getAsLong("parent_id"), is(42L)); //$NON-NLS
+
+        assertThat(provider.getApplyBatchParams(), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void applyBatch_params_are_isolated() {
+        final MockableContentProvider provider = newProvider();
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(TEST_URI)
+                .withValues(TEST_CONTENT_VALUES)
+                .withSelection("name = ?", new String[]{"foo"}).build()); //$NON-NLS
+
+        final ContentProviderResult[] results = provider.applyBatch(operations);
+        results[0] = null;
+
+        final MockableContentProvider.ApplyBatchParams params = provider.getApplyBatchParams();
+        assertThat(params, notNullValue());
+        assertThat(params.getResult(0), notNullValue());
+
+        // Without back references, the operation's own values and args must not leak
+        params.getResolvedValues(0).put("bar", "baz"); //$NON-NLS
+        params.getResolvedSelectionArgs(0)[0] = "bar"; //$NON-NLS
+        assertThat(params.getResolvedValues(0), is(TEST_CONTENT_VALUES));
+        assertThat(params.getResolvedSelectionArgs(0)[0], is("foo")); //$NON-NLS
+    }
+
+    @Test
+    @SmallTest
+    public void insert_getValues() {
+        final ContentValues values = new ContentValues();
+        values.put("foo", "bar"); //$NON-NLS
+        final MockableContentProvider.InsertParams params = new MockableContentProvider
+                .InsertParams(Uri.EMPTY, values);
+
+        values.put("foo", "baz"); //$NON-NLS
+
+        final Map<String, Object> view = params.getValues();
+        assertThat(view, notNullValue());
+        assertThat(view.size(), is(1));
+        assertThat(view.get("foo"), is((Object) "bar")); //$NON-NLS
+        assertThat(view, sameInstance(params.getValues()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    @SmallTest
+    public void insert_getValues_unmodifiable() {
+        final ContentValues values = new ContentValues();
+        values.put("foo", "bar"); //$NON-NLS
+        final MockableContentProvider.InsertParams params = new MockableContentProvider
+                .InsertParams(Uri.EMPTY, values);
+
+        params.getValues().put("foo", "baz"); //$NON-NLS
+    }
+
+    @Test
+    @SmallTest
+    public void insert_null_values() {
+        final MockableContentProvider.InsertParams params = new MockableContentProvider
+                .InsertParams(Uri.EMPTY, null);
+
+        assertThat(params.getContentValues(), nullValue());
+        assertThat(params.getValues(), nullValue());
+    }
+
+    @Test
+    @SmallTest
+    public void awaitQuery_timeout() throws InterruptedException {
+        final MockableContentProvider provider = newProvider();
+
+        assertThat(provider.awaitQuery(1, 10, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    @MediumTest
+    public void awaitInsert_background() throws InterruptedException {
+        final MockableContentProvider provider = newProvider();
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                provider.insert(TEST_URI, TEST_CONTENT_VALUES);
+                provider.insert(TEST_URI, TEST_CONTENT_VALUES);
+            }
+        });
+        thread.start();
+
+        assertThat(provider.awaitInsert(2, 5, TimeUnit.SECONDS), is(true));
+        assertThat(provider.getInsertParams(), notNullValue());
+        assertThat(provider.getInsertParams(), notNullValue());
+
+        thread.join();
+    }
+
+
+    @Test
+    @SmallTest
+    public void setFailure_always() {
+        final MockableContentProvider provider = newProvider();
+        provider.setFailure(ProviderOperation.QUERY, 1, Failures.sqliteException());
+
+        try {
+            provider.query(TEST_URI, null, null, null, null);
+            fail();
+        } catch (final SQLiteException e) {
+            // Expected exception
+        }
+
+        assertThat(provider.getQueryCount(), is(1));
+        assertThat(provider.getQueryParams(), notNullValue());
+
+        // Other operations are unaffected
+        provider.insert(TEST_URI, TEST_CONTENT_VALUES);
+    }
+
+    @Test
+    @SmallTest
+    public void setFailure_applyBatch_keeps_result() {
+        final MockableContentProvider provider = newProvider();
+        provider.addApplyBatchResult(new ContentProviderResult[]{new ContentProviderResult(5)});
+        provider.setFailure(ProviderOperation.APPLY_BATCH, 1, Failures.sqliteException());
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newDelete(TEST_URI).build());
+
+        try {
+            provider.applyBatch(operations);
+            fail();
+        } catch (final SQLiteException e) {
+            // Expected exception
+        }
+        assertThat(provider.getApplyBatchCount(), is(1));
+
+        // The failed call didn't consume the stubbed result
+        provider.setFailure(ProviderOperation.APPLY_BATCH, 0, Failures.sqliteException());
+        assertThat(provider.applyBatch(operations)[0].count, is(5));
+    }
+
+    @Test
+    @SmallTest
+    public void setFailure_zero_clears() {
+        final MockableContentProvider provider = newProvider();
+        provider.setFailure(ProviderOperation.DELETE, 1, Failures.securityException());
+        provider.setFailure(ProviderOperation.DELETE, 0, Failures.securityException());
+
+        assertThat(provider.delete(TEST_URI, null, null), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SmallTest
+    public void setFailure_bad_probability() {
+        newProvider().setFailure(ProviderOperation.QUERY, 1.5, Failures.sqliteException());
+    }
+
+    @Test
+    @SmallTest
+    public void setFailure_seed_reproducible() {
+        assertThat(failurePattern(123), is(failurePattern(123)));
+    }
+
+    @Test
+    @SmallTest
+    public void setLatency_fixed() {
+        final MockableContentProvider provider = newProvider();
+        provider.setLatency(ProviderOperation.CALL, Latency.fixed(50, TimeUnit.MILLISECONDS));
+
+        final long startNanos = System.nanoTime();
+        provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE);
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        assertThat(elapsedNanos, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+    }
+
+    @NonNull
+    private static String failurePattern(final long seed) {
+        final MockableContentProvider provider = newProvider();
+        provider.setRandomSeed(seed);
+        provider.setFailure(ProviderOperation.UPDATE, 0.5, Failures.illegalStateException());
+
+        final StringBuilder builder = new StringBuilder();
+        for (int x = 0; x < 64; x++) {
+            try {
+                provider.update(TEST_URI, TEST_CONTENT_VALUES, null, null);
+                builder.append('.');
+            } catch (final IllegalStateException e) {
+                builder.append('x');
+            }
+        }
+
+        return builder.toString();
+    }
+
+
+    @Test
+    @SmallTest
+    public void getTimings_empty() {
+        final CallTimings timings = newProvider().getTimings(ProviderOperation.QUERY);
+
+        assertThat(timings.getDuration().getCount(), is(0L));
+        assertThat(timings.getInterArrival().getCount(), is(0L));
+        assertThat(timings.getPeakCallsPerSecond(), is(0));
+    }
+
+    @Test
+    @SmallTest
+    public void getTimings() {
+        final MockableContentProvider provider = newProvider();
+        for (int x = 0; x < 10; x++) {
+            provider.query(TEST_URI, null, null, null, null);
+        }
+
+        final CallTimings timings = provider.getTimings(ProviderOperation.QUERY);
+
+        assertThat(timings.getDuration().getCount(), is(10L));
+        assertThat(timings.getInterArrival().getCount(), is(9L));
+        assertThat(timings.getPeakCallsPerSecond(), greaterThanOrEqualTo(1));
+
+        assertThat(provider.getTimings(ProviderOperation.INSERT).getDuration().getCount(),
+                is(0L));
+    }
+
+    @Test
+    @SmallTest
+    public void getTimings_includes_latency() {
+        final MockableContentProvider provider = newProvider();
+        provider.setLatency(ProviderOperation.DELETE, Latency.fixed(10, TimeUnit.MILLISECONDS));
+        provider.delete(TEST_URI, null, null);
+
+        assertThat(provider.getTimings(ProviderOperation.DELETE).getDuration().getMin(),
+                greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10)));
+    }
+
+
+    @Test
+    @SmallTest
+    public void addOnCallListener() {
+        final MockableContentProvider provider = newProvider();
+        final List<ProviderOperation> operations = new ArrayList<>();
+        final List<Uri> uris = new ArrayList<>();
+        final MockableContentProvider.OnCallListener listener
+                = new MockableContentProvider.OnCallListener() {
+            @Override
+            public void onCall(@NonNull final ProviderOperation operation,
+                    @Nullable final Uri uri) {
+                operations.add(operation);
+                uris.add(uri);
+            }
+        };
+        provider.addOnCallListener(listener);
+
+        provider.query(TEST_URI, null, null, null, null);
+        provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE);
+
+        provider.removeOnCallListener(listener);
+        provider.delete(TEST_URI, null, null);
+
+        assertThat(operations, contains(ProviderOperation.QUERY, ProviderOperation.CALL));
+        assertThat(uris, contains(TEST_URI, null));
+    }
+
+    @Test
+    @SmallTest
+    public void addTable_insert_query() {
+        final MockableContentProvider provider = newProvider();
+        provider.addTable("content://" + TEST_AUTHORITY + "/items", newTable()); //$NON-NLS
+
+        final Uri tableUri = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+        final Uri itemUri = provider.insert(tableUri, newValues("foo")); //$NON-NLS
+        assertThat(itemUri, is(ContentUris.withAppendedId(tableUri, 1)));
+        provider.insert(tableUri, newValues("bar")); //$NON-NLS
+
+        final Cursor cursor = provider.query(tableUri, new String[]{"name"}, //$NON-NLS
+                "name = ?", new String[]{"bar"}, null); //$NON-NLS
+        try {
+            assertThat(cursor.getCount(), is(1));
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getString(0), is("bar")); //$NON-NLS
+        } finally {
+            cursor.close();
+        }
+
+        assertThat(provider.getInsertCount(), is(2));
+        assertThat(provider.getQueryCount(), is(1));
+    }
+
+    @Test
+    @SmallTest
+    public void addTable_item_uri() {
+        final MockableContentProvider provider = newProvider();
+        provider.addTable("content://" + TEST_AUTHORITY + "/items", newTable()); //$NON-NLS
+
+        final Uri tableUri = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+        provider.insert(tableUri, newValues("foo")); //$NON-NLS
+        provider.insert(tableUri, newValues("bar")); //$NON-NLS
+
+        final Uri itemUri = ContentUris.withAppendedId(tableUri, 2);
+        final ContentValues values = newValues("baz"); //$NON-NLS
+        assertThat(provider.update(itemUri, values, null, null), is(1));
+        assertThat(provider.update(itemUri, values, "name = ?", //$NON-NLS
+                new String[]{"foo"}), is(0)); //$NON-NLS
+
+        final Cursor cursor = provider.query(itemUri, new String[]{"name"}, null, //$NON-NLS
+                null, null);
+        try {
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getString(0), is("baz")); //$NON-NLS
+        } finally {
+            cursor.close();
+        }
+
+        assertThat(provider.delete(itemUri, null, null), is(1));
+        assertThat(provider.bulkInsert(tableUri,
+                new ContentValues[]{newValues("qux")}), is(1)); //$NON-NLS
+        assertThat(provider.delete(tableUri, null, null), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SmallTest
+    public void addTable_insert_item_uri() {
+        final MockableContentProvider provider = newProvider();
+        provider.addTable("content://" + TEST_AUTHORITY + "/items", newTable()); //$NON-NLS
+
+        provider.insert(TEST_URI.buildUpon().appendPath("items").appendPath("1").build(),
+                newValues("foo")); //$NON-NLS
+    }
+
+    @Test
+    @SmallTest
+    public void addTable_rule_precedence() {
+        final MockableContentProvider provider = newProvider();
+        provider.addTable("content://" + TEST_AUTHORITY + "/items", newTable()); //$NON-NLS
+        provider.addDeleteRule("content://" + TEST_AUTHORITY + "/items", 42); //$NON-NLS
+
+        final Uri tableUri = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+        provider.insert(tableUri, newValues("foo")); //$NON-NLS
+
+        assertThat(provider.delete(tableUri, null, null), is(42));
+        assertThat(provider.query(tableUri, null, null, null, null).getCount(), is(1));
+    }
+
+    @Test
+    @SmallTest
+    public void reset() {
+        final MockableContentProvider provider = newProvider();
+        provider.addTable("content://" + TEST_AUTHORITY + "/items", newTable()); //$NON-NLS
+        provider.addDeleteRule("content://" + TEST_AUTHORITY, 3); //$NON-NLS
+        provider.addUpdateResult(5);
+        provider.setFailure(ProviderOperation.CALL, 1, Failures.securityException());
+        provider.setHistoryPolicy(HistoryPolicy.keepNone());
+
+        provider.query(TEST_URI, null, null, null, null);
+
+        provider.reset();
+
+        assertThat(provider.getQueryCount(), is(0));
+        assertThat(provider.getQueryParams(), nullValue());
+        assertThat(provider.getTimings(ProviderOperation.QUERY).getDuration().getCount(), is(0L));
+        assertThat(provider.getHistoryPolicy(), is(HistoryPolicy.keepAll()));
+
+        assertThat(provider.delete(TEST_URI, null, null), is(0));
+        assertThat(provider.update(TEST_URI, null, null, null), is(0));
+        assertThat(provider.call(TEST_METHOD, TEST_ARG, TEST_BUNDLE), nullValue());
+        assertThat(provider.insert(TEST_URI.buildUpon().appendPath("items").build(), //$NON-NLS
+                newValues("foo")), nullValue()); //$NON-NLS
+
+        provider.query(TEST_URI, null, null, null, null);
+        assertThat(provider.getQueryCount(), is(1));
+        assertThat(provider.getQueryParams(), notNullValue());
+    }
+
+
+    @SmallTest
+    @Test(expected = FileNotFoundException.class)
+    public void openFile_default() throws FileNotFoundException {
+        newProvider().openFile(TEST_URI, "r"); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void openFile_result() throws IOException {
+        final MockableContentProvider provider = newProvider();
+        provider.addOpenFileResult(FileSource.fromBytes(new byte[]{1, 2, 3}));
+
+        assertThat(readFully(provider.openFile(TEST_URI, "r")), //$NON-NLS
+                is(new byte[]{1, 2, 3}));
+        assertThat(provider.getOpenFileCount(), is(1));
+
+        final MockableContentProvider.OpenFileParams params = provider.getOpenFileParams();
+        assertThat(params, notNullValue());
+        assertThat(params.getUri(), is(TEST_URI));
+        assertThat(params.getMode(), is("r")); //$NON-NLS
+
+        try {
+            provider.openFile(TEST_URI, "r"); //$NON-NLS
+            fail();
+        } catch (final FileNotFoundException e) {
+            // Expected exception, as the FIFO result was consumed
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void openFile_rule_answers_repeatedly() throws IOException {
+        final MockableContentProvider provider = newProvider();
+        provider.addOpenFileRule("content://" + TEST_AUTHORITY, //$NON-NLS
+                FileSource.fromBytes(new byte[]{4, 5}));
+
+        assertThat(readFully(provider.openFile(TEST_URI, "r")), is(new byte[]{4, 5})); //$NON-NLS
+        assertThat(readFully(provider.openFile(TEST_URI, "r")), is(new byte[]{4, 5})); //$NON-NLS
+        assertThat(provider.getOpenFileCount(), is(2));
+    }
+
+    @SmallTest
+    @Test(expected = FileNotFoundException.class)
+    public void openFile_streamed_write_mode() throws FileNotFoundException {
+        final MockableContentProvider provider = newProvider();
+        provider.addOpenFileResult(FileSource.fromBytes(new byte[]{1}));
+
+        provider.openFile(TEST_URI, "w"); //$NON-NLS
+    }
+
+    @MediumTest
+    @Test
+    public void openFile_generator_large() throws IOException {
+        final int size = 1024 * 1024;
+        final MockableContentProvider provider = newProvider();
+        provider.addOpenFileResult(FileSource.fromGenerator(new FileSource.Generator() {
+            @Override
+            public void writeTo(@NonNull final OutputStream out) throws IOException {
+                final byte[] chunk = new byte[1024];
+                for (int x = 0; x < size; x += chunk.length) {
+                    chunk[chunk.length - 1] = (byte) (x / chunk.length);
+                    out.write(chunk);
+                }
+            }
+        }));
+
+        final byte[] bytes = readFully(provider.openFile(TEST_URI, "r")); //$NON-NLS
+        assertThat(bytes.length, is(size));
+        assertThat(bytes[size - 1], is((byte) (size / 1024 - 1)));
+    }
+
+    @SmallTest
+    @Test
+    public void openFile_reset() throws FileNotFoundException {
+        final MockableContentProvider provider = newProvider();
+        provider.addOpenFileRule("content://" + TEST_AUTHORITY, //$NON-NLS
+                FileSource.fromBytes(new byte[]{1}));
+        provider.openFile(TEST_URI, "r"); //$NON-NLS
+
+        provider.reset();
+
+        assertThat(provider.getOpenFileCount(), is(0));
+        assertThat(provider.getOpenFileParams(), nullValue());
+        try {
+            provider.openFile(TEST_URI, "r"); //$NON-NLS
+            fail();
+        } catch (final FileNotFoundException e) {
+            // Expected exception, as the rule was cleared
+        }
+    }
+
+
+    @SmallTest
+    @Test
+    public void getType_default() {
+        final MockableContentProvider provider = newProvider();
+
+        assertThat(provider.getType(TEST_URI), nullValue());
+        assertThat(provider.getGetTypeCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void getType_rule() {
+        final MockableContentProvider provider = newProvider();
+        provider.addGetTypeRule("content://" + TEST_AUTHORITY + "/items", //$NON-NLS
+                "vnd.android.cursor.dir/vnd.test.item"); //$NON-NLS
+        provider.addGetTypeRule("content://" + TEST_AUTHORITY + "/items/#", //$NON-NLS
+                "vnd.android.cursor.item/vnd.test.item"); //$NON-NLS
+
+        final Uri items = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+        assertThat(provider.getType(items), is("vnd.android.cursor.dir/vnd.test.item")); //$NON-NLS
+        assertThat(provider.getType(ContentUris.withAppendedId(items, 5)),
+                is("vnd.android.cursor.item/vnd.test.item")); //$NON-NLS
+        assertThat(provider.getType(TEST_URI), nullValue());
+        assertThat(provider.getGetTypeCount(), is(3));
+    }
+
+    @SmallTest
+    @Test
+    public void getType_rule_answer() {
+        final MockableContentProvider provider = newProvider();
+        provider.addGetTypeRule("content://" + TEST_AUTHORITY + "/*", //$NON-NLS
+                new MockableContentProvider.Answer<Uri, String>() {
+                    @NonNull
+                    @Override
+                    public String answer(@NonNull final Uri uri) {
+                        return "image/" + uri.getLastPathSegment(); //$NON-NLS
+                    }
+                });
+
+        assertThat(provider.getType(TEST_URI.buildUpon().appendPath("png").build()), //$NON-NLS
+                is("image/png")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getType_timings_and_failure() {
+        final MockableContentProvider provider = newProvider();
+        provider.getType(TEST_URI);
+
+        assertThat(provider.getTimings(ProviderOperation.GET_TYPE).getDuration().getCount(),
+                is(1L));
+
+        provider.setFailure(ProviderOperation.GET_TYPE, 1, Failures.securityException());
+        try {
+            provider.getType(TEST_URI);
+            fail();
+        } catch (final SecurityException e) {
+            // Expected exception
+        }
+        assertThat(provider.getGetTypeCount(), is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void canonicalize_default() {
+        final MockableContentProvider provider = newProvider();
+
+        assertThat(provider.canonicalize(TEST_URI), nullValue());
+        assertThat(provider.uncanonicalize(TEST_URI), is(TEST_URI));
+        assertThat(provider.getCanonicalizeCount(), is(1));
+        assertThat(provider.getUncanonicalizeCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void canonicalize_rule() {
+        final Uri item = TEST_URI.buildUpon()
+                .appendPath("items").appendPath("5").build(); //$NON-NLS
+        final Uri canonical = item.buildUpon()
+                .appendQueryParameter("canonical", "1").build(); //$NON-NLS
+
+        final MockableContentProvider provider = newProvider();
+        provider.addCanonicalizeRule("content://" + TEST_AUTHORITY + "/items/#", //$NON-NLS
+                canonical);
+        provider.addUncanonicalizeRule("content://" + TEST_AUTHORITY + "/items/#", //$NON-NLS
+                item);
+
+        assertThat(provider.canonicalize(item), is(canonical));
+        assertThat(provider.uncanonicalize(canonical), is(item));
+        assertThat(provider.getCanonicalizeCount(), is(1));
+        assertThat(provider.getUncanonicalizeCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void openTypedAssetFile_matches_type() throws IOException {
+        final MockableContentProvider provider = newProvider();
+        provider.addGetTypeRule("content://" + TEST_AUTHORITY, "image/png"); //$NON-NLS
+        provider.addOpenFileRule("content://" + TEST_AUTHORITY, //$NON-NLS
+                FileSource.fromBytes(new byte[]{1, 2}));
+
+        final AssetFileDescriptor descriptor = provider
+                .openTypedAssetFile(TEST_URI, "image/*", null); //$NON-NLS
+        assertThat(descriptor, notNullValue());
+        assertThat(readFully(descriptor.getParcelFileDescriptor()), is(new byte[]{1, 2}));
+
+        try {
+            provider.openTypedAssetFile(TEST_URI, "text/*", null); //$NON-NLS
+            fail();
+        } catch (final FileNotFoundException e) {
+            // Expected exception, as the type doesn't match the filter
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void getType_reset() {
+        final MockableContentProvider provider = newProvider();
+        provider.addGetTypeRule("content://" + TEST_AUTHORITY, "image/png"); //$NON-NLS
+        provider.addCanonicalizeRule("content://" + TEST_AUTHORITY, TEST_URI); //$NON-NLS
+        provider.getType(TEST_URI);
+
+        provider.reset();
+
+        assertThat(provider.getGetTypeCount(), is(0));
+        assertThat(provider.getType(TEST_URI), nullValue());
+        assertThat(provider.canonicalize(TEST_URI), nullValue());
+    }
+
+
+    @SmallTest
+    @Test
+    public void journal_interleaving() {
+        final MockableContentProvider provider = newProvider();
+        final Uri items = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+
+        provider.query(items, null, null, null, null);
+        provider.insert(items, TEST_CONTENT_VALUES);
+        provider.call(TEST_METHOD, TEST_ARG, null);
+        provider.query(items, null, null, null, null);
+
+        final CallJournal journal = provider.getJournal();
+        assertThat(journal.getSize(), is(4L));
+
+        final CallJournal.Reader reader = journal.newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.QUERY));
+        assertThat(reader.getParams(), instanceOf(MockableContentProvider.QueryParams.class));
+        final long firstStart = reader.getStartNanos();
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.INSERT));
+        assertThat(reader.getUri(), is(items));
+        assertThat(reader.getStartNanos(), greaterThanOrEqualTo(firstStart));
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.CALL));
+        assertThat(reader.getUri(), nullValue());
+
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getOperation(), is(ProviderOperation.QUERY));
+        assertThat(reader.getDurationNanos(), greaterThanOrEqualTo(0L));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void journal_requery_after_write() {
+        final MockableContentProvider provider = newProvider();
+        final Uri items = TEST_URI.buildUpon().appendPath("items").build(); //$NON-NLS
+
+        provider.insert(items, TEST_CONTENT_VALUES);
+        provider.query(items, null, null, null, null);
+        provider.query(items, null, null, null, null);
+
+        // Count queries that immediately follow a write to the same Uri
+        final CallJournal.Reader reader = provider.getJournal().newReader();
+        int requeries = 0;
+        Uri lastWrite = null;
+        while (reader.moveToNext()) {
+            if (ProviderOperation.QUERY == reader.getOperation()) {
+                if (null != lastWrite && lastWrite.equals(reader.getUri())) {
+                    requeries++;
+                }
+                lastWrite = null;
+            } else {
+                lastWrite = reader.getUri();
+            }
+        }
+
+        assertThat(requeries, is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void journal_history_policy_keep_none() {
+        final MockableContentProvider provider = newProvider();
+        provider.query(TEST_URI, null, null, null, null);
+        provider.setHistoryPolicy(HistoryPolicy.keepNone());
+
+        provider.delete(TEST_URI, null, null);
+
+        assertThat(provider.getDeleteParams(), nullValue());
+        final CallJournal journal = provider.getJournal();
+        assertThat(journal.getSize(), is(1L));
+        assertThat(journal.newReader().moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void journal_history_policy_keep_last() {
+        final MockableContentProvider provider = newProvider();
+        provider.setHistoryPolicy(HistoryPolicy.keepLast(1));
+
+        provider.query(TEST_URI, null, null, null, null);
+        provider.delete(TEST_URI, null, null);
+
+        final CallJournal.Reader reader = provider.getJournal().newReader();
+        assertThat(reader.moveToNext(), is(true));
+        assertThat(reader.getSequence(), is(1L));
+        assertThat(reader.getParams(), instanceOf(MockableContentProvider.DeleteParams.class));
+        assertThat(reader.moveToNext(), is(false));
+    }
+
+    @SmallTest
+    @Test
+    public void journal_reset() {
+        final MockableContentProvider provider = newProvider();
+        provider.query(TEST_URI, null, null, null, null);
+
+        provider.reset();
+
+        assertThat(provider.getJournal().getSize(), is(0L));
+    }
+
+
+    @SmallTest
+    @Test
+    public void setTraceWriter() throws IOException, JSONException {
+        final MockableContentProvider provider = newProvider();
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter traceWriter = new ChromeTraceWriter(out);
+
+        provider.setTraceWriter(traceWriter);
+        provider.query(TEST_URI, null, null, null, null);
+        provider.call(TEST_METHOD, TEST_ARG, null);
+        provider.reset();
+        provider.delete(TEST_URI, null, null);
+        provider.setTraceWriter(null);
+        provider.delete(TEST_URI, null, null);
+        traceWriter.close();
+
+        assertThat(traceWriter.getEventCount(), is(3));
+
+        final JSONArray events = new JSONObject(out.toString())
+                .getJSONArray("traceEvents"); //$NON-NLS
+        final JSONObject query = events.getJSONObject(1);
+        assertThat(query.getString("name"), is(ProviderOperation.QUERY.name())); //$NON-NLS
+        assertThat(query.getString("cat"), is("provider")); //$NON-NLS
+        assertThat(query.getString("ph"), is("X")); //$NON-NLS
+        assertThat(query.getJSONObject("args").getString("uri"), //$NON-NLS
+                is(TEST_URI.toString()));
+
+        final JSONObject call = events.getJSONObject(2);
+        assertThat(call.getString("name"), is(ProviderOperation.CALL.name())); //$NON-NLS
+        assertThat(call.getJSONObject("args").getString("method"), is(TEST_METHOD)); //$NON-NLS
+
+        assertThat(events.getJSONObject(3).getString("name"), //$NON-NLS
+                is(ProviderOperation.DELETE.name()));
+    }
+
 
     @NonNull
     private static MockableContentProvider newProvider() {
@@ -398,4 +1455,39 @@ public final class MockableContentProviderTest {
                 .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
     }
 
+    @NonNull
+    private static ContentValues[] newBulkValues(final int count) {
+        final ContentValues[] values = new ContentValues[count];
+        for (int x = 0; x < count; x++) {
+            values[x] = new ContentValues(TEST_CONTENT_VALUES);
+        }
+
+        return values;
+    }
+
+    @NonNull
+    private static InMemoryTable newTable() {
+        return new InMemoryTable.Builder()
+                .addStringColumn("name") //$NON-NLS
+                .addHashIndex("name") //$NON-NLS
+                .build();
+    }
+
+    @NonNull
+    private static byte[] readFully(@NonNull final ParcelFileDescriptor descriptor)
+            throws IOException {
+        final InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int count;
+            while (-1 != (count = in.read(buffer))) {
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
 }
@@ -0,0 +1,258 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.twofortyfouram.test.database.InMemoryTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.twofortyfouram.test.provider.ProviderTestUtil.newValues;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public final class ProviderFixtureTest {
+
+    @NonNull
+    private static final String AUTHORITY = "com.example.fixture"; //$NON-NLS
+
+    @NonNull
+    private static final Uri ITEMS_URI = Uri.parse("content://" + AUTHORITY + "/items"); //$NON-NLS
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("ProviderFixtureTest", null, //$NON-NLS
+                InstrumentationRegistry.getContext().getCacheDir());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @SmallTest
+    @Test
+    public void replay_query_insert_query() throws IOException {
+        final ProviderFixtureWriter writer = new ProviderFixtureWriter(mFile);
+        try {
+            final ContentResolver recorder = newRecorder(writer);
+            closeQuietly(recorder.query(ITEMS_URI, null, null, null, null));
+            recorder.insert(ITEMS_URI, newValues("a")); //$NON-NLS
+            closeQuietly(recorder.query(ITEMS_URI, null, null, null, null));
+        } finally {
+            writer.close();
+        }
+
+        final ProviderFixture fixture = ProviderFixture.open(mFile);
+        assertThat(fixture.getCount(), is(3));
+
+        final MockableContentProvider replay = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        fixture.replayInto(replay);
+        final ContentResolver resolver = replay.getContext().getContentResolver();
+
+        assertCount(resolver.query(ITEMS_URI, null, null, null, null), 0);
+        assertThat(resolver.insert(ITEMS_URI, newValues("a")), //$NON-NLS
+                is(Uri.parse(ITEMS_URI + "/1"))); //$NON-NLS
+
+        final Cursor cursor = resolver.query(ITEMS_URI, null, null, null, null);
+        assertThat(cursor, notNullValue());
+        try {
+            assertThat(cursor.getCount(), is(1));
+            assertThat(cursor.moveToFirst(), is(true));
+            assertThat(cursor.getString(cursor.getColumnIndexOrThrow("name")), //$NON-NLS
+                    is("a")); //$NON-NLS
+        } finally {
+            cursor.close();
+        }
+
+        // Once the recorded results are exhausted, the last one repeats
+        assertCount(resolver.query(ITEMS_URI, null, null, null, null), 1);
+    }
+
+    @SmallTest
+    @Test
+    public void replay_update_delete_call() throws IOException {
+        final ProviderFixtureWriter writer = new ProviderFixtureWriter(mFile);
+        try {
+            final MockableContentProvider target = newTarget();
+            target.addUpdateResult(3);
+            target.addDeleteResult(4);
+            final Bundle callResult = new Bundle();
+            callResult.putInt("int", 5); //$NON-NLS
+            callResult.putString("string", "value"); //$NON-NLS
+            target.addCallResult(callResult);
+
+            final ContentResolver recorder = newRecorder(writer, target);
+            recorder.update(ITEMS_URI, newValues("a"), "name = ?", //$NON-NLS
+                    new String[]{"b"}); //$NON-NLS
+            recorder.delete(ITEMS_URI, null, null);
+            recorder.call(ITEMS_URI, "method", "arg", null); //$NON-NLS
+        } finally {
+            writer.close();
+        }
+
+        final MockableContentProvider replay = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        ProviderFixture.open(mFile).replayInto(replay);
+
+        assertThat(replay.update(ITEMS_URI, newValues("a"), "name = ?", //$NON-NLS
+                new String[]{"b"}), is(3)); //$NON-NLS
+        assertThat(replay.delete(ITEMS_URI, null, null), is(4));
+
+        final Bundle bundle = replay.call("method", "arg", null); //$NON-NLS
+        assertThat(bundle, notNullValue());
+        assertThat(bundle.getInt("int"), is(5)); //$NON-NLS
+        assertThat(bundle.getString("string"), is("value")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void replay_unrecorded_falls_through() throws IOException {
+        final ProviderFixtureWriter writer = new ProviderFixtureWriter(mFile);
+        try {
+            closeQuietly(newRecorder(writer).query(ITEMS_URI, null, null, null, null));
+        } finally {
+            writer.close();
+        }
+
+        final MockableContentProvider replay = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        ProviderFixture.open(mFile).replayInto(replay);
+
+        assertThat(replay.query(ITEMS_URI, null, "name = ?", new String[]{"a"}, //$NON-NLS
+                null), nullValue());
+        assertThat(replay.update(ITEMS_URI, newValues("a"), null, null), is(0)); //$NON-NLS
+        assertThat(replay.call("method", null, null), nullValue()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void replay_specific_rule_takes_precedence() throws IOException {
+        final ProviderFixtureWriter writer = new ProviderFixtureWriter(mFile);
+        try {
+            closeQuietly(newRecorder(writer).query(ITEMS_URI, null, null, null, null));
+        } finally {
+            writer.close();
+        }
+
+        final MockableContentProvider replay = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        ProviderFixture.open(mFile).replayInto(replay);
+        replay.addQueryRule(ITEMS_URI.toString(),
+                new MockableContentProvider.Answer<Object, Cursor>() {
+                    @NonNull
+                    @Override
+                    public Cursor answer(@NonNull final Object params) {
+                        final MatrixCursor cursor = new MatrixCursor(
+                                new String[]{"name"}); //$NON-NLS
+                        cursor.addRow(new Object[]{"override"}); //$NON-NLS
+                        return cursor;
+                    }
+                });
+
+        assertCount(replay.query(ITEMS_URI, null, null, null, null), 1);
+    }
+
+    @SmallTest
+    @Test(expected = IOException.class)
+    public void open_not_closed() throws IOException {
+        final ProviderFixtureWriter writer = new ProviderFixtureWriter(mFile);
+        try {
+            closeQuietly(newRecorder(writer).query(ITEMS_URI, null, null, null, null));
+
+            ProviderFixture.open(mFile);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @SmallTest
+    @Test(expected = IOException.class)
+    public void open_not_fixture() throws IOException {
+        final OutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(new byte[64]);
+        } finally {
+            out.close();
+        }
+
+        ProviderFixture.open(mFile);
+    }
+
+    @NonNull
+    private static MockableContentProvider newTarget() {
+        final MockableContentProvider target = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        target.addTable(ITEMS_URI.toString(),
+                new InMemoryTable.Builder().addStringColumn("name").build()); //$NON-NLS
+
+        return target;
+    }
+
+    @NonNull
+    private static ContentResolver newRecorder(@NonNull final ProviderFixtureWriter writer) {
+        return newRecorder(writer, newTarget());
+    }
+
+    @NonNull
+    private static ContentResolver newRecorder(@NonNull final ProviderFixtureWriter writer,
+            @NonNull final MockableContentProvider target) {
+        return RecordingContentProvider.newRecordingProvider(
+                InstrumentationRegistry.getContext(), AUTHORITY,
+                target.getContext().getContentResolver(), writer)
+                .getContext().getContentResolver();
+    }
+
+    private static void assertCount(final Cursor cursor, final int count) {
+        assertThat(cursor, notNullValue());
+        try {
+            assertThat(cursor.getCount(), is(count));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void closeQuietly(final Cursor cursor) {
+        if (null != cursor) {
+            cursor.close();
+        }
+    }
+}
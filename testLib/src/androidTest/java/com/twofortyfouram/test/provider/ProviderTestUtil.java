@@ -0,0 +1,46 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentValues;
+import android.support.annotation.NonNull;
+
+/**
+ * Factories shared by the provider tests.
+ */
+/*package*/ final class ProviderTestUtil {
+
+    /**
+     * @param name Value of the {@code name} column.
+     * @return Values for a row of the {@code items} tables used throughout the tests.
+     */
+    @NonNull
+    /*package*/ static ContentValues newValues(@NonNull final String name) {
+        final ContentValues values = new ContentValues();
+        values.put("name", name); //$NON-NLS
+        return values;
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private ProviderTestUtil() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS
+    }
+}
@@ -24,7 +24,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 @RunWith(AndroidJUnit4.class)
 public final class QueryParamsTest {
@@ -47,4 +50,47 @@ public final class QueryParamsTest {
         assertThat(params.getSelectionArgs(), nullValue());
     }
 
+    @SmallTest
+    @Test
+    public void getProjectionList_null() {
+        final MockableContentProvider.QueryParams params = new MockableContentProvider.QueryParams(
+                null, null, null, null, null);
+
+        assertThat(params.getProjectionList(), nullValue());
+    }
+
+    @SmallTest
+    @Test
+    public void getProjectionList_snapshot() {
+        final String[] projection = new String[]{"foo"}; //$NON-NLS
+        final MockableContentProvider.QueryParams params = new MockableContentProvider.QueryParams(
+                null, projection, null, null, null);
+
+        projection[0] = "bar"; //$NON-NLS
+
+        assertThat(params.getProjectionList(), contains("foo")); //$NON-NLS
+        assertThat(params.getProjection(), is(new String[]{"foo"})); //$NON-NLS
+        assertThat(params.getProjectionList(), sameInstance(params.getProjectionList()));
+    }
+
+    @SmallTest
+    @Test(expected = UnsupportedOperationException.class)
+    public void getProjectionList_unmodifiable() {
+        final MockableContentProvider.QueryParams params = new MockableContentProvider.QueryParams(
+                null, new String[]{"foo"}, null, null, null); //$NON-NLS
+
+        params.getProjectionList().set(0, "bar"); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getSelectionArgsList_snapshot() {
+        final String[] selectionArgs = new String[]{"foo"}; //$NON-NLS
+        final MockableContentProvider.QueryParams params = new MockableContentProvider.QueryParams(
+                null, null, null, selectionArgs, null);
+
+        selectionArgs[0] = "bar"; //$NON-NLS
+
+        assertThat(params.getSelectionArgsList(), contains("foo")); //$NON-NLS
+    }
 }
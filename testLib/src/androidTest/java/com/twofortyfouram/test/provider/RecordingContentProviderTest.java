@@ -0,0 +1,146 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.twofortyfouram.test.database.InMemoryTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.twofortyfouram.test.provider.ProviderTestUtil.newValues;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+@RunWith(AndroidJUnit4.class)
+public final class RecordingContentProviderTest {
+
+    @NonNull
+    private static final String AUTHORITY = "com.example.recorded"; //$NON-NLS
+
+    @NonNull
+    private static final Uri ITEMS_URI = Uri.parse("content://" + AUTHORITY + "/items"); //$NON-NLS
+
+    private File mFile;
+
+    private ProviderFixtureWriter mWriter;
+
+    private MockableContentProvider mTarget;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("RecordingContentProviderTest", null, //$NON-NLS
+                InstrumentationRegistry.getContext().getCacheDir());
+        mWriter = new ProviderFixtureWriter(mFile);
+
+        mTarget = MockableContentProvider
+                .newMockProvider(InstrumentationRegistry.getContext(), AUTHORITY);
+        mTarget.addTable(ITEMS_URI.toString(),
+                new InMemoryTable.Builder().addStringColumn("name").build()); //$NON-NLS
+
+        mResolver = RecordingContentProvider.newRecordingProvider(
+                InstrumentationRegistry.getContext(), AUTHORITY,
+                mTarget.getContext().getContentResolver(), mWriter)
+                .getContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mWriter.close();
+        mFile.delete();
+    }
+
+    @SmallTest
+    @Test
+    public void query_forwards_and_rewinds() {
+        mTarget.insert(ITEMS_URI, newValues("a")); //$NON-NLS
+        mTarget.insert(ITEMS_URI, newValues("b")); //$NON-NLS
+
+        final Cursor cursor = mResolver.query(ITEMS_URI, null, null, null, null);
+        assertThat(cursor, notNullValue());
+        try {
+            assertThat(cursor.getPosition(), is(-1));
+            assertThat(cursor.getCount(), is(2));
+            assertThat(cursor.moveToNext(), is(true));
+            assertThat(cursor.getString(cursor.getColumnIndexOrThrow("name")), //$NON-NLS
+                    is("a")); //$NON-NLS
+        } finally {
+            cursor.close();
+        }
+
+        assertThat(mTarget.getQueryCount(), is(1));
+        assertThat(mWriter.getCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void insert_update_delete_forward() {
+        final Uri inserted = mResolver.insert(ITEMS_URI, newValues("a")); //$NON-NLS
+        assertThat(inserted, is(ContentUris.withAppendedId(ITEMS_URI, 1)));
+
+        assertThat(mResolver.update(ITEMS_URI, newValues("b"), null, null), is(1)); //$NON-NLS
+        assertThat(mResolver.delete(ITEMS_URI, null, null), is(1));
+
+        assertThat(mTarget.getInsertCount(), is(1));
+        assertThat(mTarget.getUpdateCount(), is(1));
+        assertThat(mTarget.getDeleteCount(), is(1));
+        assertThat(mWriter.getCount(), is(3));
+    }
+
+    @SmallTest
+    @Test
+    public void call_forwards() {
+        final Bundle result = new Bundle();
+        result.putString("key", "value"); //$NON-NLS
+        mTarget.addCallRule("method", result); //$NON-NLS
+
+        final Bundle actual = mResolver.call(ITEMS_URI, "method", "arg", null); //$NON-NLS
+        assertThat(actual, notNullValue());
+        assertThat(actual.getString("key"), is("value")); //$NON-NLS
+
+        final MockableContentProvider.CallParams params = mTarget.getCallParams();
+        assertThat(params, notNullValue());
+        assertThat(params.getArg(), is("arg")); //$NON-NLS
+        assertThat(mWriter.getCount(), is(1));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalStateException.class)
+    public void writer_closed() throws IOException {
+        mWriter.close();
+
+        mResolver.delete(ITEMS_URI, null, null);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public final class RoutingContentProviderTest {
+
+    @NonNull
+    private static final Uri CONTACTS_URI = Uri.parse("content://contacts/people"); //$NON-NLS
+
+    @NonNull
+    private static final Uri MEDIA_URI = Uri.parse("content://media/images/1"); //$NON-NLS
+
+    @SmallTest
+    @Test
+    public void routes_by_authority() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider media = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/**", contacts); //$NON-NLS
+        routes.put("content://media/**", media); //$NON-NLS
+
+        final ContentResolver resolver = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes)
+                .getContext().getContentResolver();
+
+        resolver.query(CONTACTS_URI, null, null, null, null);
+        resolver.delete(MEDIA_URI, null, null);
+        resolver.delete(MEDIA_URI, null, null);
+
+        assertThat(contacts.getQueryCount(), is(1));
+        assertThat(contacts.getDeleteCount(), is(0));
+        assertThat(media.getQueryCount(), is(0));
+        assertThat(media.getDeleteCount(), is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void routes_by_path() {
+        final MockableContentProvider images = new MockableContentProvider();
+        final MockableContentProvider other = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://media/images/#", images); //$NON-NLS
+        routes.put("content://media/**", other); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        provider.query(MEDIA_URI, null, null, null, null);
+        provider.query(Uri.parse("content://media/images/foo"), null, null, null, //$NON-NLS
+                null);
+
+        assertThat(images.getQueryCount(), is(1));
+        assertThat(other.getQueryCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void routes_wildcard_authority() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider fallback = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/people", contacts); //$NON-NLS
+        routes.put("content://*/**", fallback); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        provider.query(CONTACTS_URI, null, null, null, null);
+        provider.query(Uri.parse("content://contacts/groups"), null, null, null, //$NON-NLS
+                null);
+
+        assertThat(contacts.getQueryCount(), is(1));
+        assertThat(fallback.getQueryCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void unmatched_reports_nearest_routes() {
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://media/images/#", new MockableContentProvider()); //$NON-NLS
+        routes.put("content://media/video/#", new MockableContentProvider()); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        try {
+            provider.query(Uri.parse("content://media/images/foo"), null, null, null, //$NON-NLS
+                    null);
+            fail();
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("content://media/images/#")); //$NON-NLS
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void attaches_routed_providers() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(),
+                        newRoutes("content://contacts/**", contacts)); //$NON-NLS
+
+        assertThat(contacts.getContext(), sameInstance(provider.getContext()));
+    }
+
+    @SmallTest
+    @Test
+    public void applyBatch_single_provider() throws OperationApplicationException {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        contacts.addApplyBatchResult(new ContentProviderResult[0]);
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(),
+                        newRoutes("content://contacts/**", contacts)); //$NON-NLS
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newDelete(CONTACTS_URI).build());
+        operations.add(ContentProviderOperation.newDelete(CONTACTS_URI).build());
+        provider.applyBatch(operations);
+
+        assertThat(contacts.getApplyBatchCount(), is(1));
+        assertThat(contacts.getDeleteCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void applyBatch_multiple_providers() throws OperationApplicationException {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider media = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/**", contacts); //$NON-NLS
+        routes.put("content://media/**", media); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newDelete(CONTACTS_URI).build());
+        operations.add(ContentProviderOperation.newDelete(MEDIA_URI).build());
+        provider.applyBatch(operations);
+
+        assertThat(contacts.getApplyBatchCount(), is(0));
+        assertThat(contacts.getDeleteCount(), is(1));
+        assertThat(media.getDeleteCount(), is(1));
+    }
+
+    @SmallTest
+    @Test
+    public void call_first_route() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider media = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/**", contacts); //$NON-NLS
+        routes.put("content://media/**", media); //$NON-NLS
+
+        RoutingContentProvider.newRoutingProvider(InstrumentationRegistry.getContext(), routes)
+                .call("method", null, null); //$NON-NLS
+
+        assertThat(contacts.getCallCount(), is(1));
+        assertThat(media.getCallCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void routes_canonicalize() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider media = new MockableContentProvider();
+        final Uri canonicalUri = Uri.parse("content://media/images/canonical"); //$NON-NLS
+        media.addCanonicalizeRule("content://media/images/#", canonicalUri); //$NON-NLS
+        media.addUncanonicalizeRule("content://media/images/*", MEDIA_URI); //$NON-NLS
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/**", contacts); //$NON-NLS
+        routes.put("content://media/**", media); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        assertThat(provider.canonicalize(MEDIA_URI), is(canonicalUri));
+        assertThat(provider.uncanonicalize(canonicalUri), is(MEDIA_URI));
+        assertThat(media.getCanonicalizeCount(), is(1));
+        assertThat(media.getUncanonicalizeCount(), is(1));
+        assertThat(contacts.getCanonicalizeCount(), is(0));
+        assertThat(contacts.getUncanonicalizeCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void routes_openAssetFile() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+        final MockableContentProvider media = new MockableContentProvider();
+
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put("content://contacts/**", contacts); //$NON-NLS
+        routes.put("content://media/**", media); //$NON-NLS
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(), routes);
+
+        try {
+            provider.openAssetFile(MEDIA_URI, "r"); //$NON-NLS
+            fail();
+        } catch (final FileNotFoundException e) {
+            // Expected, as no file source was added
+        }
+
+        try {
+            provider.openTypedAssetFile(MEDIA_URI, "*/*", null); //$NON-NLS
+            fail();
+        } catch (final FileNotFoundException e) {
+            // Expected, as no file source was added
+        }
+
+        assertThat(media.getOpenFileCount(), is(2));
+        assertThat(contacts.getOpenFileCount(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void reset() {
+        final MockableContentProvider contacts = new MockableContentProvider();
+
+        final RoutingContentProvider provider = RoutingContentProvider
+                .newRoutingProvider(InstrumentationRegistry.getContext(),
+                        newRoutes("content://contacts/**", contacts)); //$NON-NLS
+        provider.query(CONTACTS_URI, null, null, null, null);
+
+        provider.reset();
+
+        assertThat(contacts.getQueryCount(), is(0));
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void newRoutingProvider_no_literal_authority() {
+        RoutingContentProvider.newRoutingProvider(InstrumentationRegistry.getContext(),
+                newRoutes("content://*/**", new MockableContentProvider())); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_empty() {
+        new RoutingContentProvider(new LinkedHashMap<String, ContentProvider>());
+    }
+
+    @NonNull
+    private static Map<String, ContentProvider> newRoutes(@NonNull final String pattern,
+            @NonNull final ContentProvider provider) {
+        final Map<String, ContentProvider> routes = new LinkedHashMap<>();
+        routes.put(pattern, provider);
+
+        return routes;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.net.Uri;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(AndroidJUnit4.class)
+public final class UriPatternIndexTest {
+
+    @SmallTest
+    @Test
+    public void get_empty() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+
+        assertThat(index.get(Uri.parse("content://authority/foo")), nullValue()); //$NON-NLS
+        assertThat(index.getAll(Uri.parse("content://authority/foo")), empty()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_literal() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo/bar", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority/foo/bar")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/foo")), nullValue()); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/foo/bar/baz")), //$NON-NLS
+                nullValue());
+        assertThat(index.get(Uri.parse("content://other/foo/bar")), nullValue()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_authority_only() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority")), is("value")); //$NON-NLS
+        assertThat(index.get(new Uri.Builder().authority("authority").build()), //$NON-NLS
+                is("value")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_number_wildcard() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo/#", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority/foo/123")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/foo/bar")), nullValue()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_number_wildcard_non_ascii() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo/#", "value"); //$NON-NLS
+
+        // Arabic-Indic digits, which Character.isDigit() accepts but UriMatcher doesn't
+        assertThat(index.get(Uri.parse("content://authority/foo/\u0661\u0662")), //$NON-NLS
+                nullValue());
+    }
+
+    @SmallTest
+    @Test
+    public void getAll_miss_shared() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo", "value"); //$NON-NLS
+
+        assertThat(index.getAll(Uri.parse("content://authority/bar")), //$NON-NLS
+                sameInstance(index.getAll(Uri.parse("content://other/bar")))); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_text_wildcard() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/*/bar", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority/foo/bar")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/123/bar")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/bar")), nullValue()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_remainder_wildcard() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo/**", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority/foo")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/foo/bar/baz")), //$NON-NLS
+                is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://authority/bar")), nullValue()); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void get_authority_wildcard() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://*/foo", "value"); //$NON-NLS
+
+        assertThat(index.get(Uri.parse("content://authority/foo")), is("value")); //$NON-NLS
+        assertThat(index.get(Uri.parse("content://other/foo")), is("value")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getAll_precedence() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/**", "remainder"); //$NON-NLS
+        index.put("content://authority/foo/*", "text"); //$NON-NLS
+        index.put("content://authority/foo/#", "number"); //$NON-NLS
+        index.put("content://authority/foo/123", "literal"); //$NON-NLS
+
+        assertThat(index.getAll(Uri.parse("content://authority/foo/123")), //$NON-NLS
+                is(Arrays.asList("literal", "number", "text", "remainder"))); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void putIfAbsent() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+
+        assertThat(index.putIfAbsent("content://authority/foo", "first"), //$NON-NLS
+                is("first")); //$NON-NLS
+        assertThat(index.putIfAbsent("content://authority/foo", "second"), //$NON-NLS
+                is("first")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void clear() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo", "value"); //$NON-NLS
+
+        index.clear();
+
+        assertThat(index.get(Uri.parse("content://authority/foo")), nullValue()); //$NON-NLS
+    }
+    @SmallTest
+    @Test
+    public void getNearestPatterns_partial_path() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo/#", "value"); //$NON-NLS
+        index.put("content://authority/foo/bar/baz", "value"); //$NON-NLS
+        index.put("content://authority/qux", "value"); //$NON-NLS
+
+        assertThat(index.getNearestPatterns(
+                Uri.parse("content://authority/foo/nope"), 3), //$NON-NLS
+                contains("content://authority/foo/#", //$NON-NLS
+                        "content://authority/foo/bar/baz")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getNearestPatterns_max_count() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/a", "value"); //$NON-NLS
+        index.put("content://authority/b", "value"); //$NON-NLS
+        index.put("content://authority/c", "value"); //$NON-NLS
+
+        assertThat(index.getNearestPatterns(Uri.parse("content://authority/d"), 2), //$NON-NLS
+                contains("content://authority/a", "content://authority/b")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getNearestPatterns_other_authority() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/foo", "value"); //$NON-NLS
+
+        assertThat(index.getNearestPatterns(Uri.parse("content://other/foo"), 3), //$NON-NLS
+                contains("content://authority/foo")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void getNearestPatterns_empty() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+
+        assertThat(index.getNearestPatterns(Uri.parse("content://authority/foo"), 3), //$NON-NLS
+                empty());
+    }
+
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void put_remainder_not_last() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content://authority/**/foo", "value"); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test(expected = IllegalArgumentException.class)
+    public void put_no_authority() {
+        final UriPatternIndex<String> index = new UriPatternIndex<>();
+        index.put("content:///foo", "value"); //$NON-NLS
+    }
+}
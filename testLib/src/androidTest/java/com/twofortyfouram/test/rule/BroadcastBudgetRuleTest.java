@@ -0,0 +1,201 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.rule;
+
+import android.content.Intent;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.twofortyfouram.test.context.ReceiverContextWrapper;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public final class BroadcastBudgetRuleTest {
+
+    @NonNull
+    private static final String TEST_ACTION = "com.twofortyfouram.test.action.STORM"; //$NON-NLS
+
+    @SmallTest
+    @Test
+    public void verify_within_budget() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 2, 1, TimeUnit.MINUTES);
+
+        context.sendBroadcast(new Intent(TEST_ACTION));
+        context.sendBroadcast(new Intent(TEST_ACTION));
+
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void verify_over_action_budget() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 1, 1, TimeUnit.MINUTES);
+
+        for (int x = 0; x < 3; x++) {
+            context.sendBroadcast(new Intent(TEST_ACTION));
+        }
+
+        final String message = verifyFailureMessage(rule);
+        assertThat(message, containsString(TEST_ACTION));
+        assertThat(message, containsString("exceeded with a peak of 3")); //$NON-NLS
+        assertThat(message, containsString("2 broadcasts over budget from:")); //$NON-NLS
+        assertThat(message, containsString(getClass().getName()));
+        assertThat(message, containsString("2 duplicate broadcasts")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void verify_over_budget() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(1, 1, TimeUnit.MINUTES);
+
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+        context.sendBroadcast(new Intent("bar")); //$NON-NLS
+
+        final String message = verifyFailureMessage(rule);
+        assertThat(message, containsString("exceeded with a peak of 2")); //$NON-NLS
+        assertThat(message, not(containsString("duplicate"))); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void verify_window_slides() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 1, 10, TimeUnit.MILLISECONDS);
+
+        context.sendBroadcast(new Intent(TEST_ACTION));
+        Thread.sleep(50);
+        context.sendBroadcast(new Intent(TEST_ACTION));
+
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void verify_other_actions_unaffected() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 0, 1, TimeUnit.MINUTES);
+
+        context.sendBroadcast(new Intent("foo")); //$NON-NLS
+
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void verify_no_sampled_stacks() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule(0);
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 0, 1, TimeUnit.MINUTES);
+
+        context.sendBroadcast(new Intent(TEST_ACTION));
+
+        assertThat(verifyFailureMessage(rule), not(containsString("over budget from"))); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void apply_verifies_passed_test() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 0, 1, TimeUnit.MINUTES);
+
+        final Statement statement = rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                context.sendBroadcast(new Intent(TEST_ACTION));
+            }
+        }, Description.EMPTY);
+
+        String message = null;
+        try {
+            statement.evaluate();
+        } catch (final AssertionError e) {
+            message = e.getMessage();
+        }
+
+        assertThat(message, containsString("exceeded with a peak of 1")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void apply_unwatches_failed_test() throws Throwable {
+        final BroadcastBudgetRule rule = new BroadcastBudgetRule();
+        final ReceiverContextWrapper context = rule
+                .newReceiverContext(InstrumentationRegistry.getContext());
+        rule.setBudget(TEST_ACTION, 0, 1, TimeUnit.MINUTES);
+
+        final Statement statement = rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                throw new IllegalStateException();
+            }
+        }, Description.EMPTY);
+
+        try {
+            statement.evaluate();
+            fail();
+        } catch (final IllegalStateException e) {
+            // Expected exception
+        }
+
+        // The context is no longer watched, so this broadcast doesn't count towards the budget
+        context.sendBroadcast(new Intent(TEST_ACTION));
+        rule.verify();
+    }
+
+    @NonNull
+    private static String verifyFailureMessage(@NonNull final BroadcastBudgetRule rule)
+            throws Throwable {
+        try {
+            rule.verify();
+        } catch (final AssertionError e) {
+            return e.getMessage();
+        }
+
+        fail();
+        throw new AssertionError();
+    }
+}
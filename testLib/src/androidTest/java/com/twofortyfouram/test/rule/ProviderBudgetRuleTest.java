@@ -0,0 +1,211 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.rule;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.twofortyfouram.test.provider.MockableContentProvider;
+import com.twofortyfouram.test.provider.ProviderOperation;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+import org.junit.runners.model.Statement;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public final class ProviderBudgetRuleTest {
+
+    @NonNull
+    private static final String TEST_AUTHORITY = "authoritah"; //$NON-NLS
+
+    @NonNull
+    private static final Uri TEST_ITEM_URI = Uri.parse("content://authoritah/items/1"); //$NON-NLS
+
+    @NonNull
+    private static final Uri TEST_OTHER_URI = Uri.parse("content://authoritah/other"); //$NON-NLS
+
+    @SmallTest
+    @Test
+    public void verify_within_budget() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, 2);
+
+        provider.query(TEST_ITEM_URI, null, null, null, null);
+        provider.query(TEST_ITEM_URI, null, null, null, null);
+
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void verify_over_operation_budget() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, 1);
+
+        for (int x = 0; x < 3; x++) {
+            provider.query(TEST_ITEM_URI, null, null, null, null);
+        }
+
+        final String message = verifyFailureMessage(rule);
+        assertThat(message, containsString("exceeded with 3 calls")); //$NON-NLS
+        assertThat(message, containsString("2 calls over budget from:")); //$NON-NLS
+        assertThat(message, containsString(getClass().getName()));
+    }
+
+    @SmallTest
+    @Test
+    public void verify_over_uri_budget() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, "content://authoritah/items/#", 0); //$NON-NLS
+
+        provider.query(TEST_OTHER_URI, null, null, null, null);
+        provider.query(TEST_ITEM_URI, null, null, null, null);
+
+        final String message = verifyFailureMessage(rule);
+        assertThat(message, containsString("content://authoritah/items/#")); //$NON-NLS
+        assertThat(message, containsString("exceeded with 1 calls")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void verify_other_operations_unaffected() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, 0);
+
+        provider.delete(TEST_ITEM_URI, null, null);
+
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void verify_no_sampled_stacks() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule(0);
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.INSERT, 0);
+
+        provider.insert(TEST_ITEM_URI, null);
+
+        assertThat(verifyFailureMessage(rule), not(containsString("over budget from"))); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void apply_verifies_passed_test() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, 0);
+
+        final Statement statement = rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                provider.query(TEST_ITEM_URI, null, null, null, null);
+            }
+        }, Description.EMPTY);
+
+        String message = null;
+        try {
+            statement.evaluate();
+        } catch (final AssertionError e) {
+            message = e.getMessage();
+        }
+
+        assertThat(message, containsString("exceeded with 1 calls")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void apply_unwatches_failed_test() throws Throwable {
+        final ProviderBudgetRule rule = new ProviderBudgetRule();
+        final MockableContentProvider provider = rule
+                .newMockProvider(InstrumentationRegistry.getContext(), TEST_AUTHORITY);
+        rule.setBudget(ProviderOperation.QUERY, 0);
+
+        final Statement statement = rule.apply(new Statement() {
+            @Override
+            public void evaluate() {
+                throw new IllegalStateException();
+            }
+        }, Description.EMPTY);
+
+        try {
+            statement.evaluate();
+            fail();
+        } catch (final IllegalStateException e) {
+            // Expected exception
+        }
+
+        // The provider is no longer watched, so this query doesn't count towards the budget
+        provider.query(TEST_ITEM_URI, null, null, null, null);
+        rule.verify();
+    }
+
+    @SmallTest
+    @Test
+    public void trimCallSite() {
+        final StackTraceElement[] stack = new StackTraceElement[]{
+                new StackTraceElement(ProviderBudgetRule.class.getName() + "$1", //$NON-NLS
+                        "onCall", null, 1), //$NON-NLS
+                new StackTraceElement(MockableContentProvider.class.getName(), "query", //$NON-NLS
+                        null, 2),
+                new StackTraceElement("android.content.ContentResolver", "query", //$NON-NLS
+                        null, 3), //$NON-NLS
+                new StackTraceElement("com.example.Dao", "load", null, 4) //$NON-NLS
+        };
+
+        final List<StackTraceElement> callSite = ProviderBudgetRule.trimCallSite(stack);
+
+        assertThat(callSite.size(), is(1));
+        assertThat(callSite.get(0).getClassName(), is("com.example.Dao")); //$NON-NLS
+    }
+
+    @NonNull
+    private static String verifyFailureMessage(@NonNull final ProviderBudgetRule rule)
+            throws Throwable {
+        try {
+            rule.verify();
+        } catch (final AssertionError e) {
+            return e.getMessage();
+        }
+
+        fail();
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.trace;
+
+import android.support.annotation.NonNull;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public final class ChromeTraceWriterTest {
+
+    @SmallTest
+    @Test
+    public void empty() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+
+        writer.close();
+
+        assertThat(writer.getEventCount(), is(0));
+        assertThat(parseEvents(out).length(), is(0));
+    }
+
+    @SmallTest
+    @Test
+    public void span() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+
+        writer.beginSpan("span"); //$NON-NLS
+        writer.endSpan("span"); //$NON-NLS
+        writer.close();
+
+        assertThat(writer.getEventCount(), is(2));
+
+        final JSONArray events = parseEvents(out);
+        assertThat(events.length(), is(3));
+
+        final JSONObject threadName = events.getJSONObject(0);
+        assertThat(threadName.getString("ph"), is("M")); //$NON-NLS
+        assertThat(threadName.getJSONObject("args").getString("name"), //$NON-NLS
+                is(Thread.currentThread().getName()));
+
+        final JSONObject begin = events.getJSONObject(1);
+        assertThat(begin.getString("name"), is("span")); //$NON-NLS
+        assertThat(begin.getString("cat"), is(ChromeTraceWriter.CATEGORY_TEST)); //$NON-NLS
+        assertThat(begin.getString("ph"), is("B")); //$NON-NLS
+        assertThat(begin.getInt("tid"), is(android.os.Process.myTid())); //$NON-NLS
+        assertThat(begin.getInt("pid"), is(android.os.Process.myPid())); //$NON-NLS
+
+        final JSONObject end = events.getJSONObject(2);
+        assertThat(end.getString("ph"), is("E")); //$NON-NLS
+        assertThat(end.getDouble("ts") >= begin.getDouble("ts"), is(true)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void complete() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+        final Map<String, Object> args = new LinkedHashMap<>();
+        args.put("uri", "content://authority/items"); //$NON-NLS
+        args.put("count", 3); //$NON-NLS
+
+        final long startNanos = System.nanoTime();
+        writer.writeComplete("query", "provider", startNanos, 1234567, args); //$NON-NLS
+        writer.close();
+
+        final JSONObject event = parseEvents(out).getJSONObject(1);
+        assertThat(event.getString("name"), is("query")); //$NON-NLS
+        assertThat(event.getString("cat"), is("provider")); //$NON-NLS
+        assertThat(event.getString("ph"), is("X")); //$NON-NLS
+        assertThat(event.getDouble("dur"), closeTo(1234.567, 0.0001)); //$NON-NLS
+
+        final JSONObject eventArgs = event.getJSONObject("args"); //$NON-NLS
+        assertThat(eventArgs.getString("uri"), is("content://authority/items")); //$NON-NLS
+        assertThat(eventArgs.getString("count"), is("3")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void instant() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+
+        writer.writeInstant("sent", "broadcast", System.nanoTime(), //$NON-NLS
+                Collections.<String, Object>emptyMap());
+        writer.close();
+
+        final JSONObject event = parseEvents(out).getJSONObject(1);
+        assertThat(event.getString("ph"), is("i")); //$NON-NLS
+        assertThat(event.getString("s"), is("t")); //$NON-NLS
+        assertThat(event.has("args"), is(false)); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void escaping() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+        final String name = "\"quoted\"\\\n\t\u0001"; //$NON-NLS
+
+        writer.writeInstant(name, "test", System.nanoTime(), //$NON-NLS
+                Collections.singletonMap(name, null));
+        writer.close();
+
+        final JSONObject event = parseEvents(out).getJSONObject(1);
+        assertThat(event.getString("name"), is(name)); //$NON-NLS
+        assertThat(event.getJSONObject("args").getString(name), is("null")); //$NON-NLS
+    }
+
+    @SmallTest
+    @Test
+    public void thread_names() throws IOException, JSONException, InterruptedException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+
+        writer.beginSpan("main"); //$NON-NLS
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writer.beginSpan("worker"); //$NON-NLS
+                writer.endSpan("worker"); //$NON-NLS
+            }
+        }, "trace-worker"); //$NON-NLS
+        thread.start();
+        thread.join();
+        writer.endSpan("main"); //$NON-NLS
+        writer.close();
+
+        final JSONArray events = parseEvents(out);
+        assertThat(events.length(), is(6));
+
+        int threadNameCount = 0;
+        for (int x = 0; x < events.length(); x++) {
+            final JSONObject event = events.getJSONObject(x);
+            if ("M".equals(event.getString("ph"))) { //$NON-NLS
+                threadNameCount++;
+            }
+        }
+        assertThat(threadNameCount, is(2));
+    }
+
+    @SmallTest
+    @Test
+    public void close_discards_later_events() throws IOException, JSONException {
+        final StringWriter out = new StringWriter();
+        final ChromeTraceWriter writer = new ChromeTraceWriter(out);
+        writer.beginSpan("span"); //$NON-NLS
+        writer.close();
+
+        writer.endSpan("span"); //$NON-NLS
+        writer.close();
+
+        assertThat(writer.getEventCount(), is(1));
+        assertThat(parseEvents(out).length(), is(2));
+    }
+
+    @NonNull
+    private static JSONArray parseEvents(@NonNull final StringWriter out) throws JSONException {
+        return new JSONObject(out.toString()).getJSONArray("traceEvents"); //$NON-NLS
+    }
+}
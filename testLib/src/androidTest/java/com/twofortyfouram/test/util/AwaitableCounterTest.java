@@ -0,0 +1,102 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.util;
+
+import android.support.test.filters.MediumTest;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public final class AwaitableCounterTest {
+
+    @Test
+    @SmallTest
+    public void initial() {
+        assertThat(new AwaitableCounter().get(), is(0));
+    }
+
+    @Test
+    @SmallTest
+    public void increment() {
+        final AwaitableCounter counter = new AwaitableCounter();
+
+        assertThat(counter.increment(), is(1));
+        assertThat(counter.increment(), is(2));
+        assertThat(counter.get(), is(2));
+    }
+
+    @Test
+    @SmallTest
+    public void reset() {
+        final AwaitableCounter counter = new AwaitableCounter();
+        counter.increment();
+        counter.increment();
+
+        counter.reset();
+
+        assertThat(counter.get(), is(0));
+        assertThat(counter.increment(), is(1));
+    }
+
+    @Test
+    @SmallTest
+    public void await_already_reached() throws InterruptedException {
+        final AwaitableCounter counter = new AwaitableCounter();
+        counter.increment();
+
+        assertThat(counter.await(1, 0, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @Test
+    @SmallTest
+    public void await_timeout() throws InterruptedException {
+        final AwaitableCounter counter = new AwaitableCounter();
+        counter.increment();
+
+        assertThat(counter.await(2, 10, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    @MediumTest
+    public void await_background_increment() throws InterruptedException {
+        final AwaitableCounter counter = new AwaitableCounter();
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int x = 0; x < 3; x++) {
+                    counter.increment();
+                }
+            }
+        });
+        thread.start();
+
+        assertThat(counter.await(3, 5, TimeUnit.SECONDS), is(true));
+        assertThat(counter.get(), is(3));
+
+        thread.join();
+    }
+}
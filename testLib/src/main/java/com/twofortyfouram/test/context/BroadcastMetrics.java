@@ -0,0 +1,570 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Counts of the Intents sent through a {@link ReceiverContextWrapper}, for spotting broadcast
+ * storms such as a loop that sends the same Intent hundreds of times per second.  Recording is
+ * lock-free, so that counting doesn't serialize the threads sending broadcasts.
+ * <p>
+ * Counts are kept per action, along with counts per {@link #DEFAULT_BUCKET_MILLIS} bucket of
+ * send time, from which the count and rate over a sliding window ending now are computed.  The
+ * buckets cover the latest {@link #DEFAULT_BUCKET_COUNT} {@code *}
+ * {@link #DEFAULT_BUCKET_MILLIS} milliseconds, so longer windows are clipped to that, and a
+ * window may include up to one bucket of Intents sent just before it started.
+ * <p>
+ * An Intent is a duplicate if it {@link Intent#filterEquals(Intent) filter equals} an earlier
+ * Intent and has the same extras.  Extras are compared by a hash of their keys and values, so
+ * values must implement {@link Object#hashCode()} to be recognized as the same across Intents.
+ * At most {@link #DEFAULT_MAX_TRACKED_INTENTS} distinct Intents are tracked, so that a flood of
+ * unique Intents can't grow memory without bound.  Intents first sent after that limit is
+ * reached are counted per action, but not as duplicates.
+ *
+ * @see ReceiverContextWrapper#getBroadcastMetrics()
+ */
+@ThreadSafe
+public final class BroadcastMetrics {
+
+    /**
+     * Default length of each bucket of send times.
+     */
+    public static final long DEFAULT_BUCKET_MILLIS = 100;
+
+    /**
+     * Default number of buckets of send times kept for each action.
+     */
+    public static final int DEFAULT_BUCKET_COUNT = 1024;
+
+    /**
+     * Default maximum number of distinct Intents tracked for duplicates.
+     */
+    public static final int DEFAULT_MAX_TRACKED_INTENTS = 1024;
+
+    /**
+     * Low bits of a bucket, which hold its count.  The high bits hold its epoch, which is the
+     * number of bucket lengths since {@link #mOriginNanos}.  Packing both into one long lets a
+     * bucket be moved to a new epoch and counted with compare-and-set.
+     */
+    private static final int COUNT_BITS = 20;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int mBucketCount;
+
+    private final long mBucketNanos;
+
+    private final int mMaxTrackedIntents;
+
+    /**
+     * Time from which bucket epochs are counted, far enough in the past that every Intent within
+     * the buckets has a positive epoch.
+     */
+    private final long mOriginNanos;
+
+    /**
+     * Counts, replaced as a whole by {@link #reset()}.
+     */
+    @NonNull
+    private volatile Counts mCounts;
+
+    /**
+     * Constructs metrics with the default buckets and limit.
+     */
+    /*package*/ BroadcastMetrics() {
+        this(DEFAULT_BUCKET_COUNT, TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUCKET_MILLIS),
+                DEFAULT_MAX_TRACKED_INTENTS);
+    }
+
+    /**
+     * @param bucketCount       Number of buckets of send times to keep for each action.
+     * @param bucketNanos       Length of each bucket.
+     * @param maxTrackedIntents Maximum number of distinct Intents to track for duplicates.
+     */
+    /*package*/ BroadcastMetrics(final int bucketCount, final long bucketNanos,
+            final int maxTrackedIntents) {
+        if (1 > bucketCount) {
+            throw new IllegalArgumentException("bucketCount must be >= 1"); //$NON-NLS
+        }
+        if (1 > bucketNanos) {
+            throw new IllegalArgumentException("bucketNanos must be >= 1"); //$NON-NLS
+        }
+        if (0 > maxTrackedIntents) {
+            throw new IllegalArgumentException("maxTrackedIntents must be >= 0"); //$NON-NLS
+        }
+
+        mBucketCount = bucketCount;
+        mBucketNanos = bucketNanos;
+        mMaxTrackedIntents = maxTrackedIntents;
+        mOriginNanos = System.nanoTime() - 2 * bucketCount * bucketNanos;
+        mCounts = new Counts();
+    }
+
+    /**
+     * @param intent    Intent that was sent.  Must not be modified afterwards.
+     * @param sentNanos Time {@code intent} was sent, from {@link System#nanoTime()}.
+     */
+    /*package*/ void record(@NonNull final Intent intent, final long sentNanos) {
+        final Counts counts = mCounts;
+
+        getOrCreateActionCounts(counts, intent.getAction()).record(toEpoch(sentNanos));
+
+        final IntentKey key = new IntentKey(intent);
+        IntentCount intentCount = counts.mIntentCounts.get(key);
+        if (null == intentCount) {
+            // Reserve room first, so that concurrent senders can't exceed the limit
+            if (counts.mTrackedIntentCount.incrementAndGet() > mMaxTrackedIntents) {
+                counts.mTrackedIntentCount.decrementAndGet();
+                return;
+            }
+
+            intentCount = counts.mIntentCounts.putIfAbsent(key,
+                    new IntentCount(intent, counts.mNextIntentSequence.getAndIncrement()));
+            if (null == intentCount) {
+                return;
+            }
+
+            // Another sender tracked an equal Intent first
+            counts.mTrackedIntentCount.decrementAndGet();
+        }
+
+        intentCount.mCount.incrementAndGet();
+        counts.mDuplicateCount.incrementAndGet();
+    }
+
+    /**
+     * @param action Action of the Intents to count, or null for Intents without an action.
+     * @return The number of Intents with {@code action} sent since creation or the last
+     * {@link #reset()}.
+     */
+    public int getCount(@Nullable final String action) {
+        final ActionCounts actionCounts = findActionCounts(mCounts, action);
+
+        return null == actionCounts ? 0 : actionCounts.mCount.get();
+    }
+
+    /**
+     * @return The number of Intents sent for each action, with Intents that have no action under
+     * the null key.
+     */
+    @NonNull
+    public Map<String, Integer> getCounts() {
+        final Counts counts = mCounts;
+        final Map<String, Integer> result = new HashMap<>(counts.mActionCounts.size() + 1);
+        for (final Map.Entry<String, ActionCounts> entry : counts.mActionCounts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().mCount.get());
+        }
+
+        final int noActionCount = counts.mNoActionCounts.mCount.get();
+        if (0 != noActionCount) {
+            result.put(null, noActionCount);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param action Action of the Intents to count, or null for Intents without an action.
+     * @param window Length of the window ending now.
+     * @param unit   Unit of {@code window}.
+     * @return The number of Intents with {@code action} sent within the window.
+     */
+    public int getCount(@Nullable final String action, final long window,
+            @NonNull final TimeUnit unit) {
+        final long windowNanos = toWindowNanos(window, unit);
+        final long nowNanos = System.nanoTime();
+
+        final ActionCounts actionCounts = findActionCounts(mCounts, action);
+        if (null == actionCounts) {
+            return 0;
+        }
+
+        final long lastEpoch = toEpoch(nowNanos);
+        final long firstEpoch = Math.max(toEpoch(nowNanos - windowNanos),
+                lastEpoch - mBucketCount + 1);
+
+        return actionCounts.countBetween(firstEpoch, lastEpoch);
+    }
+
+    /**
+     * @param action Action of the Intents to count, or null for Intents without an action.
+     * @param window Length of the window ending now.
+     * @param unit   Unit of {@code window}.
+     * @return The number of Intents with {@code action} sent per second within the window.  A
+     * window longer than the buckets span is clipped to them, as in
+     * {@link #getCount(String, long, TimeUnit)}, so the rate is over the clipped window.
+     */
+    public double getRate(@Nullable final String action, final long window,
+            @NonNull final TimeUnit unit) {
+        final long windowNanos = toWindowNanos(window, unit);
+        final long clippedWindowNanos = Math.min(windowNanos, mBucketCount * mBucketNanos);
+
+        return getCount(action, windowNanos, TimeUnit.NANOSECONDS)
+                * (double) TimeUnit.SECONDS.toNanos(1) / clippedWindowNanos;
+    }
+
+    /**
+     * @return The number of Intents that duplicated an earlier Intent.
+     */
+    public int getDuplicateCount() {
+        return mCounts.mDuplicateCount.get();
+    }
+
+    /**
+     * @return The Intents that were sent more than once, most frequent first.
+     */
+    @NonNull
+    public List<Duplicate> getDuplicates() {
+        final List<IntentCount> intentCounts = new ArrayList<>();
+        for (final IntentCount intentCount : mCounts.mIntentCounts.values()) {
+            if (1 < intentCount.mCount.get()) {
+                intentCounts.add(intentCount);
+            }
+        }
+
+        // Ties stay in the order first sent
+        Collections.sort(intentCounts, new Comparator<IntentCount>() {
+            @Override
+            public int compare(final IntentCount lhs, final IntentCount rhs) {
+                final int lhsCount = lhs.mCount.get();
+                final int rhsCount = rhs.mCount.get();
+                if (lhsCount != rhsCount) {
+                    return rhsCount < lhsCount ? -1 : 1;
+                }
+
+                return lhs.mSequence < rhs.mSequence ? -1
+                        : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+            }
+        });
+
+        final List<Duplicate> duplicates = new ArrayList<>(intentCounts.size());
+        for (final IntentCount intentCount : intentCounts) {
+            duplicates.add(new Duplicate(intentCount.mIntent, intentCount.mCount.get()));
+        }
+
+        return duplicates;
+    }
+
+    /**
+     * Clears all counts.  Intents recorded concurrently with a reset may be counted in either
+     * the old or the new counts.
+     */
+    public void reset() {
+        mCounts = new Counts();
+    }
+
+    @NonNull
+    private ActionCounts getOrCreateActionCounts(@NonNull final Counts counts,
+            @Nullable final String action) {
+        if (null == action) {
+            return counts.mNoActionCounts;
+        }
+
+        final ActionCounts actionCounts = counts.mActionCounts.get(action);
+        if (null != actionCounts) {
+            return actionCounts;
+        }
+
+        final ActionCounts newActionCounts = new ActionCounts(mBucketCount);
+        final ActionCounts existing = counts.mActionCounts.putIfAbsent(action, newActionCounts);
+
+        return null == existing ? newActionCounts : existing;
+    }
+
+    @Nullable
+    private static ActionCounts findActionCounts(@NonNull final Counts counts,
+            @Nullable final String action) {
+        return null == action ? counts.mNoActionCounts : counts.mActionCounts.get(action);
+    }
+
+    /**
+     * @return The epoch of the bucket holding {@code nanos}, which is negative if {@code nanos}
+     * is before {@link #mOriginNanos}.
+     */
+    private long toEpoch(final long nanos) {
+        // Differences rather than comparisons, as nanoTime() may overflow
+        final long sinceOriginNanos = nanos - mOriginNanos;
+
+        return 0 > sinceOriginNanos ? -1 : sinceOriginNanos / mBucketNanos;
+    }
+
+    private static long toWindowNanos(final long window, @NonNull final TimeUnit unit) {
+        assertNotNull(unit, "unit"); //$NON-NLS
+
+        if (0 >= window) {
+            throw new IllegalArgumentException("window must be > 0"); //$NON-NLS
+        }
+
+        return unit.toNanos(window);
+    }
+
+    /**
+     * @param bundle Extras to hash.  May be null.
+     * @return A hash of the keys and values of {@code bundle}, independent of the order of the
+     * keys.  Arrays are hashed by their contents and nested Bundles recursively.
+     */
+    /*package*/ static int hashExtras(@Nullable final Bundle bundle) {
+        if (null == bundle) {
+            return 0;
+        }
+
+        int hash = 0;
+        for (final String key : bundle.keySet()) {
+            final Object value = bundle.get(key);
+
+            final int valueHash;
+            if (value instanceof Bundle) {
+                valueHash = hashExtras((Bundle) value);
+            } else {
+                // Handles null, arrays of primitives, and arrays of objects
+                valueHash = Arrays.deepHashCode(new Object[]{value});
+            }
+
+            // Summed like Map.hashCode(), because the order of the keys is unspecified
+            hash += (null == key ? 0 : key.hashCode()) ^ valueHash;
+        }
+
+        return hash;
+    }
+
+    /**
+     * An Intent that was sent more than once.
+     */
+    @Immutable
+    public static final class Duplicate {
+
+        @NonNull
+        private final Intent mIntent;
+
+        private final int mCount;
+
+        private Duplicate(@NonNull final Intent intent, final int count) {
+            mIntent = intent;
+            mCount = count;
+        }
+
+        /**
+         * @return The first of the equal Intents.  Note that this method always returns a new
+         * copy, to prevent exposing the internals of this class.
+         */
+        @NonNull
+        public Intent getIntent() {
+            return new Intent(mIntent);
+        }
+
+        /**
+         * @return The number of times the Intent was sent, including the first.
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Duplicate{" + //$NON-NLS
+                    "mIntent=" + mIntent + //$NON-NLS
+                    ", mCount=" + mCount + //$NON-NLS
+                    '}';
+        }
+    }
+
+    /**
+     * Key for an Intent, equal to the keys of Intents that it filter equals and whose extras
+     * hash the same.
+     */
+    @Immutable
+    private static final class IntentKey {
+
+        @NonNull
+        private final Intent mIntent;
+
+        private final int mExtrasHash;
+
+        private IntentKey(@NonNull final Intent intent) {
+            mIntent = intent;
+            mExtrasHash = hashExtras(intent.getExtras());
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (null == o || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final IntentKey other = (IntentKey) o;
+
+            return mExtrasHash == other.mExtrasHash && mIntent.filterEquals(other.mIntent);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mIntent.filterHashCode() + mExtrasHash;
+        }
+    }
+
+    /**
+     * Every count since creation or the last {@link #reset()}.
+     */
+    @ThreadSafe
+    private final class Counts {
+
+        /**
+         * Counts by action, except for Intents without an action, which aren't allowed as keys.
+         */
+        @NonNull
+        private final ConcurrentMap<String, ActionCounts> mActionCounts
+                = new ConcurrentHashMap<>();
+
+        @NonNull
+        private final ActionCounts mNoActionCounts = new ActionCounts(mBucketCount);
+
+        @NonNull
+        private final ConcurrentMap<IntentKey, IntentCount> mIntentCounts
+                = new ConcurrentHashMap<>();
+
+        /**
+         * Number of entries in {@link #mIntentCounts}, plus any reserved by senders about to add
+         * one.
+         */
+        @NonNull
+        private final AtomicInteger mTrackedIntentCount = new AtomicInteger(0);
+
+        @NonNull
+        private final AtomicLong mNextIntentSequence = new AtomicLong(0);
+
+        @NonNull
+        private final AtomicInteger mDuplicateCount = new AtomicInteger(0);
+    }
+
+    /**
+     * Number of times a distinct Intent has been sent.
+     */
+    @ThreadSafe
+    private static final class IntentCount {
+
+        /**
+         * First of the equal Intents.
+         */
+        @NonNull
+        private final Intent mIntent;
+
+        /**
+         * Order in which the Intent was first sent, relative to other distinct Intents.
+         */
+        private final long mSequence;
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        private IntentCount(@NonNull final Intent intent, final long sequence) {
+            mIntent = intent;
+            mSequence = sequence;
+        }
+    }
+
+    /**
+     * Count and buckets of send times of one action.
+     */
+    @ThreadSafe
+    private static final class ActionCounts {
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        /**
+         * Ring of buckets, each holding an epoch and count packed as described by
+         * {@link #COUNT_BITS}.  A bucket is reused when a later epoch maps to it.
+         */
+        @NonNull
+        private final AtomicLongArray mBuckets;
+
+        private ActionCounts(final int bucketCount) {
+            mBuckets = new AtomicLongArray(bucketCount);
+        }
+
+        public void record(final long epoch) {
+            mCount.incrementAndGet();
+
+            if (0 > epoch) {
+                return;
+            }
+
+            final int index = (int) (epoch % mBuckets.length());
+            while (true) {
+                final long bucket = mBuckets.get(index);
+                final long bucketEpoch = bucket >>> COUNT_BITS;
+                final long updated;
+                if (bucketEpoch == epoch) {
+                    if (COUNT_MASK == (bucket & COUNT_MASK)) {
+                        // Saturated
+                        return;
+                    }
+                    updated = bucket + 1;
+                } else if (bucketEpoch < epoch) {
+                    updated = (epoch << COUNT_BITS) | 1;
+                } else {
+                    // Older than the buckets retained
+                    return;
+                }
+
+                if (mBuckets.compareAndSet(index, bucket, updated)) {
+                    return;
+                }
+            }
+        }
+
+        public int countBetween(final long firstEpoch, final long lastEpoch) {
+            int count = 0;
+            for (int x = 0; x < mBuckets.length(); x++) {
+                final long bucket = mBuckets.get(x);
+                final long bucketEpoch = bucket >>> COUNT_BITS;
+                if (firstEpoch <= bucketEpoch && bucketEpoch <= lastEpoch) {
+                    count += (int) (bucket & COUNT_MASK);
+                }
+            }
+
+            return count;
+        }
+    }
+}
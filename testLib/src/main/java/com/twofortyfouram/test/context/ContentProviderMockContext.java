@@ -20,24 +20,48 @@ import android.content.ContentProvider;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.ContextWrapper;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.support.annotation.NonNull;
-import android.test.mock.MockContentResolver;
+
+import com.twofortyfouram.test.provider.Resettable;
 
 import net.jcip.annotations.NotThreadSafe;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static com.twofortyfouram.assertion.Assertions.assertNotNull;
 
 /**
  * This class itself is thread safe, however safety ultimately depends on the thread safety of
  * the underlying ContentProvider passed into the constructor.
+ * <p>
+ * Creating a context, its resolver, and its providers for every test can dominate the runtime
+ * of a large suite.  Instead, a single instance can be kept for the whole suite and
+ * {@link #reset()} called before each test, which clears the state of each provider
+ * implementing {@link Resettable} in place.
+ * <p>
+ * To emulate many providers, or to dispatch on path within an authority, register a
+ * {@link com.twofortyfouram.test.provider.RoutingContentProvider}.
+ * <p>
+ * Unlike a plain {@code MockContentResolver}, the resolver of this context delivers
+ * {@code notifyChange()} to observers, so that code relying on change notifications can be
+ * tested.  Because {@link ContentResolver#registerContentObserver(Uri, boolean, ContentObserver)}
+ * is final and always registers with the system, observers must instead be registered via
+ * {@link #registerContentObserver(Uri, boolean, ContentObserver)}.  Notifications are counted per
+ * Uri, which helps verify that bulk writes don't cause a storm of notifications.
  */
 @NotThreadSafe
 public final class ContentProviderMockContext extends ContextWrapper {
 
     @NonNull
-    private final android.test.mock.MockContentResolver mResolver = new MockContentResolver();
+    private final NotifyingContentResolver mResolver = new NotifyingContentResolver();
+
+    @NonNull
+    private final List<Resettable> mResettableProviders = new ArrayList<>();
 
     /**
      * @param baseContext          Base context for calls besides {@link #getContentResolver()}.
@@ -51,9 +75,80 @@ public final class ContentProviderMockContext extends ContextWrapper {
 
         for (final Map.Entry<String, ContentProvider> entry : authorityProviderMap.entrySet()) {
             mResolver.addProvider(entry.getKey(), entry.getValue());
+
+            // A provider registered under several authorities is only reset once
+            if (entry.getValue() instanceof Resettable
+                    && !mResettableProviders.contains(entry.getValue())) {
+                mResettableProviders.add((Resettable) entry.getValue());
+            }
         }
     }
 
+    /**
+     * Resets each provider implementing {@link Resettable}, so that this context can be reused by
+     * another test.  Other providers are left as they are.  Content observers, pending
+     * notifications, notification counts, and the coalescing window are also cleared.
+     */
+    public void reset() {
+        for (final Resettable provider : mResettableProviders) {
+            provider.reset();
+        }
+
+        mResolver.reset();
+    }
+
+    /**
+     * Registers an observer to be notified of changes via {@code notifyChange()} on this
+     * context's resolver.
+     *
+     * @param uri                  Uri to observe.
+     * @param notifyForDescendants True to also be notified of changes to descendants of
+     *                             {@code uri}.  Changes to {@code uri} and its ancestors are
+     *                             always delivered.
+     * @param observer             Observer to notify.
+     */
+    public void registerContentObserver(@NonNull final Uri uri,
+            final boolean notifyForDescendants, @NonNull final ContentObserver observer) {
+        mResolver.addObserver(uri, notifyForDescendants, observer);
+    }
+
+    /**
+     * @param observer Observer to stop notifying.
+     */
+    public void unregisterContentObserver(@NonNull final ContentObserver observer) {
+        mResolver.removeObserver(observer);
+    }
+
+    /**
+     * Sets a window for coalescing notifications, emulating how the system batches them.  The
+     * first notification for a Uri is delivered on the main thread after the window elapses, and
+     * further notifications for the same Uri in the meantime are merged into it.  Counts still
+     * include every notification.
+     *
+     * @param window Length of the window, or 0 to deliver every notification immediately on the
+     *               calling thread, which is the default.
+     * @param unit   Unit of {@code window}.
+     */
+    public void setNotificationCoalescingWindow(final long window,
+            @NonNull final TimeUnit unit) {
+        mResolver.setCoalescingWindow(window, unit);
+    }
+
+    /**
+     * @param uri Uri to look up.
+     * @return Number of times {@code notifyChange()} has been called for exactly {@code uri}.
+     */
+    public int getNotifyChangeCount(@NonNull final Uri uri) {
+        return mResolver.getNotifyChangeCount(uri);
+    }
+
+    /**
+     * @return Number of times {@code notifyChange()} has been called for any Uri.
+     */
+    public int getNotifyChangeCount() {
+        return mResolver.getNotifyChangeCount();
+    }
+
     /**
      * @return The mock context; prevents breaking out.
      */
@@ -0,0 +1,304 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.annotation.TargetApi;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.test.mock.MockContentResolver;
+import android.text.TextUtils;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A {@link MockContentResolver} that delivers {@code notifyChange()} to observers registered
+ * locally, instead of discarding it.  Matching follows the platform's rules: an observer is
+ * notified of changes to its own Uri and to any ancestor of it, and also to descendants if it
+ * was registered with {@code notifyForDescendants}.
+ * <p>
+ * Notifications are delivered on the calling thread, unless a coalescing window is set.  In that
+ * case, the first notification for a Uri is delivered on the main thread once the window
+ * elapses, and further notifications for the same Uri within the window are merged into it.
+ */
+@ThreadSafe
+/*package*/ final class NotifyingContentResolver extends MockContentResolver {
+
+    @NonNull
+    private final CopyOnWriteArrayList<Registration> mRegistrations
+            = new CopyOnWriteArrayList<>();
+
+    @NonNull
+    private final ConcurrentHashMap<Uri, AtomicInteger> mNotifyChangeCounts
+            = new ConcurrentHashMap<>();
+
+    @NonNull
+    private final AtomicInteger mTotalNotifyChangeCount = new AtomicInteger(0);
+
+    @NonNull
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private volatile long mCoalescingWindowMillis = 0;
+
+    /**
+     * Notifications waiting for the coalescing window to elapse, keyed by Uri.
+     */
+    @NonNull
+    @GuardedBy("mPending")
+    private final Map<Uri, Pending> mPending = new HashMap<>();
+
+    public void addObserver(@NonNull final Uri uri,
+            final boolean notifyForDescendants, @NonNull final ContentObserver observer) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+        assertNotNull(observer, "observer"); //$NON-NLS
+
+        mRegistrations.add(new Registration(uri, notifyForDescendants, observer));
+    }
+
+    public void removeObserver(@NonNull final ContentObserver observer) {
+        assertNotNull(observer, "observer"); //$NON-NLS
+
+        for (final Registration registration : mRegistrations) {
+            if (registration.mObserver == observer) {
+                mRegistrations.remove(registration);
+            }
+        }
+    }
+
+    public void setCoalescingWindow(final long window, @NonNull final TimeUnit unit) {
+        assertNotNull(unit, "unit"); //$NON-NLS
+        if (0 > window) {
+            throw new IllegalArgumentException("window must be >= 0"); //$NON-NLS
+        }
+
+        mCoalescingWindowMillis = unit.toMillis(window);
+    }
+
+    public int getNotifyChangeCount(@NonNull final Uri uri) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+
+        final AtomicInteger count = mNotifyChangeCounts.get(uri);
+
+        return null == count ? 0 : count.get();
+    }
+
+    public int getNotifyChangeCount() {
+        return mTotalNotifyChangeCount.get();
+    }
+
+    /**
+     * Removes all observers, discards pending notifications, and clears counts.  The coalescing
+     * window is disabled.
+     */
+    public void reset() {
+        mRegistrations.clear();
+        mCoalescingWindowMillis = 0;
+
+        synchronized (mPending) {
+            mPending.clear();
+            mHandler.removeCallbacksAndMessages(null);
+        }
+
+        mNotifyChangeCounts.clear();
+        mTotalNotifyChangeCount.set(0);
+    }
+
+    @Override
+    public void notifyChange(@NonNull final Uri uri, @Nullable final ContentObserver observer) {
+        onNotifyChange(uri, observer);
+    }
+
+    @Override
+    public void notifyChange(@NonNull final Uri uri, @Nullable final ContentObserver observer,
+            final boolean syncToNetwork) {
+        onNotifyChange(uri, observer);
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    @Override
+    public void notifyChange(@NonNull final Uri uri, @Nullable final ContentObserver observer,
+            final int flags) {
+        onNotifyChange(uri, observer);
+    }
+
+    private void onNotifyChange(@NonNull final Uri uri,
+            @Nullable final ContentObserver originator) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+
+        mTotalNotifyChangeCount.incrementAndGet();
+
+        AtomicInteger count = mNotifyChangeCounts.get(uri);
+        if (null == count) {
+            final AtomicInteger newCount = new AtomicInteger(0);
+            count = mNotifyChangeCounts.putIfAbsent(uri, newCount);
+            if (null == count) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+
+        final long windowMillis = mCoalescingWindowMillis;
+        if (0 == windowMillis) {
+            dispatch(uri, originator);
+            return;
+        }
+
+        synchronized (mPending) {
+            final Pending pending = mPending.get(uri);
+            if (null != pending) {
+                // Self-notification only applies if every merged notification came from the
+                // same observer
+                if (pending.mOriginator != originator) {
+                    pending.mOriginator = null;
+                }
+                return;
+            }
+
+            mPending.put(uri, new Pending(originator));
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    final Pending removed;
+                    synchronized (mPending) {
+                        removed = mPending.remove(uri);
+                    }
+
+                    if (null != removed) {
+                        dispatch(uri, removed.mOriginator);
+                    }
+                }
+            }, windowMillis);
+        }
+    }
+
+    private void dispatch(@NonNull final Uri uri, @Nullable final ContentObserver originator) {
+        final List<String> parts = getParts(uri);
+
+        for (final Registration registration : mRegistrations) {
+            if (!registration.matches(parts)) {
+                continue;
+            }
+
+            final ContentObserver observer = registration.mObserver;
+            final boolean isSelfChange = observer == originator;
+            if (isSelfChange && !observer.deliverSelfNotifications()) {
+                continue;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                dispatchChangeJellyBean(observer, isSelfChange, uri);
+            } else {
+                dispatchChangeLegacy(observer, isSelfChange);
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void dispatchChangeJellyBean(@NonNull final ContentObserver observer,
+            final boolean isSelfChange, @NonNull final Uri uri) {
+        observer.dispatchChange(isSelfChange, uri);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void dispatchChangeLegacy(@NonNull final ContentObserver observer,
+            final boolean isSelfChange) {
+        observer.dispatchChange(isSelfChange);
+    }
+
+    /**
+     * @param uri Uri to split.
+     * @return The authority of {@code uri} followed by its path segments.
+     */
+    @NonNull
+    private static List<String> getParts(@NonNull final Uri uri) {
+        final List<String> segments = uri.getPathSegments();
+        final List<String> parts = new ArrayList<>(segments.size() + 1);
+        parts.add(uri.getAuthority());
+        parts.addAll(segments);
+
+        return parts;
+    }
+
+    @Immutable
+    private static final class Registration {
+
+        @NonNull
+        private final List<String> mParts;
+
+        private final boolean mIsNotifyForDescendants;
+
+        @NonNull
+        private final ContentObserver mObserver;
+
+        private Registration(@NonNull final Uri uri, final boolean isNotifyForDescendants,
+                @NonNull final ContentObserver observer) {
+            mParts = getParts(uri);
+            mIsNotifyForDescendants = isNotifyForDescendants;
+            mObserver = observer;
+        }
+
+        /**
+         * @param changedParts Parts of the changed Uri.
+         * @return True if the observer should be notified of the change.
+         */
+        public boolean matches(@NonNull final List<String> changedParts) {
+            final int commonSize = Math.min(mParts.size(), changedParts.size());
+            for (int x = 0; x < commonSize; x++) {
+                if (!TextUtils.equals(mParts.get(x), changedParts.get(x))) {
+                    return false;
+                }
+            }
+
+            // The change is to this Uri or an ancestor, or else to a descendant
+            return changedParts.size() <= mParts.size() || mIsNotifyForDescendants;
+        }
+    }
+
+    @NotThreadSafe
+    private static final class Pending {
+
+        /**
+         * Observer that caused the notification, if all merged notifications had the same one.
+         */
+        @Nullable
+        @GuardedBy("mPending")
+        private ContentObserver mOriginator;
+
+        private Pending(@Nullable final ContentObserver originator) {
+            mOriginator = originator;
+        }
+    }
+}
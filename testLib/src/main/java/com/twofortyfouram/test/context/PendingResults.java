@@ -0,0 +1,215 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.context;
+
+import android.content.BroadcastReceiver;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+/**
+ * Gives receivers the {@link BroadcastReceiver.PendingResult} that the system would, so that
+ * {@link BroadcastReceiver#setResultCode(int)}, {@link BroadcastReceiver#abortBroadcast()}, and
+ * {@link BroadcastReceiver#goAsync()} work for broadcasts delivered by
+ * {@link ReceiverContextWrapper}.
+ */
+/*package*/ final class PendingResults {
+
+    @NonNull
+    private static final String LOG_TAG = "PendingResults"; //$NON-NLS
+
+    /**
+     * Value of {@code PendingResult.TYPE_UNREGISTERED}, for which
+     * {@link BroadcastReceiver.PendingResult#finish()} doesn't report to the system.
+     */
+    private static final int TYPE_UNREGISTERED = 2;
+
+    /**
+     * Leading parameters shared by the constructor on every API level.  Later API levels append
+     * parameters such as the user ID, which are given default values.
+     */
+    @NonNull
+    private static final Class<?>[] LEADING_PARAMETER_TYPES = {
+            int.class, String.class, Bundle.class, int.class, boolean.class, boolean.class
+    };
+
+    /**
+     * Null if pending results aren't supported on this device.
+     */
+    @Nullable
+    private static final Constructor<?> CONSTRUCTOR;
+
+    /**
+     * Null if pending results aren't supported on this device.
+     */
+    @Nullable
+    private static final Method SET_PENDING_RESULT;
+
+    static {
+        /*
+         * This is a hack, as PendingResult's constructor and BroadcastReceiver.setPendingResult()
+         * are hidden.  There is no other way to let receivers set results outside of the system
+         * server.  This could break on newer versions of Android, in which case receivers are
+         * called without a pending result.
+         */
+        Constructor<?> constructor = null;
+        Method setPendingResult = null;
+        try {
+            constructor = findConstructor();
+            if (null != constructor) {
+                constructor.setAccessible(true);
+                setPendingResult = BroadcastReceiver.class.getDeclaredMethod(
+                        "setPendingResult", //$NON-NLS
+                        BroadcastReceiver.PendingResult.class);
+                setPendingResult.setAccessible(true);
+            }
+        } catch (final Exception e) {
+            Log.w(LOG_TAG, "Pending results are not supported", e); //$NON-NLS
+            constructor = null;
+        }
+
+        CONSTRUCTOR = null == setPendingResult ? null : constructor;
+        SET_PENDING_RESULT = setPendingResult;
+    }
+
+    /**
+     * @return True if receivers can be given a pending result on this device.
+     */
+    /*package*/ static boolean isSupported() {
+        return null != CONSTRUCTOR;
+    }
+
+    /**
+     * Calls {@link BroadcastReceiver#onReceive(android.content.Context, android.content.Intent)}
+     * with a pending result holding the given result, as the system does.
+     *
+     * @param receiver     Receiver to give the pending result to.
+     * @param resultCode   Current result code.
+     * @param resultData   Current result data.
+     * @param resultExtras Current result extras.
+     * @param isOrdered    Whether the broadcast is ordered.
+     * @param isSticky     Whether the Intent is a sticky Intent delivered on registration.
+     * @return The pending result, from which the result set by the receiver can be read, or
+     * null if pending results aren't supported.
+     */
+    @Nullable
+    /*package*/ static BroadcastReceiver.PendingResult set(
+            @NonNull final BroadcastReceiver receiver, final int resultCode,
+            @Nullable final String resultData, @Nullable final Bundle resultExtras,
+            final boolean isOrdered, final boolean isSticky) {
+        if (null == CONSTRUCTOR) {
+            return null;
+        }
+
+        final Class<?>[] parameterTypes = CONSTRUCTOR.getParameterTypes();
+        final Object[] args = new Object[parameterTypes.length];
+        args[0] = resultCode;
+        args[1] = resultData;
+        args[2] = resultExtras;
+        args[3] = TYPE_UNREGISTERED;
+        args[4] = isOrdered;
+        args[5] = isSticky;
+        for (int x = LEADING_PARAMETER_TYPES.length; x < args.length; x++) {
+            args[x] = getDefaultValue(parameterTypes[x]);
+        }
+
+        try {
+            final BroadcastReceiver.PendingResult pendingResult
+                    = (BroadcastReceiver.PendingResult) CONSTRUCTOR.newInstance(args);
+            SET_PENDING_RESULT.invoke(receiver, pendingResult);
+
+            return pendingResult;
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes the pending result from {@code receiver}.  If the receiver already took it with
+     * {@link BroadcastReceiver#goAsync()}, the pending result is already null, so this is
+     * harmless.
+     *
+     * @param receiver Receiver to clear.
+     */
+    /*package*/ static void clear(@NonNull final BroadcastReceiver receiver) {
+        if (null == SET_PENDING_RESULT) {
+            return;
+        }
+
+        try {
+            SET_PENDING_RESULT.invoke(receiver, (Object) null);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The constructor of {@link BroadcastReceiver.PendingResult} starting with
+     * {@link #LEADING_PARAMETER_TYPES}, or null if there is none.
+     */
+    @Nullable
+    private static Constructor<?> findConstructor() {
+        for (final Constructor<?> constructor : BroadcastReceiver.PendingResult.class
+                .getDeclaredConstructors()) {
+            final Class<?>[] parameterTypes = constructor.getParameterTypes();
+            if (parameterTypes.length < LEADING_PARAMETER_TYPES.length) {
+                continue;
+            }
+
+            boolean isMatch = true;
+            for (int x = 0; x < LEADING_PARAMETER_TYPES.length; x++) {
+                if (LEADING_PARAMETER_TYPES[x] != parameterTypes[x]) {
+                    isMatch = false;
+                    break;
+                }
+            }
+
+            if (isMatch) {
+                return constructor;
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static Object getDefaultValue(@NonNull final Class<?> type) {
+        if (boolean.class == type) {
+            return false;
+        } else if (int.class == type) {
+            return 0;
+        } else if (long.class == type) {
+            return 0L;
+        }
+
+        return null;
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private PendingResults() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
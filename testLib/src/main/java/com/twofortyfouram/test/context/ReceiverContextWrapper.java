@@ -17,36 +17,183 @@
 package com.twofortyfouram.test.context;
 
 
+import android.app.Activity;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.ContentResolver;
 import android.content.ContextWrapper;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Log;
 
+import com.twofortyfouram.test.trace.ChromeTraceWriter;
+import com.twofortyfouram.test.util.AwaitableCounter;
+
+import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.Immutable;
 import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
 
 /**
  * Test context to capture all Intents broadcasts. Intents are not broadcast to the
- * rest of the system, although ordered broadcasts are delivered directly the result receiver if
- * provided. Intents
+ * rest of the system, only to receivers registered through this context and to the result
+ * receiver of an ordered broadcast. Intents
  * broadcast through this class are stored and can be retrieved via {@link
  * #getAndClearSentIntents()}.
+ * <p>
+ * Receivers registered through this context are kept in-process instead of being registered
+ * with the system, so they receive the normal broadcasts sent through this context and nothing
+ * else.  Each matching receiver is called on the Handler it was registered with, or on the main
+ * thread.  Receivers are indexed by action, so the cost of a broadcast grows with the number of
+ * receivers for its action rather than the number of receivers overall, and each candidate is
+ * then matched with {@link IntentFilter#match(ContentResolver, Intent, boolean, String)}.
+ * Permissions are not enforced, and the MIME type of an Intent is not resolved through a
+ * content provider.
+ * <p>
+ * Ordered broadcasts run through the matching receivers one at a time, from highest to lowest
+ * {@link IntentFilter#getPriority()}, and then the result receiver.  Each receiver sees the
+ * result left by the previous one, and {@link BroadcastReceiver#abortBroadcast()} skips the
+ * remaining receivers.  The time each receiver spends in
+ * {@link BroadcastReceiver#onReceive(Context, Intent)} is available from
+ * {@link #getAndClearReceiverTimings()}.  A receiver that calls
+ * {@link BroadcastReceiver#goAsync()} is treated as finished when it returns from
+ * {@link BroadcastReceiver#onReceive(Context, Intent)}.
+ * <p>
+ * Sticky Intents are kept, replacing any Intent that they
+ * {@link Intent#filterEquals(Intent) filter equal}, until they are removed.  Registering a
+ * receiver delivers the matching sticky Intents to it and returns the latest.  The
+ * {@code AsUser} variants of each method are recorded with their {@link UserHandle} and
+ * otherwise behave like the methods without it, as every receiver is in-process.
+ * <p>
+ * Intents may be sent from any thread, such as an executor or an {@code IntentService} worker,
+ * while the test thread polls them.  Rather than sleeping, tests can block in
+ * {@link #awaitIntents(int, long, TimeUnit)} until the expected number of Intents have been sent.
+ * <p>
+ * {@link #getBroadcastMetrics()} counts the broadcasts sent per action, over sliding windows, and
+ * the Intents that duplicate earlier ones, to help catch broadcast storms.  Listeners added
+ * with {@link #addOnBroadcastListener(OnBroadcastListener)} are notified of each broadcast on the
+ * sending thread, which lets {@link com.twofortyfouram.test.rule.BroadcastBudgetRule} report
+ * where the Intents over its budgets were sent from.
+ * <p>
+ * Given a {@link ChromeTraceWriter}, each broadcast is also written to the trace as an instant
+ * event in the category {@code broadcast}, named after the method that sent it, and each call
+ * to a receiver as an event named after the receiver's class.
  */
-@NotThreadSafe
+@ThreadSafe
 public final class ReceiverContextWrapper extends ContextWrapper {
 
+    /**
+     * Category of the trace events written for Intents.
+     */
+    @NonNull
+    /*package*/ static final String TRACE_CATEGORY = "broadcast"; //$NON-NLS
+
+    @NonNull
+    private final Queue<SentIntent> mIntents = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Total number of Intents sent, including those already polled.
+     */
+    @NonNull
+    private final AwaitableCounter mSentCount = new AwaitableCounter();
+
+    /**
+     * Total number of times a receiver has returned from
+     * {@link BroadcastReceiver#onReceive(Context, Intent)}.
+     */
+    @NonNull
+    private final AwaitableCounter mDeliveredCount = new AwaitableCounter();
+
+    /**
+     * Timings of the receivers of ordered broadcasts.
+     */
+    @NonNull
+    private final Queue<ReceiverTiming> mReceiverTimings = new ConcurrentLinkedQueue<>();
+
+    @NonNull
+    private final Object mRegistrationLock = new Object();
+
+    /**
+     * Sticky Intents by action, each keyed by {@link Intent#filterEquals(Intent)} so that a new
+     * sticky Intent replaces an equal one.  Each map iterates in the order its Intents were
+     * sent.
+     */
+    @NonNull
+    @GuardedBy("mRegistrationLock")
+    private final Map<String, Map<StickyKey, StickyIntent>> mStickyIntents = new HashMap<>();
+
+    /**
+     * Most recently sent sticky Intent of each action, so that looking up the latest sticky
+     * Intent doesn't scan {@link #mStickyIntents}.
+     */
+    @NonNull
+    @GuardedBy("mRegistrationLock")
+    private final Map<String, StickyIntent> mLatestStickyIntents = new HashMap<>();
+
+    /**
+     * Sequence number of the next sticky Intent, which orders sticky Intents across actions.
+     */
+    @GuardedBy("mRegistrationLock")
+    private long mNextStickySequence = 0;
+
+    /**
+     * Registrations of each receiver, in the order they were made.
+     */
+    @NonNull
+    @GuardedBy("mRegistrationLock")
+    private final Map<BroadcastReceiver, List<Registration>> mRegistrations = new HashMap<>();
+
+    /**
+     * Registrations by action, with filters that have no actions under the null key.  The map
+     * and its arrays are never modified once published, but replaced under
+     * {@link #mRegistrationLock}, so broadcasts read a consistent snapshot without locking.
+     */
     @NonNull
-    private final LinkedList<SentIntent> mIntents = new LinkedList<>();
+    private volatile Map<String, Registration[]> mActionIndex = Collections.emptyMap();
+
+    /**
+     * Every registration, in the order they were made, for Intents without an action.  Like
+     * {@link #mActionIndex}, the array is never modified once published.
+     */
+    @NonNull
+    private volatile Registration[] mAllRegistrations = new Registration[0];
+
+    @NonNull
+    private final BroadcastMetrics mMetrics = new BroadcastMetrics();
+
+    @NonNull
+    private final CopyOnWriteArrayList<OnBroadcastListener> mOnBroadcastListeners
+            = new CopyOnWriteArrayList<>();
+
+    @Nullable
+    private volatile ChromeTraceWriter mTraceWriter = null;
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     public ReceiverContextWrapper(@NonNull final Context targetContext) {
         super(targetContext);
@@ -67,13 +214,162 @@ public final class ReceiverContextWrapper extends ContextWrapper {
 
     @Override
     public void sendBroadcast(final Intent intent, final String receiverPermission) {
-        mIntents.add(new SentIntent(intent, receiverPermission, false, false));
+        broadcast("sendBroadcast", intent, receiverPermission, null, false); //$NON-NLS
+    }
+
+    @Override
+    public Intent registerReceiver(@Nullable final BroadcastReceiver receiver,
+            final IntentFilter filter) {
+        return registerReceiver(receiver, filter, null, null);
+    }
+
+    /**
+     * Like {@link #registerReceiver(BroadcastReceiver, IntentFilter)}.  {@code flags}, such as
+     * {@link Context#RECEIVER_VISIBLE_TO_INSTANT_APPS}, are ignored because only broadcasts sent
+     * through this context are delivered.
+     */
+    @Override
+    public Intent registerReceiver(@Nullable final BroadcastReceiver receiver,
+            final IntentFilter filter, final int flags) {
+        return registerReceiver(receiver, filter, null, null);
+    }
+
+    /**
+     * Like {@link #registerReceiver(BroadcastReceiver, IntentFilter, String, Handler)}.
+     * {@code flags} are ignored because only broadcasts sent through this context are delivered.
+     */
+    @Override
+    public Intent registerReceiver(@Nullable final BroadcastReceiver receiver,
+            final IntentFilter filter, @Nullable final String broadcastPermission,
+            @Nullable final Handler scheduler, final int flags) {
+        return registerReceiver(receiver, filter, broadcastPermission, scheduler);
+    }
+
+    /**
+     * Registers {@code receiver} with this context only.  {@code broadcastPermission} is not
+     * enforced.  Like the system, each sticky Intent sent through this context that matches
+     * {@code filter} is delivered to {@code receiver} right away.
+     * <p>
+     * When {@code receiver} is null, the latest sticky Intent of each action of {@code filter} is
+     * looked up in constant time.  Older sticky Intents of an action are only scanned when the
+     * latest one doesn't match {@code filter}, for example because of its data.
+     *
+     * @return The most recently sent sticky Intent that matches {@code filter}, or null if there
+     * is none.
+     */
+    @Override
+    public Intent registerReceiver(@Nullable final BroadcastReceiver receiver,
+            @NonNull final IntentFilter filter, @Nullable final String broadcastPermission,
+            @Nullable final Handler scheduler) {
+        assertNotNull(filter, "filter"); //$NON-NLS
+
+        final IntentFilter filterCopy = new IntentFilter(filter);
+        final List<StickyIntent> stickyIntents;
+        final StickyIntent latestStickyIntent;
+        final Registration registration;
+        synchronized (mRegistrationLock) {
+            if (null == receiver) {
+                stickyIntents = Collections.emptyList();
+                latestStickyIntent = findLatestStickyIntent(filterCopy);
+                registration = null;
+            } else {
+                stickyIntents = findStickyIntents(filterCopy);
+                latestStickyIntent = stickyIntents.isEmpty() ? null
+                        : stickyIntents.get(stickyIntents.size() - 1);
+                registration = new Registration(receiver, filterCopy,
+                        null == scheduler ? mMainHandler : scheduler);
+                addRegistration(registration);
+            }
+        }
+
+        for (final StickyIntent stickyIntent : stickyIntents) {
+            post(registration, new Intent(stickyIntent.mIntent), true);
+        }
+
+        return null == latestStickyIntent ? null : new Intent(latestStickyIntent.mIntent);
+    }
+
+    @GuardedBy("mRegistrationLock")
+    private void addRegistration(@NonNull final Registration registration) {
+        final BroadcastReceiver receiver = registration.mReceiver;
+        List<Registration> registrations = mRegistrations.get(receiver);
+        if (null == registrations) {
+            registrations = new ArrayList<>(1);
+            mRegistrations.put(receiver, registrations);
+        }
+        registrations.add(registration);
+
+        final Registration[] allRegistrations = Arrays.copyOf(mAllRegistrations,
+                mAllRegistrations.length + 1);
+        allRegistrations[mAllRegistrations.length] = registration;
+        mAllRegistrations = allRegistrations;
+
+        final Map<String, Registration[]> index = new HashMap<>(mActionIndex);
+        for (final String action : getActions(registration.mFilter)) {
+            final Registration[] bucket = index.get(action);
+            if (null == bucket) {
+                index.put(action, new Registration[]{registration});
+            } else {
+                final Registration[] newBucket = Arrays.copyOf(bucket, bucket.length + 1);
+                newBucket[bucket.length] = registration;
+                index.put(action, newBucket);
+            }
+        }
+        mActionIndex = index;
+    }
+
+    /**
+     * Unregisters every filter of {@code receiver}.  Broadcasts already posted to its Handler
+     * are dropped, as they are by the system.
+     *
+     * @throws IllegalArgumentException If {@code receiver} isn't registered with this context.
+     */
+    @Override
+    public void unregisterReceiver(@NonNull final BroadcastReceiver receiver) {
+        assertNotNull(receiver, "receiver"); //$NON-NLS
+
+        synchronized (mRegistrationLock) {
+            final List<Registration> registrations = mRegistrations.remove(receiver);
+            if (null == registrations) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Receiver not registered: %s", receiver)); //$NON-NLS
+            }
+
+            final Map<String, Registration[]> index = new HashMap<>(mActionIndex);
+            for (final Registration registration : registrations) {
+                registration.mIsRegistered = false;
+
+                for (final String action : getActions(registration.mFilter)) {
+                    final Registration[] bucket = index.get(action);
+                    final Registration[] newBucket = new Registration[bucket.length - 1];
+                    int newIndex = 0;
+                    for (final Registration other : bucket) {
+                        if (registration != other) {
+                            newBucket[newIndex++] = other;
+                        }
+                    }
+
+                    if (0 == newBucket.length) {
+                        index.remove(action);
+                    } else {
+                        index.put(action, newBucket);
+                    }
+                }
+            }
+            mActionIndex = index;
+
+            final List<Registration> allRegistrations = new ArrayList<>(
+                    Arrays.asList(mAllRegistrations));
+            allRegistrations.removeAll(registrations);
+            mAllRegistrations = allRegistrations.toArray(
+                    new Registration[allRegistrations.size()]);
+        }
     }
 
     @Override
     @SuppressWarnings("deprecation")
     public void sendStickyBroadcast(final Intent intent) {
-        throw new UnsupportedOperationException();
+        broadcast("sendStickyBroadcast", intent, null, null, true); //$NON-NLS
     }
 
     @Override
@@ -81,53 +377,77 @@ public final class ReceiverContextWrapper extends ContextWrapper {
     public void sendStickyOrderedBroadcast(final Intent intent,
             final BroadcastReceiver resultReceiver, final Handler scheduler, final int initialCode,
             final String initialData, final Bundle initialExtras) {
-        throw new UnsupportedOperationException();
+        broadcastOrdered("sendStickyOrderedBroadcast", intent, null, null, true, //$NON-NLS
+                resultReceiver, scheduler, initialCode, initialData, initialExtras);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void removeStickyBroadcast(final Intent intent) {
+        assertNotNull(intent, "intent"); //$NON-NLS
+
+        final String action = intent.getAction();
+        synchronized (mRegistrationLock) {
+            final Map<StickyKey, StickyIntent> bucket = mStickyIntents.get(action);
+            if (null == bucket) {
+                return;
+            }
+
+            final StickyIntent removed = bucket.remove(new StickyKey(intent));
+            if (bucket.isEmpty()) {
+                mStickyIntents.remove(action);
+                mLatestStickyIntents.remove(action);
+            } else if (mLatestStickyIntents.get(action) == removed) {
+                StickyIntent latest = null;
+                for (final StickyIntent stickyIntent : bucket.values()) {
+                    latest = stickyIntent;
+                }
+                mLatestStickyIntents.put(action, latest);
+            }
+        }
     }
 
     @Override
     public void sendOrderedBroadcast(final Intent intent, final String receiverPermission) {
-        mIntents.add(new SentIntent(intent, receiverPermission, false, true));
+        sendOrderedBroadcast(intent, receiverPermission, null, null, Activity.RESULT_OK, null,
+                null);
     }
 
+    /**
+     * The result receiver is called on {@code scheduler}, or on the main thread if it is null.
+     */
     @Override
     public void sendOrderedBroadcast(final Intent intent, String receiverPermission,
-            final BroadcastReceiver resultReceiver, Handler scheduler, int initialCode,
-            String initialData, Bundle initialExtras) {
-        mIntents.add(new SentIntent(intent, receiverPermission, false, true));
-
-        scheduler.post(new Runnable() {
-
-            private final Intent mIntent = intent;
-
-            @Override
-            public void run() {
-                Log.v("testLibTest", "Runnable running");
-                resultReceiver.onReceive(ReceiverContextWrapper.this, mIntent);
-            }
-        });
+            @Nullable final BroadcastReceiver resultReceiver, @Nullable Handler scheduler,
+            int initialCode, @Nullable String initialData, @Nullable Bundle initialExtras) {
+        broadcastOrdered("sendOrderedBroadcast", intent, receiverPermission, null, //$NON-NLS
+                false, resultReceiver, scheduler, initialCode, initialData, initialExtras);
     }
 
     @Override
     public void sendBroadcastAsUser(Intent intent, UserHandle user) {
-        throw new UnsupportedOperationException();
+        sendBroadcastAsUser(intent, user, null);
     }
 
     @Override
     public void sendBroadcastAsUser(Intent intent, UserHandle user, String receiverPermission) {
-        throw new UnsupportedOperationException();
+        broadcast("sendBroadcastAsUser", intent, receiverPermission, user, //$NON-NLS
+                false);
     }
 
     @Override
     @SuppressWarnings("deprecation")
     public void sendStickyBroadcastAsUser(Intent intent, UserHandle user) {
-        throw new UnsupportedOperationException();
+        broadcast("sendStickyBroadcastAsUser", intent, null, user, true); //$NON-NLS
     }
 
     @Override
     public void sendOrderedBroadcastAsUser(Intent intent, UserHandle user,
             String receiverPermission, BroadcastReceiver resultReceiver, Handler scheduler,
             int initialCode, String initialData, Bundle initialExtras) {
-        throw new UnsupportedOperationException();
+        broadcastOrdered("sendOrderedBroadcastAsUser", intent, receiverPermission, //$NON-NLS
+                user, false, resultReceiver, scheduler, initialCode, initialData,
+                initialExtras);
     }
 
     @Override
@@ -135,22 +455,111 @@ public final class ReceiverContextWrapper extends ContextWrapper {
     public void sendStickyOrderedBroadcastAsUser(Intent intent, UserHandle user,
             BroadcastReceiver resultReceiver, Handler scheduler, int initialCode,
             String initialData, Bundle initialExtras) {
-        throw new UnsupportedOperationException();
+        broadcastOrdered("sendStickyOrderedBroadcastAsUser", intent, null, user, //$NON-NLS
+                true, resultReceiver, scheduler, initialCode, initialData, initialExtras);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void removeStickyBroadcastAsUser(final Intent intent, final UserHandle user) {
+        removeStickyBroadcast(intent);
     }
 
     @Override
     public ComponentName startService(final Intent service) {
-        mIntents.add(new SentIntent(service, null, false, false));
+        /*
+         * A service start is polled like a broadcast, but is not one, so it is left out of the
+         * metrics, the listeners, and the broadcast trace.
+         */
+        enqueue(new SentIntent(service, null, null, false, false));
         return null;
     }
 
+    /**
+     * @return The number of receivers registered through this context.
+     */
+    public int getRegisteredReceiverCount() {
+        synchronized (mRegistrationLock) {
+            return mRegistrations.size();
+        }
+    }
+
+    /**
+     * @return The total number of times a registered receiver has returned from
+     * {@link BroadcastReceiver#onReceive(Context, Intent)}.
+     */
+    public int getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    /**
+     * Blocks until registered receivers have returned from
+     * {@link BroadcastReceiver#onReceive(Context, Intent)} at least {@code count} times in total,
+     * or the timeout elapses.
+     *
+     * @param count   Total number of deliveries to wait for.
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of {@code timeout}.
+     * @return True if the count was reached, false if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitDeliveries(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mDeliveredCount.await(count, timeout, unit);
+    }
+
+    /**
+     * @param traceWriter Writer for each Intent sent through this context, or null to stop
+     *                    tracing.
+     */
+    public void setTraceWriter(@Nullable final ChromeTraceWriter traceWriter) {
+        mTraceWriter = traceWriter;
+    }
+
+    /**
+     * @return Metrics of the broadcasts sent through this context, including those already
+     * polled.  Services started through this context are not counted.
+     */
+    @NonNull
+    public BroadcastMetrics getBroadcastMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Adds a listener that is notified of every broadcast sent through this context, before it
+     * is delivered.  Services started through this context are not reported.
+     *
+     * @param listener Listener to add.
+     */
+    public void addOnBroadcastListener(@NonNull final OnBroadcastListener listener) {
+        assertNotNull(listener, "listener"); //$NON-NLS
+
+        mOnBroadcastListeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     */
+    public void removeOnBroadcastListener(@NonNull final OnBroadcastListener listener) {
+        assertNotNull(listener, "listener"); //$NON-NLS
+
+        mOnBroadcastListeners.remove(listener);
+    }
+
+    /**
+     * @return The Intents sent through this context that haven't been polled yet, oldest first.
+     * Intents sent concurrently with this call are either returned or left for the next poll.
+     */
     @NonNull
     public Collection<SentIntent> getAndClearSentIntents() {
-        try {
-            return new LinkedList<>(mIntents);
-        } finally {
-            mIntents.clear();
+        final LinkedList<SentIntent> intents = new LinkedList<>();
+
+        SentIntent intent;
+        while (null != (intent = mIntents.poll())) {
+            intents.add(intent);
         }
+
+        return intents;
     }
 
     /**
@@ -162,6 +571,585 @@ public final class ReceiverContextWrapper extends ContextWrapper {
         return mIntents.poll();
     }
 
+    /**
+     * @return The timings of receivers of ordered broadcasts, including result receivers, that
+     * haven't been polled yet, in the order the receivers were called.
+     */
+    @NonNull
+    public Collection<ReceiverTiming> getAndClearReceiverTimings() {
+        final LinkedList<ReceiverTiming> timings = new LinkedList<>();
+
+        ReceiverTiming timing;
+        while (null != (timing = mReceiverTimings.poll())) {
+            timings.add(timing);
+        }
+
+        return timings;
+    }
+
+    /**
+     * @return The total number of Intents sent through this context, including those already
+     * polled.
+     */
+    public int getSentIntentCount() {
+        return mSentCount.get();
+    }
+
+    /**
+     * Blocks until at least {@code count} Intents in total have been sent through this context, or
+     * the timeout elapses.  The caller is woken as soon as the Intent that reaches {@code count}
+     * has been recorded, so it is already available from {@link #pollIntent()}.
+     *
+     * @param count   Total number of Intents to wait for, including those already polled.
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of {@code timeout}.
+     * @return True if the count was reached, false if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitIntents(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mSentCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Makes {@code sentIntent} available to {@link #pollIntent()} and wakes any waiters.
+     */
+    private void enqueue(@NonNull final SentIntent sentIntent) {
+        mIntents.add(sentIntent);
+        mSentCount.increment();
+    }
+
+    /**
+     * Records a broadcast in the metrics and the trace, notifies the listeners, and enqueues it.
+     */
+    private void record(@NonNull final String method, @NonNull final SentIntent sentIntent) {
+        mMetrics.record(sentIntent.mIntent, sentIntent.mSentNanos);
+        for (final OnBroadcastListener listener : mOnBroadcastListeners) {
+            listener.onBroadcast(sentIntent);
+        }
+
+        enqueue(sentIntent);
+
+        final ChromeTraceWriter traceWriter = mTraceWriter;
+        if (null != traceWriter) {
+            final Map<String, Object> args = new LinkedHashMap<>();
+            args.put("intent", sentIntent.mIntent); //$NON-NLS
+            if (null != sentIntent.mPermission) {
+                args.put("permission", sentIntent.mPermission); //$NON-NLS
+            }
+            if (null != sentIntent.mUser) {
+                args.put("user", sentIntent.mUser); //$NON-NLS
+            }
+
+            traceWriter.writeInstant(method, TRACE_CATEGORY, sentIntent.mSentNanos, args);
+        }
+    }
+
+    /**
+     * Records and delivers a normal broadcast.
+     */
+    private void broadcast(@NonNull final String method, @NonNull final Intent intent,
+            @Nullable final String receiverPermission, @Nullable final UserHandle user,
+            final boolean isSticky) {
+        record(method, new SentIntent(intent, receiverPermission, user, isSticky, false));
+
+        for (final Registration registration : findRegistrations(intent, isSticky)) {
+            post(registration, new Intent(intent), false);
+        }
+    }
+
+    /**
+     * Records an ordered broadcast and starts calling its receivers.
+     */
+    private void broadcastOrdered(@NonNull final String method, @NonNull final Intent intent,
+            @Nullable final String receiverPermission, @Nullable final UserHandle user,
+            final boolean isSticky, @Nullable final BroadcastReceiver resultReceiver,
+            @Nullable final Handler scheduler, final int initialCode,
+            @Nullable final String initialData, @Nullable final Bundle initialExtras) {
+        record(method, new SentIntent(intent, receiverPermission, user, isSticky, true));
+
+        final List<Registration> registrations = findRegistrations(intent, isSticky);
+        final Registration[] chain = registrations.toArray(new Registration[registrations.size()]);
+        // Stable, so receivers of equal priority are called in the order they registered
+        Arrays.sort(chain, new Comparator<Registration>() {
+            @Override
+            public int compare(final Registration lhs, final Registration rhs) {
+                final int lhsPriority = lhs.mFilter.getPriority();
+                final int rhsPriority = rhs.mFilter.getPriority();
+
+                return lhsPriority > rhsPriority ? -1 : (lhsPriority == rhsPriority ? 0 : 1);
+            }
+        });
+
+        new OrderedBroadcast(new Intent(intent), chain, resultReceiver,
+                null == scheduler ? mMainHandler : scheduler, initialCode, initialData,
+                initialExtras).postNext();
+    }
+
+    /**
+     * @param isSticky Whether to also store {@code intent} as sticky.  This is done together with
+     *                 finding the registrations, so that a receiver registering concurrently
+     *                 receives {@code intent} exactly once.
+     * @return The registrations whose filter matches {@code intent}, in the order they were
+     * made.
+     */
+    @NonNull
+    private List<Registration> findRegistrations(@NonNull final Intent intent,
+            final boolean isSticky) {
+        if (!isSticky) {
+            return findRegistrations(intent);
+        }
+
+        assertNotNull(intent, "intent"); //$NON-NLS
+
+        final String action = intent.getAction();
+        synchronized (mRegistrationLock) {
+            Map<StickyKey, StickyIntent> bucket = mStickyIntents.get(action);
+            if (null == bucket) {
+                bucket = new LinkedHashMap<>();
+                mStickyIntents.put(action, bucket);
+            }
+
+            final StickyKey key = new StickyKey(intent);
+            final StickyIntent stickyIntent = new StickyIntent(intent, mNextStickySequence++);
+
+            // Removing first moves a replaced Intent to the end, keeping the bucket in send order
+            bucket.remove(key);
+            bucket.put(key, stickyIntent);
+            mLatestStickyIntents.put(action, stickyIntent);
+
+            return findRegistrations(intent);
+        }
+    }
+
+    /**
+     * @return The most recently sent sticky Intent that matches {@code filter}, or null if there
+     * is none.
+     */
+    @GuardedBy("mRegistrationLock")
+    @Nullable
+    private StickyIntent findLatestStickyIntent(@NonNull final IntentFilter filter) {
+        final ContentResolver resolver = getContentResolver();
+        StickyIntent latest = null;
+        for (final String action : getActions(filter)) {
+            StickyIntent candidate = mLatestStickyIntents.get(action);
+            if (null == candidate) {
+                continue;
+            }
+
+            if (0 > filter.match(resolver, candidate.mIntent, false, null)) {
+                // An older sticky Intent of the action may still match
+                candidate = null;
+                for (final StickyIntent stickyIntent : mStickyIntents.get(action).values()) {
+                    if (0 <= filter.match(resolver, stickyIntent.mIntent, false, null)) {
+                        candidate = stickyIntent;
+                    }
+                }
+            }
+
+            if (null != candidate && (null == latest || candidate.mSequence > latest.mSequence)) {
+                latest = candidate;
+            }
+        }
+
+        return latest;
+    }
+
+    /**
+     * @return The sticky Intents that match {@code filter}, oldest first.
+     */
+    @GuardedBy("mRegistrationLock")
+    @NonNull
+    private List<StickyIntent> findStickyIntents(@NonNull final IntentFilter filter) {
+        final ContentResolver resolver = getContentResolver();
+        final List<StickyIntent> stickyIntents = new ArrayList<>();
+        final List<String> actions = getActions(filter);
+        for (final String action : actions) {
+            final Map<StickyKey, StickyIntent> bucket = mStickyIntents.get(action);
+            if (null == bucket) {
+                continue;
+            }
+
+            for (final StickyIntent stickyIntent : bucket.values()) {
+                if (0 <= filter.match(resolver, stickyIntent.mIntent, false, null)) {
+                    stickyIntents.add(stickyIntent);
+                }
+            }
+        }
+
+        // Each bucket is already in send order, so only Intents of several actions need sorting
+        if (1 < actions.size() && 1 < stickyIntents.size()) {
+            Collections.sort(stickyIntents, new Comparator<StickyIntent>() {
+                @Override
+                public int compare(final StickyIntent lhs, final StickyIntent rhs) {
+                    return lhs.mSequence < rhs.mSequence ? -1
+                            : (lhs.mSequence == rhs.mSequence ? 0 : 1);
+                }
+            });
+        }
+
+        return stickyIntents;
+    }
+
+    /**
+     * @return The registrations whose filter matches {@code intent}, in the order they were
+     * made.
+     */
+    @NonNull
+    private List<Registration> findRegistrations(@NonNull final Intent intent) {
+        if (null != intent.getComponent()) {
+            // Explicit broadcasts only reach manifest receivers
+            return Collections.emptyList();
+        }
+
+        // IntentFilter.match() only checks the action of an Intent that has one, so an Intent
+        // without an action can match any filter
+        final String action = intent.getAction();
+        final Registration[] candidates = null == action ? mAllRegistrations
+                : mActionIndex.get(action);
+        if (null == candidates) {
+            return Collections.emptyList();
+        }
+
+        final ContentResolver resolver = getContentResolver();
+        final List<Registration> registrations = new ArrayList<>(candidates.length);
+        for (final Registration registration : candidates) {
+            if (0 <= registration.mFilter.match(resolver, intent, false, null)) {
+                registrations.add(registration);
+            }
+        }
+
+        return registrations;
+    }
+
+    /**
+     * @param isInitialSticky Whether {@code intent} is a sticky Intent being delivered because
+     *                        the receiver just registered.
+     */
+    private void post(@NonNull final Registration registration, @NonNull final Intent intent,
+            final boolean isInitialSticky) {
+        registration.mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (registration.mIsRegistered) {
+                    receive(registration.mReceiver, intent, 0, null, null, false,
+                            isInitialSticky, false);
+                    mDeliveredCount.increment();
+                }
+            }
+        });
+    }
+
+    /**
+     * Calls {@code receiver} with a pending result holding the given result.
+     *
+     * @param isTimed Whether to record a {@link ReceiverTiming} for the call.
+     * @return The pending result, or null if pending results aren't supported.
+     */
+    @Nullable
+    private BroadcastReceiver.PendingResult receive(@NonNull final BroadcastReceiver receiver,
+            @NonNull final Intent intent, final int resultCode, @Nullable final String resultData,
+            @Nullable final Bundle resultExtras, final boolean isOrdered,
+            final boolean isInitialSticky, final boolean isTimed) {
+        final BroadcastReceiver.PendingResult pendingResult = PendingResults.set(receiver,
+                resultCode, resultData, resultExtras, isOrdered, isInitialSticky);
+
+        final long startNanos = System.nanoTime();
+        try {
+            receiver.onReceive(this, intent);
+        } finally {
+            final long durationNanos = System.nanoTime() - startNanos;
+            PendingResults.clear(receiver);
+
+            if (isTimed) {
+                mReceiverTimings.add(new ReceiverTiming(receiver, intent, startNanos,
+                        durationNanos));
+            }
+
+            final ChromeTraceWriter traceWriter = mTraceWriter;
+            if (null != traceWriter) {
+                traceWriter.writeComplete(receiver.getClass().getName(), TRACE_CATEGORY,
+                        startNanos, durationNanos, Collections.singletonMap("action", //$NON-NLS
+                                intent.getAction()));
+            }
+        }
+
+        return pendingResult;
+    }
+
+    /**
+     * @return The actions of {@code filter}, or a single null if it has none.
+     */
+    @NonNull
+    private static List<String> getActions(@NonNull final IntentFilter filter) {
+        final int count = filter.countActions();
+        if (0 == count) {
+            return Collections.<String>singletonList(null);
+        }
+
+        final List<String> actions = new ArrayList<>(count);
+        for (int x = 0; x < count; x++) {
+            actions.add(filter.getAction(x));
+        }
+
+        return actions;
+    }
+
+    /**
+     * An ordered broadcast in progress.  Each step runs on the Handler of its receiver and posts
+     * the next step, so steps never overlap and posting publishes the result to the next step.
+     */
+    @NotThreadSafe
+    private final class OrderedBroadcast implements Runnable {
+
+        @NonNull
+        private final Intent mIntent;
+
+        /**
+         * Registrations in the order they are called.
+         */
+        @NonNull
+        private final Registration[] mChain;
+
+        @Nullable
+        private final BroadcastReceiver mResultReceiver;
+
+        @NonNull
+        private final Handler mResultHandler;
+
+        /**
+         * Index of the next registration to call, or the length of {@link #mChain} when only the
+         * result receiver remains.
+         */
+        private int mNextIndex = 0;
+
+        private int mResultCode;
+
+        @Nullable
+        private String mResultData;
+
+        @Nullable
+        private Bundle mResultExtras;
+
+        private OrderedBroadcast(@NonNull final Intent intent,
+                @NonNull final Registration[] chain,
+                @Nullable final BroadcastReceiver resultReceiver,
+                @NonNull final Handler resultHandler, final int initialCode,
+                @Nullable final String initialData, @Nullable final Bundle initialExtras) {
+            mIntent = intent;
+            mChain = chain;
+            mResultReceiver = resultReceiver;
+            mResultHandler = resultHandler;
+            mResultCode = initialCode;
+            mResultData = initialData;
+            mResultExtras = initialExtras;
+        }
+
+        /**
+         * Posts the next step, if any.
+         */
+        private void postNext() {
+            if (mNextIndex < mChain.length) {
+                mChain[mNextIndex].mHandler.post(this);
+            } else if (mNextIndex == mChain.length && null != mResultReceiver) {
+                mResultHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mNextIndex < mChain.length) {
+                final Registration registration = mChain[mNextIndex++];
+                if (registration.mIsRegistered) {
+                    final BroadcastReceiver.PendingResult pendingResult = receive(
+                            registration.mReceiver, new Intent(mIntent), mResultCode,
+                            mResultData, mResultExtras, true, false, true);
+                    mDeliveredCount.increment();
+
+                    if (null != pendingResult) {
+                        mResultCode = pendingResult.getResultCode();
+                        mResultData = pendingResult.getResultData();
+                        mResultExtras = pendingResult.getResultExtras(false);
+
+                        if (pendingResult.getAbortBroadcast()) {
+                            mNextIndex = mChain.length;
+                        }
+                    }
+                }
+            } else {
+                mNextIndex++;
+                // The system also calls the result receiver as a non-ordered broadcast
+                receive(mResultReceiver, new Intent(mIntent), mResultCode, mResultData,
+                        mResultExtras, false, false, true);
+            }
+
+            postNext();
+        }
+    }
+
+    /**
+     * Key of a sticky Intent, equal to the key of any Intent that
+     * {@link Intent#filterEquals(Intent) filter equals} it.
+     */
+    @Immutable
+    private static final class StickyKey {
+
+        @NonNull
+        private final Intent mIntent;
+
+        private final int mHashCode;
+
+        private StickyKey(@NonNull final Intent intent) {
+            mIntent = new Intent(intent);
+            mHashCode = intent.filterHashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (null == o || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final StickyKey other = (StickyKey) o;
+
+            return mHashCode == other.mHashCode && mIntent.filterEquals(other.mIntent);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * A sticky Intent along with the order it was sent in.
+     */
+    @Immutable
+    private static final class StickyIntent {
+
+        @NonNull
+        private final Intent mIntent;
+
+        private final long mSequence;
+
+        private StickyIntent(@NonNull final Intent intent, final long sequence) {
+            mIntent = new Intent(intent);
+            mSequence = sequence;
+        }
+    }
+
+    /**
+     * A receiver registered with one filter.
+     */
+    @ThreadSafe
+    private static final class Registration {
+
+        @NonNull
+        private final BroadcastReceiver mReceiver;
+
+        @NonNull
+        private final IntentFilter mFilter;
+
+        @NonNull
+        private final Handler mHandler;
+
+        /**
+         * Cleared when the receiver is unregistered, so that broadcasts already posted to its
+         * Handler are dropped.
+         */
+        private volatile boolean mIsRegistered = true;
+
+        private Registration(@NonNull final BroadcastReceiver receiver,
+                @NonNull final IntentFilter filter, @NonNull final Handler handler) {
+            mReceiver = receiver;
+            mFilter = filter;
+            mHandler = handler;
+        }
+    }
+
+    /**
+     * Time that a receiver of an ordered broadcast spent in
+     * {@link BroadcastReceiver#onReceive(Context, Intent)}.
+     */
+    @Immutable
+    public static final class ReceiverTiming {
+
+        @NonNull
+        private final BroadcastReceiver mReceiver;
+
+        @NonNull
+        private final Intent mIntent;
+
+        private final long mStartNanos;
+
+        private final long mDurationNanos;
+
+        private ReceiverTiming(@NonNull final BroadcastReceiver receiver,
+                @NonNull final Intent intent, final long startNanos, final long durationNanos) {
+            mReceiver = receiver;
+            mIntent = new Intent(intent);
+            mStartNanos = startNanos;
+            mDurationNanos = durationNanos;
+        }
+
+        /**
+         * @return The receiver that was called.
+         */
+        @NonNull
+        public BroadcastReceiver getReceiver() {
+            return mReceiver;
+        }
+
+        /**
+         * @return The Intent the receiver was called with.  Note that this method always returns
+         * a new copy, to prevent exposing the internals of this class.
+         */
+        @NonNull
+        public Intent getIntent() {
+            return new Intent(mIntent);
+        }
+
+        /**
+         * @return The time the receiver was called, from {@link System#nanoTime()}.
+         */
+        public long getStartNanos() {
+            return mStartNanos;
+        }
+
+        /**
+         * @return The time the receiver took to return, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return mDurationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ReceiverTiming{" //$NON-NLS
+                    + "mReceiver=" + mReceiver //$NON-NLS
+                    + ", mIntent=" + mIntent //$NON-NLS
+                    + ", mDurationNanos=" + mDurationNanos //$NON-NLS
+                    + '}';
+        }
+    }
+
+    /**
+     * Notified of every broadcast sent through a {@link ReceiverContextWrapper}, on the sending
+     * thread.  Listeners may be invoked concurrently from multiple threads.
+     *
+     * @see #addOnBroadcastListener(OnBroadcastListener)
+     */
+    public interface OnBroadcastListener {
+
+        /**
+         * @param sentIntent Intent that was sent.
+         */
+        void onBroadcast(@NonNull final SentIntent sentIntent);
+    }
+
     /**
      * Represents an Intent that was sent through
      */
@@ -174,20 +1162,28 @@ public final class ReceiverContextWrapper extends ContextWrapper {
         @Nullable
         private final String mPermission;
 
+        @Nullable
+        private final UserHandle mUser;
+
         private final boolean mIsSticky;
 
         private final boolean mIsOrdered;
 
+        private final long mSentNanos;
+
         private SentIntent(@NonNull final Intent intent, @Nullable final String permission,
-                final boolean isSticky, final boolean isOrdered) {
+                @Nullable final UserHandle user, final boolean isSticky,
+                final boolean isOrdered) {
             if (null == intent) {
                 throw new AssertionError();
             }
 
             mIntent = new Intent(intent);
             mPermission = permission;
+            mUser = user;
             mIsSticky = isSticky;
             mIsOrdered = isOrdered;
+            mSentNanos = System.nanoTime();
         }
 
         /**
@@ -200,6 +1196,15 @@ public final class ReceiverContextWrapper extends ContextWrapper {
             return new Intent(mIntent);
         }
 
+        /**
+         * @return The action of the Intent, or null if it has none.  Unlike
+         * {@link #getIntent()}, this doesn't copy the Intent.
+         */
+        @Nullable
+        public String getAction() {
+            return mIntent.getAction();
+        }
+
         /**
          * @return The permission enforced on the Intent or null if there was no permission.
          */
@@ -208,6 +1213,14 @@ public final class ReceiverContextWrapper extends ContextWrapper {
             return mPermission;
         }
 
+        /**
+         * @return The user the Intent was sent to, or null if it was sent to the current user.
+         */
+        @Nullable
+        public UserHandle getUser() {
+            return mUser;
+        }
+
         /**
          * @return True if the Intent is sticky.
          */
@@ -221,5 +1234,12 @@ public final class ReceiverContextWrapper extends ContextWrapper {
         public boolean getIsOrdered() {
             return mIsOrdered;
         }
+
+        /**
+         * @return The time the Intent was sent, from {@link System#nanoTime()}.
+         */
+        public long getSentNanos() {
+            return mSentNanos;
+        }
     }
 }
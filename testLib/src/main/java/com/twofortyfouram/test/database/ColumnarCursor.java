@@ -0,0 +1,522 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.database;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * An in-memory Cursor whose values are stored in primitive column arrays, rather than boxed into
+ * an {@code Object[]} per row like {@link android.database.MatrixCursor}.  This substantially
+ * reduces the heap required for large results, and navigating and reading integer or floating
+ * point columns does not allocate.
+ * <p>
+ * Type conversions follow {@link android.database.MatrixCursor}, so this class can be used as a
+ * replacement for it.  Instances are created with {@link Builder}.
+ */
+@NotThreadSafe
+public final class ColumnarCursor extends AbstractCursor {
+
+    @NonNull
+    private final String[] mColumnNames;
+
+    /**
+     * Type of each column, as one of {@link Cursor#FIELD_TYPE_INTEGER}, {@link
+     * Cursor#FIELD_TYPE_FLOAT}, {@link Cursor#FIELD_TYPE_STRING}, or {@link
+     * Cursor#FIELD_TYPE_BLOB}.
+     */
+    @NonNull
+    private final int[] mColumnTypes;
+
+    /**
+     * Values for each column.  Each element is a {@code long[]}, {@code double[]}, {@code
+     * String[]}, or {@code byte[][]} depending on {@link #mColumnTypes}.
+     */
+    @NonNull
+    private final Object[] mColumnValues;
+
+    /**
+     * Null flags for integer and floating point columns.  Elements are null for columns that have
+     * no null values.
+     */
+    @NonNull
+    private final boolean[][] mColumnNulls;
+
+    private final int mCount;
+
+    private ColumnarCursor(@NonNull final String[] columnNames, @NonNull final int[] columnTypes,
+            @NonNull final Object[] columnValues, @NonNull final boolean[][] columnNulls,
+            final int count) {
+        mColumnNames = columnNames;
+        mColumnTypes = columnTypes;
+        mColumnValues = columnValues;
+        mColumnNulls = columnNulls;
+        mCount = count;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public int getType(final int column) {
+        checkPosition();
+
+        if (isNullInternal(column)) {
+            return FIELD_TYPE_NULL;
+        }
+
+        return mColumnTypes[column];
+    }
+
+    @Override
+    public boolean isNull(final int column) {
+        checkPosition();
+
+        return isNullInternal(column);
+    }
+
+    @Override
+    public String getString(final int column) {
+        checkPosition();
+
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER: {
+                return isNullInternal(column) ? null
+                        : Long.toString(((long[]) mColumnValues[column])[mPos]);
+            }
+            case FIELD_TYPE_FLOAT: {
+                return isNullInternal(column) ? null
+                        : Double.toString(((double[]) mColumnValues[column])[mPos]);
+            }
+            case FIELD_TYPE_STRING: {
+                return ((String[]) mColumnValues[column])[mPos];
+            }
+            default: {
+                if (isNullInternal(column)) {
+                    return null;
+                }
+                throw new SQLiteException("Unable to convert BLOB to string"); //$NON-NLS
+            }
+        }
+    }
+
+    @Override
+    public short getShort(final int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(final int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(final int column) {
+        checkPosition();
+
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER: {
+                // The value of a null row may be stale, if it was set before setNull()
+                return isNullInternal(column) ? 0 : ((long[]) mColumnValues[column])[mPos];
+            }
+            case FIELD_TYPE_FLOAT: {
+                return isNullInternal(column) ? 0
+                        : (long) ((double[]) mColumnValues[column])[mPos];
+            }
+            case FIELD_TYPE_STRING: {
+                final String value = ((String[]) mColumnValues[column])[mPos];
+                return null == value ? 0 : Long.parseLong(value);
+            }
+            default: {
+                if (isNullInternal(column)) {
+                    return 0;
+                }
+                throw new SQLiteException("Unable to convert BLOB to long"); //$NON-NLS
+            }
+        }
+    }
+
+    @Override
+    public float getFloat(final int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(final int column) {
+        checkPosition();
+
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_INTEGER: {
+                return isNullInternal(column) ? 0 : ((long[]) mColumnValues[column])[mPos];
+            }
+            case FIELD_TYPE_FLOAT: {
+                return isNullInternal(column) ? 0 : ((double[]) mColumnValues[column])[mPos];
+            }
+            case FIELD_TYPE_STRING: {
+                final String value = ((String[]) mColumnValues[column])[mPos];
+                return null == value ? 0 : Double.parseDouble(value);
+            }
+            default: {
+                if (isNullInternal(column)) {
+                    return 0;
+                }
+                throw new SQLiteException("Unable to convert BLOB to double"); //$NON-NLS
+            }
+        }
+    }
+
+    @Override
+    public byte[] getBlob(final int column) {
+        checkPosition();
+
+        if (FIELD_TYPE_BLOB == mColumnTypes[column]) {
+            return ((byte[][]) mColumnValues[column])[mPos];
+        }
+
+        if (isNullInternal(column)) {
+            return null;
+        }
+
+        throw new SQLiteException("Unable to convert value to BLOB"); //$NON-NLS
+    }
+
+    private boolean isNullInternal(final int column) {
+        switch (mColumnTypes[column]) {
+            case FIELD_TYPE_STRING: {
+                return null == ((String[]) mColumnValues[column])[mPos];
+            }
+            case FIELD_TYPE_BLOB: {
+                return null == ((byte[][]) mColumnValues[column])[mPos];
+            }
+            default: {
+                final boolean[] nulls = mColumnNulls[column];
+                return null != nulls && nulls[mPos];
+            }
+        }
+    }
+
+    /**
+     * Builds a {@link ColumnarCursor}.  Columns are declared first, and then rows are appended
+     * one at a time with {@link #newRow()} followed by the setters for each column.
+     * <p>
+     * Integer and floating point values default to 0, and string and blob values default to
+     * null, unless set for the row.
+     */
+    @NotThreadSafe
+    public static final class Builder {
+
+        private static final int DEFAULT_CAPACITY = 16;
+
+        @NonNull
+        private final ArrayList<String> mColumnNames = new ArrayList<>();
+
+        @NonNull
+        private int[] mColumnTypes = new int[0];
+
+        @NonNull
+        private Object[] mColumnValues = new Object[0];
+
+        @NonNull
+        private boolean[][] mColumnNulls = new boolean[0][];
+
+        private int mCapacity;
+
+        private int mCount = 0;
+
+        private boolean mIsBuilt = false;
+
+        public Builder() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * @param expectedRowCount Expected number of rows, which avoids resizing the column arrays
+         *                         as rows are added.
+         */
+        public Builder(final int expectedRowCount) {
+            if (0 > expectedRowCount) {
+                throw new IllegalArgumentException("expectedRowCount must be >= 0"); //$NON-NLS
+            }
+
+            mCapacity = expectedRowCount;
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addLongColumn(@NonNull final String name) {
+            return addColumn(name, FIELD_TYPE_INTEGER, new long[mCapacity]);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addDoubleColumn(@NonNull final String name) {
+            return addColumn(name, FIELD_TYPE_FLOAT, new double[mCapacity]);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addStringColumn(@NonNull final String name) {
+            return addColumn(name, FIELD_TYPE_STRING, new String[mCapacity]);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addBlobColumn(@NonNull final String name) {
+            return addColumn(name, FIELD_TYPE_BLOB, new byte[mCapacity][]);
+        }
+
+        /**
+         * Appends a new row, which subsequent setters apply to.
+         *
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder newRow() {
+            assertNotBuilt();
+
+            if (mCount == mCapacity) {
+                grow();
+            }
+
+            mCount++;
+
+            return this;
+        }
+
+        /**
+         * @param column Index of an integer column.
+         * @param value  Value for the current row.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder setLong(final int column, final long value) {
+            assertColumnType(column, FIELD_TYPE_INTEGER);
+
+            ((long[]) mColumnValues[column])[mCount - 1] = value;
+
+            return this;
+        }
+
+        /**
+         * @param column Index of a floating point column.
+         * @param value  Value for the current row.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder setDouble(final int column, final double value) {
+            assertColumnType(column, FIELD_TYPE_FLOAT);
+
+            ((double[]) mColumnValues[column])[mCount - 1] = value;
+
+            return this;
+        }
+
+        /**
+         * @param column Index of a string column.
+         * @param value  Value for the current row.  May be null.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder setString(final int column, @Nullable final String value) {
+            assertColumnType(column, FIELD_TYPE_STRING);
+
+            ((String[]) mColumnValues[column])[mCount - 1] = value;
+
+            return this;
+        }
+
+        /**
+         * @param column Index of a blob column.
+         * @param value  Value for the current row.  May be null.  Note that the array is not
+         *               copied.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder setBlob(final int column, @Nullable final byte[] value) {
+            assertColumnType(column, FIELD_TYPE_BLOB);
+
+            ((byte[][]) mColumnValues[column])[mCount - 1] = value;
+
+            return this;
+        }
+
+        /**
+         * @param column Index of a column of any type.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder setNull(final int column) {
+            assertCurrentRow(column);
+
+            switch (mColumnTypes[column]) {
+                case FIELD_TYPE_STRING: {
+                    ((String[]) mColumnValues[column])[mCount - 1] = null;
+                    break;
+                }
+                case FIELD_TYPE_BLOB: {
+                    ((byte[][]) mColumnValues[column])[mCount - 1] = null;
+                    break;
+                }
+                default: {
+                    if (null == mColumnNulls[column]) {
+                        mColumnNulls[column] = new boolean[mCapacity];
+                    }
+                    mColumnNulls[column][mCount - 1] = true;
+                    break;
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Builds the cursor.  The builder cannot be used afterwards, because the cursor takes
+         * ownership of the column arrays without copying them.
+         *
+         * @return A new cursor.
+         */
+        @NonNull
+        public ColumnarCursor build() {
+            assertNotBuilt();
+
+            mIsBuilt = true;
+
+            return new ColumnarCursor(mColumnNames.toArray(new String[mColumnNames.size()]),
+                    mColumnTypes, mColumnValues, mColumnNulls, mCount);
+        }
+
+        @NonNull
+        private Builder addColumn(@NonNull final String name, final int type,
+                @NonNull final Object values) {
+            assertNotNull(name, "name"); //$NON-NLS
+            assertNotBuilt();
+
+            if (0 != mCount) {
+                throw new IllegalStateException(
+                        "Columns must be added before rows"); //$NON-NLS
+            }
+
+            final int index = mColumnNames.size();
+            mColumnNames.add(name);
+            mColumnTypes = Arrays.copyOf(mColumnTypes, index + 1);
+            mColumnTypes[index] = type;
+            mColumnValues = Arrays.copyOf(mColumnValues, index + 1);
+            mColumnValues[index] = values;
+            mColumnNulls = Arrays.copyOf(mColumnNulls, index + 1);
+
+            return this;
+        }
+
+        private void grow() {
+            final int newCapacity = Math.max(DEFAULT_CAPACITY, mCapacity + (mCapacity >> 1));
+
+            for (int x = 0; x < mColumnValues.length; x++) {
+                switch (mColumnTypes[x]) {
+                    case FIELD_TYPE_INTEGER: {
+                        mColumnValues[x] = Arrays.copyOf((long[]) mColumnValues[x], newCapacity);
+                        break;
+                    }
+                    case FIELD_TYPE_FLOAT: {
+                        mColumnValues[x] = Arrays
+                                .copyOf((double[]) mColumnValues[x], newCapacity);
+                        break;
+                    }
+                    case FIELD_TYPE_STRING: {
+                        mColumnValues[x] = Arrays
+                                .copyOf((String[]) mColumnValues[x], newCapacity);
+                        break;
+                    }
+                    default: {
+                        mColumnValues[x] = Arrays
+                                .copyOf((byte[][]) mColumnValues[x], newCapacity);
+                        break;
+                    }
+                }
+
+                if (null != mColumnNulls[x]) {
+                    mColumnNulls[x] = Arrays.copyOf(mColumnNulls[x], newCapacity);
+                }
+            }
+
+            mCapacity = newCapacity;
+        }
+
+        private void assertColumnType(final int column, final int type) {
+            assertCurrentRow(column);
+
+            if (type != mColumnTypes[column]) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Column %d has type %d, not %d", column, mColumnTypes[column],
+                        type)); //$NON-NLS
+            }
+
+            final boolean[] nulls = mColumnNulls[column];
+            if (null != nulls) {
+                nulls[mCount - 1] = false;
+            }
+        }
+
+        private void assertCurrentRow(final int column) {
+            assertNotBuilt();
+
+            if (0 == mCount) {
+                throw new IllegalStateException("Call newRow() first"); //$NON-NLS
+            }
+
+            if (0 > column || mColumnTypes.length <= column) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Column %d does not exist", column)); //$NON-NLS
+            }
+        }
+
+        private void assertNotBuilt() {
+            if (mIsBuilt) {
+                throw new IllegalStateException("build() was already called"); //$NON-NLS
+            }
+        }
+    }
+}
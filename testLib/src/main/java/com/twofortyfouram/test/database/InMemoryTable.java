@@ -0,0 +1,954 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatatypeMismatchException;
+import android.database.sqlite.SQLiteException;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.database.Selection.And;
+import com.twofortyfouram.test.database.Selection.Comparison;
+import com.twofortyfouram.test.database.Selection.In;
+import com.twofortyfouram.test.database.Selection.Predicate;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * An in-memory table that supports the query, insert, update, and delete operations of a
+ * content provider, without the overhead of a SQLite database file.  Instances are created with
+ * {@link Builder}.
+ * <p>
+ * Every table has an integer {@link BaseColumns#_ID} column that is assigned automatically on
+ * insert if not provided, and rows are returned in the order of their ids unless a sort order is
+ * given.  Selections support comparisons of a column against a value, {@code IS [NOT] NULL},
+ * {@code [NOT] IN}, {@code [NOT] LIKE}, {@code AND}, {@code OR}, {@code NOT}, and parentheses,
+ * with values given as {@code ?} placeholders or literals.  Sort orders support one or more
+ * columns with {@code ASC} or {@code DESC} followed by an optional {@code LIMIT} and
+ * {@code OFFSET}.  Values are converted to the type of their column as SQLite
+ * does, and errors are reported with the same exceptions SQLite would throw.  As in SQLite, a
+ * value that doesn't convert, such as the text {@code "abc"} in an integer column, is stored with
+ * its own type, except in the {@code _id} column, which only holds integers.  Blobs are copied
+ * when stored and when queried.
+ * <p>
+ * Selections use the {@code _id} column and any columns declared with
+ * {@link Builder#addHashIndex(String)} or {@link Builder#addSortedIndex(String)} to avoid
+ * scanning every row.  An index is used when the selection is, or is an {@code AND} containing,
+ * an equality or {@code IN} comparison on an indexed column, or a range comparison on a sorted
+ * index.  When several comparisons could use an index, the one matching the fewest rows is
+ * chosen.
+ * <p>
+ * Reads may proceed concurrently, while writes are exclusive.
+ */
+@ThreadSafe
+public final class InMemoryTable {
+
+    /**
+     * Index of the {@link BaseColumns#_ID} column, which is always first.
+     */
+    private static final int ID_COLUMN = 0;
+
+    @NonNull
+    private final String[] mColumnNames;
+
+    @NonNull
+    private final int[] mColumnTypes;
+
+    /**
+     * Map of lowercase column name to column index, as column names are case-insensitive.
+     */
+    @NonNull
+    private final Map<String, Integer> mColumnIndexes;
+
+    // Indexed by column.  Elements are null for columns without an index.
+    @NonNull
+    private final Index[] mIndexes;
+
+    @NonNull
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    // Keyed by id
+    @GuardedBy("mLock")
+    @NonNull
+    private final TreeMap<Long, Object[]> mRows = new TreeMap<>();
+
+    @GuardedBy("mLock")
+    private long mLastId = 0;
+
+    private InMemoryTable(@NonNull final String[] columnNames, @NonNull final int[] columnTypes,
+            @NonNull final Map<String, Integer> columnIndexes, @NonNull final Index[] indexes) {
+        mColumnNames = columnNames;
+        mColumnTypes = columnTypes;
+        mColumnIndexes = columnIndexes;
+        mIndexes = indexes;
+    }
+
+    /**
+     * @param projection    Columns to return, or null for all columns.
+     * @param selection     WHERE clause without the {@code WHERE}.  May be null.
+     * @param selectionArgs Values for the {@code ?} placeholders in {@code selection}.  May be
+     *                      null.
+     * @param sortOrder     ORDER BY clause without the {@code ORDER BY}.  May be null.
+     * @return A cursor over a snapshot of the matching rows.
+     */
+    @NonNull
+    public Cursor query(@Nullable final String[] projection, @Nullable final String selection,
+            @Nullable final String[] selectionArgs, @Nullable final String sortOrder) {
+        final int[] projectionColumns = resolveProjection(projection);
+        final Predicate predicate = Selection.parse(selection, selectionArgs, mColumnIndexes,
+                mColumnTypes);
+        final SortOrder order = SortOrder.parse(sortOrder, mColumnIndexes);
+
+        mLock.readLock().lock();
+        try {
+            final List<Object[]> rows = findRows(predicate);
+
+            if (null != order.getComparator()) {
+                // The sort is stable, so ties remain in the order of their ids
+                Collections.sort(rows, order.getComparator());
+            }
+
+            final int start = Math.min(rows.size(), order.getOffset());
+            final int end = (int) Math.min(rows.size(), (long) start + order.getLimit());
+
+            return newCursor(projection, projectionColumns, rows.subList(start, end));
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param values Values of the new row.  May be null for a row of nulls.
+     * @return The id of the new row.
+     * @throws SQLiteConstraintException       If a row with the id in {@code values} already
+     *                                         exists.
+     * @throws SQLiteDatatypeMismatchException If the id in {@code values} isn't an integer.
+     */
+    public long insert(@Nullable final ContentValues values) {
+        final Object[] row = new Object[mColumnNames.length];
+
+        if (null != values) {
+            for (final Map.Entry<String, Object> entry : values.valueSet()) {
+                final int column = resolveColumn(entry.getKey());
+                row[column] = toStorageClass(column, entry.getValue());
+            }
+        }
+
+        mLock.writeLock().lock();
+        try {
+            final long id;
+            if (null == row[ID_COLUMN]) {
+                id = mLastId + 1;
+                row[ID_COLUMN] = id;
+            } else {
+                id = (Long) row[ID_COLUMN];
+                if (mRows.containsKey(id)) {
+                    throw new SQLiteConstraintException(String.format(Locale.US,
+                            "UNIQUE constraint failed: %s", BaseColumns._ID)); //$NON-NLS
+                }
+            }
+
+            mLastId = Math.max(mLastId, id);
+            mRows.put(id, row);
+
+            for (int x = 0; x < mIndexes.length; x++) {
+                if (null != mIndexes[x] && null != row[x]) {
+                    mIndexes[x].add(row[x], id);
+                }
+            }
+
+            return id;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param values        Values to set.
+     * @param selection     WHERE clause without the {@code WHERE}.  May be null to update every
+     *                      row.
+     * @param selectionArgs Values for the {@code ?} placeholders in {@code selection}.  May be
+     *                      null.
+     * @return The number of rows updated.
+     * @throws SQLiteDatatypeMismatchException If the id in {@code values} isn't an integer.
+     * @throws SQLiteException                 If {@code values} would change the id of a row.
+     */
+    public int update(@NonNull final ContentValues values, @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        assertNotNull(values, "values"); //$NON-NLS
+
+        final int[] columns = new int[values.size()];
+        final Object[] newValues = new Object[values.size()];
+        int count = 0;
+        for (final Map.Entry<String, Object> entry : values.valueSet()) {
+            columns[count] = resolveColumn(entry.getKey());
+            newValues[count] = toStorageClass(columns[count], entry.getValue());
+            count++;
+        }
+
+        final Predicate predicate = Selection.parse(selection, selectionArgs, mColumnIndexes,
+                mColumnTypes);
+
+        mLock.writeLock().lock();
+        try {
+            final List<Object[]> rows = findRows(predicate);
+
+            for (final Object[] row : rows) {
+                for (int x = 0; x < columns.length; x++) {
+                    if (ID_COLUMN == columns[x] && !row[ID_COLUMN].equals(newValues[x])) {
+                        throw new SQLiteException(String.format(Locale.US,
+                                "Changing %s is not supported", BaseColumns._ID)); //$NON-NLS
+                    }
+                }
+            }
+
+            for (final Object[] row : rows) {
+                final long id = (Long) row[ID_COLUMN];
+                for (int x = 0; x < columns.length; x++) {
+                    final int column = columns[x];
+                    final Index index = mIndexes[column];
+                    if (null != index) {
+                        if (null != row[column]) {
+                            index.remove(row[column], id);
+                        }
+                        if (null != newValues[x]) {
+                            index.add(newValues[x], id);
+                        }
+                    }
+
+                    row[column] = newValues[x];
+                }
+            }
+
+            return rows.size();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param selection     WHERE clause without the {@code WHERE}.  May be null to delete every
+     *                      row.
+     * @param selectionArgs Values for the {@code ?} placeholders in {@code selection}.  May be
+     *                      null.
+     * @return The number of rows deleted.
+     */
+    public int delete(@Nullable final String selection, @Nullable final String[] selectionArgs) {
+        final Predicate predicate = Selection.parse(selection, selectionArgs, mColumnIndexes,
+                mColumnTypes);
+
+        mLock.writeLock().lock();
+        try {
+            final List<Object[]> rows = findRows(predicate);
+
+            for (final Object[] row : rows) {
+                final long id = (Long) row[ID_COLUMN];
+                mRows.remove(id);
+
+                for (int x = 0; x < mIndexes.length; x++) {
+                    if (null != mIndexes[x] && null != row[x]) {
+                        mIndexes[x].remove(row[x], id);
+                    }
+                }
+            }
+
+            return rows.size();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    public int getCount() {
+        mLock.readLock().lock();
+        try {
+            return mRows.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Names of the columns, starting with {@link BaseColumns#_ID}.
+     */
+    @NonNull
+    public String[] getColumnNames() {
+        return mColumnNames.clone();
+    }
+
+    /**
+     * Finds the rows matching {@code predicate}, using an index if possible.
+     *
+     * @param predicate Predicate to match.
+     * @return A new mutable list of the matching rows, in the order of their ids.
+     */
+    @GuardedBy("mLock")
+    @NonNull
+    private List<Object[]> findRows(@NonNull final Predicate predicate) {
+        final List<Long> candidates = findCandidates(predicate);
+
+        final List<Object[]> rows;
+        if (null == candidates) {
+            rows = new ArrayList<>();
+            for (final Object[] row : mRows.values()) {
+                if (predicate.matches(row)) {
+                    rows.add(row);
+                }
+            }
+        } else {
+            Collections.sort(candidates);
+
+            rows = new ArrayList<>(candidates.size());
+            for (final Long id : candidates) {
+                final Object[] row = mRows.get(id);
+                if (predicate.matches(row)) {
+                    rows.add(row);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * @param predicate Predicate to match.
+     * @return A new list of the ids of a superset of the rows matching {@code predicate}, or
+     * null if every row needs to be scanned.
+     */
+    @GuardedBy("mLock")
+    @Nullable
+    private List<Long> findCandidates(@NonNull final Predicate predicate) {
+        final Predicate[] terms = predicate instanceof And ? ((And) predicate).mTerms
+                : new Predicate[]{predicate};
+
+        List<Long> best = null;
+        for (final Predicate term : terms) {
+            final List<Long> candidates = findCandidatesForTerm(term);
+            if (null != candidates && (null == best || candidates.size() < best.size())) {
+                best = candidates;
+            }
+        }
+
+        return best;
+    }
+
+    @GuardedBy("mLock")
+    @Nullable
+    private List<Long> findCandidatesForTerm(@NonNull final Predicate term) {
+        if (term instanceof Comparison) {
+            final Comparison comparison = (Comparison) term;
+
+            if (null == comparison.mValue) {
+                // Comparisons with NULL never match
+                return new ArrayList<>(0);
+            }
+            if (!isIndexable(comparison.mColumn, comparison.mValue)) {
+                return null;
+            }
+
+            if (ID_COLUMN == comparison.mColumn) {
+                return findIds(comparison.mOperator, (Long) comparison.mValue);
+            }
+
+            return mIndexes[comparison.mColumn].find(comparison.mOperator, comparison.mValue);
+        } else if (term instanceof In) {
+            final In in = (In) term;
+
+            if (in.mIsNegated) {
+                return null;
+            }
+
+            final List<Long> candidates = new ArrayList<>();
+            for (final Object value : in.mValues) {
+                if (null == value) {
+                    continue;
+                }
+                if (!isIndexable(in.mColumn, value)) {
+                    return null;
+                }
+
+                final List<Long> valueCandidates = ID_COLUMN == in.mColumn
+                        ? findIds(Selection.Operator.EQ, (Long) value)
+                        : mIndexes[in.mColumn].find(Selection.Operator.EQ, value);
+                if (null == valueCandidates) {
+                    return null;
+                }
+                candidates.addAll(valueCandidates);
+            }
+
+            // Duplicate values in the IN list would otherwise produce duplicate rows
+            return new ArrayList<>(new HashSet<>(candidates));
+        }
+
+        return null;
+    }
+
+    private boolean isIndexable(final int column, @NonNull final Object value) {
+        // Values that didn't convert to the column's type are compared without an index
+        return (ID_COLUMN == column || null != mIndexes[column])
+                && SqlValues.isStorageClass(value, mColumnTypes[column]);
+    }
+
+    @GuardedBy("mLock")
+    @Nullable
+    private List<Long> findIds(@NonNull final Selection.Operator operator, final long id) {
+        switch (operator) {
+            case EQ: {
+                final List<Long> ids = new ArrayList<>(1);
+                if (mRows.containsKey(id)) {
+                    ids.add(id);
+                }
+                return ids;
+            }
+            case LT: {
+                return new ArrayList<>(mRows.headMap(id, false).keySet());
+            }
+            case LE: {
+                return new ArrayList<>(mRows.headMap(id, true).keySet());
+            }
+            case GT: {
+                return new ArrayList<>(mRows.tailMap(id, false).keySet());
+            }
+            case GE: {
+                return new ArrayList<>(mRows.tailMap(id, true).keySet());
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+
+    private int resolveColumn(@NonNull final String name) {
+        final Integer column = mColumnIndexes.get(name.toLowerCase(Locale.US));
+        if (null == column) {
+            throw new SQLiteException(String.format(Locale.US,
+                    "table has no column named %s", name)); //$NON-NLS
+        }
+
+        return column;
+    }
+
+    @NonNull
+    private int[] resolveProjection(@Nullable final String[] projection) {
+        if (null == projection) {
+            final int[] columns = new int[mColumnNames.length];
+            for (int x = 0; x < columns.length; x++) {
+                columns[x] = x;
+            }
+            return columns;
+        }
+
+        final int[] columns = new int[projection.length];
+        for (int x = 0; x < projection.length; x++) {
+            final Integer column = mColumnIndexes.get(projection[x].toLowerCase(Locale.US));
+            if (null == column) {
+                throw new SQLiteException(String.format(Locale.US, "no such column: %s", //$NON-NLS
+                        projection[x]));
+            }
+            columns[x] = column;
+        }
+
+        return columns;
+    }
+
+    /**
+     * @param column Column to store {@code value} in.
+     * @param value  Value to store.  May be null.
+     * @return {@code value} converted by the affinity of {@code column}, or with its own storage
+     * class if it doesn't convert.
+     * @throws SQLiteDatatypeMismatchException If {@code column} is the id and {@code value} isn't
+     *                                         an integer.
+     */
+    @Nullable
+    private Object toStorageClass(final int column, @Nullable final Object value) {
+        final Object converted = SqlValues.applyAffinity(value, mColumnTypes[column]);
+
+        if (ID_COLUMN == column && null != converted && !(converted instanceof Long)) {
+            throw new SQLiteDatatypeMismatchException(String.format(Locale.US,
+                    "Value %s can't be stored in column %s", value, //$NON-NLS
+                    mColumnNames[column]));
+        }
+
+        if (converted instanceof byte[]) {
+            // Copied, as the caller may go on to modify the blob
+            return ((byte[]) converted).clone();
+        }
+
+        return converted;
+    }
+
+    /**
+     * @return True if every value in {@code projectionColumns} of {@code rows} has the storage
+     * class of its column, so that the rows fit a {@link ColumnarCursor}.
+     */
+    private boolean isColumnar(@NonNull final int[] projectionColumns,
+            @NonNull final List<Object[]> rows) {
+        for (final Object[] row : rows) {
+            for (final int column : projectionColumns) {
+                final Object value = row[column];
+                if (null != value && !SqlValues.isStorageClass(value, mColumnTypes[column])) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Fallback for rows holding values of more than one storage class in a column.
+     */
+    @NonNull
+    private Cursor newMatrixCursor(@Nullable final String[] projection,
+            @NonNull final int[] projectionColumns, @NonNull final List<Object[]> rows) {
+        final String[] names = new String[projectionColumns.length];
+        for (int x = 0; x < projectionColumns.length; x++) {
+            names[x] = null == projection ? mColumnNames[projectionColumns[x]] : projection[x];
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(names, rows.size());
+        for (final Object[] row : rows) {
+            final Object[] values = new Object[projectionColumns.length];
+            for (int x = 0; x < projectionColumns.length; x++) {
+                final Object value = row[projectionColumns[x]];
+                // Copied, as the cursor must not expose the table's storage
+                values[x] = value instanceof byte[] ? ((byte[]) value).clone() : value;
+            }
+            cursor.addRow(values);
+        }
+
+        return cursor;
+    }
+
+    @NonNull
+    private Cursor newCursor(@Nullable final String[] projection,
+            @NonNull final int[] projectionColumns, @NonNull final List<Object[]> rows) {
+        if (!isColumnar(projectionColumns, rows)) {
+            return newMatrixCursor(projection, projectionColumns, rows);
+        }
+
+        final ColumnarCursor.Builder builder = new ColumnarCursor.Builder(rows.size());
+        for (int x = 0; x < projectionColumns.length; x++) {
+            final int column = projectionColumns[x];
+            final String name = null == projection ? mColumnNames[column] : projection[x];
+            switch (mColumnTypes[column]) {
+                case Cursor.FIELD_TYPE_INTEGER: {
+                    builder.addLongColumn(name);
+                    break;
+                }
+                case Cursor.FIELD_TYPE_FLOAT: {
+                    builder.addDoubleColumn(name);
+                    break;
+                }
+                case Cursor.FIELD_TYPE_STRING: {
+                    builder.addStringColumn(name);
+                    break;
+                }
+                default: {
+                    builder.addBlobColumn(name);
+                    break;
+                }
+            }
+        }
+
+        for (final Object[] row : rows) {
+            builder.newRow();
+
+            for (int x = 0; x < projectionColumns.length; x++) {
+                final Object value = row[projectionColumns[x]];
+                if (null == value) {
+                    builder.setNull(x);
+                    continue;
+                }
+
+                switch (mColumnTypes[projectionColumns[x]]) {
+                    case Cursor.FIELD_TYPE_INTEGER: {
+                        builder.setLong(x, (Long) value);
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_FLOAT: {
+                        builder.setDouble(x, (Double) value);
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_STRING: {
+                        builder.setString(x, (String) value);
+                        break;
+                    }
+                    default: {
+                        // Copied, as the cursor must not expose the table's storage
+                        builder.setBlob(x, ((byte[]) value).clone());
+                        break;
+                    }
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Secondary index from column value to the ids of the rows with that value.  Null values
+     * are not indexed, as no comparison can match them.
+     */
+    @NotThreadSafe
+    private abstract static class Index {
+
+        /**
+         * @param value Non-null value of the row.
+         * @param id    Id of the row.
+         */
+        public abstract void add(@NonNull final Object value, final long id);
+
+        /**
+         * @param value Non-null value of the row.
+         * @param id    Id of the row.
+         */
+        public abstract void remove(@NonNull final Object value, final long id);
+
+        /**
+         * @param operator Comparison operator.
+         * @param value    Non-null value to compare against.
+         * @return A new list of the ids of rows matching the comparison, or null if this index
+         * can't be used for {@code operator}.
+         */
+        @Nullable
+        public abstract List<Long> find(@NonNull final Selection.Operator operator,
+                @NonNull final Object value);
+
+        /**
+         * @param map   Map of value to ids.
+         * @param value Value of the row.
+         * @param id    Id of the row.
+         */
+        /*package*/ static void addToMap(@NonNull final Map<Object, Set<Long>> map,
+                @NonNull final Object value, final long id) {
+            Set<Long> ids = map.get(value);
+            if (null == ids) {
+                ids = new HashSet<>();
+                map.put(value, ids);
+            }
+
+            ids.add(id);
+        }
+
+        /**
+         * @param map   Map of value to ids.
+         * @param value Value of the row.
+         * @param id    Id of the row.
+         */
+        /*package*/ static void removeFromMap(@NonNull final Map<Object, Set<Long>> map,
+                @NonNull final Object value, final long id) {
+            final Set<Long> ids = map.get(value);
+            if (null != ids) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    map.remove(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Kind of secondary index declared by a {@link Builder}.
+     */
+    private enum IndexKind {
+        HASH {
+            @NonNull
+            @Override
+            public Index newIndex() {
+                return new HashIndex();
+            }
+        },
+        SORTED {
+            @NonNull
+            @Override
+            public Index newIndex() {
+                return new SortedIndex();
+            }
+        };
+
+        /**
+         * @return A new, empty index of this kind.
+         */
+        @NonNull
+        public abstract Index newIndex();
+    }
+
+    /**
+     * Index supporting equality only.
+     */
+    @NotThreadSafe
+    private static final class HashIndex extends Index {
+
+        @NonNull
+        private final HashMap<Object, Set<Long>> mMap = new HashMap<>();
+
+        @Override
+        public void add(@NonNull final Object value, final long id) {
+            addToMap(mMap, value, id);
+        }
+
+        @Override
+        public void remove(@NonNull final Object value, final long id) {
+            removeFromMap(mMap, value, id);
+        }
+
+        @Nullable
+        @Override
+        public List<Long> find(@NonNull final Selection.Operator operator,
+                @NonNull final Object value) {
+            if (Selection.Operator.EQ != operator) {
+                return null;
+            }
+
+            final Set<Long> ids = mMap.get(value);
+            return null == ids ? new ArrayList<Long>(0) : new ArrayList<>(ids);
+        }
+    }
+
+    /**
+     * Index supporting equality and ranges.
+     */
+    @NotThreadSafe
+    private static final class SortedIndex extends Index {
+
+        @NonNull
+        private final TreeMap<Object, Set<Long>> mMap = new TreeMap<>(SqlValues.COMPARATOR);
+
+        @Override
+        public void add(@NonNull final Object value, final long id) {
+            addToMap(mMap, value, id);
+        }
+
+        @Override
+        public void remove(@NonNull final Object value, final long id) {
+            removeFromMap(mMap, value, id);
+        }
+
+        @Nullable
+        @Override
+        public List<Long> find(@NonNull final Selection.Operator operator,
+                @NonNull final Object value) {
+            final Collection<Set<Long>> matches;
+            switch (operator) {
+                case EQ: {
+                    final Set<Long> ids = mMap.get(value);
+                    return null == ids ? new ArrayList<Long>(0) : new ArrayList<>(ids);
+                }
+                case LT: {
+                    matches = mMap.headMap(value, false).values();
+                    break;
+                }
+                case LE: {
+                    matches = mMap.headMap(value, true).values();
+                    break;
+                }
+                case GT: {
+                    matches = mMap.tailMap(value, false).values();
+                    break;
+                }
+                case GE: {
+                    matches = mMap.tailMap(value, true).values();
+                    break;
+                }
+                default: {
+                    return null;
+                }
+            }
+
+            final List<Long> ids = new ArrayList<>();
+            for (final Set<Long> valueIds : matches) {
+                ids.addAll(valueIds);
+            }
+
+            return ids;
+        }
+    }
+
+    /**
+     * Builds an {@link InMemoryTable}.  The {@link BaseColumns#_ID} column is declared
+     * automatically, and the remaining columns and indexes are declared with the builder's
+     * methods.
+     */
+    @NotThreadSafe
+    public static final class Builder {
+
+        @NonNull
+        private final ArrayList<String> mColumnNames = new ArrayList<>();
+
+        @NonNull
+        private final ArrayList<Integer> mColumnTypes = new ArrayList<>();
+
+        @NonNull
+        private final HashMap<String, Integer> mColumnIndexes = new HashMap<>();
+
+        /**
+         * Kind of index of each indexed column.  The indexes themselves are created by
+         * {@link #build()}, so that tables built by the same builder don't share them.
+         */
+        @NonNull
+        private final HashMap<Integer, IndexKind> mIndexes = new HashMap<>();
+
+        public Builder() {
+            addColumn(BaseColumns._ID, Cursor.FIELD_TYPE_INTEGER);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addLongColumn(@NonNull final String name) {
+            return addColumn(name, Cursor.FIELD_TYPE_INTEGER);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addDoubleColumn(@NonNull final String name) {
+            return addColumn(name, Cursor.FIELD_TYPE_FLOAT);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addStringColumn(@NonNull final String name) {
+            return addColumn(name, Cursor.FIELD_TYPE_STRING);
+        }
+
+        /**
+         * @param name Name of the column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addBlobColumn(@NonNull final String name) {
+            return addColumn(name, Cursor.FIELD_TYPE_BLOB);
+        }
+
+        /**
+         * Declares an index for equality and {@code IN} comparisons on a column.
+         *
+         * @param name Name of a previously declared column, which must not be a blob column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addHashIndex(@NonNull final String name) {
+            final int column = resolveIndexableColumn(name);
+
+            if (Cursor.FIELD_TYPE_BLOB == mColumnTypes.get(column)) {
+                // Arrays don't implement equals() and hashCode() by value
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Blob column %s can't have a hash index", name)); //$NON-NLS
+            }
+
+            mIndexes.put(column, IndexKind.HASH);
+
+            return this;
+        }
+
+        /**
+         * Declares an index for equality, {@code IN}, and range comparisons on a column.
+         *
+         * @param name Name of a previously declared column.
+         * @return This builder for chaining.
+         */
+        @NonNull
+        public Builder addSortedIndex(@NonNull final String name) {
+            mIndexes.put(resolveIndexableColumn(name), IndexKind.SORTED);
+
+            return this;
+        }
+
+        /**
+         * @return A new, empty table.
+         */
+        @NonNull
+        public InMemoryTable build() {
+            final int[] columnTypes = new int[mColumnTypes.size()];
+            final Index[] indexes = new Index[mColumnTypes.size()];
+            for (int x = 0; x < columnTypes.length; x++) {
+                columnTypes[x] = mColumnTypes.get(x);
+                final IndexKind kind = mIndexes.get(x);
+                indexes[x] = null == kind ? null : kind.newIndex();
+            }
+
+            return new InMemoryTable(mColumnNames.toArray(new String[mColumnNames.size()]),
+                    columnTypes, new HashMap<>(mColumnIndexes), indexes);
+        }
+
+        @NonNull
+        private Builder addColumn(@NonNull final String name, final int type) {
+            assertNotNull(name, "name"); //$NON-NLS
+
+            final String key = name.toLowerCase(Locale.US);
+            if (mColumnIndexes.containsKey(key)) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Column %s is already declared", name)); //$NON-NLS
+            }
+
+            mColumnIndexes.put(key, mColumnNames.size());
+            mColumnNames.add(name);
+            mColumnTypes.add(type);
+
+            return this;
+        }
+
+        private int resolveIndexableColumn(@NonNull final String name) {
+            assertNotNull(name, "name"); //$NON-NLS
+
+            final Integer column = mColumnIndexes.get(name.toLowerCase(Locale.US));
+            if (null == column) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Column %s is not declared", name)); //$NON-NLS
+            }
+            if (ID_COLUMN == column) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Column %s is always indexed", name)); //$NON-NLS
+            }
+
+            return column;
+        }
+    }
+}
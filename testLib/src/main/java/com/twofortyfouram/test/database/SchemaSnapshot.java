@@ -0,0 +1,388 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A compiled copy of a SQLite schema and its seed rows, which can quickly be restored into a new
+ * in-memory database.
+ * <p>
+ * Running migrations or a long {@code onCreate()} for every test is slow, particularly on
+ * emulators.  A snapshot runs the {@link Initializer} once against a scratch in-memory database,
+ * then captures the DDL from {@code sqlite_master}, the rows of every table, and the schema
+ * version.  Each call to {@link #newDatabase()} replays that capture in a single transaction,
+ * which takes milliseconds.  Snapshots compiled via {@link #getCached(String, Initializer)} are
+ * shared for the life of the process, so only the first test to use a schema pays for it.
+ */
+@Immutable
+public final class SchemaSnapshot {
+
+    /**
+     * Cache of snapshots compiled via {@link #getCached(String, Initializer)}.
+     */
+    @NonNull
+    private static final ConcurrentHashMap<String, SchemaSnapshot> sCache
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Table automatically created by Android for every database, which must not be re-created.
+     */
+    @NonNull
+    private static final String ANDROID_METADATA_TABLE = "android_metadata"; //$NON-NLS
+
+    /**
+     * Prefix of tables internal to SQLite.  Their DDL can't be replayed, although the rows of
+     * {@code sqlite_sequence} are captured so that AUTOINCREMENT resumes where it left off.
+     */
+    @NonNull
+    private static final String SQLITE_INTERNAL_PREFIX = "sqlite_"; //$NON-NLS
+
+    /**
+     * CREATE TABLE statements, in creation order.
+     */
+    @NonNull
+    private final String[] mTableStatements;
+
+    /**
+     * Rows of each table, applied after the tables are created.
+     */
+    @NonNull
+    private final TableRows[] mTableRows;
+
+    /**
+     * CREATE INDEX, TRIGGER, and VIEW statements, in creation order.  These are applied after
+     * the rows so that triggers don't fire while seeding and indexes are built once.
+     */
+    @NonNull
+    private final String[] mOtherStatements;
+
+    private final int mVersion;
+
+    /**
+     * Compiles a snapshot without caching it.
+     *
+     * @param initializer Creates the schema and seed rows.
+     * @return A snapshot of the database created by {@code initializer}.
+     */
+    @NonNull
+    public static SchemaSnapshot compile(@NonNull final Initializer initializer) {
+        assertNotNull(initializer, "initializer"); //$NON-NLS
+
+        final SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            initializer.onCreate(database);
+
+            return capture(database);
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * Gets a snapshot from the process-wide cache, compiling it on first use.
+     *
+     * @param key         Key identifying the schema, such as the name and version of the
+     *                    database.
+     * @param initializer Creates the schema and seed rows if the snapshot isn't cached yet.
+     * @return A snapshot of the database created by {@code initializer}.
+     */
+    @NonNull
+    public static SchemaSnapshot getCached(@NonNull final String key,
+            @NonNull final Initializer initializer) {
+        assertNotNull(key, "key"); //$NON-NLS
+        assertNotNull(initializer, "initializer"); //$NON-NLS
+
+        final SchemaSnapshot cached = sCache.get(key);
+        if (null != cached) {
+            return cached;
+        }
+
+        // Two threads may race to compile the same key; the first to finish wins.
+        final SchemaSnapshot compiled = compile(initializer);
+        final SchemaSnapshot previous = sCache.putIfAbsent(key, compiled);
+
+        return null == previous ? compiled : previous;
+    }
+
+    /**
+     * Creates a new in-memory database and restores this snapshot into it.
+     *
+     * @return A new database, which the caller is responsible for closing.
+     */
+    @NonNull
+    public SQLiteDatabase newDatabase() {
+        final SQLiteDatabase database = SQLiteDatabase.create(null);
+
+        boolean isSuccessful = false;
+        try {
+            restore(database);
+            isSuccessful = true;
+        } finally {
+            if (!isSuccessful) {
+                database.close();
+            }
+        }
+
+        return database;
+    }
+
+    /**
+     * @return The schema version, as reported by {@link SQLiteDatabase#getVersion()}.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    private SchemaSnapshot(@NonNull final String[] tableStatements,
+            @NonNull final TableRows[] tableRows, @NonNull final String[] otherStatements,
+            final int version) {
+        mTableStatements = tableStatements;
+        mTableRows = tableRows;
+        mOtherStatements = otherStatements;
+        mVersion = version;
+    }
+
+    private void restore(@NonNull final SQLiteDatabase database) {
+        database.beginTransaction();
+        try {
+            for (final String statement : mTableStatements) {
+                database.execSQL(statement);
+            }
+
+            for (final TableRows rows : mTableRows) {
+                rows.insertInto(database);
+            }
+
+            for (final String statement : mOtherStatements) {
+                database.execSQL(statement);
+            }
+
+            database.setVersion(mVersion);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @NonNull
+    private static SchemaSnapshot capture(@NonNull final SQLiteDatabase database) {
+        final List<String> tableStatements = new ArrayList<>();
+        final List<String> tableNames = new ArrayList<>();
+        final List<String> otherStatements = new ArrayList<>();
+
+        // Auto-indexes have null SQL and are re-created along with their tables
+        final Cursor cursor = database.rawQuery(
+                "SELECT type, name, sql FROM sqlite_master WHERE sql NOT NULL " //$NON-NLS
+                        + "ORDER BY rowid", null); //$NON-NLS
+        try {
+            while (cursor.moveToNext()) {
+                final String type = cursor.getString(0);
+                final String name = cursor.getString(1);
+                final String sql = cursor.getString(2);
+
+                if ("table".equals(type)) { //$NON-NLS
+                    if (name.startsWith(SQLITE_INTERNAL_PREFIX)
+                            || ANDROID_METADATA_TABLE.equals(name)) {
+                        continue;
+                    }
+
+                    tableStatements.add(sql);
+                    tableNames.add(name);
+                } else {
+                    otherStatements.add(sql);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (hasSequenceTable(database)) {
+            tableNames.add("sqlite_sequence"); //$NON-NLS
+        }
+
+        final TableRows[] tableRows = new TableRows[tableNames.size()];
+        for (int x = 0; x < tableRows.length; x++) {
+            tableRows[x] = TableRows.capture(database, tableNames.get(x));
+        }
+
+        return new SchemaSnapshot(tableStatements.toArray(new String[tableStatements.size()]),
+                tableRows, otherStatements.toArray(new String[otherStatements.size()]),
+                database.getVersion());
+    }
+
+    private static boolean hasSequenceTable(@NonNull final SQLiteDatabase database) {
+        final Cursor cursor = database.rawQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' " //$NON-NLS
+                        + "AND name = 'sqlite_sequence'", null); //$NON-NLS
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    private static String quoteIdentifier(@NonNull final String identifier) {
+        return '"' + identifier.replace("\"", "\"\"") + '"'; //$NON-NLS
+    }
+
+    /**
+     * Creates the schema and seed rows of a database.  This is typically implemented by
+     * delegating to {@code SQLiteOpenHelper#onCreate(SQLiteDatabase)}.
+     */
+    public interface Initializer {
+
+        /**
+         * @param database Empty in-memory database to initialize.  Any schema version set via
+         *                 {@link SQLiteDatabase#setVersion(int)} is captured too.
+         */
+        void onCreate(@NonNull final SQLiteDatabase database);
+    }
+
+    @Immutable
+    private static final class TableRows {
+
+        /**
+         * INSERT statement with a placeholder for each column.
+         */
+        @NonNull
+        private final String mInsertStatement;
+
+        /**
+         * Rows of values, each value being a Long, Double, String, byte[], or null.
+         */
+        @NonNull
+        private final Object[][] mRows;
+
+        private TableRows(@NonNull final String insertStatement, @NonNull final Object[][] rows) {
+            mInsertStatement = insertStatement;
+            mRows = rows;
+        }
+
+        @NonNull
+        public static TableRows capture(@NonNull final SQLiteDatabase database,
+                @NonNull final String table) {
+            final Cursor cursor = database.rawQuery("SELECT * FROM " //$NON-NLS
+                    + quoteIdentifier(table), null);
+            try {
+                final String[] columnNames = cursor.getColumnNames();
+                final Object[][] rows = new Object[cursor.getCount()][];
+
+                for (int row = 0; cursor.moveToNext(); row++) {
+                    final Object[] values = new Object[columnNames.length];
+                    for (int column = 0; column < columnNames.length; column++) {
+                        values[column] = getValue(cursor, column);
+                    }
+                    rows[row] = values;
+                }
+
+                return new TableRows(newInsertStatement(table, columnNames), rows);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        public void insertInto(@NonNull final SQLiteDatabase database) {
+            if (0 == mRows.length) {
+                return;
+            }
+
+            final SQLiteStatement statement = database.compileStatement(mInsertStatement);
+            try {
+                for (final Object[] values : mRows) {
+                    statement.clearBindings();
+                    for (int column = 0; column < values.length; column++) {
+                        bindValue(statement, column + 1, values[column]);
+                    }
+                    statement.executeInsert();
+                }
+            } finally {
+                statement.close();
+            }
+        }
+
+        @Nullable
+        private static Object getValue(@NonNull final Cursor cursor, final int column) {
+            switch (cursor.getType(column)) {
+                case Cursor.FIELD_TYPE_INTEGER: {
+                    return cursor.getLong(column);
+                }
+                case Cursor.FIELD_TYPE_FLOAT: {
+                    return cursor.getDouble(column);
+                }
+                case Cursor.FIELD_TYPE_STRING: {
+                    return cursor.getString(column);
+                }
+                case Cursor.FIELD_TYPE_BLOB: {
+                    return cursor.getBlob(column);
+                }
+                default: {
+                    return null;
+                }
+            }
+        }
+
+        private static void bindValue(@NonNull final SQLiteStatement statement, final int index,
+                @Nullable final Object value) {
+            if (null == value) {
+                statement.bindNull(index);
+            } else if (value instanceof Long) {
+                statement.bindLong(index, (Long) value);
+            } else if (value instanceof Double) {
+                statement.bindDouble(index, (Double) value);
+            } else if (value instanceof String) {
+                statement.bindString(index, (String) value);
+            } else {
+                statement.bindBlob(index, (byte[]) value);
+            }
+        }
+
+        @NonNull
+        private static String newInsertStatement(@NonNull final String table,
+                @NonNull final String[] columnNames) {
+            final StringBuilder builder = new StringBuilder("INSERT INTO "); //$NON-NLS
+            builder.append(quoteIdentifier(table)).append(" ("); //$NON-NLS
+            for (int x = 0; x < columnNames.length; x++) {
+                if (0 != x) {
+                    builder.append(", "); //$NON-NLS
+                }
+                builder.append(quoteIdentifier(columnNames[x]));
+            }
+            builder.append(") VALUES ("); //$NON-NLS
+            for (int x = 0; x < columnNames.length; x++) {
+                builder.append(0 == x ? "?" : ", ?"); //$NON-NLS
+            }
+            builder.append(')');
+
+            return builder.toString();
+        }
+    }
+}
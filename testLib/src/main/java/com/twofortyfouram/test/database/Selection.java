@@ -0,0 +1,700 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Parser for the subset of SQLite WHERE clauses supported by {@link InMemoryTable}.
+ * <p>
+ * Supported are comparisons of a column against a value with {@code =}, {@code ==},
+ * {@code !=}, {@code <>}, {@code <}, {@code <=}, {@code >}, and {@code >=}; {@code IS [NOT]
+ * NULL}; {@code [NOT] IN (...)}; {@code [NOT] LIKE}; {@code AND}, {@code OR}, {@code NOT}; and
+ * parentheses.  Values may be {@code ?} placeholders, numbers, quoted strings, or {@code NULL}.
+ * The column must be on the left-hand side of a comparison.
+ * <p>
+ * Like SQLite, terms are evaluated with three-valued logic, where a comparison involving
+ * {@code NULL} is {@link Truth#UNKNOWN}.  {@code NOT} of an unknown term is still unknown, so
+ * {@code NOT col = ?} and {@code col NOT IN (..., NULL)} don't match rows where they can't be
+ * decided.  Only rows for which the whole clause is {@link Truth#TRUE} match.
+ */
+@NotThreadSafe
+/*package*/ final class Selection {
+
+    @NonNull
+    private static final Predicate ALL = new Predicate() {
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            return Truth.TRUE;
+        }
+    };
+
+    @NonNull
+    private final String mSelection;
+
+    @NonNull
+    private final String[] mSelectionArgs;
+
+    @NonNull
+    private final Map<String, Integer> mColumnIndexes;
+
+    @NonNull
+    private final int[] mColumnTypes;
+
+    private int mPosition = 0;
+
+    private int mArgIndex = 0;
+
+    /**
+     * @param selection     WHERE clause without the {@code WHERE}.  May be null or empty to
+     *                      match every row.
+     * @param selectionArgs Values for the {@code ?} placeholders.  May be null.
+     * @param columnIndexes Map of column name to index.  Names are lowercase, as column names
+     *                      are case-insensitive.
+     * @param columnTypes   Type of each column, as one of the {@code Cursor.FIELD_TYPE}
+     *                      constants.
+     * @return Predicate for rows matching {@code selection}.
+     * @throws SQLiteException          If {@code selection} can't be parsed or refers to a
+     *                                  column that doesn't exist.
+     * @throws IllegalArgumentException If the number of {@code selectionArgs} doesn't match the
+     *                                  number of placeholders.
+     */
+    @NonNull
+    /*package*/ static Predicate parse(@Nullable final String selection,
+            @Nullable final String[] selectionArgs,
+            @NonNull final Map<String, Integer> columnIndexes,
+            @NonNull final int[] columnTypes) {
+        final String[] args = null == selectionArgs ? new String[0] : selectionArgs;
+
+        if (null == selection || 0 == selection.trim().length()) {
+            if (0 != args.length) {
+                throw newArgCountException(args.length, 0);
+            }
+
+            return ALL;
+        }
+
+        final Selection parser = new Selection(selection, args, columnIndexes, columnTypes);
+        final Predicate predicate = parser.parseOr();
+
+        if (parser.mPosition != selection.length()) {
+            throw parser.newSyntaxException();
+        }
+        if (parser.mArgIndex != args.length) {
+            throw newArgCountException(args.length, parser.mArgIndex);
+        }
+
+        return predicate;
+    }
+
+    private Selection(@NonNull final String selection, @NonNull final String[] selectionArgs,
+            @NonNull final Map<String, Integer> columnIndexes, @NonNull final int[] columnTypes) {
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mColumnIndexes = columnIndexes;
+        mColumnTypes = columnTypes;
+    }
+
+    @NonNull
+    private Predicate parseOr() {
+        final List<Predicate> terms = new ArrayList<>();
+        terms.add(parseAnd());
+        while (consumeKeyword("OR")) { //$NON-NLS
+            terms.add(parseAnd());
+        }
+
+        if (1 == terms.size()) {
+            return terms.get(0);
+        }
+
+        return new Or(terms.toArray(new Predicate[terms.size()]));
+    }
+
+    @NonNull
+    private Predicate parseAnd() {
+        final List<Predicate> terms = new ArrayList<>();
+        terms.add(parseUnary());
+        while (consumeKeyword("AND")) { //$NON-NLS
+            terms.add(parseUnary());
+        }
+
+        if (1 == terms.size()) {
+            return terms.get(0);
+        }
+
+        return new And(terms.toArray(new Predicate[terms.size()]));
+    }
+
+    @NonNull
+    private Predicate parseUnary() {
+        if (consumeKeyword("NOT")) { //$NON-NLS
+            return new Not(parseUnary());
+        }
+
+        if (consume("(")) { //$NON-NLS
+            final Predicate predicate = parseOr();
+            expect(")"); //$NON-NLS
+            return predicate;
+        }
+
+        return parseComparison();
+    }
+
+    @NonNull
+    private Predicate parseComparison() {
+        final int column = parseColumn();
+
+        if (consumeKeyword("IS")) { //$NON-NLS
+            final boolean isNegated = consumeKeyword("NOT"); //$NON-NLS
+            if (!consumeKeyword("NULL")) { //$NON-NLS
+                throw newSyntaxException();
+            }
+            return new IsNull(column, isNegated);
+        }
+
+        final boolean isNegated = consumeKeyword("NOT"); //$NON-NLS
+
+        if (consumeKeyword("IN")) { //$NON-NLS
+            expect("("); //$NON-NLS
+            final List<Object> values = new ArrayList<>();
+            do {
+                values.add(parseValue(column));
+            } while (consume(",")); //$NON-NLS
+            expect(")"); //$NON-NLS
+
+            return new In(column, values.toArray(), isNegated);
+        }
+
+        if (consumeKeyword("LIKE")) { //$NON-NLS
+            final Object pattern = parseValue(column);
+            return new Like(column, null == pattern ? null : toLikePattern(
+                    SqlValues.toText(pattern)), isNegated);
+        }
+
+        if (isNegated) {
+            throw newSyntaxException();
+        }
+
+        final Operator operator = parseOperator();
+        return new Comparison(column, operator, parseValue(column));
+    }
+
+    @NonNull
+    private Operator parseOperator() {
+        skipWhitespace();
+
+        // Two character operators must be checked first
+        if (consume("==") || consume("=")) { //$NON-NLS
+            return Operator.EQ;
+        } else if (consume("!=") || consume("<>")) { //$NON-NLS
+            return Operator.NE;
+        } else if (consume("<=")) { //$NON-NLS
+            return Operator.LE;
+        } else if (consume(">=")) { //$NON-NLS
+            return Operator.GE;
+        } else if (consume("<")) { //$NON-NLS
+            return Operator.LT;
+        } else if (consume(">")) { //$NON-NLS
+            return Operator.GT;
+        }
+
+        throw newSyntaxException();
+    }
+
+    private int parseColumn() {
+        skipWhitespace();
+
+        final String name;
+        if (mPosition < mSelection.length()
+                && isQuote(mSelection.charAt(mPosition))) {
+            name = parseQuoted(mSelection.charAt(mPosition));
+        } else {
+            final int start = mPosition;
+            while (mPosition < mSelection.length() && isIdentifierChar(
+                    mSelection.charAt(mPosition))) {
+                mPosition++;
+            }
+            if (start == mPosition) {
+                throw newSyntaxException();
+            }
+            name = mSelection.substring(start, mPosition);
+        }
+
+        final Integer column = mColumnIndexes.get(name.toLowerCase(Locale.US));
+        if (null == column) {
+            throw new SQLiteException(String.format(Locale.US, "no such column: %s", //$NON-NLS
+                    name));
+        }
+
+        return column;
+    }
+
+    /**
+     * @param column Column the value is compared against, whose affinity is applied.
+     * @return The value, or null for {@code NULL}.
+     */
+    @Nullable
+    private Object parseValue(final int column) {
+        skipWhitespace();
+
+        if (mPosition >= mSelection.length()) {
+            throw newSyntaxException();
+        }
+
+        final char c = mSelection.charAt(mPosition);
+        final Object value;
+        if ('?' == c) {
+            mPosition++;
+            if (mArgIndex >= mSelectionArgs.length) {
+                throw newArgCountException(mSelectionArgs.length, mArgIndex + 1);
+            }
+            value = mSelectionArgs[mArgIndex++];
+        } else if ('\'' == c) {
+            value = parseQuoted(c);
+        } else if (consumeKeyword("NULL")) { //$NON-NLS
+            value = null;
+        } else {
+            final int start = mPosition;
+            if ('-' == c || '+' == c) {
+                mPosition++;
+            }
+            while (mPosition < mSelection.length() && isNumberChar(
+                    mSelection.charAt(mPosition))) {
+                mPosition++;
+            }
+
+            final String number = mSelection.substring(start, mPosition);
+            try {
+                value = number.contains(".") || number.contains("e") //$NON-NLS
+                        || number.contains("E") //$NON-NLS
+                        ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+            } catch (final NumberFormatException e) {
+                throw newSyntaxException();
+            }
+        }
+
+        return SqlValues.applyAffinity(value, mColumnTypes[column]);
+    }
+
+    /**
+     * @param quote Opening quote character, which {@link #mPosition} points to.
+     * @return The unescaped contents of the quoted string or identifier.
+     */
+    @NonNull
+    private String parseQuoted(final char quote) {
+        final char closing = '[' == quote ? ']' : quote;
+        final StringBuilder builder = new StringBuilder();
+
+        mPosition++;
+        while (true) {
+            if (mPosition >= mSelection.length()) {
+                throw newSyntaxException();
+            }
+
+            final char c = mSelection.charAt(mPosition++);
+            if (closing == c) {
+                // A doubled quote is an escaped quote
+                if (mPosition < mSelection.length() && closing == mSelection.charAt(mPosition)
+                        && '[' != quote) {
+                    builder.append(c);
+                    mPosition++;
+                } else {
+                    return builder.toString();
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    private boolean consumeKeyword(@NonNull final String keyword) {
+        skipWhitespace();
+
+        final int end = mPosition + keyword.length();
+        if (end > mSelection.length()
+                || !mSelection.regionMatches(true, mPosition, keyword, 0, keyword.length())) {
+            return false;
+        }
+        if (end < mSelection.length() && isIdentifierChar(mSelection.charAt(end))) {
+            return false;
+        }
+
+        mPosition = end;
+        return true;
+    }
+
+    private boolean consume(@NonNull final String token) {
+        skipWhitespace();
+
+        if (mSelection.startsWith(token, mPosition)) {
+            mPosition += token.length();
+            return true;
+        }
+
+        return false;
+    }
+
+    private void expect(@NonNull final String token) {
+        if (!consume(token)) {
+            throw newSyntaxException();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (mPosition < mSelection.length()
+                && Character.isWhitespace(mSelection.charAt(mPosition))) {
+            mPosition++;
+        }
+    }
+
+    @NonNull
+    private SQLiteException newSyntaxException() {
+        return new SQLiteException(String.format(Locale.US,
+                "Unsupported or malformed selection at offset %d: %s", mPosition, //$NON-NLS
+                mSelection));
+    }
+
+    @NonNull
+    private static IllegalArgumentException newArgCountException(final int provided,
+            final int needed) {
+        return new IllegalArgumentException(String.format(Locale.US,
+                "%d selection arguments were provided but the selection needs %d", //$NON-NLS
+                provided, needed));
+    }
+
+    @NonNull
+    private static Pattern toLikePattern(@NonNull final String like) {
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int x = 0; x < like.length(); x++) {
+            final char c = like.charAt(x);
+            if ('%' == c || '_' == c) {
+                if (literalStart < x) {
+                    regex.append(Pattern.quote(like.substring(literalStart, x)));
+                }
+                regex.append('%' == c ? ".*" : "."); //$NON-NLS
+                literalStart = x + 1;
+            }
+        }
+        if (literalStart < like.length()) {
+            regex.append(Pattern.quote(like.substring(literalStart)));
+        }
+
+        // Like SQLite, case-insensitive only for ASCII
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    private static boolean isQuote(final char c) {
+        return '"' == c || '`' == c || '[' == c;
+    }
+
+    private static boolean isIdentifierChar(final char c) {
+        return Character.isLetterOrDigit(c) || '_' == c || '.' == c;
+    }
+
+    private static boolean isNumberChar(final char c) {
+        return Character.isDigit(c) || '.' == c || 'e' == c || 'E' == c || '-' == c
+                || '+' == c;
+    }
+
+    /*package*/ enum Operator {
+        EQ,
+        NE,
+        LT,
+        LE,
+        GT,
+        GE
+    }
+
+    /**
+     * Truth value of SQL's three-valued logic.
+     */
+    /*package*/ enum Truth {
+        TRUE,
+        FALSE,
+        UNKNOWN;
+
+        @NonNull
+        /*package*/ static Truth valueOf(final boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        @NonNull
+        /*package*/ Truth not() {
+            switch (this) {
+                case TRUE: {
+                    return FALSE;
+                }
+                case FALSE: {
+                    return TRUE;
+                }
+                default: {
+                    return UNKNOWN;
+                }
+            }
+        }
+    }
+
+    /**
+     * Condition on a row of an {@link InMemoryTable}.
+     */
+    @Immutable
+    /*package*/ abstract static class Predicate {
+
+        /**
+         * @param row Values of the row, indexed by column.
+         * @return True if the row matches, which requires the condition to be
+         * {@link Truth#TRUE} rather than {@link Truth#UNKNOWN}.
+         */
+        public final boolean matches(@NonNull final Object[] row) {
+            return Truth.TRUE == evaluate(row);
+        }
+
+        /**
+         * @param row Values of the row, indexed by column.
+         * @return The truth of the condition for the row.
+         */
+        @NonNull
+        public abstract Truth evaluate(@NonNull final Object[] row);
+    }
+
+    @Immutable
+    /*package*/ static final class Comparison extends Predicate {
+
+        /*package*/ final int mColumn;
+
+        @NonNull
+        /*package*/ final Operator mOperator;
+
+        // May be null, which like SQLite makes the comparison unknown
+        @Nullable
+        /*package*/ final Object mValue;
+
+        private Comparison(final int column, @NonNull final Operator operator,
+                @Nullable final Object value) {
+            mColumn = column;
+            mOperator = operator;
+            mValue = value;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            final Object rowValue = row[mColumn];
+            if (null == rowValue || null == mValue) {
+                return Truth.UNKNOWN;
+            }
+
+            final int comparison = SqlValues.compare(rowValue, mValue);
+            switch (mOperator) {
+                case EQ: {
+                    return Truth.valueOf(0 == comparison);
+                }
+                case NE: {
+                    return Truth.valueOf(0 != comparison);
+                }
+                case LT: {
+                    return Truth.valueOf(0 > comparison);
+                }
+                case LE: {
+                    return Truth.valueOf(0 >= comparison);
+                }
+                case GT: {
+                    return Truth.valueOf(0 < comparison);
+                }
+                default: {
+                    return Truth.valueOf(0 <= comparison);
+                }
+            }
+        }
+    }
+
+    @Immutable
+    /*package*/ static final class In extends Predicate {
+
+        /*package*/ final int mColumn;
+
+        // May contain null elements
+        @NonNull
+        /*package*/ final Object[] mValues;
+
+        /*package*/ final boolean mIsNegated;
+
+        private In(final int column, @NonNull final Object[] values, final boolean isNegated) {
+            mColumn = column;
+            mValues = values;
+            mIsNegated = isNegated;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            final Object rowValue = row[mColumn];
+            if (null == rowValue) {
+                return Truth.UNKNOWN;
+            }
+
+            boolean isUnknown = false;
+            for (final Object value : mValues) {
+                if (null == value) {
+                    // A NULL in the list leaves a value that matches nothing else undecided
+                    isUnknown = true;
+                } else if (0 == SqlValues.compare(rowValue, value)) {
+                    return Truth.valueOf(!mIsNegated);
+                }
+            }
+
+            return isUnknown ? Truth.UNKNOWN : Truth.valueOf(mIsNegated);
+        }
+    }
+
+    @Immutable
+    private static final class IsNull extends Predicate {
+
+        private final int mColumn;
+
+        private final boolean mIsNegated;
+
+        private IsNull(final int column, final boolean isNegated) {
+            mColumn = column;
+            mIsNegated = isNegated;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            return Truth.valueOf(mIsNegated != (null == row[mColumn]));
+        }
+    }
+
+    @Immutable
+    private static final class Like extends Predicate {
+
+        private final int mColumn;
+
+        // Null if the pattern is NULL, which makes the match unknown
+        @Nullable
+        private final Pattern mPattern;
+
+        private final boolean mIsNegated;
+
+        private Like(final int column, @Nullable final Pattern pattern,
+                final boolean isNegated) {
+            mColumn = column;
+            mPattern = pattern;
+            mIsNegated = isNegated;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            final Object rowValue = row[mColumn];
+            if (null == rowValue || null == mPattern) {
+                return Truth.UNKNOWN;
+            }
+
+            return Truth.valueOf(
+                    mIsNegated != mPattern.matcher(SqlValues.toText(rowValue)).matches());
+        }
+    }
+
+    @Immutable
+    /*package*/ static final class And extends Predicate {
+
+        @NonNull
+        /*package*/ final Predicate[] mTerms;
+
+        private And(@NonNull final Predicate[] terms) {
+            mTerms = terms;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            Truth result = Truth.TRUE;
+            for (final Predicate term : mTerms) {
+                final Truth truth = term.evaluate(row);
+                if (Truth.FALSE == truth) {
+                    return Truth.FALSE;
+                }
+                if (Truth.UNKNOWN == truth) {
+                    result = Truth.UNKNOWN;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    @Immutable
+    private static final class Or extends Predicate {
+
+        @NonNull
+        private final Predicate[] mTerms;
+
+        private Or(@NonNull final Predicate[] terms) {
+            mTerms = terms;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            Truth result = Truth.FALSE;
+            for (final Predicate term : mTerms) {
+                final Truth truth = term.evaluate(row);
+                if (Truth.TRUE == truth) {
+                    return Truth.TRUE;
+                }
+                if (Truth.UNKNOWN == truth) {
+                    result = Truth.UNKNOWN;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    @Immutable
+    private static final class Not extends Predicate {
+
+        @NonNull
+        private final Predicate mTerm;
+
+        private Not(@NonNull final Predicate term) {
+            mTerm = term;
+        }
+
+        @NonNull
+        @Override
+        public Truth evaluate(@NonNull final Object[] row) {
+            return mTerm.evaluate(row).not();
+        }
+    }
+}
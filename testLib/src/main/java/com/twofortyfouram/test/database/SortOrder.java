@@ -0,0 +1,201 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed ORDER BY clause, optionally followed by {@code LIMIT} and {@code OFFSET} as content
+ * providers backed by SQLite commonly allow.
+ */
+@Immutable
+/*package*/ final class SortOrder {
+
+    @NonNull
+    private static final Pattern LIMIT_PATTERN = Pattern.compile(
+            "(?i)^(.*?)\\s*\\bLIMIT\\s+(\\d+)(?:\\s+OFFSET\\s+(\\d+))?\\s*$"); //$NON-NLS
+
+    @NonNull
+    private static final Pattern TERM_PATTERN = Pattern.compile(
+            "(?i)^\\s*([\\w.]+|\"[^\"]+\"|`[^`]+`)\\s*(ASC|DESC)?\\s*$"); //$NON-NLS
+
+    /**
+     * Comparator for rows, or null to keep the rows in the order of their ids.
+     */
+    @Nullable
+    private final Comparator<Object[]> mComparator;
+
+    private final int mLimit;
+
+    private final int mOffset;
+
+    /**
+     * @param sortOrder     ORDER BY clause without the {@code ORDER BY}.  May be null.
+     * @param columnIndexes Map of lowercase column name to index.
+     * @return The parsed sort order.
+     * @throws SQLiteException If {@code sortOrder} can't be parsed or refers to a column that
+     *                         doesn't exist.
+     */
+    @NonNull
+    /*package*/ static SortOrder parse(@Nullable final String sortOrder,
+            @NonNull final Map<String, Integer> columnIndexes) {
+        if (null == sortOrder || 0 == sortOrder.trim().length()) {
+            return new SortOrder(null, Integer.MAX_VALUE, 0);
+        }
+
+        String orderBy = sortOrder;
+        int limit = Integer.MAX_VALUE;
+        int offset = 0;
+
+        final Matcher limitMatcher = LIMIT_PATTERN.matcher(sortOrder);
+        if (limitMatcher.matches()) {
+            orderBy = limitMatcher.group(1);
+            limit = parseCount(limitMatcher.group(2), sortOrder);
+            if (null != limitMatcher.group(3)) {
+                offset = parseCount(limitMatcher.group(3), sortOrder);
+            }
+        }
+
+        if (0 == orderBy.trim().length()) {
+            return new SortOrder(null, limit, offset);
+        }
+
+        final String[] terms = orderBy.split(","); //$NON-NLS
+        final List<Integer> columns = new ArrayList<>(terms.length);
+        final List<Boolean> descending = new ArrayList<>(terms.length);
+        for (final String term : terms) {
+            final Matcher termMatcher = TERM_PATTERN.matcher(term);
+            if (!termMatcher.matches()) {
+                throw new SQLiteException(String.format(Locale.US,
+                        "Unsupported or malformed sort order: %s", sortOrder)); //$NON-NLS
+            }
+
+            String name = termMatcher.group(1);
+            if ('"' == name.charAt(0) || '`' == name.charAt(0)) {
+                name = name.substring(1, name.length() - 1);
+            }
+
+            final Integer column = columnIndexes.get(name.toLowerCase(Locale.US));
+            if (null == column) {
+                throw new SQLiteException(String.format(Locale.US, "no such column: %s", //$NON-NLS
+                        name));
+            }
+
+            columns.add(column);
+            descending.add("DESC".equalsIgnoreCase(termMatcher.group(2))); //$NON-NLS
+        }
+
+        return new SortOrder(new RowComparator(columns, descending), limit, offset);
+    }
+
+    private SortOrder(@Nullable final Comparator<Object[]> comparator, final int limit,
+            final int offset) {
+        mComparator = comparator;
+        mLimit = limit;
+        mOffset = offset;
+    }
+
+    /**
+     * @return Comparator for rows, or null if rows should be left in the order of their ids.
+     */
+    @Nullable
+    public Comparator<Object[]> getComparator() {
+        return mComparator;
+    }
+
+    /**
+     * @return Maximum number of rows to return.
+     */
+    public int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * @return Number of rows to skip.
+     */
+    public int getOffset() {
+        return mOffset;
+    }
+
+    private static int parseCount(@NonNull final String count, @NonNull final String sortOrder) {
+        try {
+            return Integer.parseInt(count);
+        } catch (final NumberFormatException e) {
+            throw new SQLiteException(String.format(Locale.US,
+                    "Unsupported or malformed sort order: %s", sortOrder)); //$NON-NLS
+        }
+    }
+
+    /**
+     * Orders rows by one or more columns.  Like SQLite, nulls sort first in ascending order.
+     */
+    @Immutable
+    private static final class RowComparator implements Comparator<Object[]> {
+
+        @NonNull
+        private final int[] mColumns;
+
+        @NonNull
+        private final boolean[] mIsDescending;
+
+        private RowComparator(@NonNull final List<Integer> columns,
+                @NonNull final List<Boolean> descending) {
+            mColumns = new int[columns.size()];
+            mIsDescending = new boolean[columns.size()];
+            for (int x = 0; x < mColumns.length; x++) {
+                mColumns[x] = columns.get(x);
+                mIsDescending[x] = descending.get(x);
+            }
+        }
+
+        @Override
+        public int compare(final Object[] lhs, final Object[] rhs) {
+            for (int x = 0; x < mColumns.length; x++) {
+                final Object lhsValue = lhs[mColumns[x]];
+                final Object rhsValue = rhs[mColumns[x]];
+
+                final int comparison;
+                if (null == lhsValue) {
+                    comparison = null == rhsValue ? 0 : -1;
+                } else if (null == rhsValue) {
+                    comparison = 1;
+                } else {
+                    comparison = SqlValues.compare(lhsValue, rhsValue);
+                }
+
+                if (0 != comparison) {
+                    return mIsDescending[x] ? -comparison : comparison;
+                }
+            }
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Comparator;
+
+/**
+ * Conversion and comparison of values stored in an {@link InMemoryTable}, following the type
+ * affinity and sort order rules of SQLite.  Values are represented as {@link Long},
+ * {@link Double}, {@link String}, or {@code byte[]}.
+ */
+@ThreadSafe
+/*package*/ final class SqlValues {
+
+    /**
+     * Orders non-null values as SQLite does: numbers, then strings, then blobs.
+     */
+    @NonNull
+    /*package*/ static final Comparator<Object> COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(final Object lhs, final Object rhs) {
+            return SqlValues.compare(lhs, rhs);
+        }
+    };
+
+    /**
+     * @param value Value to convert.  May be null.
+     * @param type  Column type, as one of the {@code Cursor.FIELD_TYPE} constants.
+     * @return {@code value} converted to the storage class for {@code type}, or {@code value}
+     * unchanged if it can't be converted losslessly.  Numbers and booleans are normalized to
+     * {@link Long} or {@link Double}.
+     */
+    @Nullable
+    /*package*/ static Object applyAffinity(@Nullable final Object value, final int type) {
+        if (null == value) {
+            return null;
+        }
+
+        final Object normalized = normalize(value);
+
+        switch (type) {
+            case Cursor.FIELD_TYPE_INTEGER: {
+                if (normalized instanceof String) {
+                    final Object number = parseNumber((String) normalized);
+                    return null == number ? normalized : toIntegerIfExact(number);
+                }
+
+                return toIntegerIfExact(normalized);
+            }
+            case Cursor.FIELD_TYPE_FLOAT: {
+                if (normalized instanceof String) {
+                    final Object number = parseNumber((String) normalized);
+                    return null == number ? normalized : ((Number) number).doubleValue();
+                }
+                if (normalized instanceof Long) {
+                    return ((Long) normalized).doubleValue();
+                }
+
+                return normalized;
+            }
+            case Cursor.FIELD_TYPE_STRING: {
+                if (normalized instanceof Long || normalized instanceof Double) {
+                    return normalized.toString();
+                }
+
+                return normalized;
+            }
+            default: {
+                return normalized;
+            }
+        }
+    }
+
+    /**
+     * @param value Non-null value.
+     * @param type  Column type, as one of the {@code Cursor.FIELD_TYPE} constants.
+     * @return True if {@code value} has the storage class that columns of {@code type} hold.
+     */
+    /*package*/ static boolean isStorageClass(@NonNull final Object value, final int type) {
+        switch (type) {
+            case Cursor.FIELD_TYPE_INTEGER: {
+                return value instanceof Long;
+            }
+            case Cursor.FIELD_TYPE_FLOAT: {
+                return value instanceof Double;
+            }
+            case Cursor.FIELD_TYPE_STRING: {
+                return value instanceof String;
+            }
+            default: {
+                return value instanceof byte[];
+            }
+        }
+    }
+
+    /**
+     * @param lhs Non-null value.
+     * @param rhs Non-null value.
+     * @return Comparison of {@code lhs} and {@code rhs} in SQLite's BINARY collation.
+     */
+    /*package*/ static int compare(@NonNull final Object lhs, @NonNull final Object rhs) {
+        final int lhsRank = rank(lhs);
+        final int rhsRank = rank(rhs);
+
+        if (lhsRank != rhsRank) {
+            return lhsRank < rhsRank ? -1 : 1;
+        }
+
+        if (lhs instanceof Long && rhs instanceof Long) {
+            final long lhsLong = (Long) lhs;
+            final long rhsLong = (Long) rhs;
+            return lhsLong < rhsLong ? -1 : (lhsLong == rhsLong ? 0 : 1);
+        }
+        if (lhs instanceof Number) {
+            return Double.compare(((Number) lhs).doubleValue(), ((Number) rhs).doubleValue());
+        }
+        if (lhs instanceof String) {
+            return ((String) lhs).compareTo((String) rhs);
+        }
+
+        final byte[] lhsBytes = (byte[]) lhs;
+        final byte[] rhsBytes = (byte[]) rhs;
+        final int length = Math.min(lhsBytes.length, rhsBytes.length);
+        for (int x = 0; x < length; x++) {
+            final int diff = (lhsBytes[x] & 0xFF) - (rhsBytes[x] & 0xFF);
+            if (0 != diff) {
+                return diff;
+            }
+        }
+
+        return lhsBytes.length - rhsBytes.length;
+    }
+
+    /**
+     * @param value Non-null value.
+     * @return {@code value} as text, as SQLite would render it for LIKE.
+     */
+    @NonNull
+    /*package*/ static String toText(@NonNull final Object value) {
+        if (value instanceof byte[]) {
+            return new String((byte[]) value);
+        }
+
+        return value.toString();
+    }
+
+    @NonNull
+    private static Object normalize(@NonNull final Object value) {
+        if (value instanceof Long || value instanceof Double || value instanceof String
+                || value instanceof byte[]) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+
+        return value.toString();
+    }
+
+    @NonNull
+    private static Object toIntegerIfExact(@NonNull final Object value) {
+        if (value instanceof Double) {
+            final double doubleValue = (Double) value;
+            final long longValue = (long) doubleValue;
+            if (longValue == doubleValue) {
+                return longValue;
+            }
+        }
+
+        return value;
+    }
+
+    @Nullable
+    private static Object parseNumber(@NonNull final String value) {
+        final String trimmed = value.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (final NumberFormatException e) {
+            // Fall through to try a floating point number
+        }
+
+        try {
+            final double doubleValue = Double.parseDouble(trimmed);
+            if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                return null;
+            }
+            return doubleValue;
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int rank(@NonNull final Object value) {
+        if (value instanceof Number) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 1;
+        }
+
+        return 2;
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private SqlValues() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * FIFO record of the params of calls to a single operation, retained according to a
+ * {@link HistoryPolicy}.
+ *
+ * @param <T> Type of the params.
+ */
+@ThreadSafe
+/*package*/ abstract class CallHistory<T> {
+
+    /**
+     * @param params Params to record.
+     */
+    public abstract void add(@NonNull final T params);
+
+    /**
+     * @return The earliest retained params, or null if there are none.
+     */
+    @Nullable
+    public abstract T poll();
+
+    /**
+     * Retains every element, lock-free.
+     */
+    @ThreadSafe
+    /*package*/ static final class Unbounded<T> extends CallHistory<T> {
+
+        @NonNull
+        private final ConcurrentLinkedQueue<T> mQueue = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void add(@NonNull final T params) {
+            mQueue.add(params);
+        }
+
+        @Nullable
+        @Override
+        public T poll() {
+            return mQueue.poll();
+        }
+    }
+
+    /**
+     * Retains nothing.
+     */
+    @ThreadSafe
+    /*package*/ static final class Empty<T> extends CallHistory<T> {
+
+        @Override
+        public void add(@NonNull final T params) {
+            // Intentionally discarded
+        }
+
+        @Nullable
+        @Override
+        public T poll() {
+            return null;
+        }
+    }
+
+    /**
+     * Retains the most recent elements in a preallocated ring buffer, overwriting the oldest
+     * element when full.
+     */
+    @ThreadSafe
+    /*package*/ static final class Ring<T> extends CallHistory<T> {
+
+        /*
+         * Overwriting the oldest element can't be done lock-free without tagging every slot, so
+         * a lock guards the ring.  The critical sections are a few array operations.
+         */
+
+        @NonNull
+        @GuardedBy("this")
+        private final Object[] mElements;
+
+        /**
+         * Index of the oldest element.
+         */
+        @GuardedBy("this")
+        private int mHead = 0;
+
+        @GuardedBy("this")
+        private int mSize = 0;
+
+        /*package*/ Ring(final int capacity) {
+            mElements = new Object[capacity];
+        }
+
+        @Override
+        public synchronized void add(@NonNull final T params) {
+            final int tail = (mHead + mSize) % mElements.length;
+            mElements[tail] = params;
+
+            if (mSize == mElements.length) {
+                mHead = (mHead + 1) % mElements.length;
+            } else {
+                mSize++;
+            }
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized T poll() {
+            if (0 == mSize) {
+                return null;
+            }
+
+            final T result = (T) mElements[mHead];
+            mElements[mHead] = null;
+            mHead = (mHead + 1) % mElements.length;
+            mSize--;
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,943 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.trace.ChromeTraceWriter;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Append-only journal of the calls to a {@link MockableContentProvider}, across all operations,
+ * in the order the calls started.  Unlike the per-operation params, the journal shows how
+ * operations interleave, for example whether code under test re-queries a Uri right after
+ * writing to it.
+ * <p>
+ * Each entry has a sequence number, which starts at 0 and increases by 1 for each call, along
+ * with the operation, Uri, params, start time from {@link System#nanoTime()}, and duration.
+ * Entries appear as soon as a call starts, and their params and duration are filled in as the
+ * call progresses.
+ * <p>
+ * What the journal retains follows the provider's {@link HistoryPolicy}:
+ * <ul>
+ * <li>{@link HistoryPolicy#keepAll()} retains every entry in fixed-size segments of parallel
+ * arrays, so appending is lock-free except when a new segment is allocated, and costs a few
+ * dozen bytes per call plus the params.</li>
+ * <li>{@link HistoryPolicy#keepLast(int)} retains the most recent entries in a ring that is
+ * allocated up front, so memory stays flat however many calls are made.  Unlike the params,
+ * which are retained per operation, the ring holds the most recent {@code count} calls across
+ * all operations, because the journal exists to show their order.  Older entries are skipped by
+ * readers.</li>
+ * <li>{@link HistoryPolicy#keepNone()} retains no entries, only the number of calls, so memory
+ * stays flat.  Readers find no entries, and calls aren't traced.</li>
+ * </ul>
+ * <p>
+ * Entries are read with a {@link Reader}, which streams through the journal like a cursor and
+ * can keep up with a journal that is still growing.
+ */
+@ThreadSafe
+public final class CallJournal {
+
+    /**
+     * Duration of a call that hasn't finished.
+     */
+    public static final long IN_PROGRESS = -1;
+
+    /**
+     * Category of the trace events written for calls.
+     */
+    @NonNull
+    /*package*/ static final String TRACE_CATEGORY = "provider"; //$NON-NLS
+
+    private static final int SEGMENT_BITS = 10;
+
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * Low bits of a handle returned by {@link #begin(ProviderOperation, Uri, long)}, which hold
+     * the sequence number.  The high bits hold the generation of the storage.
+     */
+    private static final int SEQUENCE_BITS = 40;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int GENERATION_MASK = (1 << (Long.SIZE - 1 - SEQUENCE_BITS)) - 1;
+
+    /**
+     * Result of {@link Storage#read(long, Entry)} when the entry was copied.
+     */
+    private static final int READ_OK = 0;
+
+    /**
+     * Result of {@link Storage#read(long, Entry)} when the call has claimed its sequence number
+     * but not yet published its entry.
+     */
+    private static final int READ_PENDING = 1;
+
+    /**
+     * Result of {@link Storage#read(long, Entry)} when the entry is no longer retained.
+     */
+    private static final int READ_DISCARDED = 2;
+
+    /**
+     * Operations by ordinal, cached because {@code values()} allocates a new array each call.
+     */
+    @NonNull
+    private static final ProviderOperation[] OPERATIONS = ProviderOperation.values();
+
+    @NonNull
+    private final Object mLock = new Object();
+
+    @NonNull
+    @GuardedBy("mLock")
+    private HistoryPolicy mHistoryPolicy;
+
+    /**
+     * Storage of the current entries, which is replaced when the journal is cleared.
+     */
+    @NonNull
+    private volatile Storage mStorage;
+
+    /**
+     * Writer that each call is written to as it ends, or null if calls aren't traced.
+     */
+    @Nullable
+    private volatile ChromeTraceWriter mTraceWriter = null;
+
+    /**
+     * Constructs a journal that retains every entry.
+     */
+    public CallJournal() {
+        this(HistoryPolicy.keepAll());
+    }
+
+    /**
+     * @param historyPolicy Policy for the entries to retain.
+     */
+    /*package*/ CallJournal(@NonNull final HistoryPolicy historyPolicy) {
+        assertNotNull(historyPolicy, "historyPolicy"); //$NON-NLS
+
+        mHistoryPolicy = historyPolicy;
+        mStorage = newStorage(historyPolicy, 0);
+    }
+
+    /**
+     * @return The number of calls journaled so far, including calls in progress and entries that
+     * {@link HistoryPolicy#keepLast(int)} no longer retains.
+     */
+    public long getSize() {
+        return mStorage.getSize();
+    }
+
+    /**
+     * @return A reader of every entry, starting with the earliest.
+     */
+    @NonNull
+    public Reader newReader() {
+        return newReader(Filter.all());
+    }
+
+    /**
+     * @param filter Filter for the entries to read.
+     * @return A reader of the entries that satisfy {@code filter}, starting with the earliest.
+     */
+    @NonNull
+    public Reader newReader(@NonNull final Filter filter) {
+        assertNotNull(filter, "filter"); //$NON-NLS
+
+        return new Reader(mStorage, filter);
+    }
+
+    /**
+     * Records the start of a call.
+     *
+     * @param operation  Operation being called.
+     * @param uri        Uri of the call, or null if the operation has none.
+     * @param startNanos Start time of the call.
+     * @return Handle to pass to {@link #setParams(long, Object)} and {@link #end(long)}.  Until
+     * the journal is first cleared, this is the sequence number of the call.
+     */
+    /*package*/ long begin(@NonNull final ProviderOperation operation, @Nullable final Uri uri,
+            final long startNanos) {
+        final Storage storage = mStorage;
+        final long sequence = storage.begin(operation, uri, startNanos);
+
+        return ((long) storage.mGeneration << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Records the params of a call.  Does nothing if the journal was cleared since the call
+     * started, or if the entry is no longer retained.
+     *
+     * @param handle Value returned by {@link #begin(ProviderOperation, Uri, long)}.
+     * @param params Params of the call.
+     */
+    /*package*/ void setParams(final long handle, @NonNull final Object params) {
+        final Storage storage = findStorage(handle);
+        if (null != storage) {
+            storage.setParams(handle & SEQUENCE_MASK, params);
+        }
+    }
+
+    /**
+     * Records the end of a call.  Does nothing if the journal was cleared since the call
+     * started, or if the entry is no longer retained.
+     *
+     * @param handle Value returned by {@link #begin(ProviderOperation, Uri, long)}.
+     */
+    /*package*/ void end(final long handle) {
+        final Storage storage = findStorage(handle);
+        if (null == storage) {
+            return;
+        }
+
+        final long sequence = handle & SEQUENCE_MASK;
+        if (!storage.end(sequence, System.nanoTime())) {
+            return;
+        }
+
+        final ChromeTraceWriter traceWriter = mTraceWriter;
+        if (null != traceWriter) {
+            final Entry entry = new Entry();
+            if (READ_OK == storage.read(sequence, entry)) {
+                traceWriter.writeComplete(entry.mOperation.name(), TRACE_CATEGORY,
+                        entry.mStartNanos, entry.mDurationNanos,
+                        newTraceArgs(entry.mUri, entry.mParams));
+            }
+        }
+    }
+
+    /**
+     * @param traceWriter Writer for each call to be written to as it ends, or null to stop
+     *                    tracing.  Calls journaled before this is set are not written.
+     */
+    /*package*/ void setTraceWriter(@Nullable final ChromeTraceWriter traceWriter) {
+        mTraceWriter = traceWriter;
+    }
+
+    /**
+     * Discards every entry and restarts sequence numbers at 0.  Calls in progress finish
+     * without being journaled, and existing readers continue to read the discarded entries.
+     */
+    /*package*/ void clear() {
+        synchronized (mLock) {
+            mStorage = newStorage(mHistoryPolicy, mStorage.mGeneration + 1);
+        }
+    }
+
+    /**
+     * Sets the policy for the entries to retain.  Like {@link #clear()}, this discards every
+     * entry.
+     *
+     * @param historyPolicy Policy for the entries to retain.
+     */
+    /*package*/ void setHistoryPolicy(@NonNull final HistoryPolicy historyPolicy) {
+        assertNotNull(historyPolicy, "historyPolicy"); //$NON-NLS
+
+        synchronized (mLock) {
+            mHistoryPolicy = historyPolicy;
+            mStorage = newStorage(historyPolicy, mStorage.mGeneration + 1);
+        }
+    }
+
+    @NonNull
+    private static Storage newStorage(@NonNull final HistoryPolicy historyPolicy,
+            final int generation) {
+        final int capacity = historyPolicy.getCapacity();
+        final int maskedGeneration = generation & GENERATION_MASK;
+        if (HistoryPolicy.CAPACITY_UNBOUNDED == capacity) {
+            return new SegmentedStorage(maskedGeneration);
+        } else if (0 == capacity) {
+            return new CountingStorage(maskedGeneration);
+        }
+
+        return new RingStorage(maskedGeneration, capacity);
+    }
+
+    /**
+     * @return The storage that {@code handle} was returned from, or null if the journal has been
+     * cleared since.
+     */
+    @Nullable
+    private Storage findStorage(final long handle) {
+        final Storage storage = mStorage;
+
+        return storage.mGeneration == (int) (handle >>> SEQUENCE_BITS) ? storage : null;
+    }
+
+    @NonNull
+    private static Map<String, Object> newTraceArgs(@Nullable final Uri uri,
+            @Nullable final Object params) {
+        final Map<String, Object> args = new LinkedHashMap<>();
+        if (null != uri) {
+            args.put("uri", uri); //$NON-NLS
+        }
+        if (params instanceof MockableContentProvider.CallParams) {
+            args.put("method", //$NON-NLS
+                    ((MockableContentProvider.CallParams) params).getMethod());
+        }
+
+        return args;
+    }
+
+    /**
+     * Fields of one entry, copied out of the storage.
+     */
+    @NotThreadSafe
+    private static final class Entry {
+
+        private long mSequence;
+
+        @NonNull
+        private ProviderOperation mOperation = ProviderOperation.QUERY;
+
+        @Nullable
+        private Uri mUri;
+
+        @Nullable
+        private Object mParams;
+
+        private long mStartNanos;
+
+        private long mDurationNanos;
+    }
+
+    /**
+     * Entries of one generation of the journal, which begins when the journal is constructed or
+     * cleared.
+     */
+    @ThreadSafe
+    private abstract static class Storage {
+
+        private final int mGeneration;
+
+        private Storage(final int generation) {
+            mGeneration = generation;
+        }
+
+        /**
+         * @return The number of calls that have started.
+         */
+        protected abstract long getSize();
+
+        /**
+         * @return The sequence number of the earliest entry retained.
+         */
+        protected abstract long getFirstSequence();
+
+        /**
+         * @return The sequence number of the call.
+         */
+        protected abstract long begin(@NonNull final ProviderOperation operation,
+                @Nullable final Uri uri, final long startNanos);
+
+        protected abstract void setParams(final long sequence, @NonNull final Object params);
+
+        /**
+         * @return True if the entry was updated, false if it is no longer retained.
+         */
+        protected abstract boolean end(final long sequence, final long endNanos);
+
+        /**
+         * @param sequence Sequence number less than {@link #getSize()}.
+         * @param entry    Entry to copy the fields into.
+         * @return {@link #READ_OK}, {@link #READ_PENDING}, or {@link #READ_DISCARDED}.
+         */
+        protected abstract int read(final long sequence, @NonNull final Entry entry);
+    }
+
+    /**
+     * Storage of every entry, in fixed-size segments of parallel arrays.  Fields of an entry are
+     * written before the state flag that covers them, and read after it, so the state publishes
+     * them.
+     */
+    @ThreadSafe
+    private static final class SegmentedStorage extends Storage {
+
+        /**
+         * Sequence number of the next call.
+         */
+        @NonNull
+        private final AtomicLong mNextSequence = new AtomicLong(0);
+
+        /**
+         * Segments by index.  Elements are only ever set from null to a segment, under a lock on
+         * this, after which the array is republished through this volatile field.
+         */
+        @NonNull
+        private volatile Segment[] mSegments = new Segment[1];
+
+        private SegmentedStorage(final int generation) {
+            super(generation);
+        }
+
+        @Override
+        protected long getSize() {
+            return mNextSequence.get();
+        }
+
+        @Override
+        protected long getFirstSequence() {
+            return 0;
+        }
+
+        @Override
+        protected long begin(@NonNull final ProviderOperation operation,
+                @Nullable final Uri uri, final long startNanos) {
+            final long sequence = mNextSequence.getAndIncrement();
+            final Segment segment = getOrCreateSegment(sequence);
+            final int index = (int) (sequence & SEGMENT_MASK);
+
+            segment.mOperations[index] = (byte) operation.ordinal();
+            segment.mStartNanos[index] = startNanos;
+            segment.mUris[index] = uri;
+            segment.mStates.set(index, Segment.FLAG_PUBLISHED);
+
+            return sequence;
+        }
+
+        @Override
+        protected void setParams(final long sequence, @NonNull final Object params) {
+            final Segment segment = findSegment(sequence);
+            if (null != segment) {
+                final int index = (int) (sequence & SEGMENT_MASK);
+
+                // Only the thread making the call writes the state after publishing it
+                segment.mParams[index] = params;
+                segment.mStates.set(index, segment.mStates.get(index) | Segment.FLAG_PARAMS);
+            }
+        }
+
+        @Override
+        protected boolean end(final long sequence, final long endNanos) {
+            final Segment segment = findSegment(sequence);
+            if (null == segment) {
+                return false;
+            }
+
+            final int index = (int) (sequence & SEGMENT_MASK);
+            segment.mDurationNanos[index] = endNanos - segment.mStartNanos[index];
+            segment.mStates.set(index, segment.mStates.get(index) | Segment.FLAG_COMPLETE);
+
+            return true;
+        }
+
+        @Override
+        protected int read(final long sequence, @NonNull final Entry entry) {
+            final Segment segment = findSegment(sequence);
+            final int index = (int) (sequence & SEGMENT_MASK);
+            final int state = null == segment ? 0 : segment.mStates.get(index);
+            if (0 == (state & Segment.FLAG_PUBLISHED)) {
+                return READ_PENDING;
+            }
+
+            entry.mSequence = sequence;
+            entry.mOperation = OPERATIONS[segment.mOperations[index]];
+            entry.mStartNanos = segment.mStartNanos[index];
+            entry.mUri = segment.mUris[index];
+            entry.mParams = 0 == (state & Segment.FLAG_PARAMS) ? null : segment.mParams[index];
+            entry.mDurationNanos = 0 == (state & Segment.FLAG_COMPLETE) ? IN_PROGRESS
+                    : segment.mDurationNanos[index];
+
+            return READ_OK;
+        }
+
+        /**
+         * @return The segment holding {@code sequence}, or null if it hasn't been allocated yet.
+         */
+        @Nullable
+        private Segment findSegment(final long sequence) {
+            final Segment[] segments = mSegments;
+            final long segmentIndex = sequence >>> SEGMENT_BITS;
+
+            return segmentIndex < segments.length ? segments[(int) segmentIndex] : null;
+        }
+
+        @NonNull
+        private Segment getOrCreateSegment(final long sequence) {
+            final Segment segment = findSegment(sequence);
+            if (null != segment) {
+                return segment;
+            }
+
+            synchronized (this) {
+                Segment[] segments = mSegments;
+                final int segmentIndex = (int) (sequence >>> SEGMENT_BITS);
+                if (segmentIndex >= segments.length) {
+                    segments = Arrays.copyOf(segments,
+                            Math.max(segments.length * 2, segmentIndex + 1));
+                }
+                if (null == segments[segmentIndex]) {
+                    segments[segmentIndex] = new Segment();
+                }
+                mSegments = segments;
+
+                return segments[segmentIndex];
+            }
+        }
+    }
+
+    /**
+     * A block of entries stored as parallel arrays.
+     */
+    @ThreadSafe
+    private static final class Segment {
+
+        /**
+         * State flag set once the operation, start time, and Uri have been written.
+         */
+        private static final int FLAG_PUBLISHED = 1;
+
+        /**
+         * State flag set once the params have been written.
+         */
+        private static final int FLAG_PARAMS = 1 << 1;
+
+        /**
+         * State flag set once the duration has been written.
+         */
+        private static final int FLAG_COMPLETE = 1 << 2;
+
+        @NonNull
+        private final AtomicIntegerArray mStates = new AtomicIntegerArray(SEGMENT_SIZE);
+
+        @NonNull
+        private final byte[] mOperations = new byte[SEGMENT_SIZE];
+
+        @NonNull
+        private final long[] mStartNanos = new long[SEGMENT_SIZE];
+
+        @NonNull
+        private final long[] mDurationNanos = new long[SEGMENT_SIZE];
+
+        @NonNull
+        private final Uri[] mUris = new Uri[SEGMENT_SIZE];
+
+        @NonNull
+        private final Object[] mParams = new Object[SEGMENT_SIZE];
+    }
+
+    /**
+     * Storage that retains no entries, only the number of calls.
+     */
+    @ThreadSafe
+    private static final class CountingStorage extends Storage {
+
+        @NonNull
+        private final AtomicLong mSize = new AtomicLong(0);
+
+        private CountingStorage(final int generation) {
+            super(generation);
+        }
+
+        @Override
+        protected long getSize() {
+            return mSize.get();
+        }
+
+        @Override
+        protected long getFirstSequence() {
+            return mSize.get();
+        }
+
+        @Override
+        protected long begin(@NonNull final ProviderOperation operation,
+                @Nullable final Uri uri, final long startNanos) {
+            return mSize.getAndIncrement();
+        }
+
+        @Override
+        protected void setParams(final long sequence, @NonNull final Object params) {
+            // Params aren't retained
+        }
+
+        @Override
+        protected boolean end(final long sequence, final long endNanos) {
+            return false;
+        }
+
+        @Override
+        protected int read(final long sequence, @NonNull final Entry entry) {
+            return READ_DISCARDED;
+        }
+    }
+
+    /**
+     * Storage of the most recent entries, in parallel arrays allocated up front and used as a
+     * ring.  The critical sections are a few array operations, so a lock is simpler than
+     * coordinating readers with the writer that overwrites a slot.
+     */
+    @ThreadSafe
+    private static final class RingStorage extends Storage {
+
+        private final int mCapacity;
+
+        /**
+         * Sequence number held by each slot, or -1 if the slot hasn't been used.
+         */
+        @NonNull
+        @GuardedBy("this")
+        private final long[] mSequences;
+
+        @NonNull
+        @GuardedBy("this")
+        private final byte[] mOperations;
+
+        @NonNull
+        @GuardedBy("this")
+        private final long[] mStartNanos;
+
+        @NonNull
+        @GuardedBy("this")
+        private final long[] mDurationNanos;
+
+        @NonNull
+        @GuardedBy("this")
+        private final Uri[] mUris;
+
+        @NonNull
+        @GuardedBy("this")
+        private final Object[] mParams;
+
+        @GuardedBy("this")
+        private long mSize = 0;
+
+        private RingStorage(final int generation, final int capacity) {
+            super(generation);
+            mCapacity = capacity;
+            mSequences = new long[capacity];
+            Arrays.fill(mSequences, -1);
+            mOperations = new byte[capacity];
+            mStartNanos = new long[capacity];
+            mDurationNanos = new long[capacity];
+            mUris = new Uri[capacity];
+            mParams = new Object[capacity];
+        }
+
+        @Override
+        protected synchronized long getSize() {
+            return mSize;
+        }
+
+        @Override
+        protected synchronized long getFirstSequence() {
+            return Math.max(0, mSize - mCapacity);
+        }
+
+        @Override
+        protected synchronized long begin(@NonNull final ProviderOperation operation,
+                @Nullable final Uri uri, final long startNanos) {
+            final long sequence = mSize++;
+            final int slot = (int) (sequence % mCapacity);
+
+            mSequences[slot] = sequence;
+            mOperations[slot] = (byte) operation.ordinal();
+            mStartNanos[slot] = startNanos;
+            mDurationNanos[slot] = IN_PROGRESS;
+            mUris[slot] = uri;
+            mParams[slot] = null;
+
+            return sequence;
+        }
+
+        @Override
+        protected synchronized void setParams(final long sequence,
+                @NonNull final Object params) {
+            final int slot = (int) (sequence % mCapacity);
+            if (sequence == mSequences[slot]) {
+                mParams[slot] = params;
+            }
+        }
+
+        @Override
+        protected synchronized boolean end(final long sequence, final long endNanos) {
+            final int slot = (int) (sequence % mCapacity);
+            if (sequence != mSequences[slot]) {
+                return false;
+            }
+
+            mDurationNanos[slot] = endNanos - mStartNanos[slot];
+
+            return true;
+        }
+
+        @Override
+        protected synchronized int read(final long sequence, @NonNull final Entry entry) {
+            final int slot = (int) (sequence % mCapacity);
+            if (sequence != mSequences[slot]) {
+                return READ_DISCARDED;
+            }
+
+            entry.mSequence = sequence;
+            entry.mOperation = OPERATIONS[mOperations[slot]];
+            entry.mStartNanos = mStartNanos[slot];
+            entry.mDurationNanos = mDurationNanos[slot];
+            entry.mUri = mUris[slot];
+            entry.mParams = mParams[slot];
+
+            return READ_OK;
+        }
+    }
+
+    /**
+     * Selects the entries returned by a {@link Reader}.  Filters are immutable, and each
+     * {@code with} method returns a new filter that adds a condition.
+     */
+    @Immutable
+    public static final class Filter {
+
+        @NonNull
+        private static final Filter ALL = new Filter(null, null, 0);
+
+        /**
+         * Operations to include, or null for all.
+         */
+        @Nullable
+        private final Set<ProviderOperation> mOperations;
+
+        /**
+         * Index holding the single Uri pattern to include, or null for all Uris.
+         */
+        @Nullable
+        private final UriPatternIndex<Boolean> mUriPattern;
+
+        private final long mMinSequence;
+
+        /**
+         * @return A filter that includes every entry.
+         */
+        @NonNull
+        public static Filter all() {
+            return ALL;
+        }
+
+        private Filter(@Nullable final Set<ProviderOperation> operations,
+                @Nullable final UriPatternIndex<Boolean> uriPattern, final long minSequence) {
+            mOperations = operations;
+            mUriPattern = uriPattern;
+            mMinSequence = minSequence;
+        }
+
+        /**
+         * @param first  Operation to include.
+         * @param others Additional operations to include.
+         * @return A filter that only includes calls to the given operations.
+         */
+        @NonNull
+        public Filter withOperations(@NonNull final ProviderOperation first,
+                @NonNull final ProviderOperation... others) {
+            assertNotNull(first, "first"); //$NON-NLS
+            assertNotNull(others, "others"); //$NON-NLS
+
+            return new Filter(Collections.unmodifiableSet(EnumSet.of(first, others)),
+                    mUriPattern, mMinSequence);
+        }
+
+        /**
+         * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+         * @return A filter that only includes calls whose Uri matches {@code uriPattern}.  Calls
+         * without a Uri, such as {@link MockableContentProvider#call(String, String,
+         * android.os.Bundle)}, are excluded.
+         */
+        @NonNull
+        public Filter withUriPattern(@NonNull final String uriPattern) {
+            final UriPatternIndex<Boolean> index = new UriPatternIndex<>();
+            index.put(uriPattern, Boolean.TRUE);
+
+            return new Filter(mOperations, index, mMinSequence);
+        }
+
+        /**
+         * @param minSequence Lowest sequence number to include.
+         * @return A filter that only includes calls from {@code minSequence} on, for example to
+         * skip the calls made while setting up a test.
+         */
+        @NonNull
+        public Filter withMinSequence(final long minSequence) {
+            if (0 > minSequence) {
+                throw new IllegalArgumentException("minSequence must be >= 0"); //$NON-NLS
+            }
+
+            return new Filter(mOperations, mUriPattern, minSequence);
+        }
+
+        private boolean matches(@NonNull final ProviderOperation operation,
+                @Nullable final Uri uri) {
+            if (null != mOperations && !mOperations.contains(operation)) {
+                return false;
+            }
+
+            if (null != mUriPattern && (null == uri || null == mUriPattern.get(uri))) {
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Streams through the entries of a journal in sequence order, like a {@code Cursor}.  The
+     * reader starts before the first entry, and {@link #moveToNext()} must be called before
+     * reading each one.  The fields of an entry are copied when the reader moves to it, so a
+     * call still in progress at that point reads as {@link #IN_PROGRESS}, possibly without
+     * params.
+     * <p>
+     * When the reader reaches the end of the journal, {@link #moveToNext()} returns false.  If
+     * more calls are made later, calling {@link #moveToNext()} again continues from where the
+     * reader stopped, so a reader can follow a journal as it grows.  A call that has started but
+     * not yet been published is never skipped; the reader stops before it until it appears.
+     * Entries that {@link HistoryPolicy#keepLast(int)} no longer retains are skipped.
+     */
+    @NotThreadSafe
+    public static final class Reader {
+
+        @NonNull
+        private final Storage mStorage;
+
+        @NonNull
+        private final Filter mFilter;
+
+        /**
+         * Sequence number of the next entry to examine.
+         */
+        private long mNextSequence;
+
+        /**
+         * Entry the reader is positioned on, or null if it hasn't moved yet.
+         */
+        @Nullable
+        private Entry mEntry = null;
+
+        /**
+         * Entry that the next candidate is copied into, reused to avoid allocating.
+         */
+        @NonNull
+        private Entry mCandidate = new Entry();
+
+        private Reader(@NonNull final Storage storage, @NonNull final Filter filter) {
+            mStorage = storage;
+            mFilter = filter;
+            mNextSequence = filter.mMinSequence;
+        }
+
+        /**
+         * Moves to the next entry that satisfies the filter.
+         *
+         * @return True if the reader moved to an entry, false if there are no more entries yet.
+         */
+        public boolean moveToNext() {
+            while (mNextSequence < mStorage.getSize()) {
+                final int result = mStorage.read(mNextSequence, mCandidate);
+                if (READ_PENDING == result) {
+                    return false;
+                } else if (READ_DISCARDED == result) {
+                    mNextSequence = Math.max(mNextSequence + 1, mStorage.getFirstSequence());
+                    continue;
+                }
+
+                mNextSequence++;
+                if (mFilter.matches(mCandidate.mOperation, mCandidate.mUri)) {
+                    final Entry previous = mEntry;
+                    mEntry = mCandidate;
+                    mCandidate = null == previous ? new Entry() : previous;
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * @return The sequence number of the current entry.
+         */
+        public long getSequence() {
+            return getEntry().mSequence;
+        }
+
+        /**
+         * @return The operation of the current entry.
+         */
+        @NonNull
+        public ProviderOperation getOperation() {
+            return getEntry().mOperation;
+        }
+
+        /**
+         * @return The Uri of the current entry, or null if the operation has none.
+         */
+        @Nullable
+        public Uri getUri() {
+            return getEntry().mUri;
+        }
+
+        /**
+         * @return The params of the current entry, such as a
+         * {@link MockableContentProvider.QueryParams}.  Null if the operation has no params
+         * object, such as {@link ProviderOperation#GET_TYPE}, or if the call hadn't recorded them
+         * yet.
+         */
+        @Nullable
+        public Object getParams() {
+            return getEntry().mParams;
+        }
+
+        /**
+         * @return The start time of the current entry, from {@link System#nanoTime()}.
+         */
+        public long getStartNanos() {
+            return getEntry().mStartNanos;
+        }
+
+        /**
+         * @return The duration of the current entry in nanoseconds, or {@link #IN_PROGRESS} if the
+         * call hadn't finished.
+         */
+        public long getDurationNanos() {
+            return getEntry().mDurationNanos;
+        }
+
+        @NonNull
+        private Entry getEntry() {
+            if (null == mEntry) {
+                throw new IllegalStateException("Call moveToNext() first"); //$NON-NLS
+            }
+
+            return mEntry;
+        }
+    }
+}
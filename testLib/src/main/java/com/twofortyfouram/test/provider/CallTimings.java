@@ -0,0 +1,82 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Point-in-time timing statistics for one operation of {@link MockableContentProvider}, as
+ * returned by {@link MockableContentProvider#getTimings(ProviderOperation)}.  All durations
+ * are in nanoseconds.
+ */
+@Immutable
+public final class CallTimings {
+
+    @NonNull
+    private final HistogramSnapshot mInterArrival;
+
+    @NonNull
+    private final HistogramSnapshot mDuration;
+
+    private final int mPeakCallsPerSecond;
+
+    /*package*/ CallTimings(@NonNull final HistogramSnapshot interArrival,
+            @NonNull final HistogramSnapshot duration, final int peakCallsPerSecond) {
+        mInterArrival = interArrival;
+        mDuration = duration;
+        mPeakCallsPerSecond = peakCallsPerSecond;
+    }
+
+    /**
+     * @return Histogram of the time between the start of consecutive calls, regardless of which
+     * thread made them.  A burst of calls with a tiny inter-arrival time usually indicates an
+     * N+1 query pattern.
+     */
+    @NonNull
+    public HistogramSnapshot getInterArrival() {
+        return mInterArrival;
+    }
+
+    /**
+     * @return Histogram of the time spent inside each call, including any injected
+     * {@link Latency}.
+     */
+    @NonNull
+    public HistogramSnapshot getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return The largest number of calls started within a single second.  Seconds are counted
+     * from when the provider was created, rather than as a sliding window.
+     */
+    public int getPeakCallsPerSecond() {
+        return mPeakCallsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "CallTimings{" //$NON-NLS
+                + "mInterArrival=" + mInterArrival //$NON-NLS
+                + ", mDuration=" + mDuration //$NON-NLS
+                + ", mPeakCallsPerSecond=" + mPeakCallsPerSecond //$NON-NLS
+                + '}';
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative long values, with buckets spaced log-linearly in the
+ * style of HdrHistogram.  Values below {@link #LINEAR_LIMIT} are recorded exactly, and larger
+ * values are recorded with a relative error of at most 1 / {@link #SUB_BUCKET_COUNT}.  The
+ * bucket array is allocated up front, so recording never allocates.
+ */
+@ThreadSafe
+/*package*/ final class ConcurrentHistogram {
+
+    /**
+     * Number of bits of precision kept below the most significant bit of a value.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are each given their own bucket.
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+
+    /**
+     * Linear buckets, plus {@link #SUB_BUCKET_COUNT} buckets for each remaining power of two
+     * up to {@link Long#MAX_VALUE}.
+     */
+    /*package*/ static final int BUCKET_COUNT = LINEAR_LIMIT
+            + (Long.SIZE - 1 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKET_COUNT;
+
+    @NonNull
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    @NonNull
+    private final AtomicLong mSum = new AtomicLong(0);
+
+    @NonNull
+    private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+
+    @NonNull
+    private final AtomicLong mMax = new AtomicLong(0);
+
+    /**
+     * @param value Value to record.  Negative values are recorded as 0.
+     */
+    public void record(final long value) {
+        final long clamped = Math.max(0, value);
+
+        mCounts.incrementAndGet(bucketIndex(clamped));
+        mSum.addAndGet(clamped);
+
+        long min = mMin.get();
+        while (clamped < min && !mMin.compareAndSet(min, clamped)) {
+            min = mMin.get();
+        }
+
+        long max = mMax.get();
+        while (clamped > max && !mMax.compareAndSet(max, clamped)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * The snapshot is not atomic with respect to concurrent recording, although each bucket is
+     * read atomically.
+     *
+     * @return A copy of the histogram.
+     */
+    @NonNull
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long totalCount = 0;
+        for (int x = 0; x < BUCKET_COUNT; x++) {
+            counts[x] = mCounts.get(x);
+            totalCount += counts[x];
+        }
+
+        if (0 == totalCount) {
+            return HistogramSnapshot.EMPTY;
+        }
+
+        return new HistogramSnapshot(counts, totalCount, mMin.get(), mMax.get(), mSum.get());
+    }
+
+    /**
+     * @param value Non-negative value.
+     * @return Index of the bucket for {@code value}.
+     */
+    /*package*/ static int bucketIndex(final long value) {
+        if (LINEAR_LIMIT > value) {
+            return (int) value;
+        }
+
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+
+        return LINEAR_LIMIT + (exponent - (SUB_BUCKET_BITS + 1)) * SUB_BUCKET_COUNT
+                + (mantissa - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * @param index Index of a bucket.
+     * @return Largest value recorded in bucket {@code index}.
+     */
+    /*package*/ static long highestValueInBucket(final int index) {
+        if (LINEAR_LIMIT > index) {
+            return index;
+        }
+
+        final int offset = index - LINEAR_LIMIT;
+        final int exponent = SUB_BUCKET_BITS + 1 + offset / SUB_BUCKET_COUNT;
+        final long mantissa = SUB_BUCKET_COUNT + offset % SUB_BUCKET_COUNT;
+
+        // For the last bucket, this deliberately overflows to Long.MAX_VALUE
+        return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
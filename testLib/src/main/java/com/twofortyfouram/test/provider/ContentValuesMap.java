@@ -0,0 +1,83 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.content.ContentValues;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map view over a {@link ContentValues}, without copying its values.
+ */
+@Immutable
+/*package*/ final class ContentValuesMap extends AbstractMap<String, Object> {
+
+    /*
+     * Lookups delegate to ContentValues, rather than AbstractMap's linear scan of the entry set.
+     */
+
+    @NonNull
+    private final ContentValues mContentValues;
+
+    private ContentValuesMap(@NonNull final ContentValues contentValues) {
+        mContentValues = contentValues;
+    }
+
+    /**
+     * @param contentValues Values to view.  The caller must ensure that these are never modified,
+     *                      typically by passing a private copy.  May be null.
+     * @return An unmodifiable map view of {@code contentValues}, or null if {@code
+     * contentValues} is null.
+     */
+    @Nullable
+    public static Map<String, Object> unmodifiableView(
+            @Nullable final ContentValues contentValues) {
+        if (null == contentValues) {
+            return null;
+        }
+
+        return Collections.unmodifiableMap(new ContentValuesMap(contentValues));
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return key instanceof String ? mContentValues.get((String) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && mContentValues.containsKey((String) key);
+    }
+
+    @Override
+    public int size() {
+        return mContentValues.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        // Entries remain protected from modification by the unmodifiable wrapper
+        return mContentValues.valueSet();
+    }
+}
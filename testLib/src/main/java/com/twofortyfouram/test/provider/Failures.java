@@ -0,0 +1,117 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.database.sqlite.SQLiteException;
+import android.os.DeadObjectException;
+import android.support.annotation.NonNull;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.FailureFactory;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Common failures for use with
+ * {@link MockableContentProvider#setFailure(ProviderOperation, double, FailureFactory)}.
+ */
+@ThreadSafe
+public final class Failures {
+
+    @NonNull
+    private static final FailureFactory SQLITE = new FailureFactory() {
+        @NonNull
+        @Override
+        public RuntimeException newFailure(@NonNull final ProviderOperation operation) {
+            return new SQLiteException("Injected failure in " + operation); //$NON-NLS
+        }
+    };
+
+    @NonNull
+    private static final FailureFactory SECURITY = new FailureFactory() {
+        @NonNull
+        @Override
+        public RuntimeException newFailure(@NonNull final ProviderOperation operation) {
+            return new SecurityException("Injected failure in " + operation); //$NON-NLS
+        }
+    };
+
+    @NonNull
+    private static final FailureFactory ILLEGAL_STATE = new FailureFactory() {
+        @NonNull
+        @Override
+        public RuntimeException newFailure(@NonNull final ProviderOperation operation) {
+            return new IllegalStateException("Injected failure in " + operation); //$NON-NLS
+        }
+    };
+
+    @NonNull
+    private static final FailureFactory DEAD_OBJECT = new FailureFactory() {
+        @NonNull
+        @Override
+        public RuntimeException newFailure(@NonNull final ProviderOperation operation) {
+            return new RuntimeException("Injected failure in " + operation, //$NON-NLS
+                    new DeadObjectException());
+        }
+    };
+
+    /**
+     * @return Factory for {@link SQLiteException}, as thrown by a provider backed by a
+     * corrupt or locked database.
+     */
+    @NonNull
+    public static FailureFactory sqliteException() {
+        return SQLITE;
+    }
+
+    /**
+     * @return Factory for {@link SecurityException}, as thrown when a permission is missing.
+     */
+    @NonNull
+    public static FailureFactory securityException() {
+        return SECURITY;
+    }
+
+    /**
+     * @return Factory for {@link IllegalStateException}.
+     */
+    @NonNull
+    public static FailureFactory illegalStateException() {
+        return ILLEGAL_STATE;
+    }
+
+    /**
+     * Approximates the provider process dying.  Because {@link android.os.RemoteException} is
+     * checked and cannot be thrown by a {@link android.content.ContentProvider}, this is a
+     * {@link RuntimeException} whose cause is a {@link DeadObjectException}.
+     *
+     * @return Factory for failures caused by a {@link DeadObjectException}.
+     */
+    @NonNull
+    public static FailureFactory deadObject() {
+        return DEAD_OBJECT;
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private Failures() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
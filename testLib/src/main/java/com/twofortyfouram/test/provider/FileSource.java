@@ -0,0 +1,400 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * The contents of a file served by {@link MockableContentProvider#openFile(Uri, String)}.
+ * <p>
+ * Except for an unthrottled {@link #fromFile(File)}, contents are streamed to the reader through
+ * a pipe by a background thread.  The reader therefore sees the same non-seekable stream it
+ * would get from a provider that generates content on the fly, and large contents from
+ * {@link #fromGenerator(Generator)} never have to be held in memory.
+ * {@link #withThroughput(long)} limits the rate at which contents are written to the pipe, to
+ * emulate a slow disk or network.
+ */
+@Immutable
+public abstract class FileSource {
+
+    @NonNull
+    private static final String LOG_TAG = "FileSource"; //$NON-NLS
+
+    /**
+     * Size of each write to the pipe, which is also the granularity of throttling.
+     */
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Writes contents into pipes.  Threads are daemons, so that a reader that never finishes
+     * doesn't keep the process alive.
+     */
+    @NonNull
+    private static final ExecutorService WRITER_EXECUTOR = Executors
+            .newCachedThreadPool(new ThreadFactory() {
+                @NonNull
+                private final AtomicInteger mCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, String.format(Locale.US,
+                            "FileSource-%d", mCount.incrementAndGet())); //$NON-NLS
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+
+    /**
+     * Maximum bytes per second written to the pipe, or 0 for no limit.
+     */
+    private final long mBytesPerSecond;
+
+    /**
+     * @param bytes Contents of the file.  A copy is made.
+     * @return A source that streams {@code bytes}.
+     */
+    @NonNull
+    public static FileSource fromBytes(@NonNull final byte[] bytes) {
+        assertNotNull(bytes, "bytes"); //$NON-NLS
+
+        return new BytesSource(bytes.clone(), 0);
+    }
+
+    /**
+     * @param file File whose contents to serve.  Unless throttled, the file is opened directly,
+     *             so the reader gets a seekable descriptor and writable modes are supported.
+     * @return A source for {@code file}.
+     */
+    @NonNull
+    public static FileSource fromFile(@NonNull final File file) {
+        assertNotNull(file, "file"); //$NON-NLS
+
+        return new LocalFileSource(file, 0);
+    }
+
+    /**
+     * @param generator Generator of the contents, which is invoked each time the file is opened.
+     * @return A source that streams the output of {@code generator}.
+     */
+    @NonNull
+    public static FileSource fromGenerator(@NonNull final Generator generator) {
+        assertNotNull(generator, "generator"); //$NON-NLS
+
+        return new GeneratorSource(generator, 0);
+    }
+
+    /**
+     * @param bytesPerSecond Maximum rate at which to stream the contents, or 0 for no limit.
+     * @return A copy of this source with the limit applied.
+     */
+    @NonNull
+    public abstract FileSource withThroughput(final long bytesPerSecond);
+
+    /**
+     * @return Maximum bytes per second, or 0 if there is no limit.
+     */
+    public final long getThroughput() {
+        return mBytesPerSecond;
+    }
+
+    /*package*/ FileSource(final long bytesPerSecond) {
+        if (0 > bytesPerSecond) {
+            throw new IllegalArgumentException("bytesPerSecond must be >= 0"); //$NON-NLS
+        }
+
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param mode Mode the file was opened with, as passed to
+     *             {@link MockableContentProvider#openFile(Uri, String)}.
+     * @return A new descriptor for reading the contents.
+     * @throws FileNotFoundException If the contents can't be opened in {@code mode}.
+     */
+    @NonNull
+    /*package*/ ParcelFileDescriptor open(@NonNull final String mode)
+            throws FileNotFoundException {
+        if (!"r".equals(mode)) { //$NON-NLS
+            throw new FileNotFoundException(String.format(Locale.US,
+                    "Mode %s is not supported; streamed sources are read-only", mode)); //$NON-NLS
+        }
+
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createPipe();
+        } catch (final IOException e) {
+            throw new FileNotFoundException(e.getMessage());
+        }
+
+        final ParcelFileDescriptor readSide = pipe[0];
+        final ParcelFileDescriptor writeSide = pipe[1];
+        WRITER_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(writeSide);
+                if (0 != mBytesPerSecond) {
+                    out = new ThrottledOutputStream(out, mBytesPerSecond);
+                }
+
+                try {
+                    writeTo(out);
+                } catch (final IOException e) {
+                    // Most often the reader closed its end early, which is not an error
+                    Log.v(LOG_TAG, "Stopped writing to pipe", e); //$NON-NLS
+                } finally {
+                    try {
+                        out.close();
+                    } catch (final IOException e) {
+                        Log.v(LOG_TAG, "Failed to close pipe", e); //$NON-NLS
+                    }
+                }
+            }
+        });
+
+        return readSide;
+    }
+
+    /**
+     * Writes the contents.  Called on a background thread for each open.
+     *
+     * @param out Stream to write to, which the caller closes.
+     * @throws IOException If writing fails.
+     */
+    /*package*/ abstract void writeTo(@NonNull final OutputStream out) throws IOException;
+
+    /**
+     * Generates the contents of a file as it is read.
+     */
+    public interface Generator {
+
+        /**
+         * Writes the contents of the file.  This is called on a background thread each time the
+         * file is opened, and blocks whenever the reader falls behind.
+         *
+         * @param out Stream to write to.  There is no need to close it.
+         * @throws IOException If writing fails, for example because the reader closed the file
+         *                     early.
+         */
+        void writeTo(@NonNull final OutputStream out) throws IOException;
+    }
+
+    @Immutable
+    private static final class BytesSource extends FileSource {
+
+        @NonNull
+        private final byte[] mBytes;
+
+        private BytesSource(@NonNull final byte[] bytes, final long bytesPerSecond) {
+            super(bytesPerSecond);
+
+            mBytes = bytes;
+        }
+
+        @NonNull
+        @Override
+        public FileSource withThroughput(final long bytesPerSecond) {
+            return new BytesSource(mBytes, bytesPerSecond);
+        }
+
+        @Override
+        /*package*/ void writeTo(@NonNull final OutputStream out) throws IOException {
+            for (int offset = 0; offset < mBytes.length; offset += CHUNK_SIZE) {
+                out.write(mBytes, offset, Math.min(CHUNK_SIZE, mBytes.length - offset));
+            }
+        }
+    }
+
+    @Immutable
+    private static final class LocalFileSource extends FileSource {
+
+        @NonNull
+        private final File mFile;
+
+        private LocalFileSource(@NonNull final File file, final long bytesPerSecond) {
+            super(bytesPerSecond);
+
+            mFile = file;
+        }
+
+        @NonNull
+        @Override
+        public FileSource withThroughput(final long bytesPerSecond) {
+            return new LocalFileSource(mFile, bytesPerSecond);
+        }
+
+        @NonNull
+        @Override
+        /*package*/ ParcelFileDescriptor open(@NonNull final String mode)
+                throws FileNotFoundException {
+            if (0 != getThroughput()) {
+                return super.open(mode);
+            }
+
+            return ParcelFileDescriptor.open(mFile, parseMode(mode));
+        }
+
+        @Override
+        /*package*/ void writeTo(@NonNull final OutputStream out) throws IOException {
+            final InputStream in = new FileInputStream(mFile);
+            try {
+                final byte[] buffer = new byte[CHUNK_SIZE];
+                int count;
+                while (-1 != (count = in.read(buffer))) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Equivalent to {@code ParcelFileDescriptor.parseMode(String)}, which requires API 19.
+         */
+        private static int parseMode(@NonNull final String mode) {
+            switch (mode) {
+                case "r": { //$NON-NLS
+                    return ParcelFileDescriptor.MODE_READ_ONLY;
+                }
+                case "w": //$NON-NLS
+                case "wt": { //$NON-NLS
+                    return ParcelFileDescriptor.MODE_WRITE_ONLY
+                            | ParcelFileDescriptor.MODE_CREATE
+                            | ParcelFileDescriptor.MODE_TRUNCATE;
+                }
+                case "wa": { //$NON-NLS
+                    return ParcelFileDescriptor.MODE_WRITE_ONLY
+                            | ParcelFileDescriptor.MODE_CREATE
+                            | ParcelFileDescriptor.MODE_APPEND;
+                }
+                case "rw": { //$NON-NLS
+                    return ParcelFileDescriptor.MODE_READ_WRITE
+                            | ParcelFileDescriptor.MODE_CREATE;
+                }
+                case "rwt": { //$NON-NLS
+                    return ParcelFileDescriptor.MODE_READ_WRITE
+                            | ParcelFileDescriptor.MODE_CREATE
+                            | ParcelFileDescriptor.MODE_TRUNCATE;
+                }
+                default: {
+                    throw new IllegalArgumentException(String.format(Locale.US,
+                            "Bad mode %s", mode)); //$NON-NLS
+                }
+            }
+        }
+    }
+
+    @Immutable
+    private static final class GeneratorSource extends FileSource {
+
+        @NonNull
+        private final Generator mGenerator;
+
+        private GeneratorSource(@NonNull final Generator generator, final long bytesPerSecond) {
+            super(bytesPerSecond);
+
+            mGenerator = generator;
+        }
+
+        @NonNull
+        @Override
+        public FileSource withThroughput(final long bytesPerSecond) {
+            return new GeneratorSource(mGenerator, bytesPerSecond);
+        }
+
+        @Override
+        /*package*/ void writeTo(@NonNull final OutputStream out) throws IOException {
+            mGenerator.writeTo(out);
+        }
+    }
+
+    /**
+     * Paces writes so that the average rate doesn't exceed a limit.  Large writes are split into
+     * chunks, so that the reader receives data steadily rather than in bursts.
+     */
+    @NotThreadSafe
+    private static final class ThrottledOutputStream extends FilterOutputStream {
+
+        private final long mBytesPerSecond;
+
+        private final long mStartNanos = System.nanoTime();
+
+        private long mBytesWritten = 0;
+
+        private ThrottledOutputStream(@NonNull final OutputStream out,
+                final long bytesPerSecond) {
+            super(out);
+
+            mBytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            pace(1);
+        }
+
+        @Override
+        public void write(@NonNull final byte[] buffer, final int offset, final int count)
+                throws IOException {
+            for (int x = 0; x < count; x += CHUNK_SIZE) {
+                final int chunk = Math.min(CHUNK_SIZE, count - x);
+                out.write(buffer, offset + x, chunk);
+                pace(chunk);
+            }
+        }
+
+        private void pace(final int count) throws IOException {
+            mBytesWritten += count;
+
+            final long targetNanos = mStartNanos
+                    + mBytesWritten * TimeUnit.SECONDS.toNanos(1) / mBytesPerSecond;
+            final long sleepNanos = targetNanos - System.nanoTime();
+            if (0 < sleepNanos) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling"); //$NON-NLS
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.database.ColumnarCursor;
+import com.twofortyfouram.test.provider.MockableContentProvider.CallParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.DeleteParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.InsertParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.QueryParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.UpdateParams;
+
+import net.jcip.annotations.Immutable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary encoding shared by {@link ProviderFixtureWriter} and {@link ProviderFixture}.
+ * <p>
+ * A fixture consists of a header, the encoded result of each recorded call, the distinct keys of
+ * the calls, an index of the calls, and a trailer that locates the index:
+ * <pre>
+ * header:  int magic, int version
+ * results: one encoded result per call, in the order the calls were made
+ * keys:    one string per distinct key
+ * index:   for each call, byte operation, string target, long key hash, int key offset,
+ *          int result offset
+ * trailer: int index offset, int call count, int magic
+ * </pre>
+ * The target is the Uri of the call, or the method name for {@code call}.  The key identifies
+ * the params of the call, so that replay can match a call without decoding anything from the
+ * results section.  The index only holds a fixed-width {@link #hashKey(String) hash} of each
+ * key, and calls with equal keys share an offset, so opening a fixture doesn't decode the keys.
+ * Replay decodes a key only to confirm a matching hash.  Integers are big endian, and strings
+ * are an int length in bytes followed by UTF-8, with a length of -1 for null.
+ */
+@Immutable
+/*package*/ final class FixtureCodec {
+
+    /*package*/ static final int MAGIC = 0x41545046; // "ATPF"
+
+    /*package*/ static final int VERSION = 2;
+
+    /*package*/ static final int HEADER_SIZE = 8;
+
+    /*package*/ static final int TRAILER_SIZE = 12;
+
+    /*package*/ static final byte OP_QUERY = 1;
+
+    /*package*/ static final byte OP_INSERT = 2;
+
+    /*package*/ static final byte OP_UPDATE = 3;
+
+    /*package*/ static final byte OP_DELETE = 4;
+
+    /*package*/ static final byte OP_CALL = 5;
+
+    private static final byte TAG_NULL = 0;
+
+    private static final byte TAG_INT = 1;
+
+    private static final byte TAG_LONG = 2;
+
+    private static final byte TAG_SHORT = 3;
+
+    private static final byte TAG_BYTE = 4;
+
+    private static final byte TAG_DOUBLE = 5;
+
+    private static final byte TAG_FLOAT = 6;
+
+    private static final byte TAG_BOOLEAN = 7;
+
+    private static final byte TAG_STRING = 8;
+
+    private static final byte TAG_BLOB = 9;
+
+    /**
+     * Column type for a cursor column whose non-null values have different types.
+     */
+    private static final byte COLUMN_MIXED = -1;
+
+    @NonNull
+    private static final Charset UTF_8 = Charset.forName("UTF-8"); //$NON-NLS
+
+    /**
+     * Separates the parts of a key.  Recorded strings are unlikely to contain it.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * @param params Params of a call.
+     * @return Key identifying {@code params}, such that two calls with equal params have equal
+     * keys.
+     */
+    @NonNull
+    /*package*/ static String keyOf(@NonNull final Object params) {
+        final StringBuilder builder = new StringBuilder();
+
+        if (params instanceof QueryParams) {
+            final QueryParams query = (QueryParams) params;
+            appendKey(builder, query.getUri());
+            appendKey(builder, query.getProjectionList());
+            appendKey(builder, query.getSelection());
+            appendKey(builder, query.getSelectionArgsList());
+            appendKey(builder, query.getOrderBy());
+        } else if (params instanceof InsertParams) {
+            final InsertParams insert = (InsertParams) params;
+            appendKey(builder, insert.getUri());
+            appendValuesKey(builder, insert.getValues());
+        } else if (params instanceof UpdateParams) {
+            final UpdateParams update = (UpdateParams) params;
+            appendKey(builder, update.getUri());
+            appendValuesKey(builder, update.getValues());
+            appendKey(builder, update.getSelection());
+            appendKey(builder, update.getSelectionArgsList());
+        } else if (params instanceof DeleteParams) {
+            final DeleteParams delete = (DeleteParams) params;
+            appendKey(builder, delete.getUri());
+            appendKey(builder, delete.getSelection());
+            appendKey(builder, delete.getSelectionArgsList());
+        } else if (params instanceof CallParams) {
+            final CallParams call = (CallParams) params;
+            appendKey(builder, call.getMethod());
+            appendKey(builder, call.getArg());
+        } else {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Unsupported params %s", params)); //$NON-NLS
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @param key Key from {@link #keyOf(Object)}.
+     * @return 64-bit FNV-1a hash of the characters of {@code key}, which is wide enough that
+     * distinct keys rarely collide.
+     */
+    /*package*/ static long hashKey(@NonNull final String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int x = 0; x < key.length(); x++) {
+            final char c = key.charAt(x);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    private static void appendKey(@NonNull final StringBuilder builder,
+            @Nullable final Object part) {
+        builder.append(part).append(KEY_SEPARATOR);
+    }
+
+    private static void appendValuesKey(@NonNull final StringBuilder builder,
+            @Nullable final Map<String, Object> values) {
+        if (null == values) {
+            appendKey(builder, null);
+            return;
+        }
+
+        // Sorted, so that the key doesn't depend on the order values were put
+        for (final Map.Entry<String, Object> entry : new TreeMap<>(values).entrySet()) {
+            final Object value = entry.getValue();
+            builder.append(entry.getKey()).append('=');
+            if (null == value) {
+                builder.append("null"); //$NON-NLS
+            } else if (value instanceof byte[]) {
+                builder.append("byte[]").append(Arrays.toString((byte[]) value)); //$NON-NLS
+            } else {
+                builder.append(value.getClass().getSimpleName()).append(':').append(value);
+            }
+            builder.append(';');
+        }
+        builder.append(KEY_SEPARATOR);
+    }
+
+    /*package*/ static void writeString(@NonNull final DataOutputStream out,
+            @Nullable final String string) throws IOException {
+        if (null == string) {
+            out.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    /*package*/ static String readString(@NonNull final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (-1 == length) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @param out   Stream to write to.
+     * @param value A value of a {@code ContentValues} or {@code Bundle}.
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If the type of {@code value} isn't supported.
+     */
+    /*package*/ static void writeValue(@NonNull final DataOutputStream out,
+            @Nullable final Object value) throws IOException {
+        if (null == value) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            out.writeByte(TAG_BLOB);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Unsupported value type %s", value.getClass())); //$NON-NLS
+        }
+    }
+
+    @Nullable
+    /*package*/ static Object readValue(@NonNull final ByteBuffer buffer) {
+        final byte tag = buffer.get();
+        switch (tag) {
+            case TAG_NULL: {
+                return null;
+            }
+            case TAG_INT: {
+                return buffer.getInt();
+            }
+            case TAG_LONG: {
+                return buffer.getLong();
+            }
+            case TAG_SHORT: {
+                return buffer.getShort();
+            }
+            case TAG_BYTE: {
+                return buffer.get();
+            }
+            case TAG_DOUBLE: {
+                return buffer.getDouble();
+            }
+            case TAG_FLOAT: {
+                return buffer.getFloat();
+            }
+            case TAG_BOOLEAN: {
+                return 0 != buffer.get();
+            }
+            case TAG_STRING: {
+                return readString(buffer);
+            }
+            case TAG_BLOB: {
+                final byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                return bytes;
+            }
+            default: {
+                throw new IllegalStateException(String.format(Locale.US,
+                        "Corrupt fixture: unknown value tag %d", tag)); //$NON-NLS
+            }
+        }
+    }
+
+    /*package*/ static void writeBundle(@NonNull final DataOutputStream out,
+            @Nullable final Bundle bundle) throws IOException {
+        if (null == bundle) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(bundle.size());
+        for (final String key : bundle.keySet()) {
+            writeString(out, key);
+            writeValue(out, bundle.get(key));
+        }
+    }
+
+    @Nullable
+    /*package*/ static Bundle readBundle(@NonNull final ByteBuffer buffer) {
+        final int size = buffer.getInt();
+        if (-1 == size) {
+            return null;
+        }
+
+        final Bundle bundle = new Bundle();
+        for (int x = 0; x < size; x++) {
+            final String key = readString(buffer);
+            final Object value = readValue(buffer);
+            if (null == value) {
+                bundle.putString(key, null);
+            } else if (value instanceof Integer) {
+                bundle.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                bundle.putLong(key, (Long) value);
+            } else if (value instanceof Short) {
+                bundle.putShort(key, (Short) value);
+            } else if (value instanceof Byte) {
+                bundle.putByte(key, (Byte) value);
+            } else if (value instanceof Double) {
+                bundle.putDouble(key, (Double) value);
+            } else if (value instanceof Float) {
+                bundle.putFloat(key, (Float) value);
+            } else if (value instanceof Boolean) {
+                bundle.putBoolean(key, (Boolean) value);
+            } else if (value instanceof String) {
+                bundle.putString(key, (String) value);
+            } else {
+                bundle.putByteArray(key, (byte[]) value);
+            }
+        }
+
+        return bundle;
+    }
+
+    /**
+     * Writes every row of {@code cursor}, leaving it positioned before the first row.
+     *
+     * @param out    Stream to write to.
+     * @param cursor Cursor to write, or null.
+     * @throws IOException If writing fails.
+     */
+    /*package*/ static void writeCursor(@NonNull final DataOutputStream out,
+            @Nullable final Cursor cursor) throws IOException {
+        if (null == cursor) {
+            out.writeInt(-1);
+            return;
+        }
+
+        final String[] columnNames = cursor.getColumnNames();
+        final byte[] columnTypes = new byte[columnNames.length];
+        Arrays.fill(columnTypes, (byte) Cursor.FIELD_TYPE_NULL);
+
+        /*
+         * Rows are buffered, so that the column types found while writing them can precede them.
+         * Replay uses the column types to choose the most compact cursor implementation.
+         */
+        final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+        final DataOutputStream rows = new DataOutputStream(rowBytes);
+        int rowCount = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rowCount++;
+            for (int x = 0; x < columnNames.length; x++) {
+                final int type = cursor.getType(x);
+                switch (type) {
+                    case Cursor.FIELD_TYPE_NULL: {
+                        rows.writeByte(TAG_NULL);
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_INTEGER: {
+                        rows.writeByte(TAG_LONG);
+                        rows.writeLong(cursor.getLong(x));
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_FLOAT: {
+                        rows.writeByte(TAG_DOUBLE);
+                        rows.writeDouble(cursor.getDouble(x));
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_STRING: {
+                        rows.writeByte(TAG_STRING);
+                        writeString(rows, cursor.getString(x));
+                        break;
+                    }
+                    case Cursor.FIELD_TYPE_BLOB: {
+                        final byte[] blob = cursor.getBlob(x);
+                        rows.writeByte(TAG_BLOB);
+                        rows.writeInt(blob.length);
+                        rows.write(blob);
+                        break;
+                    }
+                    default: {
+                        throw new IllegalArgumentException(String.format(Locale.US,
+                                "Unsupported cursor type %d", type)); //$NON-NLS
+                    }
+                }
+
+                if (Cursor.FIELD_TYPE_NULL != type && type != columnTypes[x]) {
+                    columnTypes[x] = Cursor.FIELD_TYPE_NULL == columnTypes[x] ? (byte) type
+                            : COLUMN_MIXED;
+                }
+            }
+        }
+        cursor.moveToPosition(-1);
+        rows.flush();
+
+        out.writeInt(columnNames.length);
+        for (int x = 0; x < columnNames.length; x++) {
+            writeString(out, columnNames[x]);
+            out.writeByte(columnTypes[x]);
+        }
+        out.writeInt(rowCount);
+        rowBytes.writeTo(out);
+    }
+
+    /**
+     * @param buffer Buffer positioned at a cursor written by
+     *               {@link #writeCursor(DataOutputStream, Cursor)}.
+     * @return A new cursor with the recorded rows, or null if a null cursor was recorded.  A
+     * {@link ColumnarCursor} is used when every column holds a single type, and a
+     * {@link MatrixCursor} otherwise.
+     */
+    @Nullable
+    /*package*/ static Cursor readCursor(@NonNull final ByteBuffer buffer) {
+        final int columnCount = buffer.getInt();
+        if (-1 == columnCount) {
+            return null;
+        }
+
+        final String[] columnNames = new String[columnCount];
+        final byte[] columnTypes = new byte[columnCount];
+        boolean isMixed = false;
+        for (int x = 0; x < columnCount; x++) {
+            columnNames[x] = readString(buffer);
+            columnTypes[x] = buffer.get();
+            isMixed |= COLUMN_MIXED == columnTypes[x];
+        }
+        final int rowCount = buffer.getInt();
+
+        if (isMixed) {
+            return readMatrixCursor(buffer, columnNames, rowCount);
+        }
+
+        return readColumnarCursor(buffer, columnNames, columnTypes, rowCount);
+    }
+
+    @NonNull
+    private static Cursor readMatrixCursor(@NonNull final ByteBuffer buffer,
+            @NonNull final String[] columnNames, final int rowCount) {
+        final MatrixCursor cursor = new MatrixCursor(columnNames, rowCount);
+        final Object[] row = new Object[columnNames.length];
+        for (int x = 0; x < rowCount; x++) {
+            for (int y = 0; y < row.length; y++) {
+                row[y] = readValue(buffer);
+            }
+            cursor.addRow(row);
+        }
+
+        return cursor;
+    }
+
+    @NonNull
+    private static Cursor readColumnarCursor(@NonNull final ByteBuffer buffer,
+            @NonNull final String[] columnNames, @NonNull final byte[] columnTypes,
+            final int rowCount) {
+        final ColumnarCursor.Builder builder = new ColumnarCursor.Builder(rowCount);
+        for (int x = 0; x < columnNames.length; x++) {
+            switch (columnTypes[x]) {
+                case Cursor.FIELD_TYPE_INTEGER: {
+                    builder.addLongColumn(columnNames[x]);
+                    break;
+                }
+                case Cursor.FIELD_TYPE_FLOAT: {
+                    builder.addDoubleColumn(columnNames[x]);
+                    break;
+                }
+                case Cursor.FIELD_TYPE_BLOB: {
+                    builder.addBlobColumn(columnNames[x]);
+                    break;
+                }
+                default: {
+                    // Strings, and columns that are entirely null
+                    builder.addStringColumn(columnNames[x]);
+                    break;
+                }
+            }
+        }
+
+        for (int x = 0; x < rowCount; x++) {
+            builder.newRow();
+            for (int y = 0; y < columnNames.length; y++) {
+                final Object value = readValue(buffer);
+                if (null == value) {
+                    builder.setNull(y);
+                } else if (value instanceof Long) {
+                    builder.setLong(y, (Long) value);
+                } else if (value instanceof Double) {
+                    builder.setDouble(y, (Double) value);
+                } else if (value instanceof String) {
+                    builder.setString(y, (String) value);
+                } else {
+                    builder.setBlob(y, (byte[]) value);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private FixtureCodec() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
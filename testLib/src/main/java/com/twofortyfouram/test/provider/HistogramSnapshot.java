@@ -0,0 +1,124 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Locale;
+
+/**
+ * Point-in-time copy of a histogram of durations in nanoseconds, as recorded by
+ * {@link MockableContentProvider}.  Percentiles are accurate to within about 6%.
+ */
+@Immutable
+public final class HistogramSnapshot {
+
+    @NonNull
+    /*package*/ static final HistogramSnapshot EMPTY = new HistogramSnapshot(
+            new long[ConcurrentHistogram.BUCKET_COUNT], 0, 0, 0, 0);
+
+    @NonNull
+    private final long[] mCounts;
+
+    private final long mTotalCount;
+
+    private final long mMin;
+
+    private final long mMax;
+
+    private final long mSum;
+
+    /*package*/ HistogramSnapshot(@NonNull final long[] counts, final long totalCount,
+            final long min, final long max, final long sum) {
+        mCounts = counts;
+        mTotalCount = totalCount;
+        mMin = min;
+        mMax = max;
+        mSum = sum;
+    }
+
+    /**
+     * @return Number of values recorded.
+     */
+    public long getCount() {
+        return mTotalCount;
+    }
+
+    /**
+     * @return Smallest value recorded, or 0 if none were.
+     */
+    public long getMin() {
+        return mMin;
+    }
+
+    /**
+     * @return Largest value recorded, or 0 if none were.
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return Mean of the values recorded, or 0 if none were.
+     */
+    public double getMean() {
+        if (0 == mTotalCount) {
+            return 0;
+        }
+
+        return (double) mSum / mTotalCount;
+    }
+
+    /**
+     * @param percentile Percentile in the range [0, 100].
+     * @return Value at or below which {@code percentile} percent of the recorded values fall, or
+     * 0 if none were recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (0 > percentile || 100 < percentile) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]"); //$NON-NLS
+        }
+
+        if (0 == mTotalCount) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100 * mTotalCount));
+
+        long cumulativeCount = 0;
+        for (int x = 0; x < mCounts.length; x++) {
+            cumulativeCount += mCounts[x];
+            if (cumulativeCount >= target) {
+                return Math.max(mMin,
+                        Math.min(mMax, ConcurrentHistogram.highestValueInBucket(x)));
+            }
+        }
+
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "HistogramSnapshot{count=%d, min=%d, p50=%d, p90=%d, p99=%d, max=%d}", //$NON-NLS
+                mTotalCount, mMin, getValueAtPercentile(50), getValueAtPercentile(90),
+                getValueAtPercentile(99), mMax);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Locale;
+
+/**
+ * Determines how many params {@link MockableContentProvider} retains for each operation.  Call
+ * counts are always maintained regardless of the policy, so long-running tests can use
+ * {@link #keepNone()} or {@link #keepLast(int)} to keep memory usage flat.
+ */
+@Immutable
+public final class HistoryPolicy {
+
+    /**
+     * Capacity of a policy that retains everything.
+     */
+    /*package*/ static final int CAPACITY_UNBOUNDED = -1;
+
+    @NonNull
+    private static final HistoryPolicy KEEP_ALL = new HistoryPolicy(CAPACITY_UNBOUNDED);
+
+    @NonNull
+    private static final HistoryPolicy KEEP_NONE = new HistoryPolicy(0);
+
+    /**
+     * Maximum number of params retained, or {@link #CAPACITY_UNBOUNDED}.
+     */
+    private final int mCapacity;
+
+    private HistoryPolicy(final int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * @return Policy that retains the params of every call.  This is the default.
+     */
+    @NonNull
+    public static HistoryPolicy keepAll() {
+        return KEEP_ALL;
+    }
+
+    /**
+     * @return Policy that retains no params, only call counts.  The {@link CallJournal} retains
+     * no entries either.
+     */
+    @NonNull
+    public static HistoryPolicy keepNone() {
+        return KEEP_NONE;
+    }
+
+    /**
+     * @param count Maximum number of params to retain per operation.
+     * @return Policy that retains only the params of the most recent {@code count} calls, in a
+     * ring buffer that is allocated up front.  The {@link CallJournal} retains the most recent
+     * {@code count} calls across all operations instead.
+     */
+    @NonNull
+    public static HistoryPolicy keepLast(final int count) {
+        if (0 >= count) {
+            throw new IllegalArgumentException("count must be > 0"); //$NON-NLS
+        }
+
+        return new HistoryPolicy(count);
+    }
+
+    /**
+     * @param <T> Type of the params.
+     * @return A new, empty history implementing this policy.
+     */
+    @NonNull
+    /*package*/ <T> CallHistory<T> newHistory() {
+        if (CAPACITY_UNBOUNDED == mCapacity) {
+            return new CallHistory.Unbounded<>();
+        } else if (0 == mCapacity) {
+            return new CallHistory.Empty<>();
+        }
+
+        return new CallHistory.Ring<>(mCapacity);
+    }
+
+    /**
+     * @return Maximum number of params retained, which is 0 for {@link #keepNone()} and
+     * {@link #CAPACITY_UNBOUNDED} for {@link #keepAll()}.
+     */
+    /*package*/ int getCapacity() {
+        return mCapacity;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (null == o || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final HistoryPolicy that = (HistoryPolicy) o;
+
+        return mCapacity == that.mCapacity;
+    }
+
+    @Override
+    public int hashCode() {
+        return mCapacity;
+    }
+
+    @Override
+    public String toString() {
+        if (CAPACITY_UNBOUNDED == mCapacity) {
+            return "HistoryPolicy{keepAll}"; //$NON-NLS
+        } else if (0 == mCapacity) {
+            return "HistoryPolicy{keepNone}"; //$NON-NLS
+        }
+
+        return String.format(Locale.US, "HistoryPolicy{keepLast=%d}", mCapacity); //$NON-NLS
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.annotation.SuppressLint;
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.twofortyfouram.test.context.ContentProviderMockContext;
+import com.twofortyfouram.test.database.SchemaSnapshot;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A content provider backed by a private in-memory SQLite database, for tests that need a
+ * realistic provider without the cost of a file-backed database.  The database is restored from
+ * a {@link SchemaSnapshot} when the provider is created, so every provider instance starts from
+ * the same schema and seed rows without re-running migrations.
+ * <p>
+ * Each table of the schema is exposed as {@code content://<authority>/<table>}, with individual
+ * rows at {@code content://<authority>/<table>/<_id>}.  Changes are notified through the
+ * context's content resolver, and bulkInsert and applyBatch run in a single transaction.  The
+ * changes made by applyBatch are notified only once its transaction has been committed, so
+ * observers never query rows that are then rolled back.
+ * <p>
+ * Queries and changes may be made from any thread.  {@link #reset()} and {@link #shutdown()}
+ * close the database though, so they must not run concurrently with other calls.
+ * <p>
+ * Note that after instantiation, {@link #attachInfo(Context, ProviderInfo)} must be called
+ * manually.  To bypass this limitation, consider using the helper method
+ * {@link #newSqliteProvider(Context, String, SchemaSnapshot)}.
+ */
+// This is a mock object to be used at runtime, so lint warnings about registration should be
+// ignored
+@SuppressLint("Registered")
+@ThreadSafe
+public final class InMemorySqliteProvider extends ContentProvider implements Resettable {
+
+    @NonNull
+    private final SchemaSnapshot mSchema;
+
+    /**
+     * Database restored from {@link #mSchema}, created in {@link #onCreate()}.
+     */
+    @Nullable
+    private volatile SQLiteDatabase mDatabase = null;
+
+    /**
+     * Uris changed by the {@link #applyBatch(ArrayList)} running on the current thread, if any,
+     * to notify once its transaction has been committed.
+     */
+    @NonNull
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    /**
+     * @param schema Schema and seed rows of the database.
+     */
+    public InMemorySqliteProvider(@NonNull final SchemaSnapshot schema) {
+        assertNotNull(schema, "schema"); //$NON-NLS
+
+        mSchema = schema;
+    }
+
+    @Override
+    public boolean onCreate() {
+        mDatabase = mSchema.newDatabase();
+
+        return true;
+    }
+
+    /**
+     * @return The database backing this provider, for seeding or inspecting rows directly.
+     * @throws IllegalStateException If {@link #attachInfo(Context, ProviderInfo)} hasn't been
+     *                               called.
+     */
+    @NonNull
+    public SQLiteDatabase getDatabase() {
+        final SQLiteDatabase database = mDatabase;
+        if (null == database) {
+            throw new IllegalStateException(
+                    "attachInfo(Context, ProviderInfo) must be called first"); //$NON-NLS
+        }
+
+        return database;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull final Uri uri, @Nullable final String[] projection,
+            @Nullable final String selection, @Nullable final String[] selectionArgs,
+            @Nullable final String sortOrder) {
+        final Target target = Target.parse(uri);
+
+        final Cursor cursor = getDatabase().query(target.mTable, projection,
+                target.getSelection(selection), target.getSelectionArgs(selectionArgs), null,
+                null, sortOrder);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        final Target target = Target.parse(uri);
+
+        return String.format(Locale.US, "%s/vnd.%s.%s", //$NON-NLS
+                target.mIsItem ? "vnd.android.cursor.item" //$NON-NLS
+                        : "vnd.android.cursor.dir", uri.getAuthority(), //$NON-NLS
+                target.mTable);
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        final Target target = Target.parse(uri);
+        target.assertNotItem(uri);
+
+        final long id = getDatabase().insertOrThrow(target.mTable, null, values);
+        final Uri result = ContentUris.withAppendedId(uri, id);
+        notifyChange(result);
+
+        return result;
+    }
+
+    @Override
+    public int update(@NonNull final Uri uri, @Nullable final ContentValues values,
+            @Nullable final String selection, @Nullable final String[] selectionArgs) {
+        final Target target = Target.parse(uri);
+
+        final int count = getDatabase().update(target.mTable, values,
+                target.getSelection(selection), target.getSelectionArgs(selectionArgs));
+        if (0 < count) {
+            notifyChange(uri);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int delete(@NonNull final Uri uri, @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        final Target target = Target.parse(uri);
+
+        final int count = getDatabase().delete(target.mTable, target.getSelection(selection),
+                target.getSelectionArgs(selectionArgs));
+        if (0 < count) {
+            notifyChange(uri);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        final Target target = Target.parse(uri);
+        target.assertNotItem(uri);
+
+        final SQLiteDatabase database = getDatabase();
+        database.beginTransaction();
+        try {
+            for (final ContentValues value : values) {
+                database.insertOrThrow(target.mTable, null, value);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (0 < values.length) {
+            notifyChange(uri);
+        }
+
+        return values.length;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (null != mBatchChanges.get()) {
+            // Nested within another batch, whose transaction and notifications this joins
+            return applyBatchInTransaction(operations);
+        }
+
+        final Set<Uri> changes = new LinkedHashSet<>();
+        mBatchChanges.set(changes);
+        final ContentProviderResult[] results;
+        try {
+            results = applyBatchInTransaction(operations);
+        } finally {
+            mBatchChanges.remove();
+        }
+
+        for (final Uri uri : changes) {
+            notifyChange(uri);
+        }
+
+        return results;
+    }
+
+    @NonNull
+    private ContentProviderResult[] applyBatchInTransaction(
+            @NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase database = getDatabase();
+        database.beginTransaction();
+        try {
+            final ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+
+            return results;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Replaces the database with a new one restored from the schema snapshot, discarding all
+     * changes.  This is much cheaper than creating and attaching a new provider.
+     * <p>
+     * The previous database is closed, so this must not be called while other threads are using
+     * the provider.
+     *
+     * @throws IllegalStateException If {@link #attachInfo(Context, ProviderInfo)} hasn't been
+     *                               called.
+     */
+    @Override
+    public void reset() {
+        final SQLiteDatabase previous = getDatabase();
+
+        mDatabase = mSchema.newDatabase();
+        previous.close();
+    }
+
+    /**
+     * Closes the database.  The provider can't be used afterwards.
+     */
+    @Override
+    public void shutdown() {
+        final SQLiteDatabase database = mDatabase;
+        if (null != database) {
+            database.close();
+        }
+    }
+
+    private void notifyChange(@NonNull final Uri uri) {
+        final Set<Uri> batchChanges = mBatchChanges.get();
+        if (null != batchChanges) {
+            batchChanges.add(uri);
+            return;
+        }
+
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Helper method to make using the {@code InMemorySqliteProvider} less verbose in some
+     * standard use cases.
+     *
+     * @param baseContext Base context.
+     * @param authority   Content authority.
+     * @param schema      Schema and seed rows of the database.
+     * @return A provider with a context whose content resolver will resolve {@code authority} to
+     * the returned ContentProvider.  Note: Be sure to use {@link ContentProvider#getContext()} to
+     * retrieve the appropriate context for querying the {@code ContentResolver}.
+     */
+    @NonNull
+    public static InMemorySqliteProvider newSqliteProvider(@NonNull final Context baseContext,
+            @NonNull final String authority, @NonNull final SchemaSnapshot schema) {
+        assertNotNull(baseContext, "baseContext"); //$NON-NLS
+        assertNotNull(authority, "authority"); //$NON-NLS
+
+        final InMemorySqliteProvider provider = new InMemorySqliteProvider(schema);
+
+        final Context mockContext = new ContentProviderMockContext(baseContext,
+                Collections.<String, ContentProvider>singletonMap(authority, provider));
+
+        final ProviderInfo info = new ProviderInfo();
+        info.authority = authority;
+
+        provider.attachInfo(mockContext, info);
+
+        return provider;
+    }
+
+    /**
+     * The table and optional row addressed by a Uri.
+     */
+    @Immutable
+    private static final class Target {
+
+        @NonNull
+        private final String mTable;
+
+        /**
+         * The {@code _id} of the row, if the Uri addresses a single row.
+         */
+        @Nullable
+        private final String mId;
+
+        private final boolean mIsItem;
+
+        private Target(@NonNull final String table, @Nullable final String id) {
+            mTable = table;
+            mId = id;
+            mIsItem = null != id;
+        }
+
+        @NonNull
+        public static Target parse(@NonNull final Uri uri) {
+            assertNotNull(uri, "uri"); //$NON-NLS
+
+            final List<String> segments = uri.getPathSegments();
+            if (1 == segments.size()) {
+                return new Target(segments.get(0), null);
+            }
+            if (2 == segments.size() && 0 < segments.get(1).length()
+                    && TextUtils.isDigitsOnly(segments.get(1))) {
+                return new Target(segments.get(0), segments.get(1));
+            }
+
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Expected content://<authority>/<table>[/<_id>] but got %s", uri)); //$NON-NLS
+        }
+
+        @Nullable
+        public String getSelection(@Nullable final String selection) {
+            if (!mIsItem) {
+                return selection;
+            }
+
+            if (TextUtils.isEmpty(selection)) {
+                return BaseColumns._ID + " = ?"; //$NON-NLS
+            }
+
+            return BaseColumns._ID + " = ? AND (" + selection + ")"; //$NON-NLS
+        }
+
+        @Nullable
+        public String[] getSelectionArgs(@Nullable final String[] selectionArgs) {
+            if (!mIsItem) {
+                return selectionArgs;
+            }
+
+            final int argCount = null == selectionArgs ? 0 : selectionArgs.length;
+            final String[] args = new String[argCount + 1];
+            args[0] = mId;
+            if (null != selectionArgs) {
+                System.arraycopy(selectionArgs, 0, args, 1, argCount);
+            }
+
+            return args;
+        }
+
+        public void assertNotItem(@NonNull final Uri uri) {
+            if (mIsItem) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Can't insert into a row Uri: %s", uri)); //$NON-NLS
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.Immutable;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Distribution of artificial delays that {@link MockableContentProvider} adds to an operation,
+ * configured via {@link MockableContentProvider#setLatency(ProviderOperation, Latency)}.
+ * Samples are drawn from the provider's random number generator, so a fixed seed produces the
+ * same sequence of delays.
+ */
+@Immutable
+public abstract class Latency {
+
+    @NonNull
+    private static final Latency NONE = new Fixed(0);
+
+    /**
+     * Prevents subclassing outside this package.
+     */
+    /*package*/ Latency() {
+    }
+
+    /**
+     * @return Latency that adds no delay.  This is the default.
+     */
+    @NonNull
+    public static Latency none() {
+        return NONE;
+    }
+
+    /**
+     * @param delay Delay to add to every call.  Must be >= 0.
+     * @param unit  Unit of {@code delay}.
+     * @return Latency that always adds {@code delay}.
+     */
+    @NonNull
+    public static Latency fixed(final long delay, @NonNull final TimeUnit unit) {
+        assertNotNull(unit, "unit"); //$NON-NLS
+        if (0 > delay) {
+            throw new IllegalArgumentException("delay must be >= 0"); //$NON-NLS
+        }
+
+        return new Fixed(unit.toNanos(delay));
+    }
+
+    /**
+     * @param min  Minimum delay, inclusive.  Must be >= 0.
+     * @param max  Maximum delay, exclusive.  Must be >= {@code min}.
+     * @param unit Unit of {@code min} and {@code max}.
+     * @return Latency uniformly distributed between {@code min} and {@code max}.
+     */
+    @NonNull
+    public static Latency uniform(final long min, final long max, @NonNull final TimeUnit unit) {
+        return percentiles(unit, new double[]{0, 1}, new long[]{min, max});
+    }
+
+    /**
+     * Latency shaped to match observed percentiles, which is usually how latency is reported.
+     * Delays are interpolated linearly between the given points, with the fastest call taking
+     * no time.
+     *
+     * @param p50  Median delay.
+     * @param p90  90th percentile delay.  Must be >= {@code p50}.
+     * @param p99  99th percentile delay.  Must be >= {@code p90}.
+     * @param max  Maximum delay.  Must be >= {@code p99}.
+     * @param unit Unit of the delays.
+     * @return Latency approximating the given percentiles.
+     */
+    @NonNull
+    public static Latency percentiles(final long p50, final long p90, final long p99,
+            final long max, @NonNull final TimeUnit unit) {
+        return percentiles(unit, new double[]{0, 0.5, 0.9, 0.99, 1},
+                new long[]{0, p50, p90, p99, max});
+    }
+
+    @NonNull
+    private static Latency percentiles(@NonNull final TimeUnit unit,
+            @NonNull final double[] quantiles, @NonNull final long[] delays) {
+        assertNotNull(unit, "unit"); //$NON-NLS
+
+        final long[] nanos = new long[delays.length];
+        for (int x = 0; x < delays.length; x++) {
+            if (0 > delays[x]) {
+                throw new IllegalArgumentException("delays must be >= 0"); //$NON-NLS
+            }
+            if (0 < x && delays[x] < delays[x - 1]) {
+                throw new IllegalArgumentException("delays must be non-decreasing"); //$NON-NLS
+            }
+
+            nanos[x] = unit.toNanos(delays[x]);
+        }
+
+        return new Piecewise(quantiles, nanos);
+    }
+
+    /**
+     * @param random Source of randomness.
+     * @return Delay in nanoseconds to add to the next call.
+     */
+    /*package*/ abstract long sampleNanos(@NonNull final Random random);
+
+    @Immutable
+    private static final class Fixed extends Latency {
+
+        private final long mNanos;
+
+        private Fixed(final long nanos) {
+            mNanos = nanos;
+        }
+
+        @Override
+        /*package*/ long sampleNanos(@NonNull final Random random) {
+            return mNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Latency{fixed=%dns}", mNanos); //$NON-NLS
+        }
+    }
+
+    /**
+     * Inverse cumulative distribution function defined by linear interpolation between points.
+     */
+    @Immutable
+    private static final class Piecewise extends Latency {
+
+        @NonNull
+        private final double[] mQuantiles;
+
+        @NonNull
+        private final long[] mNanos;
+
+        private Piecewise(@NonNull final double[] quantiles, @NonNull final long[] nanos) {
+            mQuantiles = quantiles;
+            mNanos = nanos;
+        }
+
+        @Override
+        /*package*/ long sampleNanos(@NonNull final Random random) {
+            final double quantile = random.nextDouble();
+
+            int upper = 1;
+            while (upper < mQuantiles.length - 1 && quantile >= mQuantiles[upper]) {
+                upper++;
+            }
+
+            final double lowerQuantile = mQuantiles[upper - 1];
+            final double fraction = (quantile - lowerQuantile)
+                    / (mQuantiles[upper] - lowerQuantile);
+
+            return mNanos[upper - 1] + (long) (fraction * (mNanos[upper] - mNanos[upper - 1]));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Latency{quantiles=%s, nanos=%s}", //$NON-NLS
+                    Arrays.toString(mQuantiles), Arrays.toString(mNanos));
+        }
+    }
+}
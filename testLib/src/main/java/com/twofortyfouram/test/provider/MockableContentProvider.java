@@ -18,25 +18,46 @@ package com.twofortyfouram.test.provider;
 
 import android.annotation.SuppressLint;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.test.InstrumentationRegistry;
 
 import com.twofortyfouram.test.context.ContentProviderMockContext;
+import com.twofortyfouram.test.database.InMemoryTable;
+import com.twofortyfouram.test.trace.ChromeTraceWriter;
+import com.twofortyfouram.test.util.AwaitableCounter;
 
 import net.jcip.annotations.Immutable;
-import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
 
+import org.hamcrest.Matcher;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+import static org.hamcrest.CoreMatchers.anything;
 
 /**
  * A content provider whose basic methods of query, insert, update, delete, and call are easily
@@ -44,63 +65,301 @@ import static com.twofortyfouram.assertion.Assertions.assertNotNull;
  * called
  * manually.  To bypass this limitation, consider using the helper method
  * {@link #newMockProvider(Context, String)}.
+ * <p>
+ * Calls may be made concurrently from any number of threads, for example from a thread pool or
+ * from binder threads via a {@code ContentResolver}.  No calls are lost, and recording of params
+ * and counts is built for low contention between callers, though it isn't entirely lock-free.
+ * Counts and the default params history are lock-free, but a
+ * {@link HistoryPolicy#keepLast(int)} history is a ring that synchronizes on each call.  Every
+ * call is also appended to a {@link CallJournal}, which preserves the order of calls across
+ * operations.  The journal briefly locks when it allocates a new segment, and under
+ * {@code keepLast} its ring is synchronized too.  See {@link #getJournal()}.
+ * <p>
+ * Results are provided in the following order of precedence:
+ * <ol>
+ * <li>Results added to the FIFO queues, such as via {@link #addQueryResult(Cursor)}.  Each is
+ * consumed by a single call.</li>
+ * <li>Rules, such as via {@link #addQueryRule(String, Matcher, Answer)}.  Rules answer
+ * repeatedly without being consumed, and are indexed by Uri pattern (see
+ * {@link UriPatternIndex}) or by method name for {@link #call(String, String, Bundle)}.</li>
+ * <li>Tables added via {@link #addTable(String, InMemoryTable)}, which support read-after-write
+ * for query, insert, update, delete, and bulkInsert.</li>
+ * <li>A default of null or 0.  {@link #openFile(Uri, String)} throws
+ * {@link FileNotFoundException} instead.</li>
+ * </ol>
+ * <p>
+ * To test how callers cope with a slow or flaky provider, each operation can be given an
+ * artificial {@link Latency} and a probability of failure.  See
+ * {@link #setLatency(ProviderOperation, Latency)} and
+ * {@link #setFailure(ProviderOperation, double, FailureFactory)}.
  */
 // This is a mock object to be used at runtime, so lint warnings about registration should be
 // ignored
 @SuppressLint("Registered")
-@NotThreadSafe
-public final class MockableContentProvider extends ContentProvider {
+@ThreadSafe
+public final class MockableContentProvider extends ContentProvider implements Resettable {
 
-    private boolean mIsAttachInfoCalled = false;
+    private volatile boolean mIsAttachInfoCalled = false;
 
-    private int mQueryCount = 0;
+    @NonNull
+    private final AwaitableCounter mQueryCount = new AwaitableCounter();
 
-    private int mInsertCount = 0;
+    @NonNull
+    private final AwaitableCounter mInsertCount = new AwaitableCounter();
 
-    private int mUpdateCount = 0;
+    @NonNull
+    private final AwaitableCounter mUpdateCount = new AwaitableCounter();
 
-    private int mDeleteCount = 0;
+    @NonNull
+    private final AwaitableCounter mDeleteCount = new AwaitableCounter();
 
-    private int mCallCount = 0;
+    @NonNull
+    private final AwaitableCounter mCallCount = new AwaitableCounter();
 
-    @Nullable
-    private final LinkedList<Cursor> mQueryResults = new LinkedList<>();
+    @NonNull
+    private final AwaitableCounter mBulkInsertCount = new AwaitableCounter();
+
+    @NonNull
+    private final AwaitableCounter mApplyBatchCount = new AwaitableCounter();
+
+    @NonNull
+    private final AwaitableCounter mOpenFileCount = new AwaitableCounter();
+
+    @NonNull
+    private final AwaitableCounter mGetTypeCount = new AwaitableCounter();
+
+    @NonNull
+    private final AwaitableCounter mCanonicalizeCount = new AwaitableCounter();
+
+    @NonNull
+    private final AwaitableCounter mUncanonicalizeCount = new AwaitableCounter();
+
+    // May contain null elements
+    @NonNull
+    private final ResultQueue<Cursor> mQueryResults = new ResultQueue<>();
 
     // May contain null elements
     @NonNull
-    private final LinkedList<Uri> mInsertResults = new LinkedList<>();
+    private final ResultQueue<Uri> mInsertResults = new ResultQueue<>();
 
     // May not contain null elements.
     @NonNull
-    private final LinkedList<Integer> mUpdateResults = new LinkedList<>();
+    private final ResultQueue<Integer> mUpdateResults = new ResultQueue<>();
 
     // May not contain null elements
     @NonNull
-    private final LinkedList<Integer> mDeleteResults = new LinkedList<>();
+    private final ResultQueue<Integer> mDeleteResults = new ResultQueue<>();
 
     // May contain null elements
     @NonNull
-    private final LinkedList<Bundle> mCallResults = new LinkedList<>();
+    private final ResultQueue<Bundle> mCallResults = new ResultQueue<>();
 
     // May not contain null elements
     @NonNull
-    private final LinkedList<QueryParams> mQueryParams = new LinkedList<>();
+    private final ResultQueue<Integer> mBulkInsertResults = new ResultQueue<>();
 
     // May not contain null elements
     @NonNull
-    private final LinkedList<InsertParams> mInsertParams = new LinkedList<>();
+    private final ResultQueue<ContentProviderResult[]> mApplyBatchResults = new ResultQueue<>();
 
-    // May not contain null elements
+    // May contain null elements
     @NonNull
-    private final LinkedList<UpdateParams> mUpdateParams = new LinkedList<>();
+    private final ResultQueue<FileSource> mOpenFileResults = new ResultQueue<>();
 
-    // May not contain null elements
     @NonNull
-    private final LinkedList<DeleteParams> mDeleteParams = new LinkedList<>();
+    private volatile HistoryPolicy mHistoryPolicy = HistoryPolicy.keepAll();
+
+    @NonNull
+    private volatile CallHistory<QueryParams> mQueryParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private volatile CallHistory<InsertParams> mInsertParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private volatile CallHistory<UpdateParams> mUpdateParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private volatile CallHistory<DeleteParams> mDeleteParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private volatile CallHistory<CallParams> mCallParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private volatile CallHistory<BulkInsertParams> mBulkInsertParams = mHistoryPolicy
+            .newHistory();
+
+    @NonNull
+    private volatile CallHistory<ApplyBatchParams> mApplyBatchParams = mHistoryPolicy
+            .newHistory();
+
+    @NonNull
+    private volatile CallHistory<OpenFileParams> mOpenFileParams = mHistoryPolicy.newHistory();
+
+    @NonNull
+    private final UriPatternIndex<Rules<QueryParams, Cursor>> mQueryRules
+            = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<InsertParams, Uri>> mInsertRules
+            = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<UpdateParams, Integer>> mUpdateRules
+            = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<DeleteParams, Integer>> mDeleteRules
+            = new UriPatternIndex<>();
+
+    // Keyed by method name
+    @NonNull
+    private final ConcurrentHashMap<String, Rules<CallParams, Bundle>> mCallRules
+            = new ConcurrentHashMap<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<BulkInsertParams, Integer>> mBulkInsertRules
+            = new UriPatternIndex<>();
+
+    // Batches have no single Uri, so these rules aren't indexed
+    @NonNull
+    private final Rules<List<ContentProviderOperation>, ContentProviderResult[]>
+            mApplyBatchRules = new Rules<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<OpenFileParams, FileSource>> mOpenFileRules
+            = new UriPatternIndex<>();
+
+    // The params of getType, canonicalize, and uncanonicalize are just the Uri
+    @NonNull
+    private final UriPatternIndex<Rules<Uri, String>> mGetTypeRules = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<Uri, Uri>> mCanonicalizeRules = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<Rules<Uri, Uri>> mUncanonicalizeRules
+            = new UriPatternIndex<>();
+
+    @NonNull
+    private final UriPatternIndex<TableBinding> mTables = new UriPatternIndex<>();
+
+    @NonNull
+    private final Answer<QueryParams, Cursor> mQueryTableAnswer
+            = new Answer<QueryParams, Cursor>() {
+        @Nullable
+        @Override
+        public Cursor answer(@NonNull final QueryParams params) {
+            final TableBinding binding = mTables.get(params.getUri());
+            if (null == binding) {
+                return null;
+            }
+
+            return binding.mTable.query(params.getProjection(),
+                    binding.getSelection(params.getSelection()),
+                    binding.getSelectionArgs(params.getUri(), params.getSelectionArgs()),
+                    params.getOrderBy());
+        }
+    };
+
+    @NonNull
+    private final Answer<InsertParams, Uri> mInsertTableAnswer = new Answer<InsertParams, Uri>() {
+        @Nullable
+        @Override
+        public Uri answer(@NonNull final InsertParams params) {
+            final TableBinding binding = mTables.get(params.getUri());
+            if (null == binding) {
+                return null;
+            }
+
+            binding.assertNotItem(params.getUri());
+
+            return ContentUris.withAppendedId(params.getUri(),
+                    binding.mTable.insert(params.getContentValues()));
+        }
+    };
+
+    @NonNull
+    private final Answer<UpdateParams, Integer> mUpdateTableAnswer
+            = new Answer<UpdateParams, Integer>() {
+        @Nullable
+        @Override
+        public Integer answer(@NonNull final UpdateParams params) {
+            final TableBinding binding = mTables.get(params.getUri());
+            if (null == binding) {
+                return null;
+            }
+
+            final ContentValues values = params.getContentValues();
+            return binding.mTable.update(null == values ? new ContentValues() : values,
+                    binding.getSelection(params.getSelection()),
+                    binding.getSelectionArgs(params.getUri(), params.getSelectionArgs()));
+        }
+    };
+
+    @NonNull
+    private final Answer<DeleteParams, Integer> mDeleteTableAnswer
+            = new Answer<DeleteParams, Integer>() {
+        @Nullable
+        @Override
+        public Integer answer(@NonNull final DeleteParams params) {
+            final TableBinding binding = mTables.get(params.getUri());
+            if (null == binding) {
+                return null;
+            }
+
+            return binding.mTable.delete(binding.getSelection(params.getSelection()),
+                    binding.getSelectionArgs(params.getUri(), params.getSelectionArgs()));
+        }
+    };
+
+    @NonNull
+    private final Answer<BulkInsertParams, Integer> mBulkInsertTableAnswer
+            = new Answer<BulkInsertParams, Integer>() {
+        @Nullable
+        @Override
+        public Integer answer(@NonNull final BulkInsertParams params) {
+            final TableBinding binding = mTables.get(params.getUri());
+            if (null == binding) {
+                return null;
+            }
+
+            binding.assertNotItem(params.getUri());
+
+            for (int x = 0; x < params.getCount(); x++) {
+                binding.mTable.insert(params.getContentValues(x));
+            }
+
+            return params.getCount();
+        }
+    };
+
+    // Indexed by ProviderOperation.ordinal().  May contain null elements.
+    @NonNull
+    private final AtomicReferenceArray<Latency> mLatencies
+            = new AtomicReferenceArray<>(ProviderOperation.values().length);
+
+    // Indexed by ProviderOperation.ordinal().  May contain null elements.
+    @NonNull
+    private final AtomicReferenceArray<FailureSpec> mFailures
+            = new AtomicReferenceArray<>(ProviderOperation.values().length);
+
+    // Indexed by ProviderOperation.ordinal()
+    @NonNull
+    private final AtomicReferenceArray<OperationTimings> mTimings = newTimings();
+
+    @NonNull
+    private final CallJournal mJournal = new CallJournal();
 
-    // May not contain null elements
     @NonNull
-    private final LinkedList<CallParams> mCallParams = new LinkedList<>();
+    private final CopyOnWriteArrayList<OnCallListener> mOnCallListeners
+            = new CopyOnWriteArrayList<>();
+
+    /**
+     * Source of randomness for latency and failures.  Defaults to a fixed seed, so that runs are
+     * reproducible unless a test opts out.
+     */
+    @NonNull
+    private volatile Random mRandom = new Random(0);
 
     @Override
     public boolean onCreate() {
@@ -125,68 +384,185 @@ public final class MockableContentProvider extends ContentProvider {
             selectionArgs,
             @Nullable final String sortOrder) {
         assertAttachInfoCalled();
-
-        mQueryCount++;
-
-        final QueryParams params = new QueryParams(uri, projection, selection, selectionArgs,
-                sortOrder);
-        mQueryParams.addLast(params);
-
-        final Cursor result = mQueryResults.pollFirst();
-
-        return result;
+        notifyOnCallListeners(ProviderOperation.QUERY, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.QUERY.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.QUERY, uri, startNanos);
+        try {
+            final QueryParams params = new QueryParams(uri, projection, selection, selectionArgs,
+                    sortOrder);
+            record(mQueryParams, sequence, params);
+            mQueryCount.increment();
+            injectFaults(ProviderOperation.QUERY);
+
+            return mQueryResults.poll(
+                    orElse(findAnswer(mQueryRules, uri, params), mQueryTableAnswer), params);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
     }
 
+    /**
+     * Answers from the rules added via {@link #addGetTypeRule(String, String)}, or null if no
+     * rule matches.  Because {@link #openTypedAssetFile(Uri, String, Bundle)} compares the MIME
+     * type filter to this type, stubbing the type also lets typed opens with a specific filter
+     * reach {@link #openFile(Uri, String)}.
+     */
     @Nullable
     @Override
-    public String getType(Uri uri) {
-        return null;
+    public String getType(@NonNull final Uri uri) {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.GET_TYPE, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.GET_TYPE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.GET_TYPE, uri, startNanos);
+        try {
+            mGetTypeCount.increment();
+            injectFaults(ProviderOperation.GET_TYPE);
+
+            return answer(findAnswer(mGetTypeRules, uri, uri), uri);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
     }
 
+    /**
+     * Answers from the rules added via {@link #addCanonicalizeRule(String, Uri)}, or null if no
+     * rule matches, which is how a provider indicates that it doesn't support canonical Uris.
+     */
     @Nullable
     @Override
-    public Uri insert(@NonNull final Uri uri, final ContentValues contentValues) {
+    public Uri canonicalize(@NonNull final Uri uri) {
         assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.CANONICALIZE, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.CANONICALIZE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.CANONICALIZE, uri, startNanos);
+        try {
+            mCanonicalizeCount.increment();
+            injectFaults(ProviderOperation.CANONICALIZE);
+
+            return answer(findAnswer(mCanonicalizeRules, uri, uri), uri);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
+    }
 
-        mInsertCount++;
+    /**
+     * Answers from the rules added via {@link #addUncanonicalizeRule(String, Uri)}.  If no rule
+     * matches, {@code uri} is returned unchanged, like the default implementation.
+     */
+    @Nullable
+    @Override
+    public Uri uncanonicalize(@NonNull final Uri uri) {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.UNCANONICALIZE, uri);
+
+        final OperationTimings timings = mTimings
+                .get(ProviderOperation.UNCANONICALIZE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.UNCANONICALIZE, uri, startNanos);
+        try {
+            mUncanonicalizeCount.increment();
+            injectFaults(ProviderOperation.UNCANONICALIZE);
+
+            final Answer<? super Uri, ? extends Uri> answer = findAnswer(mUncanonicalizeRules,
+                    uri, uri);
+            if (null == answer) {
+                return uri;
+            }
 
-        mInsertParams.addLast(new InsertParams(uri, contentValues));
+            return answer.answer(uri);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
+    }
 
-        return mInsertResults.pollFirst();
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, final ContentValues contentValues) {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.INSERT, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.INSERT.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.INSERT, uri, startNanos);
+        try {
+            final InsertParams params = new InsertParams(uri, contentValues);
+            record(mInsertParams, sequence, params);
+            mInsertCount.increment();
+            injectFaults(ProviderOperation.INSERT);
+
+            return mInsertResults.poll(
+                    orElse(findAnswer(mInsertRules, uri, params), mInsertTableAnswer), params);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
     }
 
     @Override
     public int update(@NonNull final Uri uri, @Nullable final ContentValues contentValues,
             @Nullable final String selection, @Nullable final String[] selectionArgs) {
         assertAttachInfoCalled();
-
-        mUpdateCount++;
-
-        mUpdateParams.addLast(new UpdateParams(uri, contentValues, selection, selectionArgs));
-
-        final Integer updateResult = mUpdateResults.pollFirst();
-
-        if (null == updateResult) {
-            return 0;
-        } else {
-            return updateResult;
+        notifyOnCallListeners(ProviderOperation.UPDATE, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.UPDATE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.UPDATE, uri, startNanos);
+        try {
+            final UpdateParams params = new UpdateParams(uri, contentValues, selection,
+                    selectionArgs);
+            record(mUpdateParams, sequence, params);
+            mUpdateCount.increment();
+            injectFaults(ProviderOperation.UPDATE);
+
+            final Integer updateResult = mUpdateResults.poll(
+                    orElse(findAnswer(mUpdateRules, uri, params), mUpdateTableAnswer), params);
+
+            if (null == updateResult) {
+                return 0;
+            } else {
+                return updateResult;
+            }
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
         }
     }
 
     @Override
     public int delete(@NonNull final Uri uri, @Nullable final String s, @Nullable final String[] strings) {
         assertAttachInfoCalled();
-
-        mDeleteCount++;
-
-        mDeleteParams.addLast(new DeleteParams(uri, s, strings));
-
-        final Integer deleteresult = mDeleteResults.pollFirst();
-
-        if (null == deleteresult) {
-            return 0;
-        } else {
-            return deleteresult;
+        notifyOnCallListeners(ProviderOperation.DELETE, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.DELETE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.DELETE, uri, startNanos);
+        try {
+            final DeleteParams params = new DeleteParams(uri, s, strings);
+            record(mDeleteParams, sequence, params);
+            mDeleteCount.increment();
+            injectFaults(ProviderOperation.DELETE);
+
+            final Integer deleteresult = mDeleteResults.poll(
+                    orElse(findAnswer(mDeleteRules, uri, params), mDeleteTableAnswer), params);
+
+            if (null == deleteresult) {
+                return 0;
+            } else {
+                return deleteresult;
+            }
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
         }
     }
 
@@ -195,11 +571,157 @@ public final class MockableContentProvider extends ContentProvider {
     public Bundle call(@NonNull final String method, @Nullable final String arg,
             @Nullable final Bundle extras) {
         assertAttachInfoCalled();
-        mCallCount++;
+        notifyOnCallListeners(ProviderOperation.CALL, null);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.CALL.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.CALL, null, startNanos);
+        try {
+            final CallParams params = new CallParams(method, arg, extras);
+            record(mCallParams, sequence, params);
+            mCallCount.increment();
+            injectFaults(ProviderOperation.CALL);
+
+            final Rules<CallParams, Bundle> rules = mCallRules.get(method);
+            final Answer<? super CallParams, ? extends Bundle> answer = null == rules ? null
+                    : rules.find(params);
+
+            return mCallResults.poll(answer, params);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
+    }
+
+    /**
+     * Records the entire batch as a single {@link BulkInsertParams}, rather than fanning out to
+     * {@link #insert(Uri, ContentValues)} for each row.
+     */
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.BULK_INSERT, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.BULK_INSERT.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.BULK_INSERT, uri, startNanos);
+        try {
+            final BulkInsertParams params = new BulkInsertParams(uri, values);
+            record(mBulkInsertParams, sequence, params);
+            mBulkInsertCount.increment();
+            injectFaults(ProviderOperation.BULK_INSERT);
+
+            final Integer bulkInsertResult = mBulkInsertResults.poll(
+                    orElse(findAnswer(mBulkInsertRules, uri, params), mBulkInsertTableAnswer),
+                    params);
+
+            if (null == bulkInsertResult) {
+                return values.length;
+            } else {
+                return bulkInsertResult;
+            }
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
+    }
+
+    /**
+     * Records the entire batch as a single {@link ApplyBatchParams}, rather than fanning out to
+     * the individual operations.  If no result has been provided, the result contains a count of
+     * 0 for each operation.  A call failed by {@link #setFailure(ProviderOperation, double,
+     * FailureFactory)} is counted, but its params aren't recorded.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull final ArrayList<ContentProviderOperation> operations) {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.APPLY_BATCH, null);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.APPLY_BATCH.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.APPLY_BATCH, null, startNanos);
+        try {
+            /*
+             * Unlike the other operations, the params are recorded after computing the result, so
+             * that back references can be resolved against it later.
+             */
+            final List<ContentProviderOperation> operationsCopy = Collections
+                    .unmodifiableList(new ArrayList<>(operations));
+
+            mApplyBatchCount.increment();
+            /*
+             * Faults are injected before polling, so that a failed call doesn't consume a result.
+             * A failed call is counted, but its params aren't recorded, as it has no results.
+             */
+            injectFaults(ProviderOperation.APPLY_BATCH);
+
+            ContentProviderResult[] results = mApplyBatchResults
+                    .poll(mApplyBatchRules.find(operationsCopy), operationsCopy);
+
+            if (null == results) {
+                results = new ContentProviderResult[operationsCopy.size()];
+                for (int x = 0; x < results.length; x++) {
+                    results[x] = new ContentProviderResult(0);
+                }
+            }
+
+            /*
+             * The params take ownership of the copied operations and of the results, so the
+             * caller gets the only copy of the results.
+             */
+            record(mApplyBatchParams, sequence,
+                    new ApplyBatchParams(operationsCopy, results, false));
+
+            return results.clone();
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
+    }
 
-        mCallParams.addLast(new CallParams(method, arg, extras));
+    /**
+     * Serves the {@link FileSource} provided by a FIFO result or rule.  Sources other than an
+     * unthrottled {@link FileSource#fromFile(java.io.File)} are streamed through a pipe, so the
+     * caller reads them exactly as it would read a file generated on the fly by a real provider.
+     * <p>
+     * {@link #openAssetFile(Uri, String)} and
+     * {@link #openTypedAssetFile(Uri, String, Bundle)} delegate here, so they are recorded as
+     * open file calls too.
+     *
+     * @throws FileNotFoundException If no source has been provided for {@code uri}, or if the
+     *                               source doesn't support {@code mode}.
+     */
+    @NonNull
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull final Uri uri, @NonNull final String mode)
+            throws FileNotFoundException {
+        assertAttachInfoCalled();
+        notifyOnCallListeners(ProviderOperation.OPEN_FILE, uri);
+
+        final OperationTimings timings = mTimings.get(ProviderOperation.OPEN_FILE.ordinal());
+        final long startNanos = timings.begin();
+        final long sequence = mJournal.begin(ProviderOperation.OPEN_FILE, uri, startNanos);
+        try {
+            final OpenFileParams params = new OpenFileParams(uri, mode);
+            record(mOpenFileParams, sequence, params);
+            mOpenFileCount.increment();
+            injectFaults(ProviderOperation.OPEN_FILE);
+
+            final FileSource source = mOpenFileResults
+                    .poll(findAnswer(mOpenFileRules, uri, params), params);
+
+            if (null == source) {
+                throw new FileNotFoundException(String.format(Locale.US,
+                        "No file for %s", uri)); //$NON-NLS
+            }
 
-        return mCallResults.pollFirst();
+            return source.open(mode);
+        } finally {
+            timings.end(startNanos);
+            mJournal.end(sequence);
+        }
     }
 
     /**
@@ -210,7 +732,7 @@ public final class MockableContentProvider extends ContentProvider {
      *                    String[], String)}.
      */
     public void addQueryResult(@Nullable final Cursor queryResult) {
-        mQueryResults.addLast(queryResult);
+        mQueryResults.add(queryResult);
     }
 
     /**
@@ -220,7 +742,7 @@ public final class MockableContentProvider extends ContentProvider {
      *                     #update(Uri, ContentValues, String, String[])}.
      */
     public void addUpdateResult(final int updateResult) {
-        mUpdateResults.addLast(updateResult);
+        mUpdateResults.add(updateResult);
     }
 
     /**
@@ -230,7 +752,7 @@ public final class MockableContentProvider extends ContentProvider {
      *                     #insert(Uri, ContentValues)}.
      */
     public void addInsertResult(@Nullable final Uri insertResult) {
-        mInsertResults.addLast(insertResult);
+        mInsertResults.add(insertResult);
     }
 
     /**
@@ -240,7 +762,7 @@ public final class MockableContentProvider extends ContentProvider {
      *                     #delete(Uri, String, String[])}.
      */
     public void addDeleteResult(final int deleteResult) {
-        mDeleteResults.addLast(deleteResult);
+        mDeleteResults.add(deleteResult);
     }
 
     /**
@@ -249,104 +771,965 @@ public final class MockableContentProvider extends ContentProvider {
      *                   #call(String, String, Bundle)}.
      */
     public void addCallResult(@Nullable final Bundle callResult) {
-        mCallResults.addLast(callResult);
+        mCallResults.add(callResult);
     }
 
     /**
-     * @return Polls the earliest query params or null if there are none.
+     * @param bulkInsertResult A result that will be added to the FIFO queue to be consumed and
+     *                         returned by a call to {@link #bulkInsert(Uri, ContentValues[])}.
      */
-    @Nullable
-    public QueryParams getQueryParams() {
-        return mQueryParams.pollFirst();
+    public void addBulkInsertResult(final int bulkInsertResult) {
+        mBulkInsertResults.add(bulkInsertResult);
     }
 
     /**
-     * @return Polls the earliest insert params or null if there are none.
+     * @param applyBatchResult A result that will be added to the FIFO queue to be consumed and
+     *                         returned by a call to {@link #applyBatch(ArrayList)}.
      */
-    @Nullable
-    public InsertParams getInsertParams() {
-        return mInsertParams.pollFirst();
+    public void addApplyBatchResult(@NonNull final ContentProviderResult[] applyBatchResult) {
+        assertNotNull(applyBatchResult, "applyBatchResult"); //$NON-NLS
+
+        mApplyBatchResults.add(applyBatchResult.clone());
     }
 
     /**
-     * @return Polls the earliest update params or null if there are none.
+     * @param openFileResult A result that will be added to the FIFO queue to be consumed by a
+     *                       call to {@link #openFile(Uri, String)}.  Null causes that call to
+     *                       throw {@link FileNotFoundException}.
      */
-    @Nullable
-    public UpdateParams getUpdateParams() {
-        return mUpdateParams.pollFirst();
+    public void addOpenFileResult(@Nullable final FileSource openFileResult) {
+        mOpenFileResults.add(openFileResult);
     }
 
     /**
-     * @return Polls the earliest delete params or null if there are none.
+     * Adds a rule that answers every query whose Uri matches {@code uriPattern}.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param answer     Answer that provides a new Cursor for each matching query.
      */
-    @Nullable
-    public DeleteParams getDeleteParams() {
-        return mDeleteParams.pollFirst();
+    public void addQueryRule(@NonNull final String uriPattern,
+            @NonNull final Answer<? super QueryParams, ? extends Cursor> answer) {
+        addQueryRule(uriPattern, anything(), answer);
     }
 
     /**
-     * @return Polls the earliest call params or null if there are none.
+     * Adds a rule that answers every query whose Uri matches {@code uriPattern} and whose params
+     * satisfy {@code matcher}.  Rules for the same pattern are evaluated in the order they were
+     * added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params, such as those provided by
+     *                   {@link ParamsMatchers}.
+     * @param answer     Answer that provides a new Cursor for each matching query.
      */
-    @Nullable
-    public CallParams getCallParams() {
-        return mCallParams.pollFirst();
+    public void addQueryRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super QueryParams> matcher,
+            @NonNull final Answer<? super QueryParams, ? extends Cursor> answer) {
+        mQueryRules.putIfAbsent(uriPattern, new Rules<QueryParams, Cursor>())
+                .add(matcher, answer);
     }
 
-    /*
-     * A common error in testing is to forget to force calling attach info on the content provider.
+    /**
+     * Adds a rule that answers every insert whose Uri matches {@code uriPattern}.
+     *
+     * @param uriPattern   Uri pattern, as described by {@link UriPatternIndex}.
+     * @param insertResult Result to return for each matching insert.
      */
-    private void assertAttachInfoCalled() {
-        if (!mIsAttachInfoCalled) {
-            throw new AssertionError("Call attachInfo() first"); //$NON-NLS
-        }
+    public void addInsertRule(@NonNull final String uriPattern,
+            @Nullable final Uri insertResult) {
+        addInsertRule(uriPattern, anything(), new ConstantAnswer<>(insertResult));
     }
 
     /**
-     * @return The number of times the {@link #query(Uri, String[], String, String[], String)}
-     * method was called.
+     * Adds a rule that answers every insert whose Uri matches {@code uriPattern} and whose params
+     * satisfy {@code matcher}.  Rules for the same pattern are evaluated in the order they were
+     * added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params.
+     * @param answer     Answer to provide for each matching insert.
      */
-    public int getQueryCount() {
-        return mQueryCount;
+    public void addInsertRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super InsertParams> matcher,
+            @NonNull final Answer<? super InsertParams, ? extends Uri> answer) {
+        mInsertRules.putIfAbsent(uriPattern, new Rules<InsertParams, Uri>())
+                .add(matcher, answer);
     }
 
     /**
-     * @return The number of times the {@link #insert(Uri, ContentValues)} method was called.
+     * Adds a rule that answers every update whose Uri matches {@code uriPattern}.
+     *
+     * @param uriPattern   Uri pattern, as described by {@link UriPatternIndex}.
+     * @param updateResult Result to return for each matching update.
      */
-    public int getInsertCount() {
-        return mInsertCount;
+    public void addUpdateRule(@NonNull final String uriPattern, final int updateResult) {
+        addUpdateRule(uriPattern, anything(), new ConstantAnswer<>(updateResult));
     }
 
     /**
-     * @return The number of times the {{@link #update(Uri, ContentValues, String, String[])}}
-     * method was called.
+     * Adds a rule that answers every update whose Uri matches {@code uriPattern} and whose params
+     * satisfy {@code matcher}.  Rules for the same pattern are evaluated in the order they were
+     * added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params, such as those provided by
+     *                   {@link ParamsMatchers}.
+     * @param answer     Answer to provide for each matching update.
      */
-    public int getUpdateCount() {
-        return mUpdateCount;
+    public void addUpdateRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super UpdateParams> matcher,
+            @NonNull final Answer<? super UpdateParams, ? extends Integer> answer) {
+        mUpdateRules.putIfAbsent(uriPattern, new Rules<UpdateParams, Integer>())
+                .add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that answers every delete whose Uri matches {@code uriPattern}.
+     *
+     * @param uriPattern   Uri pattern, as described by {@link UriPatternIndex}.
+     * @param deleteResult Result to return for each matching delete.
+     */
+    public void addDeleteRule(@NonNull final String uriPattern, final int deleteResult) {
+        addDeleteRule(uriPattern, anything(), new ConstantAnswer<>(deleteResult));
+    }
+
+    /**
+     * Adds a rule that answers every delete whose Uri matches {@code uriPattern} and whose params
+     * satisfy {@code matcher}.  Rules for the same pattern are evaluated in the order they were
+     * added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params, such as those provided by
+     *                   {@link ParamsMatchers}.
+     * @param answer     Answer to provide for each matching delete.
+     */
+    public void addDeleteRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super DeleteParams> matcher,
+            @NonNull final Answer<? super DeleteParams, ? extends Integer> answer) {
+        mDeleteRules.putIfAbsent(uriPattern, new Rules<DeleteParams, Integer>())
+                .add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that answers every call to {@code method}.
+     *
+     * @param method     Method name.
+     * @param callResult Result to return for each matching call.  A shallow copy is returned for
+     *                   each call, so that callers can't modify the result of subsequent calls.
+     */
+    public void addCallRule(@NonNull final String method, @Nullable final Bundle callResult) {
+        addCallRule(method, anything(), new BundleAnswer(callResult));
+    }
+
+    /**
+     * Adds a rule that answers every call to {@code method} whose params satisfy {@code
+     * matcher}.  Rules for the same method are evaluated in the order they were added.
+     *
+     * @param method  Method name.
+     * @param matcher Matcher for the params, such as those provided by {@link ParamsMatchers}.
+     * @param answer  Answer to provide for each matching call.
+     */
+    public void addCallRule(@NonNull final String method,
+            @NonNull final Matcher<? super CallParams> matcher,
+            @NonNull final Answer<? super CallParams, ? extends Bundle> answer) {
+        assertNotNull(method, "method"); //$NON-NLS
+
+        Rules<CallParams, Bundle> rules = mCallRules.get(method);
+        if (null == rules) {
+            final Rules<CallParams, Bundle> newRules = new Rules<>();
+            rules = mCallRules.putIfAbsent(method, newRules);
+            if (null == rules) {
+                rules = newRules;
+            }
+        }
+
+        rules.add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that answers every bulk insert whose Uri matches {@code uriPattern} and whose
+     * params satisfy {@code matcher}.  Rules for the same pattern are evaluated in the order they
+     * were added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params.
+     * @param answer     Answer to provide for each matching bulk insert.
+     */
+    public void addBulkInsertRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super BulkInsertParams> matcher,
+            @NonNull final Answer<? super BulkInsertParams, ? extends Integer> answer) {
+        mBulkInsertRules.putIfAbsent(uriPattern, new Rules<BulkInsertParams, Integer>())
+                .add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that answers every batch whose operations satisfy {@code matcher}.  Rules are
+     * evaluated in the order they were added.
+     *
+     * @param matcher Matcher for the operations of the batch.
+     * @param answer  Answer to provide for each matching batch.  The answer should return one
+     *                result per operation.
+     */
+    public void addApplyBatchRule(
+            @NonNull final Matcher<? super List<ContentProviderOperation>> matcher,
+            @NonNull final Answer<? super List<ContentProviderOperation>,
+                    ? extends ContentProviderResult[]> answer) {
+        mApplyBatchRules.add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that serves {@code source} for every open file call whose Uri matches
+     * {@code uriPattern}.  A source may be opened any number of times.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param source     Contents to serve.
+     */
+    public void addOpenFileRule(@NonNull final String uriPattern,
+            @NonNull final FileSource source) {
+        assertNotNull(source, "source"); //$NON-NLS
+
+        addOpenFileRule(uriPattern, anything(), new ConstantAnswer<>(source));
+    }
+
+    /**
+     * Adds a rule that answers every open file call whose Uri matches {@code uriPattern} and
+     * whose params satisfy {@code matcher}.  Rules for the same pattern are evaluated in the
+     * order they were added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param matcher    Matcher for the params.
+     * @param answer     Answer to provide for each matching call.
+     */
+    public void addOpenFileRule(@NonNull final String uriPattern,
+            @NonNull final Matcher<? super OpenFileParams> matcher,
+            @NonNull final Answer<? super OpenFileParams, ? extends FileSource> answer) {
+        mOpenFileRules.putIfAbsent(uriPattern, new Rules<OpenFileParams, FileSource>())
+                .add(matcher, answer);
+    }
+
+    /**
+     * Adds a rule that answers {@link #getType(Uri)} for every Uri that matches
+     * {@code uriPattern}.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param type       MIME type to return, such as
+     *                   {@code vnd.android.cursor.item/vnd.example.item}.
+     */
+    public void addGetTypeRule(@NonNull final String uriPattern, @Nullable final String type) {
+        addGetTypeRule(uriPattern, new ConstantAnswer<>(type));
+    }
+
+    /**
+     * Adds a rule that answers {@link #getType(Uri)} for every Uri that matches
+     * {@code uriPattern}.  Rules for the same pattern are evaluated in the order they were added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param answer     Answer that provides the MIME type for each matching Uri.
+     */
+    public void addGetTypeRule(@NonNull final String uriPattern,
+            @NonNull final Answer<? super Uri, ? extends String> answer) {
+        mGetTypeRules.putIfAbsent(uriPattern, new Rules<Uri, String>())
+                .add(anything(), answer);
+    }
+
+    /**
+     * Adds a rule that answers {@link #canonicalize(Uri)} for every Uri that matches
+     * {@code uriPattern}.
+     *
+     * @param uriPattern   Uri pattern, as described by {@link UriPatternIndex}.
+     * @param canonicalUri Canonical Uri to return.
+     */
+    public void addCanonicalizeRule(@NonNull final String uriPattern,
+            @Nullable final Uri canonicalUri) {
+        addCanonicalizeRule(uriPattern, new ConstantAnswer<>(canonicalUri));
+    }
+
+    /**
+     * Adds a rule that answers {@link #canonicalize(Uri)} for every Uri that matches
+     * {@code uriPattern}.  Rules for the same pattern are evaluated in the order they were added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param answer     Answer that provides the canonical Uri for each matching Uri.
+     */
+    public void addCanonicalizeRule(@NonNull final String uriPattern,
+            @NonNull final Answer<? super Uri, ? extends Uri> answer) {
+        mCanonicalizeRules.putIfAbsent(uriPattern, new Rules<Uri, Uri>())
+                .add(anything(), answer);
+    }
+
+    /**
+     * Adds a rule that answers {@link #uncanonicalize(Uri)} for every Uri that matches
+     * {@code uriPattern}.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param uri        Uri to return, or null if the canonical Uri no longer identifies an
+     *                   item.
+     */
+    public void addUncanonicalizeRule(@NonNull final String uriPattern,
+            @Nullable final Uri uri) {
+        addUncanonicalizeRule(uriPattern, new ConstantAnswer<>(uri));
+    }
+
+    /**
+     * Adds a rule that answers {@link #uncanonicalize(Uri)} for every Uri that matches
+     * {@code uriPattern}.  Rules for the same pattern are evaluated in the order they were added.
+     *
+     * @param uriPattern Uri pattern, as described by {@link UriPatternIndex}.
+     * @param answer     Answer that provides the Uri for each matching canonical Uri.
+     */
+    public void addUncanonicalizeRule(@NonNull final String uriPattern,
+            @NonNull final Answer<? super Uri, ? extends Uri> answer) {
+        mUncanonicalizeRules.putIfAbsent(uriPattern, new Rules<Uri, Uri>())
+                .add(anything(), answer);
+    }
+
+    /**
+     * Backs a Uri with an in-memory table, so that insert, update, and delete mutate rows that
+     * query then returns.  Calls to {@code tableUri} operate on the whole table, and calls to
+     * {@code tableUri} with an id appended operate on the row with that {@link BaseColumns#_ID}.
+     * <p>
+     * Tables take precedence over the default result, but not over FIFO results or rules.  The
+     * table is not involved in {@link #applyBatch(ArrayList)}, whose operations are recorded
+     * but not applied.
+     *
+     * @param tableUri Uri pattern for the table, such as {@code content://authority/items}.  See
+     *                 {@link UriPatternIndex}.
+     * @param table    Table to back the Uri with.  The same table may back several Uris.
+     */
+    public void addTable(@NonNull final String tableUri, @NonNull final InMemoryTable table) {
+        assertNotNull(tableUri, "tableUri"); //$NON-NLS
+        assertNotNull(table, "table"); //$NON-NLS
+
+        final String trimmedUri = tableUri.endsWith("/") //$NON-NLS
+                ? tableUri.substring(0, tableUri.length() - 1) : tableUri;
+
+        mTables.put(trimmedUri, new TableBinding(table, false));
+        mTables.put(trimmedUri + "/#", new TableBinding(table, true)); //$NON-NLS
+    }
+
+    /**
+     * Sets how many params are retained for each operation, and what the journal retains.
+     * Params and journal entries recorded so far are discarded, while call counts are
+     * unaffected.
+     *
+     * @param historyPolicy Policy for retaining params.
+     */
+    public void setHistoryPolicy(@NonNull final HistoryPolicy historyPolicy) {
+        assertNotNull(historyPolicy, "historyPolicy"); //$NON-NLS
+
+        mHistoryPolicy = historyPolicy;
+        mQueryParams = historyPolicy.newHistory();
+        mInsertParams = historyPolicy.newHistory();
+        mUpdateParams = historyPolicy.newHistory();
+        mDeleteParams = historyPolicy.newHistory();
+        mCallParams = historyPolicy.newHistory();
+        mBulkInsertParams = historyPolicy.newHistory();
+        mApplyBatchParams = historyPolicy.newHistory();
+        mOpenFileParams = historyPolicy.newHistory();
+        mJournal.setHistoryPolicy(historyPolicy);
+    }
+
+    /**
+     * @return The policy for retaining params.  Defaults to {@link HistoryPolicy#keepAll()}.
+     */
+    @NonNull
+    public HistoryPolicy getHistoryPolicy() {
+        return mHistoryPolicy;
+    }
+
+    /**
+     * Restores this provider to the state it had after construction, so that one provider, and
+     * the context and resolver it is registered with, can be reused across tests.  Recorded
+     * params, the journal, counts, queued results, rules, tables, latencies, failures, timings,
+     * listeners, the history policy, and the random seed are all cleared.
+     * <p>
+     * Resetting is not atomic with respect to calls in progress, so it should only be done while
+     * no calls are being made, such as between tests.
+     */
+    @Override
+    public void reset() {
+        mQueryCount.reset();
+        mInsertCount.reset();
+        mUpdateCount.reset();
+        mDeleteCount.reset();
+        mCallCount.reset();
+        mBulkInsertCount.reset();
+        mApplyBatchCount.reset();
+        mOpenFileCount.reset();
+        mGetTypeCount.reset();
+        mCanonicalizeCount.reset();
+        mUncanonicalizeCount.reset();
+
+        mQueryResults.clear();
+        mInsertResults.clear();
+        mUpdateResults.clear();
+        mDeleteResults.clear();
+        mCallResults.clear();
+        mBulkInsertResults.clear();
+        mApplyBatchResults.clear();
+        mOpenFileResults.clear();
+
+        setHistoryPolicy(HistoryPolicy.keepAll());
+
+        mQueryRules.clear();
+        mInsertRules.clear();
+        mUpdateRules.clear();
+        mDeleteRules.clear();
+        mCallRules.clear();
+        mBulkInsertRules.clear();
+        mApplyBatchRules.clear();
+        mOpenFileRules.clear();
+        mGetTypeRules.clear();
+        mCanonicalizeRules.clear();
+        mUncanonicalizeRules.clear();
+
+        mTables.clear();
+
+        for (int x = 0; x < mTimings.length(); x++) {
+            mLatencies.set(x, null);
+            mFailures.set(x, null);
+            mTimings.set(x, new OperationTimings());
+        }
+
+        mJournal.clear();
+        mOnCallListeners.clear();
+        mRandom = new Random(0);
+    }
+
+    /**
+     * Sets an artificial delay for an operation, to test how callers cope with a slow provider.
+     * The delay is applied after the call is recorded and before its result is computed, on the
+     * calling thread.
+     *
+     * @param operation Operation to delay.
+     * @param latency   Distribution of delays.  Use {@link Latency#none()} to remove the delay.
+     */
+    public void setLatency(@NonNull final ProviderOperation operation,
+            @NonNull final Latency latency) {
+        assertNotNull(operation, "operation"); //$NON-NLS
+        assertNotNull(latency, "latency"); //$NON-NLS
+
+        mLatencies.set(operation.ordinal(), latency);
+    }
+
+    /**
+     * Makes an operation fail randomly, to test how callers cope with a flaky provider.
+     * Failures are thrown after the call is recorded and after any latency, so the call still
+     * counts towards {@link #getQueryCount()} and the like.
+     *
+     * @param operation   Operation to fail.
+     * @param probability Probability in the range [0, 1] that a call fails.  0 removes the
+     *                    failure.
+     * @param factory     Creates the exception to throw.  See {@link Failures} for common ones.
+     */
+    public void setFailure(@NonNull final ProviderOperation operation, final double probability,
+            @NonNull final FailureFactory factory) {
+        assertNotNull(operation, "operation"); //$NON-NLS
+        assertNotNull(factory, "factory"); //$NON-NLS
+        if (0 > probability || 1 < probability) {
+            throw new IllegalArgumentException("probability must be in [0, 1]"); //$NON-NLS
+        }
+
+        mFailures.set(operation.ordinal(),
+                0 == probability ? null : new FailureSpec(probability, factory));
+    }
+
+    /**
+     * Reseeds the source of randomness for latency and failures.  For a given seed, a single
+     * calling thread sees the same sequence of delays and failures.  With concurrent callers,
+     * the sequence is the same but its interleaving across threads is not.
+     *
+     * @param seed Seed for the random number generator.
+     */
+    public void setRandomSeed(final long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Adds a listener that is notified at the start of every call.
+     *
+     * @param listener Listener to add.
+     */
+    public void addOnCallListener(@NonNull final OnCallListener listener) {
+        assertNotNull(listener, "listener"); //$NON-NLS
+
+        mOnCallListeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to remove.
+     */
+    public void removeOnCallListener(@NonNull final OnCallListener listener) {
+        assertNotNull(listener, "listener"); //$NON-NLS
+
+        mOnCallListeners.remove(listener);
+    }
+
+    /**
+     * Listeners are notified before timing starts, so that their own cost doesn't show up in
+     * {@link #getTimings(ProviderOperation)}.
+     *
+     * @param operation Operation being called.
+     * @param uri       Uri of the call, or null if the operation has none.
+     */
+    private void notifyOnCallListeners(@NonNull final ProviderOperation operation,
+            @Nullable final Uri uri) {
+        for (final OnCallListener listener : mOnCallListeners) {
+            listener.onCall(operation, uri);
+        }
+    }
+
+    /**
+     * Applies any latency and failure configured for {@code operation}.  Randomness is only
+     * consumed for operations that are configured, so configuring one operation doesn't change
+     * the sequence seen by another.
+     *
+     * @param operation Operation being called.
+     */
+    private void injectFaults(@NonNull final ProviderOperation operation) {
+        final Random random = mRandom;
+
+        final Latency latency = mLatencies.get(operation.ordinal());
+        if (null != latency) {
+            final long delayNanos = latency.sampleNanos(random);
+            if (0 < delayNanos) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        final FailureSpec failure = mFailures.get(operation.ordinal());
+        if (null != failure && random.nextDouble() < failure.mProbability) {
+            throw failure.mFactory.newFailure(operation);
+        }
+    }
+
+    /**
+     * @return Polls the earliest query params or null if there are none.
+     */
+    @Nullable
+    public QueryParams getQueryParams() {
+        return mQueryParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest insert params or null if there are none.
+     */
+    @Nullable
+    public InsertParams getInsertParams() {
+        return mInsertParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest update params or null if there are none.
+     */
+    @Nullable
+    public UpdateParams getUpdateParams() {
+        return mUpdateParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest delete params or null if there are none.
+     */
+    @Nullable
+    public DeleteParams getDeleteParams() {
+        return mDeleteParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest call params or null if there are none.
+     */
+    @Nullable
+    public CallParams getCallParams() {
+        return mCallParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest bulk insert params or null if there are none.
+     */
+    @Nullable
+    public BulkInsertParams getBulkInsertParams() {
+        return mBulkInsertParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest apply batch params or null if there are none.
+     */
+    @Nullable
+    public ApplyBatchParams getApplyBatchParams() {
+        return mApplyBatchParams.poll();
+    }
+
+    /**
+     * @return Polls the earliest open file params or null if there are none.
+     */
+    @Nullable
+    public OpenFileParams getOpenFileParams() {
+        return mOpenFileParams.poll();
+    }
+
+    @Nullable
+    private static <P, R> Answer<? super P, ? extends R> findAnswer(
+            @NonNull final UriPatternIndex<Rules<P, R>> index, @NonNull final Uri uri,
+            @NonNull final P params) {
+        for (final Rules<P, R> rules : index.getAll(uri)) {
+            final Answer<? super P, ? extends R> answer = rules.find(params);
+            if (null != answer) {
+                return answer;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Records params in the history of their operation and in the journal.
+     *
+     * @param history  History of the operation.
+     * @param sequence Journal handle of the call.
+     * @param params   Params of the call.
+     */
+    private <T> void record(@NonNull final CallHistory<T> history, final long sequence,
+            @NonNull final T params) {
+        history.add(params);
+        mJournal.setParams(sequence, params);
+    }
+
+    /**
+     * @return The answer for {@code params}, or null if {@code answer} is null.
+     */
+    @Nullable
+    private static <P, R> R answer(@Nullable final Answer<? super P, ? extends R> answer,
+            @NonNull final P params) {
+        if (null == answer) {
+            return null;
+        }
+
+        return answer.answer(params);
+    }
+
+    @Nullable
+    private static <P, R> Answer<? super P, ? extends R> orElse(
+            @Nullable final Answer<? super P, ? extends R> answer,
+            @NonNull final Answer<? super P, ? extends R> fallback) {
+        if (null == answer) {
+            return fallback;
+        }
+
+        return answer;
+    }
+
+    /*
+     * A common error in testing is to forget to force calling attach info on the content provider.
+     */
+    private void assertAttachInfoCalled() {
+        if (!mIsAttachInfoCalled) {
+            throw new AssertionError("Call attachInfo() first"); //$NON-NLS
+        }
+    }
+
+    /**
+     * @return The number of times the {@link #query(Uri, String[], String, String[], String)}
+     * method was called.
+     */
+    public int getQueryCount() {
+        return mQueryCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #insert(Uri, ContentValues)} method was called.
+     */
+    public int getInsertCount() {
+        return mInsertCount.get();
+    }
+
+    /**
+     * @return The number of times the {{@link #update(Uri, ContentValues, String, String[])}}
+     * method was called.
+     */
+    public int getUpdateCount() {
+        return mUpdateCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #delete(Uri, String, String[])} method was called.
+     */
+    public int getDeleteCount() {
+        return mDeleteCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #call(String, String, Bundle)} method was called.
+     */
+    public int getCallCount() {
+        return mCallCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #bulkInsert(Uri, ContentValues[])} method was
+     * called.
+     */
+    public int getBulkInsertCount() {
+        return mBulkInsertCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #applyBatch(ArrayList)} method was called.
+     */
+    public int getApplyBatchCount() {
+        return mApplyBatchCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #openFile(Uri, String)} method was called.
+     */
+    public int getOpenFileCount() {
+        return mOpenFileCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #getType(Uri)} method was called.
+     */
+    public int getGetTypeCount() {
+        return mGetTypeCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #canonicalize(Uri)} method was called.
+     */
+    public int getCanonicalizeCount() {
+        return mCanonicalizeCount.get();
+    }
+
+    /**
+     * @return The number of times the {@link #uncanonicalize(Uri)} method was called.
+     */
+    public int getUncanonicalizeCount() {
+        return mUncanonicalizeCount.get();
+    }
+
+    /**
+     * Blocks until {@link #query(Uri, String[], String, String[], String)} has been called at least
+     * {@code count} times in total, or the timeout elapses.  The caller is woken as soon as the
+     * call that reaches {@code count} has been recorded, so its params are already available from
+     * {@link #getQueryParams()}.
+     *
+     * @param count   Total number of calls to wait for.
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of {@code timeout}.
+     * @return True if the count was reached, false if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean awaitQuery(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mQueryCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #insert(Uri, ContentValues)} has been called at least {@code count} times
+     * in total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitInsert(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mInsertCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #update(Uri, ContentValues, String, String[])} has been called at least
+     * {@code count} times in total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitUpdate(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mUpdateCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #delete(Uri, String, String[])} has been called at least {@code count}
+     * times in total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitDelete(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mDeleteCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #call(String, String, Bundle)} has been called at least {@code count}
+     * times in total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitCall(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mCallCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #bulkInsert(Uri, ContentValues[])} has been called at least {@code count}
+     * times in total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitBulkInsert(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mBulkInsertCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #applyBatch(ArrayList)} has been called at least {@code count} times in
+     * total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitApplyBatch(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mApplyBatchCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #openFile(Uri, String)} has been called at least {@code count} times in
+     * total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitOpenFile(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mOpenFileCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #getType(Uri)} has been called at least {@code count} times in total,
+     * or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitGetType(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mGetTypeCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #canonicalize(Uri)} has been called at least {@code count} times in
+     * total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitCanonicalize(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mCanonicalizeCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Blocks until {@link #uncanonicalize(Uri)} has been called at least {@code count} times in
+     * total, or the timeout elapses.
+     *
+     * @see #awaitQuery(int, long, TimeUnit)
+     */
+    public boolean awaitUncanonicalize(final int count, final long timeout,
+            @NonNull final TimeUnit unit) throws InterruptedException {
+        return mUncanonicalizeCount.await(count, timeout, unit);
+    }
+
+    /**
+     * Timings are recorded for every call regardless of the {@link HistoryPolicy}, and are
+     * useful for asserting that code under test doesn't issue a storm of calls, for example
+     * N+1 queries, or exceed a budget of calls per second.
+     *
+     * @param operation Operation to get the timings of.
+     * @return A snapshot of the timings of {@code operation} so far.
+     */
+    @NonNull
+    public CallTimings getTimings(@NonNull final ProviderOperation operation) {
+        assertNotNull(operation, "operation"); //$NON-NLS
+
+        return mTimings.get(operation.ordinal()).snapshot();
+    }
+
+    /**
+     * The journal shows the order of calls across operations, which the per-operation params
+     * can't.  It follows the {@link HistoryPolicy}, as described by {@link CallJournal}, and is
+     * cleared when the policy is set.
+     *
+     * @return The journal of calls to this provider.
+     */
+    @NonNull
+    public CallJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Writes each call to {@code traceWriter} as it ends, as an event in the category
+     * {@code provider} named after the {@link ProviderOperation}.  The trace writer is kept
+     * across {@link #reset()}, so one trace can span several tests.  Calls aren't traced under
+     * {@link HistoryPolicy#keepNone()}, as the journal they are traced from retains nothing.
+     *
+     * @param traceWriter Writer for calls, or null to stop tracing.
+     */
+    public void setTraceWriter(@Nullable final ChromeTraceWriter traceWriter) {
+        mJournal.setTraceWriter(traceWriter);
+    }
+
+    /**
+     * @return New timings for each {@link ProviderOperation}, indexed by ordinal.
+     */
+    @NonNull
+    private static AtomicReferenceArray<OperationTimings> newTimings() {
+        final OperationTimings[] timings = new OperationTimings[ProviderOperation.values()
+                .length];
+        for (int x = 0; x < timings.length; x++) {
+            timings[x] = new OperationTimings();
+        }
+
+        return new AtomicReferenceArray<>(timings);
+    }
+
+    /**
+     * @param toCopy Array to snapshot.  May be null.
+     * @return An unmodifiable list backed by a private copy of {@code toCopy}, or null if
+     * {@code toCopy} is null.
+     */
+    @Nullable
+    private static List<String> toUnmodifiableList(@Nullable final String[] toCopy) {
+        if (null == toCopy) {
+            return null;
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(toCopy.clone()));
     }
 
     /**
-     * @return The number of times the {@link #delete(Uri, String, String[])} method was called.
+     * @param list List to convert.  May be null.
+     * @return A new array with the contents of {@code list}, or null if {@code list} is null.
      */
-    public int getDeleteCount() {
-        return mDeleteCount;
+    @Nullable
+    private static String[] toArray(@Nullable final List<String> list) {
+        if (null == list) {
+            return null;
+        }
+
+        return list.toArray(new String[list.size()]);
     }
 
     /**
-     * @return The number of times the {@link #call(String, String, Bundle)} method was called.
+     * @param toCopy Values to copy.  May be null.
+     * @return A copy of {@code toCopy}, or null if {@code toCopy} is null.
      */
-    public int getCallCount() {
-        return mCallCount;
-    }
-
-    @NonNull
-    private static String[] copyArray(@NonNull final String[] toCopy) {
-        assertNotNull(toCopy, "toCopy"); //$NON-NLS-1$
-
-        final String[] result;
-        result = new String[toCopy.length];
-        System.arraycopy(toCopy, 0, result, 0, toCopy.length);
+    @Nullable
+    private static ContentValues copyContentValues(@Nullable final ContentValues toCopy) {
+        if (null == toCopy) {
+            return null;
+        }
 
-        return result;
+        // Note: shallow copy for blobs
+        return new ContentValues(toCopy);
     }
 
     /**
@@ -379,9 +1762,163 @@ public final class MockableContentProvider extends ContentProvider {
         return mockableContentProvider;
     }
 
+    /**
+     * Computes the result of a call that matched a rule.  Answers may be invoked concurrently
+     * from multiple threads.
+     *
+     * @param <P> Type of the params.
+     * @param <R> Type of the result.
+     */
+    public interface Answer<P, R> {
+
+        /**
+         * @param params Params of the call.
+         * @return Result of the call.
+         */
+        @Nullable
+        R answer(@NonNull final P params);
+    }
+
+    /**
+     * Creates the exceptions thrown by operations configured via
+     * {@link #setFailure(ProviderOperation, double, FailureFactory)}.  Factories may be invoked
+     * concurrently from multiple threads.
+     */
+    public interface FailureFactory {
+
+        /**
+         * @param operation Operation that is failing.
+         * @return Exception for the operation to throw.
+         */
+        @NonNull
+        RuntimeException newFailure(@NonNull final ProviderOperation operation);
+    }
+
+    /**
+     * Notified at the start of every call to a {@link MockableContentProvider}, on the calling
+     * thread.  Listeners may be invoked concurrently from multiple threads.
+     *
+     * @see #addOnCallListener(OnCallListener)
+     */
+    public interface OnCallListener {
+
+        /**
+         * @param operation Operation being called.
+         * @param uri       Uri of the call, or null for {@link ProviderOperation#CALL} and
+         *                  {@link ProviderOperation#APPLY_BATCH}.
+         */
+        void onCall(@NonNull final ProviderOperation operation, @Nullable final Uri uri);
+    }
+
+    /**
+     * An {@link InMemoryTable} bound to a Uri pattern, either for the whole table or for a
+     * single row identified by the last path segment of the Uri.
+     */
+    @Immutable
+    private static final class TableBinding {
+
+        @NonNull
+        private final InMemoryTable mTable;
+
+        private final boolean mIsItem;
+
+        private TableBinding(@NonNull final InMemoryTable table, final boolean isItem) {
+            mTable = table;
+            mIsItem = isItem;
+        }
+
+        @Nullable
+        public String getSelection(@Nullable final String selection) {
+            if (!mIsItem) {
+                return selection;
+            }
+
+            if (null == selection || 0 == selection.trim().length()) {
+                return BaseColumns._ID + " = ?"; //$NON-NLS
+            }
+
+            return BaseColumns._ID + " = ? AND (" + selection + ")"; //$NON-NLS
+        }
+
+        @Nullable
+        public String[] getSelectionArgs(@NonNull final Uri uri,
+                @Nullable final String[] selectionArgs) {
+            if (!mIsItem) {
+                return selectionArgs;
+            }
+
+            final int argCount = null == selectionArgs ? 0 : selectionArgs.length;
+            final String[] args = new String[argCount + 1];
+            args[0] = uri.getLastPathSegment();
+            if (null != selectionArgs) {
+                System.arraycopy(selectionArgs, 0, args, 1, argCount);
+            }
+
+            return args;
+        }
+
+        public void assertNotItem(@NonNull final Uri uri) {
+            if (mIsItem) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "Can't insert into a row Uri: %s", uri)); //$NON-NLS
+            }
+        }
+    }
+
+    @Immutable
+    private static final class FailureSpec {
+
+        private final double mProbability;
+
+        @NonNull
+        private final FailureFactory mFactory;
+
+        private FailureSpec(final double probability, @NonNull final FailureFactory factory) {
+            mProbability = probability;
+            mFactory = factory;
+        }
+    }
+
+    @Immutable
+    private static final class ConstantAnswer<R> implements Answer<Object, R> {
+
+        @Nullable
+        private final R mResult;
+
+        private ConstantAnswer(@Nullable final R result) {
+            mResult = result;
+        }
+
+        @Nullable
+        @Override
+        public R answer(@NonNull final Object params) {
+            return mResult;
+        }
+    }
+
+    @Immutable
+    private static final class BundleAnswer implements Answer<Object, Bundle> {
+
+        @Nullable
+        private final Bundle mResult;
+
+        private BundleAnswer(@Nullable final Bundle result) {
+            mResult = null == result ? null : new Bundle(result);
+        }
+
+        @Nullable
+        @Override
+        public Bundle answer(@NonNull final Object params) {
+            return null == mResult ? null : new Bundle(mResult);
+        }
+    }
+
     /**
      * Represents the parameters passed to {@link ContentProvider#query(Uri, String[], String,
      * String[], String)}.
+     * <p>
+     * Arrays are copied once on construction.  The list getters return unmodifiable views of
+     * that copy and do not allocate, while the array getters return a new copy on each call.
      */
     @Immutable
     public static final class QueryParams {
@@ -390,13 +1927,13 @@ public final class MockableContentProvider extends ContentProvider {
         private final Uri mUri;
 
         @Nullable
-        private final String[] mProjection;
+        private final List<String> mProjection;
 
         @Nullable
         private final String mSelection;
 
         @Nullable
-        private final String[] mSelectionArgs;
+        private final List<String> mSelectionArgs;
 
         @Nullable
         private final String mOrderBy;
@@ -405,9 +1942,9 @@ public final class MockableContentProvider extends ContentProvider {
         final String selection, @Nullable final String[] selectionArgs, @Nullable
         final String orderBy) {
             mUri = uri;
-            mProjection = null == projection ? projection : copyArray(projection);
+            mProjection = toUnmodifiableList(projection);
             mSelection = selection;
-            mSelectionArgs = null == selectionArgs ? selectionArgs : copyArray(selectionArgs);
+            mSelectionArgs = toUnmodifiableList(selectionArgs);
             mOrderBy = orderBy;
         }
 
@@ -416,13 +1953,21 @@ public final class MockableContentProvider extends ContentProvider {
             return mUri;
         }
 
+        /**
+         * @return A copy of the projection.  Consider {@link #getProjectionList()}, which doesn't
+         * allocate.
+         */
         @Nullable
         public String[] getProjection() {
-            if (null == mProjection) {
-                return null;
-            }
+            return toArray(mProjection);
+        }
 
-            return copyArray(mProjection);
+        /**
+         * @return An unmodifiable view of the projection.
+         */
+        @Nullable
+        public List<String> getProjectionList() {
+            return mProjection;
         }
 
         @Nullable
@@ -430,13 +1975,21 @@ public final class MockableContentProvider extends ContentProvider {
             return mSelection;
         }
 
+        /**
+         * @return A copy of the selection args.  Consider {@link #getSelectionArgsList()}, which
+         * doesn't allocate.
+         */
         @Nullable
         public String[] getSelectionArgs() {
-            if (null == mSelectionArgs) {
-                return null;
-            }
+            return toArray(mSelectionArgs);
+        }
 
-            return copyArray(mSelectionArgs);
+        /**
+         * @return An unmodifiable view of the selection args.
+         */
+        @Nullable
+        public List<String> getSelectionArgsList() {
+            return mSelectionArgs;
         }
 
         @Nullable
@@ -447,6 +2000,10 @@ public final class MockableContentProvider extends ContentProvider {
 
     /**
      * Represents the parameters passed to {@link ContentProvider#insert(Uri, ContentValues)}.
+     * <p>
+     * Values are copied once on construction.  {@link #getValues()} returns an unmodifiable view
+     * of that copy and does not allocate, while {@link #getContentValues()} returns a new copy on
+     * each call.
      */
     @Immutable
     public static final class InsertParams {
@@ -457,10 +2014,13 @@ public final class MockableContentProvider extends ContentProvider {
         @Nullable
         private final ContentValues mContentValues;
 
+        @Nullable
+        private final Map<String, Object> mValues;
+
         public InsertParams(@NonNull final Uri uri, @Nullable final ContentValues values) {
             mUri = uri;
-            // Note: shallow copy for blobs
-            mContentValues = new ContentValues(values);
+            mContentValues = copyContentValues(values);
+            mValues = ContentValuesMap.unmodifiableView(mContentValues);
         }
 
         @NonNull
@@ -468,17 +2028,31 @@ public final class MockableContentProvider extends ContentProvider {
             return mUri;
         }
 
+        /**
+         * @return A copy of the values.  Consider {@link #getValues()}, which doesn't allocate.
+         */
         @Nullable
         public ContentValues getContentValues() {
-            return new ContentValues(mContentValues);
+            return copyContentValues(mContentValues);
         }
 
+        /**
+         * @return An unmodifiable view of the values.
+         */
+        @Nullable
+        public Map<String, Object> getValues() {
+            return mValues;
+        }
     }
 
     /**
      * Represents the parameters passed to {@link ContentProvider#update(Uri, ContentValues,
      * String,
      * String[])}.
+     * <p>
+     * Values and arrays are copied once on construction.  The map and list getters return
+     * unmodifiable views of that copy and do not allocate, while the other getters return a new
+     * copy on each call.
      */
     @Immutable
     public static final class UpdateParams {
@@ -486,22 +2060,25 @@ public final class MockableContentProvider extends ContentProvider {
         @NonNull
         private final Uri mUri;
 
-        @NonNull
+        @Nullable
         private final ContentValues mContentValues;
 
+        @Nullable
+        private final Map<String, Object> mValues;
+
         @Nullable
         private final String mSelection;
 
-        @NonNull
-        private final String[] mSelectionArgs;
+        @Nullable
+        private final List<String> mSelectionArgs;
 
-        public UpdateParams(@NonNull final Uri uri, @NonNull final ContentValues values,
+        public UpdateParams(@NonNull final Uri uri, @Nullable final ContentValues values,
                 @Nullable final String selection, @Nullable final String[] selectionArgs) {
             mUri = uri;
-            // Note: shallow copy for blobs
-            mContentValues = new ContentValues(values);
+            mContentValues = copyContentValues(values);
+            mValues = ContentValuesMap.unmodifiableView(mContentValues);
             mSelection = selection;
-            mSelectionArgs = null == selectionArgs ? null : copyArray(selectionArgs);
+            mSelectionArgs = toUnmodifiableList(selectionArgs);
         }
 
         @NonNull
@@ -509,25 +2086,51 @@ public final class MockableContentProvider extends ContentProvider {
             return mUri;
         }
 
-        @NonNull
+        /**
+         * @return A copy of the values.  Consider {@link #getValues()}, which doesn't allocate.
+         */
+        @Nullable
         public ContentValues getContentValues() {
-            return new ContentValues(mContentValues);
+            return copyContentValues(mContentValues);
         }
 
-        @NonNull
+        /**
+         * @return An unmodifiable view of the values.
+         */
+        @Nullable
+        public Map<String, Object> getValues() {
+            return mValues;
+        }
+
+        @Nullable
         public String getSelection() {
             return mSelection;
         }
 
-        @NonNull
+        /**
+         * @return A copy of the selection args.  Consider {@link #getSelectionArgsList()}, which
+         * doesn't allocate.
+         */
+        @Nullable
         public String[] getSelectionArgs() {
-            return copyArray(mSelectionArgs);
+            return toArray(mSelectionArgs);
+        }
+
+        /**
+         * @return An unmodifiable view of the selection args.
+         */
+        @Nullable
+        public List<String> getSelectionArgsList() {
+            return mSelectionArgs;
         }
     }
 
 
     /**
      * Represents the parameters passed to {@link ContentProvider#delete(Uri, String, String[])}.
+     * <p>
+     * Arrays are copied once on construction.  The list getter returns an unmodifiable view of
+     * that copy and does not allocate, while the array getter returns a new copy on each call.
      */
     @Immutable
     public static final class DeleteParams {
@@ -535,17 +2138,17 @@ public final class MockableContentProvider extends ContentProvider {
         @NonNull
         private final Uri mUri;
 
-        @NonNull
+        @Nullable
         private final String mSelection;
 
-        @NonNull
-        private final String[] mSelectionArgs;
+        @Nullable
+        private final List<String> mSelectionArgs;
 
         public DeleteParams(@NonNull final Uri uri,
                 @Nullable final String selection, @Nullable final String[] selectionArgs) {
             mUri = uri;
             mSelection = selection;
-            mSelectionArgs = null == selectionArgs ? null : copyArray(selectionArgs);
+            mSelectionArgs = toUnmodifiableList(selectionArgs);
         }
 
         @NonNull
@@ -553,14 +2156,26 @@ public final class MockableContentProvider extends ContentProvider {
             return mUri;
         }
 
-        @NonNull
+        @Nullable
         public String getSelection() {
             return mSelection;
         }
 
-        @NonNull
+        /**
+         * @return A copy of the selection args.  Consider {@link #getSelectionArgsList()}, which
+         * doesn't allocate.
+         */
+        @Nullable
         public String[] getSelectionArgs() {
-            return copyArray(mSelectionArgs);
+            return toArray(mSelectionArgs);
+        }
+
+        /**
+         * @return An unmodifiable view of the selection args.
+         */
+        @Nullable
+        public List<String> getSelectionArgsList() {
+            return mSelectionArgs;
         }
     }
 
@@ -613,8 +2228,184 @@ public final class MockableContentProvider extends ContentProvider {
          */
         @Nullable
         public Bundle getExtras() {
+            if (null == mExtras) {
+                return null;
+            }
+
             // Note: shallow copy for Bundle
             return new Bundle(mExtras);
         }
     }
+
+    /**
+     * Represents the parameters passed to {@link ContentProvider#bulkInsert(Uri,
+     * ContentValues[])}.
+     */
+    @Immutable
+    public static final class BulkInsertParams {
+
+        @NonNull
+        private final Uri mUri;
+
+        @NonNull
+        private final ContentValues[] mContentValues;
+
+        public BulkInsertParams(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+            mUri = uri;
+            mContentValues = new ContentValues[values.length];
+            for (int x = 0; x < values.length; x++) {
+                mContentValues[x] = copyContentValues(values[x]);
+            }
+        }
+
+        @NonNull
+        public Uri getUri() {
+            return mUri;
+        }
+
+        /**
+         * @return The number of rows in the batch.
+         */
+        public int getCount() {
+            return mContentValues.length;
+        }
+
+        /**
+         * @param index Index of the row.
+         * @return A copy of the values for the row at {@code index}.  Consider {@link
+         * #getValues(int)}, which doesn't copy.
+         */
+        @Nullable
+        public ContentValues getContentValues(final int index) {
+            return copyContentValues(mContentValues[index]);
+        }
+
+        /**
+         * Views are created on demand, so that recording a large batch doesn't allocate a view
+         * for every row.
+         *
+         * @param index Index of the row.
+         * @return An unmodifiable view of the values for the row at {@code index}.
+         */
+        @Nullable
+        public Map<String, Object> getValues(final int index) {
+            return ContentValuesMap.unmodifiableView(mContentValues[index]);
+        }
+    }
+
+    /**
+     * Represents the parameters passed to {@link ContentProvider#applyBatch(ArrayList)}, along
+     * with the results that were returned.
+     */
+    @Immutable
+    public static final class ApplyBatchParams {
+
+        @NonNull
+        private final List<ContentProviderOperation> mOperations;
+
+        @NonNull
+        private final ContentProviderResult[] mResults;
+
+        public ApplyBatchParams(@NonNull final List<ContentProviderOperation> operations,
+                @NonNull final ContentProviderResult[] results) {
+            this(operations, results, true);
+        }
+
+        /**
+         * @param shouldCopy False to take ownership of {@code operations}, which must then be
+         *                   unmodifiable, and of {@code results}, which must not be modified.
+         */
+        private ApplyBatchParams(@NonNull final List<ContentProviderOperation> operations,
+                @NonNull final ContentProviderResult[] results, final boolean shouldCopy) {
+            if (shouldCopy) {
+                mOperations = Collections.unmodifiableList(new ArrayList<>(operations));
+                mResults = results.clone();
+            } else {
+                mOperations = operations;
+                mResults = results;
+            }
+        }
+
+        /**
+         * @return The operations of the batch, as an unmodifiable list.
+         */
+        @NonNull
+        public List<ContentProviderOperation> getOperations() {
+            return mOperations;
+        }
+
+        /**
+         * @param index Index of the operation.
+         * @return The result that was returned for the operation at {@code index}.
+         */
+        @NonNull
+        public ContentProviderResult getResult(final int index) {
+            return mResults[index];
+        }
+
+        /**
+         * Back references are resolved on demand, so that recording a large batch doesn't
+         * require copying the values of every operation.
+         *
+         * @param index Index of the operation.
+         * @return A copy of the values of the operation at {@code index}, with back references
+         * resolved against the results of the preceding operations.  May be null if the operation
+         * has no values.
+         */
+        @Nullable
+        public ContentValues getResolvedValues(final int index) {
+            /*
+             * Without back references, the operation returns its own values, which must not be
+             * exposed to modification.
+             */
+            return copyContentValues(
+                    mOperations.get(index).resolveValueBackReferences(mResults, index));
+        }
+
+        /**
+         * @param index Index of the operation.
+         * @return A copy of the selection args of the operation at {@code index}, with back
+         * references resolved against the results of the preceding operations.  May be null if
+         * the operation has no selection args.
+         */
+        @Nullable
+        public String[] getResolvedSelectionArgs(final int index) {
+            final String[] selectionArgs = mOperations.get(index)
+                    .resolveSelectionArgsBackReferences(mResults, index);
+
+            // As with the values, the operation returns its own args if it has no back references
+            return null == selectionArgs ? null : selectionArgs.clone();
+        }
+    }
+
+    /**
+     * Represents the parameters passed to {@link ContentProvider#openFile(Uri, String)}.
+     */
+    @Immutable
+    public static final class OpenFileParams {
+
+        @NonNull
+        private final Uri mUri;
+
+        @NonNull
+        private final String mMode;
+
+        public OpenFileParams(@NonNull final Uri uri, @NonNull final String mode) {
+            mUri = uri;
+            mMode = mode;
+        }
+
+        @NonNull
+        public Uri getUri() {
+            return mUri;
+        }
+
+        /**
+         * @return The mode, such as {@code "r"} or {@code "rw"}.
+         */
+        @NonNull
+        public String getMode() {
+            return mMode;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the timing of calls to a single operation of {@link MockableContentProvider}.  Every
+ * method is lock-free and allocation-free.
+ */
+@ThreadSafe
+/*package*/ final class OperationTimings {
+
+    /**
+     * Sentinel for {@link #mLastArrivalNanos} before the first call.
+     */
+    private static final long NO_ARRIVAL = Long.MIN_VALUE;
+
+    /**
+     * Number of low bits of {@link #mCurrentSecond} holding the count.  The remaining high bits
+     * hold the second.
+     */
+    private static final int COUNT_BITS = 24;
+
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long mEpochNanos = System.nanoTime();
+
+    @NonNull
+    private final ConcurrentHistogram mInterArrival = new ConcurrentHistogram();
+
+    @NonNull
+    private final ConcurrentHistogram mDuration = new ConcurrentHistogram();
+
+    @NonNull
+    private final AtomicLong mLastArrivalNanos = new AtomicLong(NO_ARRIVAL);
+
+    /**
+     * The current second since {@link #mEpochNanos} and the number of calls started within it,
+     * packed into one value so that both can be updated with a single compare-and-set.
+     */
+    @NonNull
+    private final AtomicLong mCurrentSecond = new AtomicLong(0);
+
+    @NonNull
+    private final AtomicInteger mPeakCallsPerSecond = new AtomicInteger(0);
+
+    /**
+     * Records the start of a call.
+     *
+     * @return Start time to pass to {@link #end(long)}.
+     */
+    public long begin() {
+        final long nowNanos = System.nanoTime();
+
+        final long lastArrivalNanos = mLastArrivalNanos.getAndSet(nowNanos);
+        if (NO_ARRIVAL != lastArrivalNanos) {
+            // Concurrent callers may swap in their times out of order, which records as 0
+            mInterArrival.record(nowNanos - lastArrivalNanos);
+        }
+
+        final long second = (nowNanos - mEpochNanos) / NANOS_PER_SECOND;
+        long current;
+        long next;
+        do {
+            current = mCurrentSecond.get();
+            if (second == current >>> COUNT_BITS) {
+                next = current + (COUNT_MASK == (current & COUNT_MASK) ? 0 : 1);
+            } else if (second > current >>> COUNT_BITS) {
+                next = (second << COUNT_BITS) | 1;
+            } else {
+                // A concurrent caller has already moved on to a later second
+                next = current;
+                break;
+            }
+        } while (!mCurrentSecond.compareAndSet(current, next));
+
+        final int count = (int) (next & COUNT_MASK);
+        int peak = mPeakCallsPerSecond.get();
+        while (count > peak && !mPeakCallsPerSecond.compareAndSet(peak, count)) {
+            peak = mPeakCallsPerSecond.get();
+        }
+
+        return nowNanos;
+    }
+
+    /**
+     * Records the end of a call.
+     *
+     * @param startNanos Value returned by {@link #begin()}.
+     */
+    public void end(final long startNanos) {
+        mDuration.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return A copy of the timings recorded so far.
+     */
+    @NonNull
+    public CallTimings snapshot() {
+        return new CallTimings(mInterArrival.snapshot(), mDuration.snapshot(),
+                mPeakCallsPerSecond.get());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.CallParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.DeleteParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.QueryParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.UpdateParams;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.hamcrest.FeatureMatcher;
+import org.hamcrest.Matcher;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+
+/**
+ * Matchers for the params recorded by {@link MockableContentProvider}, for use when adding
+ * rules such as via {@link MockableContentProvider#addQueryRule(String, Matcher,
+ * MockableContentProvider.Answer)}.  Matchers can be combined with
+ * {@link org.hamcrest.CoreMatchers#allOf(Iterable)}.
+ */
+@ThreadSafe
+public final class ParamsMatchers {
+
+    /**
+     * @param projection Expected projection.  May be null.
+     * @return Matcher for queries with {@code projection}.
+     */
+    @NonNull
+    public static Matcher<QueryParams> queryWithProjection(@Nullable final String... projection) {
+        return new FeatureMatcher<QueryParams, List<String>>(equalTo(toList(projection)),
+                "query with projection", "projection") { //$NON-NLS
+            @Override
+            protected List<String> featureValueOf(final QueryParams actual) {
+                return actual.getProjectionList();
+            }
+        };
+    }
+
+    /**
+     * @param selection Expected selection.  May be null.
+     * @return Matcher for queries with {@code selection}.
+     */
+    @NonNull
+    public static Matcher<QueryParams> queryWithSelection(@Nullable final String selection) {
+        return new FeatureMatcher<QueryParams, String>(equalTo(selection),
+                "query with selection", "selection") { //$NON-NLS
+            @Override
+            protected String featureValueOf(final QueryParams actual) {
+                return actual.getSelection();
+            }
+        };
+    }
+
+    /**
+     * @param selectionArgs Expected selection arguments.  May be null.
+     * @return Matcher for queries with {@code selectionArgs}.
+     */
+    @NonNull
+    public static Matcher<QueryParams> queryWithSelectionArgs(
+            @Nullable final String... selectionArgs) {
+        return new FeatureMatcher<QueryParams, List<String>>(equalTo(toList(selectionArgs)),
+                "query with selection args", "selectionArgs") { //$NON-NLS
+            @Override
+            protected List<String> featureValueOf(final QueryParams actual) {
+                return actual.getSelectionArgsList();
+            }
+        };
+    }
+
+    /**
+     * @param selection Expected selection.  May be null.
+     * @return Matcher for updates with {@code selection}.
+     */
+    @NonNull
+    public static Matcher<UpdateParams> updateWithSelection(@Nullable final String selection) {
+        return new FeatureMatcher<UpdateParams, String>(equalTo(selection),
+                "update with selection", "selection") { //$NON-NLS
+            @Override
+            protected String featureValueOf(final UpdateParams actual) {
+                return actual.getSelection();
+            }
+        };
+    }
+
+    /**
+     * @param selection Expected selection.  May be null.
+     * @return Matcher for deletes with {@code selection}.
+     */
+    @NonNull
+    public static Matcher<DeleteParams> deleteWithSelection(@Nullable final String selection) {
+        return new FeatureMatcher<DeleteParams, String>(equalTo(selection),
+                "delete with selection", "selection") { //$NON-NLS
+            @Override
+            protected String featureValueOf(final DeleteParams actual) {
+                return actual.getSelection();
+            }
+        };
+    }
+
+    /**
+     * @param arg Expected argument.  May be null.
+     * @return Matcher for calls with {@code arg}.
+     */
+    @NonNull
+    public static Matcher<CallParams> callWithArg(@Nullable final String arg) {
+        return new FeatureMatcher<CallParams, String>(equalTo(arg),
+                "call with arg", "arg") { //$NON-NLS
+            @Override
+            protected String featureValueOf(final CallParams actual) {
+                return actual.getArg();
+            }
+        };
+    }
+
+    @Nullable
+    private static List<String> toList(@Nullable final String[] array) {
+        return null == array ? null : Arrays.asList(array.clone());
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private ParamsMatchers() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.Answer;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A fixture of provider traffic captured by {@link RecordingContentProvider}, which can be
+ * replayed through a {@link MockableContentProvider}.
+ * <p>
+ * The fixture file is memory-mapped rather than read.  Opening a fixture only reads its index,
+ * which identifies each call by a fixed-width hash of its params.  The params themselves, and
+ * each recorded result, such as the rows of a cursor, are decoded from the mapping when a
+ * replayed call needs them.  A suite can therefore open large fixtures cheaply, and only pays for
+ * the results that its tests actually use.
+ */
+@ThreadSafe
+public final class ProviderFixture {
+
+    /**
+     * Read-only mapping of the whole file.  Readers decode from duplicates, so that the position
+     * of this buffer never changes.
+     */
+    @NonNull
+    private final ByteBuffer mBuffer;
+
+    @NonNull
+    private final List<Entry> mEntries;
+
+    /**
+     * @param file Fixture written by {@link ProviderFixtureWriter}.
+     * @return The fixture.
+     * @throws IOException If the file can't be read or isn't a complete fixture.
+     */
+    @NonNull
+    public static ProviderFixture open(@NonNull final File file) throws IOException {
+        assertNotNull(file, "file"); //$NON-NLS
+
+        final ByteBuffer buffer;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); //$NON-NLS
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            // The mapping remains valid after the file is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return new ProviderFixture(buffer, readIndex(buffer, file));
+    }
+
+    @NonNull
+    private static List<Entry> readIndex(@NonNull final ByteBuffer buffer,
+            @NonNull final File file) throws IOException {
+        final int size = buffer.limit();
+        if (FixtureCodec.HEADER_SIZE + FixtureCodec.TRAILER_SIZE > size
+                || FixtureCodec.MAGIC != buffer.getInt(0)
+                || FixtureCodec.MAGIC != buffer.getInt(size - 4)) {
+            throw new IOException(String.format(Locale.US,
+                    "%s is not a complete provider fixture", file)); //$NON-NLS
+        }
+
+        final int version = buffer.getInt(4);
+        if (FixtureCodec.VERSION != version) {
+            throw new IOException(String.format(Locale.US,
+                    "%s has unsupported version %d", file, version)); //$NON-NLS
+        }
+
+        final ByteBuffer index = buffer.duplicate();
+        index.position(buffer.getInt(size - FixtureCodec.TRAILER_SIZE));
+        final int count = buffer.getInt(size - FixtureCodec.TRAILER_SIZE + 4);
+
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int x = 0; x < count; x++) {
+            final byte operation = index.get();
+            final String target = FixtureCodec.readString(index);
+            final long keyHash = index.getLong();
+            final int keyOffset = index.getInt();
+            final int offset = index.getInt();
+
+            assertNotNull(target, "target"); //$NON-NLS
+            entries.add(new Entry(operation, target, keyHash, keyOffset, offset));
+        }
+
+        return Collections.unmodifiableList(entries);
+    }
+
+    private ProviderFixture(@NonNull final ByteBuffer buffer,
+            @NonNull final List<Entry> entries) {
+        mBuffer = buffer;
+        mEntries = entries;
+    }
+
+    /**
+     * @return The number of calls in the fixture.
+     */
+    public int getCount() {
+        return mEntries.size();
+    }
+
+    /**
+     * Adds rules to {@code provider} that answer each recorded call with its recorded result.
+     * A call is matched by its Uri and params, or by its method and arg for
+     * {@link MockableContentProvider#call(String, String, Bundle)}.  When the same call was
+     * recorded several times, such as a query before and after an insert, replay returns the
+     * recorded results in order and then keeps returning the last one.
+     * <p>
+     * Each authority gets one {@code content://authority/**} rule per operation, which looks up
+     * calls by key in constant time.  As the most general pattern, these rules have the lowest
+     * precedence, so rules added to {@code provider} for specific Uris override the fixture.
+     * Calls that were never recorded fall through to the next rule or the default result.
+     *
+     * @param provider Provider to replay through.
+     */
+    public void replayInto(@NonNull final MockableContentProvider provider) {
+        assertNotNull(provider, "provider"); //$NON-NLS
+
+        // Keyed by operation and authority (or method, for calls)
+        final Map<String, SequenceTable> tables = new HashMap<>();
+        // Keyed by group and then by key offset, as calls with equal keys share an offset
+        final Map<String, Sequence> sequences = new HashMap<>();
+        for (final Entry entry : mEntries) {
+            final String group = entry.mOperation + (FixtureCodec.OP_CALL == entry.mOperation
+                    ? entry.mTarget : Uri.parse(entry.mTarget).getAuthority());
+            final String sequenceKey = group + '\u0000' + entry.mKeyOffset;
+
+            Sequence sequence = sequences.get(sequenceKey);
+            if (null == sequence) {
+                SequenceTable table = tables.get(group);
+                if (null == table) {
+                    table = new SequenceTable(mBuffer);
+                    tables.put(group, table);
+                    addRule(provider, entry, table);
+                }
+
+                sequence = new Sequence(entry.mKeyOffset);
+                sequences.put(sequenceKey, sequence);
+                table.add(entry.mKeyHash, sequence);
+            }
+            sequence.add(entry.mOffset);
+        }
+    }
+
+    /**
+     * @param provider  Provider to add the rule to.
+     * @param entry     First entry of the group.
+     * @param sequences Recorded results of the group.  The rule retains this table, which the
+     *                  caller finishes populating before replay.
+     */
+    private void addRule(@NonNull final MockableContentProvider provider,
+            @NonNull final Entry entry, @NonNull final SequenceTable sequences) {
+        final ReplayMatcher matcher = new ReplayMatcher(sequences);
+
+        switch (entry.mOperation) {
+            case FixtureCodec.OP_QUERY: {
+                provider.addQueryRule(getPattern(entry), matcher,
+                        new ReplayAnswer<Cursor>(sequences) {
+                            @Nullable
+                            @Override
+                            protected Cursor decode(@NonNull final ByteBuffer buffer) {
+                                return FixtureCodec.readCursor(buffer);
+                            }
+                        });
+                break;
+            }
+            case FixtureCodec.OP_INSERT: {
+                provider.addInsertRule(getPattern(entry), matcher,
+                        new ReplayAnswer<Uri>(sequences) {
+                            @Nullable
+                            @Override
+                            protected Uri decode(@NonNull final ByteBuffer buffer) {
+                                final String uri = FixtureCodec.readString(buffer);
+                                return null == uri ? null : Uri.parse(uri);
+                            }
+                        });
+                break;
+            }
+            case FixtureCodec.OP_UPDATE: {
+                provider.addUpdateRule(getPattern(entry), matcher,
+                        new ReplayAnswer<Integer>(sequences) {
+                            @NonNull
+                            @Override
+                            protected Integer decode(@NonNull final ByteBuffer buffer) {
+                                return buffer.getInt();
+                            }
+                        });
+                break;
+            }
+            case FixtureCodec.OP_DELETE: {
+                provider.addDeleteRule(getPattern(entry), matcher,
+                        new ReplayAnswer<Integer>(sequences) {
+                            @NonNull
+                            @Override
+                            protected Integer decode(@NonNull final ByteBuffer buffer) {
+                                return buffer.getInt();
+                            }
+                        });
+                break;
+            }
+            case FixtureCodec.OP_CALL: {
+                provider.addCallRule(entry.mTarget, matcher,
+                        new ReplayAnswer<Bundle>(sequences) {
+                            @Nullable
+                            @Override
+                            protected Bundle decode(@NonNull final ByteBuffer buffer) {
+                                return FixtureCodec.readBundle(buffer);
+                            }
+                        });
+                break;
+            }
+            default: {
+                throw new IllegalStateException(String.format(Locale.US,
+                        "Corrupt fixture: unknown operation %d", entry.mOperation)); //$NON-NLS
+            }
+        }
+    }
+
+    @NonNull
+    private static String getPattern(@NonNull final Entry entry) {
+        return "content://" + Uri.parse(entry.mTarget).getAuthority() + "/**"; //$NON-NLS
+    }
+
+    @Immutable
+    private static final class Entry {
+
+        private final byte mOperation;
+
+        /**
+         * Uri of the call, or the method name for calls.
+         */
+        @NonNull
+        private final String mTarget;
+
+        /**
+         * {@link FixtureCodec#hashKey(String) Hash} of the key of the params.
+         */
+        private final long mKeyHash;
+
+        /**
+         * Offset of the key of the params, which is shared by calls with equal keys.
+         */
+        private final int mKeyOffset;
+
+        /**
+         * Offset of the recorded result.
+         */
+        private final int mOffset;
+
+        private Entry(final byte operation, @NonNull final String target, final long keyHash,
+                final int keyOffset, final int offset) {
+            mOperation = operation;
+            mTarget = target;
+            mKeyHash = keyHash;
+            mKeyOffset = keyOffset;
+            mOffset = offset;
+        }
+    }
+
+    /**
+     * The sequences of one group, looked up by the hash of their key.
+     */
+    @ThreadSafe
+    private static final class SequenceTable {
+
+        @NonNull
+        private final ByteBuffer mBuffer;
+
+        /**
+         * Sequences keyed by the hash of their key.  Only modified until replay starts.
+         */
+        @NonNull
+        private final Map<Long, List<Sequence>> mSequences = new HashMap<>();
+
+        private SequenceTable(@NonNull final ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        private void add(final long keyHash, @NonNull final Sequence sequence) {
+            List<Sequence> list = mSequences.get(keyHash);
+            if (null == list) {
+                // Almost always a single sequence, unless hashes collide
+                list = new ArrayList<>(1);
+                mSequences.put(keyHash, list);
+            }
+            list.add(sequence);
+        }
+
+        /**
+         * @param params Params of a call.
+         * @return The sequence recorded for {@code params}, or null if it wasn't recorded.
+         */
+        @Nullable
+        private Sequence find(@NonNull final Object params) {
+            final String key = FixtureCodec.keyOf(params);
+            final List<Sequence> candidates = mSequences.get(FixtureCodec.hashKey(key));
+            if (null == candidates) {
+                return null;
+            }
+
+            for (final Sequence candidate : candidates) {
+                if (key.equals(candidate.getKey(mBuffer))) {
+                    return candidate;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * @return Duplicate of the mapped fixture, which the caller may position.
+         */
+        @NonNull
+        private ByteBuffer getBuffer() {
+            return mBuffer.duplicate();
+        }
+    }
+
+    /**
+     * Offsets of the results recorded for one call, in the order they were recorded.
+     */
+    @ThreadSafe
+    private static final class Sequence {
+
+        private final int mKeyOffset;
+
+        /**
+         * Key decoded from {@link #mKeyOffset} the first time it is compared.
+         */
+        @Nullable
+        private volatile String mKey = null;
+
+        /**
+         * Offsets, which are only added to until replay starts.
+         */
+        @NonNull
+        private final List<Integer> mOffsets = new ArrayList<>();
+
+        @NonNull
+        private final AtomicInteger mNext = new AtomicInteger(0);
+
+        /**
+         * @param keyOffset Offset of the key of the call.
+         */
+        private Sequence(final int keyOffset) {
+            mKeyOffset = keyOffset;
+        }
+
+        private void add(final int offset) {
+            mOffsets.add(offset);
+        }
+
+        @NonNull
+        private String getKey(@NonNull final ByteBuffer buffer) {
+            String key = mKey;
+            if (null == key) {
+                // Threads that race here decode equal keys, so any of them may be kept
+                final ByteBuffer keyBuffer = buffer.duplicate();
+                keyBuffer.position(mKeyOffset);
+                key = FixtureCodec.readString(keyBuffer);
+                assertNotNull(key, "key"); //$NON-NLS
+                mKey = key;
+            }
+
+            return key;
+        }
+
+        /**
+         * @return Offset of the next result, repeating the last once all have been replayed.
+         */
+        private int next() {
+            final int last = mOffsets.size() - 1;
+
+            int index;
+            do {
+                index = mNext.get();
+            } while (index < last && !mNext.compareAndSet(index, index + 1));
+
+            return mOffsets.get(Math.min(index, last));
+        }
+    }
+
+    @ThreadSafe
+    private static final class ReplayMatcher extends BaseMatcher<Object> {
+
+        @NonNull
+        private final SequenceTable mSequences;
+
+        private ReplayMatcher(@NonNull final SequenceTable sequences) {
+            mSequences = sequences;
+        }
+
+        @Override
+        public boolean matches(final Object item) {
+            return null != item && null != mSequences.find(item);
+        }
+
+        @Override
+        public void describeTo(@NonNull final Description description) {
+            description.appendText("a call recorded in the fixture"); //$NON-NLS
+        }
+    }
+
+    /**
+     * Decodes results lazily from the mapped fixture.
+     *
+     * @param <R> Type of the result.
+     */
+    @ThreadSafe
+    private abstract static class ReplayAnswer<R> implements Answer<Object, R> {
+
+        @NonNull
+        private final SequenceTable mSequences;
+
+        private ReplayAnswer(@NonNull final SequenceTable sequences) {
+            mSequences = sequences;
+        }
+
+        @Nullable
+        @Override
+        public final R answer(@NonNull final Object params) {
+            final Sequence sequence = mSequences.find(params);
+            if (null == sequence) {
+                return null;
+            }
+
+            final ByteBuffer buffer = mSequences.getBuffer();
+            buffer.position(sequence.next());
+
+            return decode(buffer);
+        }
+
+        /**
+         * @param buffer Buffer positioned at the result.
+         * @return The decoded result.
+         */
+        @Nullable
+        protected abstract R decode(@NonNull final ByteBuffer buffer);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.CallParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.DeleteParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.InsertParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.QueryParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.UpdateParams;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Writes the calls captured by {@link RecordingContentProvider} to a fixture file, which
+ * {@link ProviderFixture} later replays.  The fixture is incomplete until {@link #close()} is
+ * called.
+ */
+@ThreadSafe
+public final class ProviderFixtureWriter implements Closeable {
+
+    @NonNull
+    @GuardedBy("this")
+    private final DataOutputStream mOut;
+
+    /**
+     * Index entries, which are written after all of the results.
+     */
+    @NonNull
+    @GuardedBy("this")
+    private final ArrayList<IndexEntry> mIndex = new ArrayList<>();
+
+    @GuardedBy("this")
+    private boolean mIsClosed = false;
+
+    /**
+     * @param file File to write the fixture to.  Any existing file is replaced.
+     * @throws IOException If the file can't be created.
+     */
+    public ProviderFixtureWriter(@NonNull final File file) throws IOException {
+        assertNotNull(file, "file"); //$NON-NLS
+
+        mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        mOut.writeInt(FixtureCodec.MAGIC);
+        mOut.writeInt(FixtureCodec.VERSION);
+    }
+
+    /*package*/ synchronized void writeQuery(@NonNull final QueryParams params,
+            @Nullable final Cursor result) throws IOException {
+        final int offset = beginResult();
+        FixtureCodec.writeCursor(mOut, result);
+        endResult(FixtureCodec.OP_QUERY, params.getUri().toString(), params, offset);
+    }
+
+    /*package*/ synchronized void writeInsert(@NonNull final InsertParams params,
+            @Nullable final Uri result) throws IOException {
+        final int offset = beginResult();
+        FixtureCodec.writeString(mOut, null == result ? null : result.toString());
+        endResult(FixtureCodec.OP_INSERT, params.getUri().toString(), params, offset);
+    }
+
+    /*package*/ synchronized void writeUpdate(@NonNull final UpdateParams params,
+            final int result) throws IOException {
+        final int offset = beginResult();
+        mOut.writeInt(result);
+        endResult(FixtureCodec.OP_UPDATE, params.getUri().toString(), params, offset);
+    }
+
+    /*package*/ synchronized void writeDelete(@NonNull final DeleteParams params,
+            final int result) throws IOException {
+        final int offset = beginResult();
+        mOut.writeInt(result);
+        endResult(FixtureCodec.OP_DELETE, params.getUri().toString(), params, offset);
+    }
+
+    /*package*/ synchronized void writeCall(@NonNull final CallParams params,
+            @Nullable final Bundle result) throws IOException {
+        final int offset = beginResult();
+        FixtureCodec.writeBundle(mOut, result);
+        endResult(FixtureCodec.OP_CALL, params.getMethod(), params, offset);
+    }
+
+    /**
+     * @return Offset of the result that is about to be written.
+     */
+    @GuardedBy("this")
+    private int beginResult() throws IOException {
+        if (mIsClosed) {
+            throw new IOException("Writer is closed"); //$NON-NLS
+        }
+
+        return mOut.size();
+    }
+
+    /**
+     * Indexes a call once its result has been written in full.
+     */
+    @GuardedBy("this")
+    private void endResult(final byte operation, @NonNull final String target,
+            @NonNull final Object params, final int offset) {
+        mIndex.add(new IndexEntry(operation, target, FixtureCodec.keyOf(params), offset));
+    }
+
+    /**
+     * @return The number of calls written so far.
+     */
+    public synchronized int getCount() {
+        return mIndex.size();
+    }
+
+    /**
+     * Writes the keys and the index, and closes the file.  Calls recorded after closing fail.
+     *
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        mIsClosed = true;
+
+        try {
+            // Each distinct key is written once, so that equal keys share an offset
+            final Map<String, Integer> keyOffsets = new HashMap<>();
+            for (final IndexEntry entry : mIndex) {
+                if (!keyOffsets.containsKey(entry.mKey)) {
+                    keyOffsets.put(entry.mKey, mOut.size());
+                    FixtureCodec.writeString(mOut, entry.mKey);
+                }
+            }
+
+            final int indexOffset = mOut.size();
+            for (final IndexEntry entry : mIndex) {
+                mOut.writeByte(entry.mOperation);
+                FixtureCodec.writeString(mOut, entry.mTarget);
+                mOut.writeLong(FixtureCodec.hashKey(entry.mKey));
+                mOut.writeInt(keyOffsets.get(entry.mKey));
+                mOut.writeInt(entry.mOffset);
+            }
+
+            mOut.writeInt(indexOffset);
+            mOut.writeInt(mIndex.size());
+            mOut.writeInt(FixtureCodec.MAGIC);
+        } finally {
+            mOut.close();
+        }
+    }
+
+    @Immutable
+    private static final class IndexEntry {
+
+        private final byte mOperation;
+
+        @NonNull
+        private final String mTarget;
+
+        @NonNull
+        private final String mKey;
+
+        private final int mOffset;
+
+        private IndexEntry(final byte operation, @NonNull final String target,
+                @NonNull final String key, final int offset) {
+            mOperation = operation;
+            mTarget = target;
+            mKey = key;
+            mOffset = offset;
+        }
+    }
+}
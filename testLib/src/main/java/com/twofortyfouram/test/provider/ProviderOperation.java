@@ -0,0 +1,36 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+/**
+ * Operations of {@link MockableContentProvider} that can be configured individually, such as
+ * via {@link MockableContentProvider#setLatency(ProviderOperation, Latency)}.
+ */
+public enum ProviderOperation {
+    QUERY,
+    INSERT,
+    UPDATE,
+    DELETE,
+    CALL,
+    BULK_INSERT,
+    APPLY_BATCH,
+    OPEN_FILE,
+    GET_TYPE,
+    CANONICALIZE,
+    UNCANONICALIZE
+}
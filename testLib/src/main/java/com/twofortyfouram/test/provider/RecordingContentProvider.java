@@ -0,0 +1,245 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.annotation.SuppressLint;
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.context.ContentProviderMockContext;
+import com.twofortyfouram.test.provider.MockableContentProvider.CallParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.DeleteParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.InsertParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.QueryParams;
+import com.twofortyfouram.test.provider.MockableContentProvider.UpdateParams;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A content provider that forwards every call to a real provider and records the call and its
+ * result with a {@link ProviderFixtureWriter}.  Registering the recorder in a
+ * {@link ContentProviderMockContext} under the authority of the real provider captures the
+ * traffic of the code under test, which {@link ProviderFixture} can later replay through a
+ * {@link MockableContentProvider} without the real provider.
+ * <p>
+ * Query, insert, update, delete, and call are recorded.  The rows of a cursor are recorded in
+ * full, and the cursor is then rewound and returned to the caller.  bulkInsert and applyBatch
+ * use the default implementations of {@link ContentProvider}, so their individual operations are
+ * recorded.  Call extras are forwarded but not recorded, so replay matches calls by method and
+ * arg.
+ * <p>
+ * Note that after instantiation, {@link #attachInfo(Context, ProviderInfo)} must be called
+ * manually.  To bypass this limitation, consider using the helper method
+ * {@link #newRecordingProvider(Context, String, ContentResolver, ProviderFixtureWriter)}.
+ */
+// This is a mock object to be used at runtime, so lint warnings about registration should be
+// ignored
+@SuppressLint("Registered")
+@ThreadSafe
+public final class RecordingContentProvider extends ContentProvider {
+
+    /**
+     * Resolver of the real provider.
+     */
+    @NonNull
+    private final ContentResolver mTarget;
+
+    @NonNull
+    private final ProviderFixtureWriter mWriter;
+
+    /**
+     * Authority this provider is attached with, which is the target of {@link #call(String,
+     * String, Bundle)}.
+     */
+    @Nullable
+    private volatile String mAuthority = null;
+
+    /**
+     * @param target Resolver of the real provider, such as the resolver of the target context.
+     * @param writer Writer to record calls with.
+     */
+    public RecordingContentProvider(@NonNull final ContentResolver target,
+            @NonNull final ProviderFixtureWriter writer) {
+        assertNotNull(target, "target"); //$NON-NLS
+        assertNotNull(writer, "writer"); //$NON-NLS
+
+        mTarget = target;
+        mWriter = writer;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public void attachInfo(final Context context, @NonNull final ProviderInfo info) {
+        super.attachInfo(context, info);
+
+        if (null == info.authority) {
+            throw new AssertionError("ProviderInfo.authority is null"); //$NON-NLS
+        }
+
+        // Multiple authorities are separated by semicolons; any of them reaches the target
+        mAuthority = info.authority.split(";")[0]; //$NON-NLS
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull final Uri uri, @Nullable final String[] projection,
+            @Nullable final String selection, @Nullable final String[] selectionArgs,
+            @Nullable final String sortOrder) {
+        final Cursor result = mTarget.query(uri, projection, selection, selectionArgs,
+                sortOrder);
+
+        try {
+            mWriter.writeQuery(
+                    new QueryParams(uri, projection, selection, selectionArgs, sortOrder),
+                    result);
+        } catch (final IOException e) {
+            if (null != result) {
+                result.close();
+            }
+            throw newRecordingException(e);
+        }
+
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        return mTarget.getType(uri);
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        final Uri result = mTarget.insert(uri, values);
+
+        try {
+            mWriter.writeInsert(new InsertParams(uri, values), result);
+        } catch (final IOException e) {
+            throw newRecordingException(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int update(@NonNull final Uri uri, @Nullable final ContentValues values,
+            @Nullable final String selection, @Nullable final String[] selectionArgs) {
+        final int result = mTarget.update(uri, values, selection, selectionArgs);
+
+        try {
+            mWriter.writeUpdate(new UpdateParams(uri, values, selection, selectionArgs),
+                    result);
+        } catch (final IOException e) {
+            throw newRecordingException(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public int delete(@NonNull final Uri uri, @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        final int result = mTarget.delete(uri, selection, selectionArgs);
+
+        try {
+            mWriter.writeDelete(new DeleteParams(uri, selection, selectionArgs), result);
+        } catch (final IOException e) {
+            throw newRecordingException(e);
+        }
+
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull final String method, @Nullable final String arg,
+            @Nullable final Bundle extras) {
+        final String authority = mAuthority;
+        if (null == authority) {
+            throw new AssertionError("Call attachInfo() first"); //$NON-NLS
+        }
+
+        final Bundle result = mTarget.call(new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(authority)
+                .build(), method, arg, extras);
+
+        try {
+            mWriter.writeCall(new CallParams(method, arg, extras), result);
+        } catch (final IOException e) {
+            throw newRecordingException(e);
+        }
+
+        return result;
+    }
+
+    @NonNull
+    private static IllegalStateException newRecordingException(@NonNull final IOException e) {
+        return new IllegalStateException("Failed to record call", e); //$NON-NLS
+    }
+
+    /**
+     * Helper method to make using the {@code RecordingContentProvider} less verbose in some
+     * standard use cases.
+     *
+     * @param baseContext Base context.
+     * @param authority   Content authority of the real provider.
+     * @param target      Resolver of the real provider.
+     * @param writer      Writer to record calls with.
+     * @return A provider with a context whose content resolver will resolve {@code authority} to
+     * the returned ContentProvider.  Note: Be sure to use {@link ContentProvider#getContext()} to
+     * retrieve the appropriate context for querying the {@code ContentResolver}.
+     */
+    @NonNull
+    public static RecordingContentProvider newRecordingProvider(
+            @NonNull final Context baseContext, @NonNull final String authority,
+            @NonNull final ContentResolver target, @NonNull final ProviderFixtureWriter writer) {
+        assertNotNull(baseContext, "baseContext"); //$NON-NLS
+        assertNotNull(authority, "authority"); //$NON-NLS
+
+        final RecordingContentProvider provider = new RecordingContentProvider(target, writer);
+
+        final Context mockContext = new ContentProviderMockContext(baseContext,
+                Collections.<String, ContentProvider>singletonMap(authority, provider));
+
+        final ProviderInfo info = new ProviderInfo();
+        info.authority = authority;
+
+        provider.attachInfo(mockContext, info);
+
+        return provider;
+    }
+}
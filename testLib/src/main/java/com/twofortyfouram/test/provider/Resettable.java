@@ -0,0 +1,35 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import com.twofortyfouram.test.context.ContentProviderMockContext;
+
+/**
+ * A test provider whose state can be cleared in place, so that the provider and the
+ * {@link ContentProviderMockContext} it is registered with can be reused across tests rather
+ * than rebuilt for each one.
+ *
+ * @see ContentProviderMockContext#reset()
+ */
+public interface Resettable {
+
+    /**
+     * Restores the provider to the state it had right after it was attached.
+     */
+    void reset();
+}
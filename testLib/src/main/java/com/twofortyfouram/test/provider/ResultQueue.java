@@ -0,0 +1,83 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.Answer;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lock-free FIFO queue of results that, unlike {@link ConcurrentLinkedQueue}, permits null
+ * elements.
+ *
+ * @param <T> Type of the result.
+ */
+@ThreadSafe
+/*package*/ final class ResultQueue<T> {
+
+    /**
+     * Placeholder stored in place of null elements, which the backing queue does not permit.
+     */
+    @NonNull
+    private static final Object NULL_RESULT = new Object();
+
+    @NonNull
+    private final ConcurrentLinkedQueue<Object> mQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param result Result to add to the end of the queue.  May be null.
+     */
+    public void add(@Nullable final T result) {
+        mQueue.add(null == result ? NULL_RESULT : result);
+    }
+
+    /**
+     * Removes all results from the queue.
+     */
+    public void clear() {
+        mQueue.clear();
+    }
+
+    /**
+     * @param fallback Answer to consult if the queue is empty.  May be null, in which case null is
+     *                 returned for an empty queue.
+     * @param params   Params to pass to {@code fallback}.
+     * @param <P>      Type of the params.
+     * @return The earliest result, or the result of {@code fallback} if the queue is empty.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <P> T poll(@Nullable final Answer<? super P, ? extends T> fallback,
+            @NonNull final P params) {
+        final Object result = mQueue.poll();
+
+        if (null == result) {
+            return null == fallback ? null : fallback.answer(params);
+        }
+
+        if (NULL_RESULT == result) {
+            return null;
+        }
+
+        return (T) result;
+    }
+}
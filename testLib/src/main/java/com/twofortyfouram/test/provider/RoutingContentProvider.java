@@ -0,0 +1,329 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.provider;
+
+import android.annotation.SuppressLint;
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.pm.ProviderInfo;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.twofortyfouram.test.context.ContentProviderMockContext;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A content provider that dispatches each call to one of several providers according to the
+ * authority and path of its Uri, so that a single {@link ContentProviderMockContext} can emulate
+ * many providers at once, such as contacts, media, and an app's own provider.
+ * <p>
+ * Routes map Uri patterns to providers, using the syntax of {@link UriPatternIndex}, for example
+ * {@code content://com.android.contacts/contacts/**} or
+ * {@code content://media/external/images/#}.  Lookup cost depends on the depth of the Uri
+ * rather than the number of routes.  A Uri that matches no route fails with an
+ * {@link IllegalArgumentException} listing the nearest routes.
+ * <p>
+ * {@code MockContentResolver} resolves providers by exact authority, so the router can only
+ * receive calls for authorities that it is registered under.  The helper method
+ * {@link #newRoutingProvider(Context, Map)} registers it under the literal authority of every
+ * route.  Routes with the authority {@code *} therefore serve as fallbacks for those
+ * authorities, rather than matching arbitrary authorities.
+ * <p>
+ * Every call with a Uri, including files and canonicalization, goes to the provider of the
+ * matching route.  {@link #call(String, String, Bundle)} carries no Uri, so it is dispatched to
+ * the provider of the first route.  {@link #applyBatch(ArrayList)} is passed whole to the target
+ * provider when all of its operations route to the same one, and is otherwise applied one
+ * operation at a time.
+ */
+// This is a mock object to be used at runtime, so lint warnings about registration should be
+// ignored
+@SuppressLint("Registered")
+@ThreadSafe
+public final class RoutingContentProvider extends ContentProvider implements Resettable {
+
+    /**
+     * Number of nearest routes to report when a Uri matches none.
+     */
+    private static final int NEAREST_ROUTE_COUNT = 3;
+
+    @NonNull
+    private final UriPatternIndex<ContentProvider> mRoutes = new UriPatternIndex<>();
+
+    /**
+     * Distinct providers of the routes, in route order.
+     */
+    @NonNull
+    private final Set<ContentProvider> mProviders = new LinkedHashSet<>();
+
+    /**
+     * Distinct literal authorities of the routes, in route order.
+     */
+    @NonNull
+    private final Set<String> mAuthorities = new LinkedHashSet<>();
+
+    /**
+     * @param routes Mapping of Uri pattern to content provider.  The providers will be attached
+     *               along with this provider, so they must not have been attached already.  The
+     *               first route in iteration order also receives
+     *               {@link #call(String, String, Bundle)}.
+     */
+    public RoutingContentProvider(@NonNull final Map<String, ContentProvider> routes) {
+        assertNotNull(routes, "routes"); //$NON-NLS
+
+        for (final Map.Entry<String, ContentProvider> entry : routes.entrySet()) {
+            assertNotNull(entry.getValue(), "provider"); //$NON-NLS
+
+            mRoutes.put(entry.getKey(), entry.getValue());
+            mProviders.add(entry.getValue());
+
+            final String authority = UriPatternIndex.getAuthority(entry.getKey());
+            if (!"*".equals(authority)) { //$NON-NLS
+                mAuthorities.add(authority);
+            }
+        }
+
+        if (mProviders.isEmpty()) {
+            throw new IllegalArgumentException("routes must not be empty"); //$NON-NLS
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * Attaches this provider and then each of the routed providers, with the same context and
+     * info.
+     */
+    @Override
+    public void attachInfo(final Context context, final ProviderInfo info) {
+        super.attachInfo(context, info);
+
+        for (final ContentProvider provider : mProviders) {
+            provider.attachInfo(context, info);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull final Uri uri, @Nullable final String[] projection,
+            @Nullable final String selection, @Nullable final String[] selectionArgs,
+            @Nullable final String sortOrder) {
+        return route(uri).query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        return route(uri).getType(uri);
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        return route(uri).insert(uri, values);
+    }
+
+    @Override
+    public int update(@NonNull final Uri uri, @Nullable final ContentValues values,
+            @Nullable final String selection, @Nullable final String[] selectionArgs) {
+        return route(uri).update(uri, values, selection, selectionArgs);
+    }
+
+    @Override
+    public int delete(@NonNull final Uri uri, @Nullable final String selection,
+            @Nullable final String[] selectionArgs) {
+        return route(uri).delete(uri, selection, selectionArgs);
+    }
+
+    @Override
+    public int bulkInsert(@NonNull final Uri uri, @NonNull final ContentValues[] values) {
+        return route(uri).bulkInsert(uri, values);
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull final ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        ContentProvider target = null;
+        for (final ContentProviderOperation operation : operations) {
+            final ContentProvider provider = route(operation.getUri());
+            if (null == target) {
+                target = provider;
+            } else if (target != provider) {
+                // Operations span providers, so each is routed individually
+                return super.applyBatch(operations);
+            }
+        }
+
+        if (null == target) {
+            return new ContentProviderResult[0];
+        }
+
+        return target.applyBatch(operations);
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull final String method, @Nullable final String arg,
+            @Nullable final Bundle extras) {
+        return mProviders.iterator().next().call(method, arg, extras);
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull final Uri uri, @NonNull final String mode)
+            throws FileNotFoundException {
+        return route(uri).openFile(uri, mode);
+    }
+
+    @Nullable
+    @Override
+    public AssetFileDescriptor openAssetFile(@NonNull final Uri uri, @NonNull final String mode)
+            throws FileNotFoundException {
+        return route(uri).openAssetFile(uri, mode);
+    }
+
+    @Nullable
+    @Override
+    public String[] getStreamTypes(@NonNull final Uri uri, @NonNull final String mimeTypeFilter) {
+        return route(uri).getStreamTypes(uri, mimeTypeFilter);
+    }
+
+    @Nullable
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull final Uri uri,
+            @NonNull final String mimeTypeFilter, @Nullable final Bundle opts)
+            throws FileNotFoundException {
+        return route(uri).openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    @Nullable
+    @Override
+    public Uri canonicalize(@NonNull final Uri uri) {
+        return route(uri).canonicalize(uri);
+    }
+
+    @Nullable
+    @Override
+    public Uri uncanonicalize(@NonNull final Uri uri) {
+        return route(uri).uncanonicalize(uri);
+    }
+
+    /**
+     * Resets each routed provider implementing {@link Resettable}.  The routes themselves are
+     * unchanged.
+     */
+    @Override
+    public void reset() {
+        for (final ContentProvider provider : mProviders) {
+            if (provider instanceof Resettable) {
+                ((Resettable) provider).reset();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (final ContentProvider provider : mProviders) {
+            provider.shutdown();
+        }
+    }
+
+    /**
+     * @param uri Uri to route.
+     * @return The provider of the most specific route matching {@code uri}.
+     * @throws IllegalArgumentException If no route matches {@code uri}.
+     */
+    @NonNull
+    private ContentProvider route(@NonNull final Uri uri) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+
+        final ContentProvider provider = mRoutes.get(uri);
+        if (null == provider) {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "No route matches %s; nearest routes are %s", uri, //$NON-NLS
+                    mRoutes.getNearestPatterns(uri, NEAREST_ROUTE_COUNT)));
+        }
+
+        return provider;
+    }
+
+    /**
+     * Helper method to make using the {@code RoutingContentProvider} less verbose in some
+     * standard use cases.
+     *
+     * @param baseContext Base context.
+     * @param routes      Mapping of Uri pattern to content provider.  The providers must not have
+     *                    been attached already.  At least one route must have a literal
+     *                    authority.
+     * @return A provider with a context whose content resolver will resolve the authority of every
+     * route to the returned ContentProvider.  Note: Be sure to use
+     * {@link ContentProvider#getContext()} to retrieve the appropriate context for querying the
+     * {@code ContentResolver}.
+     */
+    @NonNull
+    public static RoutingContentProvider newRoutingProvider(@NonNull final Context baseContext,
+            @NonNull final Map<String, ContentProvider> routes) {
+        assertNotNull(baseContext, "baseContext"); //$NON-NLS
+
+        final RoutingContentProvider provider = new RoutingContentProvider(routes);
+        if (provider.mAuthorities.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one route must have a literal authority"); //$NON-NLS
+        }
+
+        final Map<String, ContentProvider> authorityProviderMap = new LinkedHashMap<>();
+        for (final String authority : provider.mAuthorities) {
+            authorityProviderMap.put(authority, provider);
+        }
+
+        final Context mockContext = new ContentProviderMockContext(baseContext,
+                authorityProviderMap);
+
+        final ProviderInfo info = new ProviderInfo();
+        info.authority = TextUtils.join(";", provider.mAuthorities); //$NON-NLS
+
+        provider.attachInfo(mockContext, info);
+
+        return provider;
+    }
+}
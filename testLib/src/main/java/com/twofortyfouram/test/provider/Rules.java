@@ -0,0 +1,98 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider.Answer;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import org.hamcrest.Matcher;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Ordered list of stubbing rules registered for a single key, such as a Uri pattern or a
+ * method name.  The first rule whose matcher accepts the params provides the answer.
+ *
+ * @param <P> Type of the params.
+ * @param <R> Type of the result.
+ */
+@ThreadSafe
+/*package*/ final class Rules<P, R> {
+
+    /*
+     * Rules are added rarely and read on every call, which suits copy-on-write.
+     */
+    @NonNull
+    private final CopyOnWriteArrayList<Rule<P, R>> mRules = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param matcher Matcher the params must satisfy.
+     * @param answer  Answer to provide when {@code matcher} is satisfied.
+     */
+    public void add(@NonNull final Matcher<? super P> matcher,
+            @NonNull final Answer<? super P, ? extends R> answer) {
+        assertNotNull(matcher, "matcher"); //$NON-NLS
+        assertNotNull(answer, "answer"); //$NON-NLS
+
+        mRules.add(new Rule<>(matcher, answer));
+    }
+
+    /**
+     * Removes all rules.
+     */
+    public void clear() {
+        mRules.clear();
+    }
+
+    /**
+     * @param params Params to match.
+     * @return The answer of the first rule matching {@code params}, or null if no rule matches.
+     */
+    @Nullable
+    public Answer<? super P, ? extends R> find(@NonNull final P params) {
+        for (final Rule<P, R> rule : mRules) {
+            if (rule.mMatcher.matches(params)) {
+                return rule.mAnswer;
+            }
+        }
+
+        return null;
+    }
+
+    @Immutable
+    private static final class Rule<P, R> {
+
+        @NonNull
+        private final Matcher<? super P> mMatcher;
+
+        @NonNull
+        private final Answer<? super P, ? extends R> mAnswer;
+
+        private Rule(@NonNull final Matcher<? super P> matcher,
+                @NonNull final Answer<? super P, ? extends R> answer) {
+            mMatcher = matcher;
+            mAnswer = answer;
+        }
+    }
+}
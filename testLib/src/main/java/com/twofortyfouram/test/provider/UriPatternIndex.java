@@ -0,0 +1,425 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.twofortyfouram.test.provider;
+
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Maps Uri patterns to values, using a trie keyed by authority and then by path segment so that
+ * lookup cost depends on the depth of the Uri rather than the number of patterns.
+ * <p>
+ * Patterns are Uri strings such as {@code content://com.example/items/#}.  The scheme of a
+ * pattern is ignored.  Within the path, the following segments have special meaning:
+ * <ul>
+ * <li>{@code #} matches exactly one segment consisting only of digits.</li>
+ * <li>{@code *} matches exactly one segment of any text.</li>
+ * <li>{@code **} may only be the last segment and matches zero or more remaining segments.</li>
+ * </ul>
+ * The authority of a pattern may be {@code *} to match any authority.  When several patterns
+ * match a Uri, literal segments take precedence over {@code #}, which takes precedence over
+ * {@code *}, which takes precedence over {@code **}.
+ * <p>
+ * Lookups are lock-free and may run concurrently with modifications.
+ *
+ * @param <T> Type of the value associated with each pattern.
+ */
+@ThreadSafe
+public final class UriPatternIndex<T> {
+
+    @NonNull
+    private static final String SCHEME_SEPARATOR = "://"; //$NON-NLS
+
+    @NonNull
+    private static final String WILDCARD_NUMBER = "#"; //$NON-NLS
+
+    @NonNull
+    private static final String WILDCARD_TEXT = "*"; //$NON-NLS
+
+    @NonNull
+    private static final String WILDCARD_REMAINDER = "**"; //$NON-NLS
+
+    @NonNull
+    private final ConcurrentHashMap<String, Node<T>> mAuthorities = new ConcurrentHashMap<>();
+
+    /**
+     * Associates {@code value} with {@code pattern}, replacing any previous value.
+     *
+     * @param pattern Uri pattern.
+     * @param value   Value to associate with the pattern.
+     */
+    public synchronized void put(@NonNull final String pattern, @NonNull final T value) {
+        assertNotNull(value, "value"); //$NON-NLS
+
+        final Node<T> node = getOrCreateNode(pattern);
+        node.mValue = value;
+        node.mPattern = pattern;
+    }
+
+    /**
+     * Associates {@code value} with {@code pattern}, unless a value is already associated.
+     *
+     * @param pattern Uri pattern.
+     * @param value   Value to associate with the pattern.
+     * @return The value now associated with {@code pattern}, which is either the prior value or
+     * {@code value}.
+     */
+    @NonNull
+    public synchronized T putIfAbsent(@NonNull final String pattern, @NonNull final T value) {
+        assertNotNull(value, "value"); //$NON-NLS
+
+        final Node<T> node = getOrCreateNode(pattern);
+        if (null == node.mValue) {
+            node.mValue = value;
+            node.mPattern = pattern;
+        }
+
+        return node.mValue;
+    }
+
+    /**
+     * Removes all patterns from the index.
+     */
+    public synchronized void clear() {
+        mAuthorities.clear();
+    }
+
+    /**
+     * @param uri Uri to look up.
+     * @return The value of the most specific pattern matching {@code uri}, or null if no pattern
+     * matches.
+     */
+    @Nullable
+    public T get(@NonNull final Uri uri) {
+        final List<T> matches = getAll(uri);
+
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * @param uri Uri to look up.
+     * @return The values of all patterns matching {@code uri}, ordered from most to least
+     * specific.  If no pattern matches, a shared immutable empty list is returned, so that
+     * misses don't allocate.
+     */
+    @NonNull
+    public List<T> getAll(@NonNull final Uri uri) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+
+        List<T> result = null;
+        final List<String> segments = uri.getPathSegments();
+
+        final String authority = uri.getAuthority();
+        if (null != authority) {
+            final Node<T> node = mAuthorities.get(authority);
+            if (null != node) {
+                result = collect(node, segments, 0, result);
+            }
+        }
+
+        final Node<T> wildcardNode = mAuthorities.get(WILDCARD_TEXT);
+        if (null != wildcardNode) {
+            result = collect(wildcardNode, segments, 0, result);
+        }
+
+        return null == result ? Collections.<T>emptyList() : result;
+    }
+
+    /**
+     * Finds the patterns closest to a Uri that doesn't match, to help diagnose why it doesn't.
+     * The trie is followed for as many segments of {@code uri} as possible, and the patterns
+     * below the deepest nodes reached are returned, shallowest first.  If not even the
+     * authority matches, patterns of any authority are returned.
+     *
+     * @param uri      Uri to look up.
+     * @param maxCount Maximum number of patterns to return.
+     * @return Up to {@code maxCount} patterns, ordered from nearest to farthest.
+     */
+    @NonNull
+    public List<String> getNearestPatterns(@NonNull final Uri uri, final int maxCount) {
+        assertNotNull(uri, "uri"); //$NON-NLS
+        if (0 > maxCount) {
+            throw new IllegalArgumentException("maxCount must be >= 0"); //$NON-NLS
+        }
+
+        final List<String> segments = uri.getPathSegments();
+        final Frontier<T> frontier = new Frontier<>();
+
+        final String authority = uri.getAuthority();
+        if (null != authority) {
+            final Node<T> node = mAuthorities.get(authority);
+            if (null != node) {
+                descend(node, segments, 0, frontier);
+            }
+        }
+
+        final Node<T> wildcardNode = mAuthorities.get(WILDCARD_TEXT);
+        if (null != wildcardNode) {
+            descend(wildcardNode, segments, 0, frontier);
+        }
+
+        if (frontier.mNodes.isEmpty()) {
+            frontier.mNodes.addAll(mAuthorities.values());
+        }
+
+        // Breadth-first, so that patterns closer to the frontier come first
+        final List<String> result = new ArrayList<>(maxCount);
+        List<Node<T>> level = frontier.mNodes;
+        while (!level.isEmpty() && result.size() < maxCount) {
+            final List<String> levelPatterns = new ArrayList<>();
+            final List<Node<T>> nextLevel = new ArrayList<>();
+            for (final Node<T> node : level) {
+                final String pattern = node.mPattern;
+                if (null != pattern && null != node.mValue) {
+                    levelPatterns.add(pattern);
+                }
+                nextLevel.addAll(node.mChildren.values());
+            }
+
+            Collections.sort(levelPatterns);
+            for (final String pattern : levelPatterns) {
+                if (result.size() < maxCount) {
+                    result.add(pattern);
+                }
+            }
+
+            level = nextLevel;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param pattern Uri pattern.
+     * @return The authority of {@code pattern}, which may be {@code *}.
+     */
+    @NonNull
+    /*package*/ static String getAuthority(@NonNull final String pattern) {
+        return split(pattern)[0];
+    }
+
+    @NonNull
+    private Node<T> getOrCreateNode(@NonNull final String pattern) {
+        final String[] parts = split(pattern);
+
+        Node<T> node = getOrCreateChild(mAuthorities, parts[0]);
+
+        for (int x = 1; x < parts.length; x++) {
+            final String segment = parts[x];
+
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            if (WILDCARD_REMAINDER.equals(segment) && x != parts.length - 1) {
+                throw new IllegalArgumentException(String.format(Locale.US,
+                        "%s may only be the last segment of pattern %s", WILDCARD_REMAINDER,
+                        pattern)); //$NON-NLS
+            }
+
+            node = getOrCreateChild(node.mChildren, segment);
+        }
+
+        return node;
+    }
+
+    /**
+     * @param pattern Uri pattern.
+     * @return The authority of {@code pattern} followed by its path segments, some of which may
+     * be empty.
+     */
+    @NonNull
+    private static String[] split(@NonNull final String pattern) {
+        assertNotNull(pattern, "pattern"); //$NON-NLS
+
+        /*
+         * Uri.parse() can't be used, because # would be interpreted as the start of a fragment.
+         */
+        final int schemeIndex = pattern.indexOf(SCHEME_SEPARATOR);
+        final String schemeSpecificPart = -1 == schemeIndex ? pattern
+                : pattern.substring(schemeIndex + SCHEME_SEPARATOR.length());
+
+        final String[] parts = schemeSpecificPart.split("/"); //$NON-NLS
+        if (parts[0].isEmpty()) {
+            throw new IllegalArgumentException(String.format(Locale.US,
+                    "Pattern %s has no authority", pattern)); //$NON-NLS
+        }
+
+        return parts;
+    }
+
+    @NonNull
+    private static <T> Node<T> getOrCreateChild(
+            @NonNull final ConcurrentHashMap<String, Node<T>> children,
+            @NonNull final String key) {
+        Node<T> child = children.get(key);
+        if (null == child) {
+            child = new Node<>();
+            children.put(key, child);
+        }
+
+        return child;
+    }
+
+    /**
+     * @param result Values collected so far, or null if there are none yet.
+     * @return {@code result} with the values below {@code node} appended, or null if there are
+     * still none.  The list is only allocated once a value is found.
+     */
+    @Nullable
+    private static <T> List<T> collect(@NonNull final Node<T> node,
+            @NonNull final List<String> segments, final int index,
+            @Nullable final List<T> result) {
+        List<T> matches = result;
+        if (segments.size() == index) {
+            matches = add(matches, node.mValue);
+        } else {
+            final String segment = segments.get(index);
+
+            final Node<T> literal = node.mChildren.get(segment);
+            if (null != literal) {
+                matches = collect(literal, segments, index + 1, matches);
+            }
+
+            if (isNumber(segment)) {
+                final Node<T> number = node.mChildren.get(WILDCARD_NUMBER);
+                if (null != number) {
+                    matches = collect(number, segments, index + 1, matches);
+                }
+            }
+
+            final Node<T> text = node.mChildren.get(WILDCARD_TEXT);
+            if (null != text) {
+                matches = collect(text, segments, index + 1, matches);
+            }
+        }
+
+        final Node<T> remainder = node.mChildren.get(WILDCARD_REMAINDER);
+        if (null != remainder) {
+            matches = add(matches, remainder.mValue);
+        }
+
+        return matches;
+    }
+
+    @Nullable
+    private static <T> List<T> add(@Nullable final List<T> result, @Nullable final T value) {
+        if (null == value) {
+            return result;
+        }
+
+        final List<T> matches = null == result ? new ArrayList<T>(1) : result;
+        matches.add(value);
+
+        return matches;
+    }
+
+    /**
+     * Follows every branch of the trie matching {@code segments}, recording the deepest nodes
+     * reached in {@code frontier}.
+     */
+    private static <T> void descend(@NonNull final Node<T> node,
+            @NonNull final List<String> segments, final int index,
+            @NonNull final Frontier<T> frontier) {
+        if (index > frontier.mDepth) {
+            frontier.mDepth = index;
+            frontier.mNodes.clear();
+        }
+        if (index == frontier.mDepth) {
+            frontier.mNodes.add(node);
+        }
+
+        if (segments.size() == index) {
+            return;
+        }
+
+        final String segment = segments.get(index);
+
+        final Node<T> literal = node.mChildren.get(segment);
+        if (null != literal) {
+            descend(literal, segments, index + 1, frontier);
+        }
+
+        if (isNumber(segment)) {
+            final Node<T> number = node.mChildren.get(WILDCARD_NUMBER);
+            if (null != number) {
+                descend(number, segments, index + 1, frontier);
+            }
+        }
+
+        final Node<T> text = node.mChildren.get(WILDCARD_TEXT);
+        if (null != text) {
+            descend(text, segments, index + 1, frontier);
+        }
+    }
+
+    private static boolean isNumber(@NonNull final String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+
+        for (int x = 0; x < segment.length(); x++) {
+            // Only ASCII digits, like UriMatcher, rather than Character.isDigit()
+            final char c = segment.charAt(x);
+            if ('0' > c || '9' < c) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @ThreadSafe
+    private static final class Node<T> {
+
+        @NonNull
+        private final ConcurrentHashMap<String, Node<T>> mChildren = new ConcurrentHashMap<>();
+
+        @Nullable
+        private volatile T mValue;
+
+        /**
+         * The pattern that {@link #mValue} was put with, for diagnostics.
+         */
+        @Nullable
+        private volatile String mPattern;
+    }
+
+    /**
+     * The deepest nodes reached by {@link #descend(Node, List, int, Frontier)}.
+     */
+    @NotThreadSafe
+    private static final class Frontier<T> {
+
+        private int mDepth = -1;
+
+        @NonNull
+        private final List<Node<T>> mNodes = new ArrayList<>();
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.rule;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.context.BroadcastMetrics;
+import com.twofortyfouram.test.context.ReceiverContextWrapper;
+import com.twofortyfouram.test.context.ReceiverContextWrapper.OnBroadcastListener;
+import com.twofortyfouram.test.context.ReceiverContextWrapper.SentIntent;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Rule to fail a test that sends broadcasts through a {@link ReceiverContextWrapper} faster
+ * than a declared budget, which catches loops that flood the system with broadcasts.  A budget
+ * allows a number of broadcasts within any sliding window of a given length, either for all
+ * broadcasts or for a single action.
+ * <p>
+ * When a budget is exceeded, the failure reports the peak number of broadcasts within the
+ * window, the call sites of the broadcasts over budget grouped by stack trace, and the Intents
+ * that were sent more than once as counted by {@link BroadcastMetrics}.  As with
+ * {@link ProviderBudgetRule}, only broadcasts over budget capture a stack, and at most
+ * {@link #DEFAULT_MAX_SAMPLED_STACKS} stacks are kept per budget by default.
+ * <p>
+ * Budgets are only checked if the test passes, but the rule stops watching its contexts after
+ * every test, so that contexts reused across tests don't keep notifying it.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * &#64;Rule
+ * public final BroadcastBudgetRule mBudgetRule = new BroadcastBudgetRule();
+ *
+ * &#64;Test
+ * public void sync() {
+ *     final ReceiverContextWrapper context = mBudgetRule.newReceiverContext(targetContext);
+ *     mBudgetRule.setBudget(ACTION_SYNC_PROGRESS, 10, 1, TimeUnit.SECONDS);
+ *     ...
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public final class BroadcastBudgetRule implements TestRule {
+
+    /**
+     * Default maximum number of stacks captured for each budget.
+     */
+    public static final int DEFAULT_MAX_SAMPLED_STACKS = 64;
+
+    /**
+     * Maximum number of duplicated Intents reported for each context.
+     */
+    private static final int MAX_REPORTED_DUPLICATES = 5;
+
+    /**
+     * Classes whose frames are trimmed from the top of reported stacks.
+     */
+    @NonNull
+    private static final String[] PLUMBING_CLASSES = {
+            BroadcastBudgetRule.class.getName(),
+            ReceiverContextWrapper.class.getName()
+    };
+
+    /**
+     * Packages whose frames are trimmed from the top of reported stacks, such as
+     * {@link android.content.ContextWrapper}.
+     */
+    @NonNull
+    private static final String[] PLUMBING_PACKAGES = {
+            "android.content." //$NON-NLS
+    };
+
+    private final int mMaxSampledStacks;
+
+    @NonNull
+    private final AtomicReference<Budget> mBudget = new AtomicReference<>();
+
+    @NonNull
+    private final ConcurrentMap<String, Budget> mActionBudgets = new ConcurrentHashMap<>();
+
+    @NonNull
+    private final CopyOnWriteArrayList<ReceiverContextWrapper> mContexts
+            = new CopyOnWriteArrayList<>();
+
+    @NonNull
+    private final OnBroadcastListener mListener = new OnBroadcastListener() {
+        @Override
+        public void onBroadcast(@NonNull final SentIntent sentIntent) {
+            final Budget budget = mBudget.get();
+            if (null != budget) {
+                budget.record(sentIntent.getSentNanos());
+            }
+
+            final String action = sentIntent.getAction();
+            if (null != action) {
+                final Budget actionBudget = mActionBudgets.get(action);
+                if (null != actionBudget) {
+                    actionBudget.record(sentIntent.getSentNanos());
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructs a new rule that captures up to {@link #DEFAULT_MAX_SAMPLED_STACKS} stacks per
+     * budget.
+     */
+    public BroadcastBudgetRule() {
+        this(DEFAULT_MAX_SAMPLED_STACKS);
+    }
+
+    /**
+     * @param maxSampledStacks Maximum number of stacks to capture for broadcasts over each
+     *                         budget.  Use 0 to report counts only.
+     */
+    public BroadcastBudgetRule(final int maxSampledStacks) {
+        if (0 > maxSampledStacks) {
+            throw new IllegalArgumentException("maxSampledStacks must be >= 0"); //$NON-NLS
+        }
+
+        mMaxSampledStacks = maxSampledStacks;
+    }
+
+    /**
+     * Creates a {@link ReceiverContextWrapper} whose broadcasts count towards the budgets of this
+     * rule.
+     *
+     * @param context Context to wrap.
+     * @return A new context.
+     */
+    @NonNull
+    public ReceiverContextWrapper newReceiverContext(@NonNull final Context context) {
+        final ReceiverContextWrapper receiverContext = new ReceiverContextWrapper(context);
+        watch(receiverContext);
+
+        return receiverContext;
+    }
+
+    /**
+     * Makes broadcasts sent through an existing context count towards the budgets of this rule.
+     *
+     * @param context Context to watch.
+     */
+    public void watch(@NonNull final ReceiverContextWrapper context) {
+        assertNotNull(context, "context"); //$NON-NLS
+
+        if (mContexts.addIfAbsent(context)) {
+            context.addOnBroadcastListener(mListener);
+        }
+    }
+
+    /**
+     * Sets the budget for all broadcasts.  Replaces any previous budget for all broadcasts.
+     *
+     * @param maxBroadcasts Maximum number of broadcasts allowed within any window.
+     * @param window        Length of the sliding window.
+     * @param unit          Unit of {@code window}.
+     */
+    public void setBudget(final int maxBroadcasts, final long window,
+            @NonNull final TimeUnit unit) {
+        mBudget.set(new Budget(null, maxBroadcasts, window, unit, mMaxSampledStacks));
+    }
+
+    /**
+     * Sets the budget for broadcasts of an action.  A broadcast counts towards both the budget
+     * of its action and the budget for all broadcasts.  Replaces any previous budget for
+     * {@code action}.
+     *
+     * @param action        Action to budget.
+     * @param maxBroadcasts Maximum number of broadcasts allowed within any window.
+     * @param window        Length of the sliding window.
+     * @param unit          Unit of {@code window}.
+     */
+    public void setBudget(@NonNull final String action, final int maxBroadcasts,
+            final long window, @NonNull final TimeUnit unit) {
+        assertNotNull(action, "action"); //$NON-NLS
+
+        mActionBudgets.put(action,
+                new Budget(action, maxBroadcasts, window, unit, mMaxSampledStacks));
+    }
+
+    @NonNull
+    @Override
+    public Statement apply(@NonNull final Statement base, @NonNull final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                    verify();
+                } finally {
+                    unwatchAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * Stops watching every context.
+     */
+    /*package*/ void unwatchAll() {
+        for (final ReceiverContextWrapper context : mContexts) {
+            context.removeOnBroadcastListener(mListener);
+        }
+        mContexts.clear();
+    }
+
+    /**
+     * @throws AssertionError If any budget was exceeded.
+     */
+    /*package*/ void verify() {
+        final StringBuilder message = new StringBuilder();
+        final Budget budget = mBudget.get();
+        if (null != budget) {
+            budget.appendFailure(message);
+        }
+        for (final Budget actionBudget : mActionBudgets.values()) {
+            actionBudget.appendFailure(message);
+        }
+
+        if (0 != message.length()) {
+            for (final ReceiverContextWrapper context : mContexts) {
+                appendDuplicates(message, context.getBroadcastMetrics());
+            }
+
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    private static void appendDuplicates(@NonNull final StringBuilder message,
+            @NonNull final BroadcastMetrics metrics) {
+        final List<BroadcastMetrics.Duplicate> duplicates = metrics.getDuplicates();
+        if (duplicates.isEmpty()) {
+            return;
+        }
+
+        message.append(String.format(Locale.US, "%d duplicate broadcasts, most sent:\n", //$NON-NLS
+                metrics.getDuplicateCount()));
+        for (final BroadcastMetrics.Duplicate duplicate
+                : duplicates.subList(0, Math.min(duplicates.size(), MAX_REPORTED_DUPLICATES))) {
+            message.append(String.format(Locale.US, "  %d times: %s\n", //$NON-NLS
+                    duplicate.getCount(), duplicate.getIntent()));
+        }
+    }
+
+    @ThreadSafe
+    private static final class Budget {
+
+        @Nullable
+        private final String mAction;
+
+        private final int mMaxBroadcasts;
+
+        private final long mWindow;
+
+        @NonNull
+        private final TimeUnit mUnit;
+
+        private final long mWindowNanos;
+
+        private final int mMaxSampledStacks;
+
+        /**
+         * Send times of the broadcasts within the window ending at the latest broadcast.
+         */
+        @NonNull
+        @GuardedBy("this")
+        private final Deque<Long> mSentNanos = new ArrayDeque<>();
+
+        @GuardedBy("this")
+        private int mPeakCount = 0;
+
+        @GuardedBy("this")
+        private int mOverBudgetCount = 0;
+
+        @NonNull
+        @GuardedBy("this")
+        private final List<Throwable> mStacks = new ArrayList<>();
+
+        private Budget(@Nullable final String action, final int maxBroadcasts,
+                final long window, @NonNull final TimeUnit unit, final int maxSampledStacks) {
+            assertNotNull(unit, "unit"); //$NON-NLS
+
+            if (0 > maxBroadcasts) {
+                throw new IllegalArgumentException("maxBroadcasts must be >= 0"); //$NON-NLS
+            }
+            if (0 >= window) {
+                throw new IllegalArgumentException("window must be > 0"); //$NON-NLS
+            }
+
+            mAction = action;
+            mMaxBroadcasts = maxBroadcasts;
+            mWindow = window;
+            mUnit = unit;
+            mWindowNanos = unit.toNanos(window);
+            mMaxSampledStacks = maxSampledStacks;
+        }
+
+        public synchronized void record(final long sentNanos) {
+            // Differences rather than comparisons, as nanoTime() may overflow
+            while (!mSentNanos.isEmpty()
+                    && sentNanos - mSentNanos.peekFirst() >= mWindowNanos) {
+                mSentNanos.removeFirst();
+            }
+            mSentNanos.addLast(sentNanos);
+
+            final int count = mSentNanos.size();
+            mPeakCount = Math.max(mPeakCount, count);
+
+            if (count > mMaxBroadcasts) {
+                mOverBudgetCount++;
+
+                if (mStacks.size() < mMaxSampledStacks) {
+                    /*
+                     * Capturing a stack walks it, which is why only the first broadcasts over
+                     * budget are sampled.  Resolving it into StackTraceElements is deferred until
+                     * reporting.
+                     */
+                    mStacks.add(new Throwable());
+                }
+            }
+        }
+
+        public synchronized void appendFailure(@NonNull final StringBuilder message) {
+            if (0 == mOverBudgetCount) {
+                return;
+            }
+
+            message.append(String.format(Locale.US,
+                    "Budget of %d broadcasts%s per %d %s exceeded with a peak of %d\n", //$NON-NLS
+                    mMaxBroadcasts, null == mAction ? "" : " of " + mAction, //$NON-NLS
+                    mWindow, mUnit.name().toLowerCase(Locale.US), mPeakCount));
+            message.append(String.format(Locale.US, "  %d broadcasts were over budget\n", //$NON-NLS
+                    mOverBudgetCount));
+
+            CallSites.append(message, mStacks, "broadcasts", PLUMBING_CLASSES, //$NON-NLS
+                    PLUMBING_PACKAGES);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.rule;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reports the call sites captured by budget rules, grouped by stack trace.
+ */
+/*package*/ final class CallSites {
+
+    /**
+     * Maximum number of frames reported for each call site.
+     */
+    private static final int MAX_REPORTED_FRAMES = 8;
+
+    /**
+     * @param stack            Stack of a call.
+     * @param plumbingClasses  Classes whose frames, including those of nested classes, are
+     *                         trimmed from the top of the stack.
+     * @param plumbingPackages Packages whose frames are trimmed from the top of the stack.
+     * @return The frames of the caller, with the plumbing trimmed from the top.
+     */
+    @NonNull
+    /*package*/ static List<StackTraceElement> trim(@NonNull final StackTraceElement[] stack,
+            @NonNull final String[] plumbingClasses, @NonNull final String[] plumbingPackages) {
+        int start = 0;
+        while (start < stack.length
+                && isPlumbing(stack[start], plumbingClasses, plumbingPackages)) {
+            start++;
+        }
+
+        final int end = Math.min(stack.length, start + MAX_REPORTED_FRAMES);
+
+        return Arrays.asList(stack).subList(start, end);
+    }
+
+    /**
+     * Appends the call sites of {@code stacks}, most frequent first.
+     *
+     * @param message          Message to append to.
+     * @param stacks           Stacks captured for the calls.
+     * @param noun             Plural noun for the calls, such as {@code calls}.
+     * @param plumbingClasses  See {@link #trim(StackTraceElement[], String[], String[])}.
+     * @param plumbingPackages See {@link #trim(StackTraceElement[], String[], String[])}.
+     */
+    /*package*/ static void append(@NonNull final StringBuilder message,
+            @NonNull final Collection<Throwable> stacks, @NonNull final String noun,
+            @NonNull final String[] plumbingClasses, @NonNull final String[] plumbingPackages) {
+        final Map<List<StackTraceElement>, Integer> callSites = new LinkedHashMap<>();
+        for (final Throwable stack : stacks) {
+            final List<StackTraceElement> callSite = trim(stack.getStackTrace(),
+                    plumbingClasses, plumbingPackages);
+            final Integer callSiteCount = callSites.get(callSite);
+            callSites.put(callSite, null == callSiteCount ? 1 : callSiteCount + 1);
+        }
+
+        final List<Map.Entry<List<StackTraceElement>, Integer>> sorted = new ArrayList<>(
+                callSites.entrySet());
+        Collections.sort(sorted,
+                new Comparator<Map.Entry<List<StackTraceElement>, Integer>>() {
+                    @Override
+                    public int compare(final Map.Entry<List<StackTraceElement>, Integer> lhs,
+                            final Map.Entry<List<StackTraceElement>, Integer> rhs) {
+                        return rhs.getValue().compareTo(lhs.getValue());
+                    }
+                });
+
+        for (final Map.Entry<List<StackTraceElement>, Integer> entry : sorted) {
+            message.append(String.format(Locale.US, "  %d %s over budget from:\n", //$NON-NLS
+                    entry.getValue(), noun));
+            for (final StackTraceElement frame : entry.getKey()) {
+                message.append("    at ").append(frame).append('\n'); //$NON-NLS
+            }
+        }
+    }
+
+    private static boolean isPlumbing(@NonNull final StackTraceElement frame,
+            @NonNull final String[] plumbingClasses, @NonNull final String[] plumbingPackages) {
+        final String className = frame.getClassName();
+
+        for (final String plumbingClass : plumbingClasses) {
+            if (className.equals(plumbingClass) || className.startsWith(plumbingClass + '$')) {
+                return true;
+            }
+        }
+
+        for (final String plumbingPackage : plumbingPackages) {
+            if (className.startsWith(plumbingPackage)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Private constructor prevents instantiation.
+     *
+     * @throws UnsupportedOperationException because this class cannot be instantiated.
+     */
+    private CallSites() {
+        throw new UnsupportedOperationException("This class is non-instantiable"); //$NON-NLS-1$
+    }
+}
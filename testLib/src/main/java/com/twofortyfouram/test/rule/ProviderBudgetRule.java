@@ -0,0 +1,358 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.rule;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.twofortyfouram.test.provider.MockableContentProvider;
+import com.twofortyfouram.test.provider.MockableContentProvider.OnCallListener;
+import com.twofortyfouram.test.provider.ProviderOperation;
+import com.twofortyfouram.test.provider.RecordingContentProvider;
+import com.twofortyfouram.test.provider.RoutingContentProvider;
+import com.twofortyfouram.test.provider.UriPatternIndex;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Rule to fail a test that makes more calls to a {@link MockableContentProvider} than a declared
+ * budget, which catches N+1 query patterns and similar call storms.  Budgets are declared per
+ * {@link ProviderOperation}, either for all Uris or for a Uri pattern as understood by
+ * {@link UriPatternIndex}.
+ * <p>
+ * When a budget is exceeded, the failure reports the call sites of the calls over budget,
+ * grouped by stack trace.  Calls within budget cost only a counter increment.  Calls over
+ * budget each capture a {@link Throwable}, whose stack trace is only resolved into
+ * {@link StackTraceElement}s if the test is reported as failing.  At most
+ * {@link #DEFAULT_MAX_SAMPLED_STACKS} stacks are kept per budget by default.
+ * <p>
+ * Budgets are only checked if the test passes, but the rule stops watching its providers after
+ * every test, so that providers reused across tests don't keep notifying it.
+ * <p>
+ * Typical usage:
+ * <pre>
+ * &#64;Rule
+ * public final ProviderBudgetRule mBudgetRule = new ProviderBudgetRule();
+ *
+ * &#64;Test
+ * public void loadItems() {
+ *     final MockableContentProvider provider = mBudgetRule.newMockProvider(context, AUTHORITY);
+ *     mBudgetRule.setBudget(ProviderOperation.QUERY, "content://" + AUTHORITY + "/items/#", 1);
+ *     ...
+ * }
+ * </pre>
+ */
+@ThreadSafe
+public final class ProviderBudgetRule implements TestRule {
+
+    /**
+     * Default maximum number of stacks captured for each budget.
+     */
+    public static final int DEFAULT_MAX_SAMPLED_STACKS = 64;
+
+    /**
+     * Classes whose frames are trimmed from the top of reported stacks, because they are part of
+     * the plumbing between the code under test and the provider.  Nested classes are trimmed
+     * too.
+     */
+    @NonNull
+    private static final String[] PLUMBING_CLASSES = {
+            ProviderBudgetRule.class.getName(),
+            MockableContentProvider.class.getName(),
+            RoutingContentProvider.class.getName(),
+            RecordingContentProvider.class.getName()
+    };
+
+    /**
+     * Packages whose frames are trimmed from the top of reported stacks, such as
+     * {@link android.content.ContentResolver}.
+     */
+    @NonNull
+    private static final String[] PLUMBING_PACKAGES = {
+            "android.content.", //$NON-NLS
+            "android.test.mock." //$NON-NLS
+    };
+
+    private final int mMaxSampledStacks;
+
+    // Indexed by ProviderOperation.ordinal().  May contain null elements.
+    @NonNull
+    private final AtomicReferenceArray<Budget> mOperationBudgets
+            = new AtomicReferenceArray<>(ProviderOperation.values().length);
+
+    // Indexed by ProviderOperation.ordinal()
+    @NonNull
+    private final List<UriPatternIndex<Budget>> mUriBudgets;
+
+    /**
+     * Every budget in {@link #mUriBudgets}, which can't be enumerated directly.
+     */
+    @NonNull
+    private final CopyOnWriteArrayList<Budget> mAllUriBudgets = new CopyOnWriteArrayList<>();
+
+    @NonNull
+    private final CopyOnWriteArrayList<MockableContentProvider> mProviders
+            = new CopyOnWriteArrayList<>();
+
+    @NonNull
+    private final OnCallListener mListener = new OnCallListener() {
+        @Override
+        public void onCall(@NonNull final ProviderOperation operation, @Nullable final Uri uri) {
+            final Budget operationBudget = mOperationBudgets.get(operation.ordinal());
+            if (null != operationBudget) {
+                operationBudget.record();
+            }
+
+            if (null != uri) {
+                for (final Budget budget : mUriBudgets.get(operation.ordinal()).getAll(uri)) {
+                    budget.record();
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructs a new rule that captures up to {@link #DEFAULT_MAX_SAMPLED_STACKS} stacks per
+     * budget.
+     */
+    public ProviderBudgetRule() {
+        this(DEFAULT_MAX_SAMPLED_STACKS);
+    }
+
+    /**
+     * @param maxSampledStacks Maximum number of stacks to capture for calls over each budget.
+     *                         Use 0 to report counts only.
+     */
+    public ProviderBudgetRule(final int maxSampledStacks) {
+        if (0 > maxSampledStacks) {
+            throw new IllegalArgumentException("maxSampledStacks must be >= 0"); //$NON-NLS
+        }
+
+        mMaxSampledStacks = maxSampledStacks;
+
+        final List<UriPatternIndex<Budget>> uriBudgets = new ArrayList<>(
+                ProviderOperation.values().length);
+        for (int x = 0; x < ProviderOperation.values().length; x++) {
+            uriBudgets.add(new UriPatternIndex<Budget>());
+        }
+        mUriBudgets = Collections.unmodifiableList(uriBudgets);
+    }
+
+    /**
+     * Creates a provider via {@link MockableContentProvider#newMockProvider(Context, String)}
+     * whose calls count towards the budgets of this rule.
+     *
+     * @param context   Application context.
+     * @param authority Authority of the provider.
+     * @return A new provider.
+     */
+    @NonNull
+    public MockableContentProvider newMockProvider(@NonNull final Context context,
+            @NonNull final String authority) {
+        final MockableContentProvider provider = MockableContentProvider
+                .newMockProvider(context, authority);
+        watch(provider);
+
+        return provider;
+    }
+
+    /**
+     * Makes calls to an existing provider count towards the budgets of this rule.
+     *
+     * @param provider Provider to watch.
+     */
+    public void watch(@NonNull final MockableContentProvider provider) {
+        assertNotNull(provider, "provider"); //$NON-NLS
+
+        if (mProviders.addIfAbsent(provider)) {
+            provider.addOnCallListener(mListener);
+        }
+    }
+
+    /**
+     * Sets the budget for an operation across all Uris.  Replaces any previous budget for
+     * {@code operation} across all Uris.
+     *
+     * @param operation Operation to budget.
+     * @param maxCalls  Maximum number of calls allowed.
+     */
+    public void setBudget(@NonNull final ProviderOperation operation, final int maxCalls) {
+        assertNotNull(operation, "operation"); //$NON-NLS
+
+        mOperationBudgets.set(operation.ordinal(),
+                new Budget(operation, null, maxCalls, mMaxSampledStacks));
+    }
+
+    /**
+     * Sets the budget for an operation on Uris matching a pattern.  A call counts towards every
+     * budget whose pattern it matches.  Replaces any previous budget for the same
+     * {@code operation} and {@code uriPattern}.
+     *
+     * @param operation  Operation to budget.
+     * @param uriPattern Pattern for the Uris to budget.  See {@link UriPatternIndex}.
+     * @param maxCalls   Maximum number of calls allowed.
+     */
+    public synchronized void setBudget(@NonNull final ProviderOperation operation,
+            @NonNull final String uriPattern, final int maxCalls) {
+        assertNotNull(operation, "operation"); //$NON-NLS
+        assertNotNull(uriPattern, "uriPattern"); //$NON-NLS
+
+        final Budget budget = new Budget(operation, uriPattern, maxCalls, mMaxSampledStacks);
+
+        for (final Budget existing : mAllUriBudgets) {
+            if (operation == existing.mOperation && uriPattern.equals(existing.mUriPattern)) {
+                mAllUriBudgets.remove(existing);
+            }
+        }
+        mAllUriBudgets.add(budget);
+        mUriBudgets.get(operation.ordinal()).put(uriPattern, budget);
+    }
+
+    @NonNull
+    @Override
+    public Statement apply(@NonNull final Statement base, @NonNull final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                    verify();
+                } finally {
+                    unwatchAll();
+                }
+            }
+        };
+    }
+
+    /**
+     * Stops watching every provider.
+     */
+    /*package*/ void unwatchAll() {
+        for (final MockableContentProvider provider : mProviders) {
+            provider.removeOnCallListener(mListener);
+        }
+        mProviders.clear();
+    }
+
+    /**
+     * @throws AssertionError If any budget was exceeded.
+     */
+    /*package*/ void verify() {
+        final StringBuilder message = new StringBuilder();
+        for (int x = 0; x < mOperationBudgets.length(); x++) {
+            final Budget budget = mOperationBudgets.get(x);
+            if (null != budget) {
+                budget.appendFailure(message);
+            }
+        }
+        for (final Budget budget : mAllUriBudgets) {
+            budget.appendFailure(message);
+        }
+
+        if (0 != message.length()) {
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    /**
+     * @param stack Stack of a call to a provider.
+     * @return The frames of the caller, with the provider plumbing trimmed from the top.
+     */
+    @NonNull
+    /*package*/ static List<StackTraceElement> trimCallSite(
+            @NonNull final StackTraceElement[] stack) {
+        return CallSites.trim(stack, PLUMBING_CLASSES, PLUMBING_PACKAGES);
+    }
+
+    @ThreadSafe
+    private static final class Budget {
+
+        @NonNull
+        private final ProviderOperation mOperation;
+
+        @Nullable
+        private final String mUriPattern;
+
+        private final int mMaxCalls;
+
+        private final int mMaxSampledStacks;
+
+        @NonNull
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @NonNull
+        private final ConcurrentLinkedQueue<Throwable> mStacks = new ConcurrentLinkedQueue<>();
+
+        private Budget(@NonNull final ProviderOperation operation,
+                @Nullable final String uriPattern, final int maxCalls,
+                final int maxSampledStacks) {
+            if (0 > maxCalls) {
+                throw new IllegalArgumentException("maxCalls must be >= 0"); //$NON-NLS
+            }
+
+            mOperation = operation;
+            mUriPattern = uriPattern;
+            mMaxCalls = maxCalls;
+            mMaxSampledStacks = maxSampledStacks;
+        }
+
+        public void record() {
+            final int count = mCount.incrementAndGet();
+
+            if (count > mMaxCalls && count - mMaxCalls <= mMaxSampledStacks) {
+                /*
+                 * Capturing a stack walks it, which is why only the first calls over budget are
+                 * sampled.  Resolving it into StackTraceElements is deferred until reporting.
+                 */
+                mStacks.add(new Throwable());
+            }
+        }
+
+        public void appendFailure(@NonNull final StringBuilder message) {
+            final int count = mCount.get();
+            if (count <= mMaxCalls) {
+                return;
+            }
+
+            message.append(String.format(Locale.US,
+                    "%s budget of %d calls%s exceeded with %d calls\n", mOperation, //$NON-NLS
+                    mMaxCalls, null == mUriPattern ? "" : " for " + mUriPattern, //$NON-NLS
+                    count));
+
+            CallSites.append(message, mStacks, "calls", PLUMBING_CLASSES, //$NON-NLS
+                    PLUMBING_PACKAGES);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.trace;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * Writes events in the Chrome trace event JSON format, which can be opened in
+ * {@code chrome://tracing} or Perfetto to see a timeline of a test run.
+ * <p>
+ * Test code marks its own spans with {@link #beginSpan(String)} and {@link #endSpan(String)},
+ * while mocks such as {@code MockableContentProvider} and {@code ReceiverContextWrapper} write
+ * their calls once given a writer.  Times come from {@link System#nanoTime()} and threads are
+ * identified by {@link Process#myTid()}, so events from all sources line up on one timeline.
+ * <p>
+ * Events are buffered and the file is only valid JSON after {@link #close()}.  Events written
+ * after {@link #close()} are discarded, so that calls still in flight when a test tears down
+ * don't fail it.  Failures to write are thrown as {@link IllegalStateException}, because
+ * events are written from methods such as {@code ContentProvider#query} that cannot throw
+ * {@link IOException}.
+ */
+@ThreadSafe
+public final class ChromeTraceWriter implements Closeable, Flushable {
+
+    /**
+     * Category of the spans written by {@link #beginSpan(String)} and {@link #endSpan(String)}.
+     */
+    @NonNull
+    public static final String CATEGORY_TEST = "test"; //$NON-NLS
+
+    private static final int NANOS_PER_MICRO = 1000;
+
+    @NonNull
+    @GuardedBy("this")
+    private final Writer mWriter;
+
+    /**
+     * Reused to format each event.
+     */
+    @NonNull
+    @GuardedBy("this")
+    private final StringBuilder mBuilder = new StringBuilder();
+
+    /**
+     * Threads that a name has already been written for.
+     */
+    @NonNull
+    @GuardedBy("this")
+    private final Set<Integer> mNamedThreads = new HashSet<>();
+
+    /**
+     * Start of the trace, which event times are relative to.
+     */
+    private final long mEpochNanos = System.nanoTime();
+
+    private final int mPid = Process.myPid();
+
+    @GuardedBy("this")
+    private int mEventCount = 0;
+
+    /**
+     * Whether nothing has been written to the event array yet, including thread names.
+     */
+    @GuardedBy("this")
+    private boolean mIsEmpty = true;
+
+    @GuardedBy("this")
+    private boolean mIsClosed = false;
+
+    /**
+     * @param file File to write the trace to.  Any existing file is replaced.
+     * @throws IOException If the file can't be created.
+     */
+    public ChromeTraceWriter(@NonNull final File file) throws IOException {
+        this(newFileWriter(file));
+    }
+
+    /**
+     * @param writer Writer to write the trace to.  It is closed by {@link #close()}.
+     * @throws IOException If the writer fails.
+     */
+    public ChromeTraceWriter(@NonNull final Writer writer) throws IOException {
+        assertNotNull(writer, "writer"); //$NON-NLS
+
+        mWriter = writer;
+        mWriter.write("{\"traceEvents\":[\n"); //$NON-NLS
+    }
+
+    /**
+     * Begins a span on the current thread.  Spans on a thread must nest.
+     *
+     * @param name Name of the span.
+     */
+    public void beginSpan(@NonNull final String name) {
+        assertNotNull(name, "name"); //$NON-NLS
+
+        writeEvent(name, CATEGORY_TEST, 'B', System.nanoTime(), 0, null);
+    }
+
+    /**
+     * Ends the innermost span begun on the current thread.
+     *
+     * @param name Name of the span, which must match {@link #beginSpan(String)}.
+     */
+    public void endSpan(@NonNull final String name) {
+        assertNotNull(name, "name"); //$NON-NLS
+
+        writeEvent(name, CATEGORY_TEST, 'E', System.nanoTime(), 0, null);
+    }
+
+    /**
+     * Writes an event that ran on the current thread for a known duration.
+     *
+     * @param name          Name of the event.
+     * @param category      Category of the event, which the viewer can filter by.
+     * @param startNanos    Start time from {@link System#nanoTime()}.
+     * @param durationNanos Duration in nanoseconds.
+     * @param args          Optional arguments, shown when the event is selected.  Values are
+     *                      written as strings.
+     */
+    public void writeComplete(@NonNull final String name, @NonNull final String category,
+            final long startNanos, final long durationNanos,
+            @Nullable final Map<String, ?> args) {
+        assertNotNull(name, "name"); //$NON-NLS
+        assertNotNull(category, "category"); //$NON-NLS
+
+        writeEvent(name, category, 'X', startNanos, durationNanos, args);
+    }
+
+    /**
+     * Writes an event without duration on the current thread.
+     *
+     * @param name           Name of the event.
+     * @param category       Category of the event, which the viewer can filter by.
+     * @param timestampNanos Time from {@link System#nanoTime()}.
+     * @param args           Optional arguments, shown when the event is selected.  Values are
+     *                       written as strings.
+     */
+    public void writeInstant(@NonNull final String name, @NonNull final String category,
+            final long timestampNanos, @Nullable final Map<String, ?> args) {
+        assertNotNull(name, "name"); //$NON-NLS
+        assertNotNull(category, "category"); //$NON-NLS
+
+        writeEvent(name, category, 'i', timestampNanos, 0, args);
+    }
+
+    /**
+     * @return The number of events written so far, not counting thread names.
+     */
+    public synchronized int getEventCount() {
+        return mEventCount;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!mIsClosed) {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Completes the JSON and closes the underlying writer.  Subsequent calls have no effect.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        mIsClosed = true;
+
+        try {
+            mWriter.write("\n],\"displayTimeUnit\":\"ns\"}\n"); //$NON-NLS
+        } finally {
+            mWriter.close();
+        }
+    }
+
+    private synchronized void writeEvent(@NonNull final String name,
+            @NonNull final String category, final char phase, final long timestampNanos,
+            final long durationNanos, @Nullable final Map<String, ?> args) {
+        if (mIsClosed) {
+            return;
+        }
+
+        final int tid = Process.myTid();
+        final StringBuilder builder = mBuilder;
+        builder.setLength(0);
+
+        if (mNamedThreads.add(tid)) {
+            appendSeparator(builder);
+            builder.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":") //$NON-NLS
+                    .append(mPid)
+                    .append(",\"tid\":").append(tid) //$NON-NLS
+                    .append(",\"args\":{\"name\":"); //$NON-NLS
+            appendString(builder, Thread.currentThread().getName());
+            builder.append("}}"); //$NON-NLS
+        }
+
+        appendSeparator(builder);
+        builder.append("{\"name\":"); //$NON-NLS
+        appendString(builder, name);
+        builder.append(",\"cat\":"); //$NON-NLS
+        appendString(builder, category);
+        builder.append(",\"ph\":\"").append(phase) //$NON-NLS
+                .append("\",\"ts\":"); //$NON-NLS
+        appendMicros(builder, timestampNanos - mEpochNanos);
+        if ('X' == phase) {
+            builder.append(",\"dur\":"); //$NON-NLS
+            appendMicros(builder, durationNanos);
+        } else if ('i' == phase) {
+            // Thread scoped, rather than drawn across the whole process
+            builder.append(",\"s\":\"t\""); //$NON-NLS
+        }
+        builder.append(",\"pid\":").append(mPid) //$NON-NLS
+                .append(",\"tid\":").append(tid); //$NON-NLS
+        if (null != args && !args.isEmpty()) {
+            builder.append(",\"args\":{"); //$NON-NLS
+            boolean isFirst = true;
+            for (final Map.Entry<String, ?> entry : args.entrySet()) {
+                if (!isFirst) {
+                    builder.append(',');
+                }
+                isFirst = false;
+
+                appendString(builder, entry.getKey());
+                builder.append(':');
+                appendString(builder, String.valueOf(entry.getValue()));
+            }
+            builder.append('}');
+        }
+        builder.append('}');
+
+        try {
+            mWriter.append(builder);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write trace event", e); //$NON-NLS
+        }
+
+        mEventCount++;
+    }
+
+    @GuardedBy("this")
+    private void appendSeparator(@NonNull final StringBuilder builder) {
+        if (!mIsEmpty) {
+            builder.append(",\n"); //$NON-NLS
+        }
+        mIsEmpty = false;
+    }
+
+    @NonNull
+    private static Writer newFileWriter(@NonNull final File file) throws IOException {
+        assertNotNull(file, "file"); //$NON-NLS
+
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8")); //$NON-NLS
+    }
+
+    /**
+     * Appends {@code nanos} as microseconds, which is the unit of the format, keeping
+     * nanosecond precision as a fraction.
+     */
+    private static void appendMicros(@NonNull final StringBuilder builder, final long nanos) {
+        long remaining = nanos;
+        if (0 > remaining) {
+            builder.append('-');
+            remaining = -remaining;
+        }
+
+        final long fraction = remaining % NANOS_PER_MICRO;
+        builder.append(remaining / NANOS_PER_MICRO).append('.');
+        if (100 > fraction) {
+            builder.append('0');
+        }
+        if (10 > fraction) {
+            builder.append('0');
+        }
+        builder.append(fraction);
+    }
+
+    /**
+     * Appends {@code value} as a quoted JSON string.
+     */
+    private static void appendString(@NonNull final StringBuilder builder,
+            @Nullable final String value) {
+        if (null == value) {
+            builder.append("null"); //$NON-NLS
+            return;
+        }
+
+        builder.append('"');
+        for (int x = 0; x < value.length(); x++) {
+            final char c = value.charAt(x);
+            switch (c) {
+                case '"':
+                    builder.append("\\\""); //$NON-NLS
+                    break;
+                case '\\':
+                    builder.append("\\\\"); //$NON-NLS
+                    break;
+                case '\n':
+                    builder.append("\\n"); //$NON-NLS
+                    break;
+                case '\r':
+                    builder.append("\\r"); //$NON-NLS
+                    break;
+                case '\t':
+                    builder.append("\\t"); //$NON-NLS
+                    break;
+                default:
+                    if (0x20 > c) {
+                        builder.append(String.format(Locale.US, "\\u%04x", (int) c)); //$NON-NLS
+                    } else {
+                        builder.append(c);
+                    }
+                    break;
+            }
+        }
+        builder.append('"');
+    }
+}
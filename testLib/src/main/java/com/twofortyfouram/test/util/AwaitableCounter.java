@@ -0,0 +1,130 @@
+/*
+ * android-test https://github.com/twofortyfouram/android-test
+ * Copyright (C) 2014–2017 two forty four a.m. LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package com.twofortyfouram.test.util;
+
+import android.support.annotation.NonNull;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.twofortyfouram.assertion.Assertions.assertNotNull;
+
+/**
+ * A counter that test threads can block on until it reaches a target value.  Between calls to
+ * {@link #reset()}, the counter only increases.  This replaces polling a count in a sleep loop
+ * when the code under test runs on a background thread.
+ * <p>
+ * Incrementing is lock-free while nobody is waiting.  Only when at least one thread is blocked in
+ * {@link #await(int, long, TimeUnit)} does {@link #increment()} acquire the monitor to wake it.
+ */
+@ThreadSafe
+public final class AwaitableCounter {
+
+    @NonNull
+    private final AtomicInteger mCount = new AtomicInteger(0);
+
+    /**
+     * Number of threads currently inside {@link #await(int, long, TimeUnit)}.  Waiters register
+     * here before checking {@link #mCount}, and incrementers check here after updating
+     * {@link #mCount}, so at least one side always observes the other.
+     */
+    @NonNull
+    private final AtomicInteger mWaiterCount = new AtomicInteger(0);
+
+    @NonNull
+    private final Object mLock = new Object();
+
+    /**
+     * Increments the counter, waking any waiting threads.
+     *
+     * @return The new value.
+     */
+    public int increment() {
+        final int value = mCount.incrementAndGet();
+
+        if (0 != mWaiterCount.get()) {
+            synchronized (mLock) {
+                mLock.notifyAll();
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Sets the counter back to zero.  Threads already waiting keep waiting for their target
+     * value.
+     */
+    public void reset() {
+        mCount.set(0);
+    }
+
+    /**
+     * @return The current value.
+     */
+    public int get() {
+        return mCount.get();
+    }
+
+    /**
+     * Blocks until the counter reaches at least {@code count} or the timeout elapses.
+     *
+     * @param count   Value to wait for.
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of {@code timeout}.
+     * @return True if the counter reached {@code count}, false if the timeout elapsed first.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public boolean await(final int count, final long timeout, @NonNull final TimeUnit unit)
+            throws InterruptedException {
+        assertNotNull(unit, "unit"); //$NON-NLS
+
+        if (mCount.get() >= count) {
+            return true;
+        }
+
+        final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+
+        mWaiterCount.incrementAndGet();
+        try {
+            synchronized (mLock) {
+                while (mCount.get() < count) {
+                    final long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(mLock, remainingNanos);
+                }
+
+                return true;
+            }
+        } finally {
+            mWaiterCount.decrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AwaitableCounter{" //$NON-NLS
+                + "mCount=" + mCount //$NON-NLS
+                + '}';
+    }
+}